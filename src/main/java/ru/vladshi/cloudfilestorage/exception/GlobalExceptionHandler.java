@@ -6,6 +6,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.context.request.async.AsyncRequestNotUsableException;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.web.servlet.resource.NoResourceFoundException;
 import ru.vladshi.cloudfilestorage.storage.exception.FolderNotFoundException;
@@ -49,6 +50,12 @@ public class GlobalExceptionHandler {
         return "redirect:/error";
     }
 
+    // Клиент закрыл соединение во время потоковой отдачи ответа: отправлять уже некому
+    @ExceptionHandler(AsyncRequestNotUsableException.class)
+    public void handleClientDisconnected(AsyncRequestNotUsableException e) {
+        log.debug("Client disconnected: {}", e.getMessage());
+    }
+
     @ExceptionHandler(Exception.class)
     public String handleGenericException(Exception e, RedirectAttributes redirectAttributes) {
         log.error("Unexpected error occurred", e);
@@ -0,0 +1,94 @@
+package ru.vladshi.cloudfilestorage.storage.config;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.ListPartsResponse;
+import io.minio.MinioAsyncClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.messages.Part;
+
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Открывает низкоуровневые операции multipart-загрузки S3, которые в SDK MinIO объявлены protected.
+ * Нужен там, где части загружаются отдельными запросами (возобновляемая и параллельная загрузка),
+ * а не одним потоком через {@code putObject}. Вызывает асинхронные варианты операций и дожидается результата:
+ * синхронные в SDK устарели.
+ */
+public class MinioMultipartClient extends MinioAsyncClient {
+
+    private static final int LIST_PARTS_PAGE_SIZE = 1000;
+
+    public MinioMultipartClient(MinioAsyncClient client) {
+        super(client);
+    }
+
+    public String createMultipartUpload(String bucket, String object) throws Exception {
+        return await(createMultipartUploadAsync(bucket, null, object, noHeaders(), noHeaders())).result().uploadId();
+    }
+
+    /**
+     * @return ETag загруженной части
+     */
+    public String uploadPart(String bucket, String object, String uploadId, int partNumber,
+                             byte[] data, int length) throws Exception {
+        return await(uploadPartAsync(bucket, null, object, data, length, uploadId, partNumber,
+                noHeaders(), noHeaders())).etag();
+    }
+
+    /**
+     * Загружает часть из файла с текущей позиции. Поток SDK целиком читает в память, чтобы посчитать
+     * контрольные суммы, а файл читает дважды, не буферизуя.
+     *
+     * @return ETag загруженной части
+     */
+    public String uploadPart(String bucket, String object, String uploadId, int partNumber,
+                             RandomAccessFile data, long length) throws Exception {
+        return await(uploadPartAsync(bucket, null, object, data, length, uploadId, partNumber,
+                noHeaders(), noHeaders())).etag();
+    }
+
+    public ObjectWriteResponse completeMultipartUpload(String bucket, String object, String uploadId,
+                                                       Part[] parts) throws Exception {
+        return await(completeMultipartUploadAsync(bucket, null, object, uploadId, parts, noHeaders(), noHeaders()));
+    }
+
+    public List<Part> listParts(String bucket, String object, String uploadId) throws Exception {
+        List<Part> parts = new ArrayList<>();
+        Integer partNumberMarker = null;
+        ListPartsResponse response;
+        do {
+            response = await(listPartsAsync(bucket, null, object, LIST_PARTS_PAGE_SIZE, partNumberMarker, uploadId,
+                    noHeaders(), noHeaders()));
+            parts.addAll(response.result().partList());
+            partNumberMarker = response.result().nextPartNumberMarker();
+        } while (response.result().isTruncated());
+        return parts;
+    }
+
+    public void abortMultipartUpload(String bucket, String object, String uploadId) throws Exception {
+        await(abortMultipartUploadAsync(bucket, null, object, uploadId, noHeaders(), noHeaders()));
+    }
+
+    // Ошибка запроса передаётся вызывающему как есть, без обёрток CompletableFuture
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw cause instanceof Exception exception ? exception : e;
+        }
+    }
+
+    private static Multimap<String, String> noHeaders() {
+        return HashMultimap.create();
+    }
+}
@@ -0,0 +1,60 @@
+package ru.vladshi.cloudfilestorage.storage.config;
+
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioClient;
+import io.minio.PostPolicy;
+import io.minio.http.Method;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Подписывает временные ссылки на объекты для браузера. Подпись включает адрес хранилища, поэтому клиент
+ * создаётся для публичного адреса MinIO ({@code minio.public-endpoint}), который может отличаться
+ * от внутреннего. Регион задан явно, и подпись вычисляется без запросов к MinIO.
+ */
+public class MinioPresigner {
+
+    private final MinioClient client;
+    private final String endpoint;
+
+    public MinioPresigner(MinioClient client, String endpoint) {
+        this.client = client;
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+    }
+
+    /**
+     * Форма загрузки браузером одного объекта под ключом {@code object} размером ровно {@code size} байт.
+     * Поля формы, включая {@code key}, отправляются на {@link PresignedPost#url()} перед полем {@code file}.
+     */
+    public PresignedPost presignPost(String bucket, String object, long size, Duration expiry) throws Exception {
+        PostPolicy policy = new PostPolicy(bucket, ZonedDateTime.now().plus(expiry));
+        policy.addEqualsCondition("key", object);
+        policy.addContentLengthRangeCondition(size, size);
+
+        Map<String, String> fields = new HashMap<>(client.getPresignedPostFormData(policy));
+        fields.put("key", object);
+        return new PresignedPost(endpoint + "/" + bucket, Map.copyOf(fields));
+    }
+
+    public record PresignedPost(String url, Map<String, String> fields) {
+    }
+
+    /**
+     * @param responseHeaders параметры {@code response-*}, которые MinIO подставит в заголовки ответа
+     */
+    public String presignGet(String bucket, String object, Duration expiry,
+                             Map<String, String> responseHeaders) throws Exception {
+        return client.getPresignedObjectUrl(
+                GetPresignedObjectUrlArgs.builder()
+                        .method(Method.GET)
+                        .bucket(bucket)
+                        .object(object)
+                        .expiry((int) expiry.toSeconds())
+                        .extraQueryParams(responseHeaders)
+                        .build()
+        );
+    }
+}
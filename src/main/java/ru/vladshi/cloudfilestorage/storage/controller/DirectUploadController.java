@@ -0,0 +1,57 @@
+package ru.vladshi.cloudfilestorage.storage.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.vladshi.cloudfilestorage.security.annotation.FullPath;
+import ru.vladshi.cloudfilestorage.storage.exception.StorageException;
+import ru.vladshi.cloudfilestorage.storage.exception.StorageLimitExceededException;
+import ru.vladshi.cloudfilestorage.storage.exception.UploadSessionNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.model.DirectUploadTicket;
+import ru.vladshi.cloudfilestorage.storage.model.FullItemPath;
+import ru.vladshi.cloudfilestorage.storage.service.DirectUploadService;
+
+import java.util.Map;
+
+/**
+ * Прямая загрузка в MinIO: клиент получает подписанную форму, отправляет файл в MinIO и подтверждает
+ * загрузку здесь же. Через приложение проходят только эти управляющие запросы.
+ */
+@RestController
+@RequestMapping("/direct-uploads")
+@RequiredArgsConstructor
+public class DirectUploadController {
+
+    private final DirectUploadService directUploadService;
+
+    @PostMapping
+    public ResponseEntity<DirectUploadTicket> create(@FullPath FullItemPath path,
+                                                     @RequestParam String fileName,
+                                                     @RequestParam long size) throws Exception {
+        DirectUploadTicket ticket = directUploadService.create(path.userPrefix(), path.full(), fileName, size);
+        return ResponseEntity.status(HttpStatus.CREATED).body(ticket);
+    }
+
+    @PostMapping("/{uploadId}/commit")
+    public ResponseEntity<Void> commit(@FullPath FullItemPath path, @PathVariable String uploadId) throws Exception {
+        directUploadService.commit(path.userPrefix(), uploadId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> abort(@FullPath FullItemPath path, @PathVariable String uploadId) throws Exception {
+        directUploadService.abort(path.userPrefix(), uploadId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler(StorageException.class)
+    public ResponseEntity<Map<String, String>> handleStorageException(StorageException e) {
+        HttpStatus status = switch (e) {
+            case UploadSessionNotFoundException ignored -> HttpStatus.NOT_FOUND;
+            case StorageLimitExceededException ignored -> HttpStatus.PAYLOAD_TOO_LARGE;
+            default -> HttpStatus.BAD_REQUEST;
+        };
+        return ResponseEntity.status(status).body(Map.of("error", e.getMessage()));
+    }
+}
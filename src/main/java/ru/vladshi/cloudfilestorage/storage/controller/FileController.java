@@ -1,21 +1,43 @@
 package ru.vladshi.cloudfilestorage.storage.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 import ru.vladshi.cloudfilestorage.security.annotation.FullPath;
+import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.exception.RangeNotSatisfiableException;
+import ru.vladshi.cloudfilestorage.storage.model.FileDownload;
+import ru.vladshi.cloudfilestorage.storage.model.FileDownloadRequest;
 import ru.vladshi.cloudfilestorage.storage.model.FullItemPath;
+import ru.vladshi.cloudfilestorage.storage.model.StoredFileInfo;
 import ru.vladshi.cloudfilestorage.storage.service.FileService;
+import ru.vladshi.cloudfilestorage.storage.service.QuotaReservation;
 import ru.vladshi.cloudfilestorage.storage.service.StorageUsageService;
+import ru.vladshi.cloudfilestorage.storage.util.ByteRangeUtil;
+import ru.vladshi.cloudfilestorage.storage.util.ByteRangeUtil.ByteRange;
+import ru.vladshi.cloudfilestorage.storage.util.ByteRangeUtil.LeadingRange;
 import ru.vladshi.cloudfilestorage.storage.util.HttpHeaderUtil;
 
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
 import static ru.vladshi.cloudfilestorage.storage.util.RedirectUtil.redirectWithPath;
 
 @Controller
@@ -42,25 +64,177 @@ public class FileController {
 
     @PostMapping("/upload")
     public String uploadFile(@FullPath FullItemPath path, @RequestParam("file") MultipartFile file) throws Exception {
-        storageUsageService.checkLimit(path.userPrefix(), file);
-        fileService.upload(path.full(), file);
+        QuotaReservation reservation = storageUsageService.reserve(path.userPrefix(), file);
+        try {
+            fileService.upload(path.full(), file);
+        } finally {
+            reservation.close();
+        }
         return redirectWithPath(path.relative());
     }
 
+    // Тело запроса — содержимое файла; оно передаётся в MinIO по мере чтения, минуя разбор multipart
+    // и временные файлы контейнера сервлетов
+    @PutMapping("/upload")
+    public String uploadFileStream(@FullPath FullItemPath path,
+                                   @RequestParam String fileName,
+                                   HttpServletRequest request) throws Exception {
+        long size = request.getContentLengthLong();
+        if (size < 0) {
+            throw new FileUploadingException("Content-Length is required to upload a file");
+        }
+        QuotaReservation reservation = storageUsageService.reserve(path.userPrefix(), size);
+        try {
+            fileService.upload(path.full(), fileName, request.getInputStream(), size);
+        } finally {
+            reservation.close();
+        }
+        return redirectWithPath(path.relative());
+    }
+
+    /**
+     * Крупные файлы при включённых временных ссылках не проходят через приложение: после проверки доступа
+     * клиент перенаправляется на подписанную ссылку MinIO, которая сама обслуживает {@code Range}
+     * и условные запросы.
+     * <p>
+     * Файл без заголовка {@code Range} отдаётся по одному запросу GetObject, из ответа которого берутся
+     * размер, ETag и дата изменения. Для части файла сначала запрашиваются метаданные: по ним проверяются
+     * диапазоны и {@code If-Range} и выбирается способ чтения сжатого объекта.
+     */
     @GetMapping("/download")
     public ResponseEntity<InputStreamResource> downloadFile(@FullPath FullItemPath path,
-                                                            @RequestParam String fileName) throws Exception {
+                                                            @RequestParam String fileName,
+                                                            @RequestHeader HttpHeaders requestHeaders) throws Exception {
+        Optional<String> presignedUrl = fileService.getPresignedDownloadUrl(path.full(), fileName);
+        if (presignedUrl.isPresent()) {
+            // Ссылка действует недолго, поэтому сам редирект не кешируется
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create(presignedUrl.get()))
+                    .cacheControl(CacheControl.noStore())
+                    .build();
+        }
+
+        String rangeHeader = requestHeaders.getFirst(HttpHeaders.RANGE);
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        FileDownloadRequest fullRequest = FileDownloadRequest.full(
+                singleEntityTag(requestHeaders), ifModifiedSince(requestHeaders));
+
+        if (rangeHeader == null) {
+            return respond(fileService.download(path.full(), fileName, fullRequest), fileName, requestHeaders);
+        }
+
+        Optional<LeadingRange> leadingRange = ByteRangeUtil.leadingRange(rangeHeader);
+        if (leadingRange.isPresent()) {
+            FileDownload download = fileService.download(path.full(), fileName, new FileDownloadRequest(
+                    leadingRange.get().first(), leadingRange.get().length(),
+                    fullRequest.ifNoneMatch(), fullRequest.ifModifiedSince()));
+            if (download.notModified() || ByteRangeUtil.ifRangeMatches(ifRange, download.info())) {
+                return respond(download, fileName, requestHeaders);
+            }
+            download.content().getInputStream().close();
+            return respond(fileService.download(path.full(), fileName, fullRequest), fileName, requestHeaders);
+        }
+
+        StoredFileInfo fileInfo = fileService.getFileInfo(path.full(), fileName);
+        if (HttpHeaderUtil.isNotModified(requestHeaders, fileInfo)) {
+            return notModified(fileInfo);
+        }
+        List<ByteRange> ranges = ByteRangeUtil.ifRangeMatches(ifRange, fileInfo)
+                ? ByteRangeUtil.parse(rangeHeader, fileInfo.size())
+                : List.of();
+        if (ranges == null) {
+            throw new RangeNotSatisfiableException(fileInfo.size());
+        }
+        if (ranges.isEmpty()) {
+            return respond(fileService.download(path.full(), fileName, fullRequest), fileName, requestHeaders);
+        }
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.getFirst();
+            return respond(fileService.download(path.full(), fileName,
+                            new FileDownloadRequest(range.offset(), range.length(), null, null)),
+                    fileName, requestHeaders);
+        }
+
+        // Каждый диапазон запрашивается из MinIO отдельно, когда до него дойдёт запись ответа
+        String contentType = HttpHeaderUtil.buildContentType(fileName);
+        String boundary = UUID.randomUUID().toString();
+        InputStream body = ByteRangeUtil.multipartBody(ranges, fileInfo.size(), contentType, boundary,
+                fileService.openRanges(path.full(), fileName));
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .headers(validatorHeaders(fileInfo))
+                .header(HttpHeaders.CONTENT_DISPOSITION, HttpHeaderUtil.buildContentDisposition(fileName))
+                .header(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary)
+                .contentLength(ByteRangeUtil.multipartLength(ranges, fileInfo.size(), contentType, boundary))
+                .body(new InputStreamResource(body));
+    }
 
-        InputStreamResource fileResource = fileService.download(path.full(), fileName);
+    @ExceptionHandler(RangeNotSatisfiableException.class)
+    public ResponseEntity<Void> handleRangeNotSatisfiable(RangeNotSatisfiableException e) {
+        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + e.getFileSize())
+                .build();
+    }
+
+    private ResponseEntity<InputStreamResource> respond(FileDownload download, String fileName,
+                                                        HttpHeaders requestHeaders) throws Exception {
+        if (download.notModified()) {
+            return notModified(download.info());
+        }
+        // Условие из нескольких ETag не передаётся в MinIO и проверяется здесь
+        if (HttpHeaderUtil.isNotModified(requestHeaders, download.info())) {
+            download.content().getInputStream().close();
+            return notModified(download.info());
+        }
+
+        ResponseEntity.BodyBuilder response = download.range() == null
+                ? ResponseEntity.ok().contentLength(download.info().size())
+                : ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                        .header(HttpHeaders.CONTENT_RANGE, download.range().contentRange(download.info().size()))
+                        .contentLength(download.range().length());
+        return response
+                .headers(validatorHeaders(download.info()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, HttpHeaderUtil.buildContentDisposition(fileName))
+                .header(HttpHeaders.CONTENT_TYPE, HttpHeaderUtil.buildContentType(fileName))
+                .body(download.content());
+    }
+
+    private static ResponseEntity<InputStreamResource> notModified(StoredFileInfo fileInfo) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .headers(validatorHeaders(fileInfo))
+                .build();
+    }
 
+    // Файлы доступны только владельцу, поэтому кешируются лишь браузером и всегда перепроверяются по ETag
+    private static HttpHeaders validatorHeaders(StoredFileInfo fileInfo) {
         HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.CONTENT_DISPOSITION, HttpHeaderUtil.buildContentDisposition(fileName));
-        headers.add(HttpHeaders.CONTENT_TYPE, HttpHeaderUtil.buildContentType(fileName));
-        long fileSize = fileService.getFileSize(path.full(), fileName);
-        headers.add(HttpHeaders.CONTENT_LENGTH, String.valueOf(fileSize));
-
-        return ResponseEntity.ok()
-                .headers(headers)
-                .body(fileResource);
+        headers.add(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+        if (fileInfo.etag() != null) {
+            headers.setETag("\"" + fileInfo.etag() + "\"");
+        }
+        if (fileInfo.lastModified() != null) {
+            headers.setLastModified(fileInfo.lastModified());
+        }
+        return headers;
+    }
+
+    // Один ETag можно передать в MinIO как условие запроса; список ETag проверяется после получения ответа
+    private static String singleEntityTag(HttpHeaders requestHeaders) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (ifNoneMatch.size() != 1 || ifNoneMatch.getFirst().strip().equals("*")) {
+            return null;
+        }
+        String tag = ifNoneMatch.getFirst().strip();
+        return (tag.startsWith("W/") ? tag.substring(2) : tag).replace("\"", "");
+    }
+
+    private static Instant ifModifiedSince(HttpHeaders requestHeaders) {
+        try {
+            long ifModifiedSince = requestHeaders.getIfModifiedSince();
+            return ifModifiedSince >= 0 ? Instant.ofEpochMilli(ifModifiedSince) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,6 @@
 package ru.vladshi.cloudfilestorage.storage.controller;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -11,11 +10,17 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.vladshi.cloudfilestorage.security.annotation.FullPath;
+import ru.vladshi.cloudfilestorage.storage.model.ArchiveDownload;
 import ru.vladshi.cloudfilestorage.storage.model.FullItemPath;
 import ru.vladshi.cloudfilestorage.storage.service.FolderService;
+import ru.vladshi.cloudfilestorage.storage.service.QuotaReservation;
 import ru.vladshi.cloudfilestorage.storage.service.StorageUsageService;
 import ru.vladshi.cloudfilestorage.storage.util.HttpHeaderUtil;
+import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+
+import java.util.List;
 
 import static ru.vladshi.cloudfilestorage.storage.util.RedirectUtil.redirectWithPath;
 
@@ -51,23 +56,48 @@ public class FolderController {
     public String uploadFolder(@FullPath FullItemPath path,
                                @RequestParam String folderName,
                                @RequestParam("files") MultipartFile[] files) throws Exception {
-        storageUsageService.checkLimit(path.userPrefix(), files);
-        folderService.upload(path.full(), folderName, files);
+        QuotaReservation reservation = storageUsageService.reserve(path.userPrefix(), files);
+        try {
+            folderService.upload(path.full(), folderName, files);
+        } finally {
+            reservation.close();
+        }
         return redirectWithPath(path.relative());
     }
 
     @GetMapping("/download")
-    public ResponseEntity<InputStreamResource> downloadFolder(@FullPath FullItemPath path,
-                                                              @RequestParam String folderName) throws Exception {
+    public ResponseEntity<StreamingResponseBody> downloadFolder(@FullPath FullItemPath path,
+                                                                @RequestParam String folderName) throws Exception {
+        return archiveResponse(folderService.download(path.full(), folderName), folderName);
+    }
+
+    /**
+     * Выбранные файлы и папки текущей папки одним архивом; имя архива — имя текущей папки.
+     */
+    @GetMapping("/download-selected")
+    public ResponseEntity<StreamingResponseBody> downloadSelected(
+            @FullPath FullItemPath path,
+            @RequestParam(name = "files", required = false) List<String> fileNames,
+            @RequestParam(name = "folders", required = false) List<String> folderNames) throws Exception {
 
-        InputStreamResource folderResource = folderService.download(path.full(), folderName);
+        ArchiveDownload archive = folderService.downloadSelected(path.full(),
+                fileNames != null ? fileNames : List.of(), folderNames != null ? folderNames : List.of());
+
+        String relativePath = path.relative() != null ? path.relative() : "";
+        String archiveName = relativePath.isBlank() ? "files" : PathUtil.extractNameFromPath(relativePath);
+        return archiveResponse(archive, archiveName);
+    }
 
+    private static ResponseEntity<StreamingResponseBody> archiveResponse(ArchiveDownload archive, String name) {
         HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.CONTENT_DISPOSITION, HttpHeaderUtil.buildContentDisposition(folderName) + ".zip");
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, HttpHeaderUtil.buildContentDisposition(name) + ".zip");
+        if (archive.hasKnownSize()) {
+            headers.setContentLength(archive.size());
+        }
 
         return ResponseEntity.ok()
                 .headers(headers)
                 .contentType(MediaType.parseMediaType("application/zip"))
-                .body(folderResource);
+                .body(archive.body());
     }
-}
\ No newline at end of file
+}
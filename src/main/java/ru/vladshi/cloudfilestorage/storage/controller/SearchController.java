@@ -1,29 +1,107 @@
 package ru.vladshi.cloudfilestorage.storage.controller;
 
+import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import ru.vladshi.cloudfilestorage.security.annotation.FullPath;
 import ru.vladshi.cloudfilestorage.storage.model.FullItemPath;
+import ru.vladshi.cloudfilestorage.storage.model.SearchFilterForm;
+import ru.vladshi.cloudfilestorage.storage.model.SearchMode;
+import ru.vladshi.cloudfilestorage.storage.model.SearchSuggestionCache;
+import ru.vladshi.cloudfilestorage.storage.model.SearchSuggestions;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
 import ru.vladshi.cloudfilestorage.storage.service.SearchService;
+import ru.vladshi.cloudfilestorage.storage.util.TrigramUtil;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Controller
 @RequestMapping("/search")
 @RequiredArgsConstructor
 public class SearchController {
 
+    private static final Duration SUGGESTION_CACHE_TTL = Duration.ofSeconds(30);
+    private static final int MAX_CACHED_SESSIONS = 1000;
+    private static final int MAX_SUGGESTION_LIMIT = 50;
+    private static final int MAX_SUGGESTION_WINDOW = 200;
+    private static final int MAX_FILTERED_RESULTS = 500;
+
     private final SearchService searchService;
 
+    // Кеш подсказок держится в памяти узла, а не в атрибуте сессии: сессии хранятся в Redis, и запись
+    // результата на каждый запрос обходилась бы дороже самого поиска. Вытесняются давно не используемые
+    // и устаревшие записи
+    private final Map<String, SearchSuggestionCache> suggestionCaches = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SearchSuggestionCache> eldest) {
+                    return size() > MAX_CACHED_SESSIONS
+                            || eldest.getValue().isExpired(Instant.now(), SUGGESTION_CACHE_TTL);
+                }
+            });
+
     @GetMapping
     public String search(@FullPath FullItemPath path,
                          Model model,
-                         @RequestParam(required = false) String searchQuery) throws Exception {
-        model.addAttribute("items", searchService.searchItems(path.userPrefix(), searchQuery.strip()));
+                         @RequestParam(required = false) String searchQuery,
+                         @RequestParam(defaultValue = "NAME") SearchMode mode,
+                         @ModelAttribute("filter") SearchFilterForm filter) throws Exception {
+        String query = searchQuery == null ? "" : searchQuery.strip();
+        List<StorageItem> items = mode == SearchMode.NAME && filter.hasAttributeFilters()
+                ? searchService.searchItems(path.userPrefix(), filter.toFilter(query), MAX_FILTERED_RESULTS)
+                : searchService.searchItems(path.userPrefix(), query, mode);
+
+        model.addAttribute("items", items);
         model.addAttribute("searchQuery", searchQuery);
+        model.addAttribute("searchMode", mode);
 
         return "search";
     }
-}
\ No newline at end of file
+
+    @GetMapping("/suggest")
+    @ResponseBody
+    public SearchSuggestions suggest(@FullPath FullItemPath path,
+                                     @RequestParam("q") String query,
+                                     @RequestParam(defaultValue = "0") int offset,
+                                     @RequestParam(defaultValue = "10") int limit,
+                                     HttpSession session) throws Exception {
+        String normalizedQuery = TrigramUtil.normalize(query.strip());
+        if (normalizedQuery.isEmpty()) {
+            return SearchSuggestions.EMPTY;
+        }
+        int from = Math.clamp(offset, 0, MAX_SUGGESTION_WINDOW);
+        int to = Math.min(from + Math.clamp(limit, 1, MAX_SUGGESTION_LIMIT), MAX_SUGGESTION_WINDOW);
+
+        // На одну запись больше окна, чтобы знать, есть ли следующая страница
+        List<StorageItem> ranked = findRanked(path.userPrefix(), normalizedQuery, to + 1, session);
+
+        return new SearchSuggestions(
+                ranked.subList(Math.min(from, ranked.size()), Math.min(to, ranked.size())),
+                ranked.size() > to);
+    }
+
+    private List<StorageItem> findRanked(String basePath, String normalizedQuery, int window,
+                                         HttpSession session) throws Exception {
+        Instant now = Instant.now();
+        SearchSuggestionCache cache = suggestionCaches.get(session.getId());
+        if (cache != null && cache.canServe(basePath, normalizedQuery, window, now, SUGGESTION_CACHE_TTL)) {
+            return cache.filter(normalizedQuery, window);
+        }
+
+        List<StorageItem> ranked = searchService.suggest(basePath, normalizedQuery, window);
+        suggestionCaches.put(session.getId(),
+                new SearchSuggestionCache(basePath, normalizedQuery, ranked, ranked.size() < window, now));
+        return ranked;
+    }
+}
@@ -1,20 +1,20 @@
 package ru.vladshi.cloudfilestorage.storage.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import ru.vladshi.cloudfilestorage.security.annotation.FullPath;
 import ru.vladshi.cloudfilestorage.storage.model.FullItemPath;
-import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItemPage;
 import ru.vladshi.cloudfilestorage.storage.model.StorageUsageInfo;
 import ru.vladshi.cloudfilestorage.storage.service.FolderService;
 import ru.vladshi.cloudfilestorage.storage.service.StorageUsageService;
 import ru.vladshi.cloudfilestorage.storage.util.BreadcrumbUtil;
 
-import java.util.List;
-
 @Controller
 @RequestMapping("/")
 @RequiredArgsConstructor
@@ -23,17 +23,33 @@ public class StorageMainController {
     private final FolderService folderService;
     private final StorageUsageService storageUsageService;
 
+    @Value("${storage.listing.page-size:200}")
+    private int pageSize;
+
     @GetMapping
     public String showFiles(@FullPath FullItemPath path, Model model) throws Exception {
 
-        List<StorageItem> storageItems = folderService.getFolderContents(path.full());
+        StorageItemPage page = folderService.getFolderContents(path.full(), null, pageSize);
         StorageUsageInfo storageInfo = storageUsageService.getInfo(path.userPrefix());
 
         model.addAttribute("path", path.relative());
         model.addAttribute("breadcrumbs", BreadcrumbUtil.buildBreadcrumbs(path.relative()));
-        model.addAttribute("items", storageItems);
+        model.addAttribute("items", page.items());
+        model.addAttribute("nextCursor", page.nextCursor());
         model.addAttribute("storageInfo", storageInfo);
 
         return "file-storage";
     }
-}
\ No newline at end of file
+
+    @GetMapping("/contents")
+    public String showNextPage(@FullPath FullItemPath path, Model model, @RequestParam String cursor) throws Exception {
+
+        StorageItemPage page = folderService.getFolderContents(path.full(), cursor, pageSize);
+
+        model.addAttribute("path", path.relative());
+        model.addAttribute("items", page.items());
+        model.addAttribute("nextCursor", page.nextCursor());
+
+        return "file-storage :: rows";
+    }
+}
@@ -0,0 +1,81 @@
+package ru.vladshi.cloudfilestorage.storage.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.vladshi.cloudfilestorage.security.annotation.FullPath;
+import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.exception.StorageException;
+import ru.vladshi.cloudfilestorage.storage.exception.StorageLimitExceededException;
+import ru.vladshi.cloudfilestorage.storage.exception.UploadSessionNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.model.FullItemPath;
+import ru.vladshi.cloudfilestorage.storage.model.UploadSessionStatus;
+import ru.vladshi.cloudfilestorage.storage.service.ResumableUploadService;
+
+import java.util.Map;
+
+/**
+ * Протокол возобновляемой загрузки: клиент создаёт сессию, отправляет части (в любом порядке и параллельно)
+ * телом {@code PUT}, после обрыва запрашивает статус и досылает недостающие части, затем завершает сессию.
+ * Ошибки возвращаются кодом ответа и JSON, а не перенаправлением, как в остальных контроллерах хранилища.
+ */
+@RestController
+@RequestMapping("/upload-sessions")
+@RequiredArgsConstructor
+public class UploadSessionController {
+
+    private final ResumableUploadService resumableUploadService;
+
+    @PostMapping
+    public ResponseEntity<UploadSessionStatus> create(@FullPath FullItemPath path,
+                                                      @RequestParam String fileName,
+                                                      @RequestParam long size) throws Exception {
+        UploadSessionStatus status = resumableUploadService.create(path.userPrefix(), path.full(), fileName, size);
+        return ResponseEntity.status(HttpStatus.CREATED).body(status);
+    }
+
+    @GetMapping("/{sessionId}")
+    public UploadSessionStatus getStatus(@FullPath FullItemPath path, @PathVariable String sessionId)
+            throws Exception {
+        return resumableUploadService.getStatus(path.userPrefix(), sessionId);
+    }
+
+    @PutMapping("/{sessionId}/parts/{partNumber}")
+    public UploadSessionStatus uploadPart(@FullPath FullItemPath path,
+                                          @PathVariable String sessionId,
+                                          @PathVariable int partNumber,
+                                          HttpServletRequest request) throws Exception {
+        long length = request.getContentLengthLong();
+        if (length < 0) {
+            throw new FileUploadingException("Content-Length is required to upload a part");
+        }
+        return resumableUploadService.uploadPart(
+                path.userPrefix(), sessionId, partNumber, request.getInputStream(), length);
+    }
+
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<Void> complete(@FullPath FullItemPath path, @PathVariable String sessionId)
+            throws Exception {
+        resumableUploadService.complete(path.userPrefix(), sessionId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abort(@FullPath FullItemPath path, @PathVariable String sessionId)
+            throws Exception {
+        resumableUploadService.abort(path.userPrefix(), sessionId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler(StorageException.class)
+    public ResponseEntity<Map<String, String>> handleStorageException(StorageException e) {
+        HttpStatus status = switch (e) {
+            case UploadSessionNotFoundException ignored -> HttpStatus.NOT_FOUND;
+            case StorageLimitExceededException ignored -> HttpStatus.PAYLOAD_TOO_LARGE;
+            default -> HttpStatus.BAD_REQUEST;
+        };
+        return ResponseEntity.status(status).body(Map.of("error", e.getMessage()));
+    }
+}
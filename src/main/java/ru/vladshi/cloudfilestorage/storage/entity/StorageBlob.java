@@ -0,0 +1,36 @@
+package ru.vladshi.cloudfilestorage.storage.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Содержимое, общее для нескольких файлов, хранящееся в MinIO один раз под ключом из своего хеша.
+ * {@code refCount} — число строк {@code storage_objects}, ссылающихся на блоб.
+ */
+@Entity
+@Table(name = "storage_blobs")
+@Setter
+@Getter
+@NoArgsConstructor
+public class StorageBlob {
+
+    @Id
+    @Column(name = "object_key")
+    private String objectKey;
+
+    @Column(name = "size", nullable = false)
+    private long size;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
@@ -0,0 +1,61 @@
+package ru.vladshi.cloudfilestorage.storage.entity;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+import java.io.Serializable;
+
+@Entity
+@Table(name = "storage_name_trigrams", indexes = {
+        @Index(name = "idx_storage_name_trigrams_user", columnList = "user_prefix, trigram, object_id")
+})
+@IdClass(StorageNameTrigram.Key.class)
+@Setter
+@Getter
+@NoArgsConstructor
+public class StorageNameTrigram implements Persistable<StorageNameTrigram.Key> {
+
+    @Id
+    @Column(name = "object_id")
+    private Long objectId;
+
+    @Id
+    @Column(name = "trigram", length = 3)
+    private String trigram;
+
+    @Column(name = "user_prefix", nullable = false, length = 100)
+    private String userPrefix;
+
+    public StorageNameTrigram(Long objectId, String userPrefix, String trigram) {
+        this.objectId = objectId;
+        this.userPrefix = userPrefix;
+        this.trigram = trigram;
+    }
+
+    @Override
+    public Key getId() {
+        return new Key(objectId, trigram);
+    }
+
+    // Триграммы только вставляются и удаляются, поэтому сохранение всегда идёт через persist без лишнего select
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private Long objectId;
+        private String trigram;
+
+        public Key(Long objectId, String trigram) {
+            this.objectId = objectId;
+            this.trigram = trigram;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ru.vladshi.cloudfilestorage.storage.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "storage_objects", indexes = {
+        @Index(name = "uk_storage_objects_path", columnList = "path", unique = true),
+        @Index(name = "idx_storage_objects_parent", columnList = "parent_path"),
+        @Index(name = "idx_storage_objects_user_name", columnList = "user_prefix, name"),
+        @Index(name = "idx_storage_objects_object_key", columnList = "object_key")
+})
+@Setter
+@Getter
+@NoArgsConstructor
+public class StorageObject {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "user_prefix", nullable = false, length = 100)
+    private String userPrefix;
+
+    @Column(name = "path", nullable = false, length = 768)
+    private String path;
+
+    @Column(name = "parent_path", nullable = false, length = 768)
+    private String parentPath;
+
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    @Column(name = "is_folder", nullable = false)
+    private boolean folder;
+
+    @Column(name = "size", nullable = false)
+    private long size;
+
+    @Column(name = "last_modified")
+    private Instant lastModified;
+
+    @Column(name = "etag", length = 64)
+    private String etag;
+
+    /**
+     * Ключ объекта MinIO с содержимым файла, если он хранится не по своему пути (общий блоб при дедупликации).
+     */
+    @Column(name = "object_key")
+    private String objectKey;
+}
@@ -0,0 +1,36 @@
+package ru.vladshi.cloudfilestorage.storage.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Место, зарезервированное под одну загрузку. Сумма {@code bytes} резервов пользователя входит
+ * в {@code storage_usage.reserved_bytes}; резерв, не освобождённый до {@code expiresAt}, снимается очисткой.
+ */
+@Entity
+@Table(name = "storage_reservations")
+@Setter
+@Getter
+@NoArgsConstructor
+public class StorageReservation {
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "user_prefix", nullable = false, length = 100)
+    private String userPrefix;
+
+    @Column(name = "bytes", nullable = false)
+    private long bytes;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+}
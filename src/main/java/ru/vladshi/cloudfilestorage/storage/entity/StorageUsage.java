@@ -0,0 +1,27 @@
+package ru.vladshi.cloudfilestorage.storage.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "storage_usage")
+@Setter
+@Getter
+@NoArgsConstructor
+public class StorageUsage {
+
+    @Id
+    @Column(name = "user_prefix", length = 100)
+    private String userPrefix;
+
+    @Column(name = "used_bytes", nullable = false)
+    private long usedBytes;
+
+    @Column(name = "reserved_bytes", nullable = false)
+    private long reservedBytes;
+}
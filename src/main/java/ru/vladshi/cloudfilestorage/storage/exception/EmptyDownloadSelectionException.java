@@ -0,0 +1,7 @@
+package ru.vladshi.cloudfilestorage.storage.exception;
+
+public class EmptyDownloadSelectionException extends StorageException {
+    public EmptyDownloadSelectionException() {
+        super("Select at least one file or folder to download");
+    }
+}
@@ -0,0 +1,7 @@
+package ru.vladshi.cloudfilestorage.storage.exception;
+
+public class InvalidPageCursorException extends StorageException {
+    public InvalidPageCursorException(String cursor) {
+        super("Invalid page cursor: %s".formatted(cursor));
+    }
+}
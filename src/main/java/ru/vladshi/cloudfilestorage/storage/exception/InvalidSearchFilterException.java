@@ -0,0 +1,7 @@
+package ru.vladshi.cloudfilestorage.storage.exception;
+
+public class InvalidSearchFilterException extends StorageException {
+    public InvalidSearchFilterException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,14 @@
+package ru.vladshi.cloudfilestorage.storage.exception;
+
+import lombok.Getter;
+
+@Getter
+public class RangeNotSatisfiableException extends StorageException {
+
+    private final long fileSize;
+
+    public RangeNotSatisfiableException(long fileSize) {
+        super("Requested range is outside of the file of %d bytes.".formatted(fileSize));
+        this.fileSize = fileSize;
+    }
+}
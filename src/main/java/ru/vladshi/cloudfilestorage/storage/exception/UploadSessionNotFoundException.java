@@ -0,0 +1,7 @@
+package ru.vladshi.cloudfilestorage.storage.exception;
+
+public class UploadSessionNotFoundException extends StorageException {
+    public UploadSessionNotFoundException(String sessionId) {
+        super("Upload session not found or expired: %s".formatted(sessionId));
+    }
+}
@@ -0,0 +1,15 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Запись ZIP-архива в поток ответа.
+ *
+ * @param size точный размер архива, если он известен заранее (все записи без сжатия), иначе {@code -1}
+ */
+public record ArchiveDownload(StreamingResponseBody body, long size) {
+
+    public boolean hasKnownSize() {
+        return size >= 0;
+    }
+}
@@ -0,0 +1,25 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.time.Instant;
+
+/**
+ * Загрузка файла браузером напрямую в MinIO. До подтверждения содержимое лежит во временном объекте
+ * вне префикса пользователя, поэтому не видно в его хранилище и не может заменить существующий файл.
+ */
+public record DirectUpload(String id,
+                           String userPrefix,
+                           String folderPath,
+                           String fileName,
+                           long size,
+                           Instant expiresAt) {
+
+    private static final String STAGING_PREFIX = "uploads/";
+
+    public String objectName() {
+        return folderPath + fileName;
+    }
+
+    public String stagingKey() {
+        return STAGING_PREFIX + userPrefix + id;
+    }
+}
@@ -0,0 +1,13 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Подписанная форма загрузки: браузер отправляет {@code fields} и затем поле {@code file} запросом
+ * {@code POST multipart/form-data} на {@code url}, после чего подтверждает загрузку по {@code id}.
+ *
+ * @param expiresAt срок, до которого загрузку нужно подтвердить
+ */
+public record DirectUploadTicket(String id, String url, Map<String, String> fields, Instant expiresAt) {
+}
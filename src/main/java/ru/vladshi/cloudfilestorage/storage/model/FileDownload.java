@@ -0,0 +1,22 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import org.springframework.core.io.InputStreamResource;
+import ru.vladshi.cloudfilestorage.storage.util.ByteRangeUtil.ByteRange;
+
+/**
+ * Содержимое и метаданные файла.
+ *
+ * @param content {@code null}, если копия клиента актуальна (ответ 304)
+ * @param info    если хранилище само ответило 304, известен только ETag копии клиента
+ * @param range   отданная часть файла; {@code null}, если файл отдаётся целиком
+ */
+public record FileDownload(InputStreamResource content, StoredFileInfo info, ByteRange range) {
+
+    public static FileDownload notModified(String etag) {
+        return new FileDownload(null, new StoredFileInfo(-1, etag, null), null);
+    }
+
+    public boolean notModified() {
+        return content == null;
+    }
+}
@@ -0,0 +1,20 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.time.Instant;
+
+/**
+ * @param offset          начало запрошенной части файла
+ * @param length          длина части; {@code null} — до конца файла
+ * @param ifNoneMatch     ETag копии клиента без кавычек: если файл не изменился, содержимое не передаётся
+ * @param ifModifiedSince дата копии клиента, учитывается только без {@code ifNoneMatch}
+ */
+public record FileDownloadRequest(long offset, Long length, String ifNoneMatch, Instant ifModifiedSince) {
+
+    public static FileDownloadRequest full(String ifNoneMatch, Instant ifModifiedSince) {
+        return new FileDownloadRequest(0, null, ifNoneMatch, ifModifiedSince);
+    }
+
+    public boolean isPartial() {
+        return offset > 0 || length != null;
+    }
+}
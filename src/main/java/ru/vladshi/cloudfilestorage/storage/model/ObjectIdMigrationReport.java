@@ -0,0 +1,10 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.time.Duration;
+
+public record ObjectIdMigrationReport(int usersScanned,
+                                      long filesMigrated,
+                                      long folderMarkersRemoved,
+                                      int failures,
+                                      Duration duration) {
+}
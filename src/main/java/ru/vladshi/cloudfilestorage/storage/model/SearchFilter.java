@@ -0,0 +1,93 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import org.springframework.http.MediaType;
+import ru.vladshi.cloudfilestorage.storage.util.HttpHeaderUtil;
+import ru.vladshi.cloudfilestorage.storage.util.TrigramUtil;
+
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Условия поиска по атрибутам. Незаданное ({@code null} или пустое) условие не ограничивает выборку.
+ * <p>
+ * Ограничения размера и расширения относятся только к файлам: при их наличии папки не подходят.
+ * Границы даты изменения полуоткрытые: {@code modifiedAfter <= lastModified < modifiedBefore}.
+ */
+public record SearchFilter(String nameQuery,
+                           Long minSize,
+                           Long maxSize,
+                           Set<String> extensions,
+                           MediaType mimeType,
+                           Instant modifiedAfter,
+                           Instant modifiedBefore,
+                           ItemType itemType) {
+
+    public enum ItemType {
+        ANY,
+        FILE,
+        FOLDER
+    }
+
+    public SearchFilter {
+        nameQuery = nameQuery == null || nameQuery.isBlank() ? null : TrigramUtil.normalize(nameQuery.strip());
+        extensions = extensions == null ? Set.of() : extensions.stream()
+                .map(extension -> extension.strip().toLowerCase(Locale.ROOT))
+                .filter(extension -> !extension.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        itemType = itemType == null ? ItemType.ANY : itemType;
+    }
+
+    public static SearchFilter byName(String nameQuery) {
+        return new SearchFilter(nameQuery, null, null, null, null, null, null, ItemType.ANY);
+    }
+
+    public boolean isEmpty() {
+        return nameQuery == null && minSize == null && maxSize == null && extensions.isEmpty() && mimeType == null
+                && modifiedAfter == null && modifiedBefore == null && itemType == ItemType.ANY;
+    }
+
+    public boolean filesOnly() {
+        return itemType == ItemType.FILE
+                || minSize != null || maxSize != null || !extensions.isEmpty() || mimeType != null;
+    }
+
+    public boolean foldersOnly() {
+        return itemType == ItemType.FOLDER;
+    }
+
+    public boolean matches(String name, boolean isFolder, long size, Instant lastModified) {
+        if (isFolder ? filesOnly() : foldersOnly()) {
+            return false;
+        }
+        if (nameQuery != null && !TrigramUtil.normalize(name).contains(nameQuery)) {
+            return false;
+        }
+        if ((minSize != null && size < minSize) || (maxSize != null && size > maxSize)) {
+            return false;
+        }
+        if (!extensions.isEmpty() && !extensions.contains(extensionOf(name))) {
+            return false;
+        }
+        if (modifiedAfter != null && (lastModified == null || lastModified.isBefore(modifiedAfter))) {
+            return false;
+        }
+        if (modifiedBefore != null && (lastModified == null || !lastModified.isBefore(modifiedBefore))) {
+            return false;
+        }
+        return matchesMimeType(name);
+    }
+
+    /**
+     * MIME-тип определяется по имени файла, поэтому это условие проверяется уже после выборки по остальным.
+     */
+    public boolean matchesMimeType(String name) {
+        return mimeType == null || mimeType.includes(MediaType.parseMediaType(HttpHeaderUtil.buildContentType(name)));
+    }
+
+    public static String extensionOf(String name) {
+        int dotIndex = name.lastIndexOf('.');
+        return dotIndex > 0 ? name.substring(dotIndex + 1).toLowerCase(Locale.ROOT) : "";
+    }
+}
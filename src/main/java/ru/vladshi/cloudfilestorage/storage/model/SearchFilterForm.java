@@ -0,0 +1,82 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import ru.vladshi.cloudfilestorage.storage.exception.InvalidSearchFilterException;
+import ru.vladshi.cloudfilestorage.storage.util.SizeFormatter;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Параметры фильтров со страницы поиска в том виде, в котором их вводит пользователь
+ * (размеры вида {@code 50MB}, расширения через запятую, даты без времени).
+ */
+@Getter
+@Setter
+public class SearchFilterForm {
+
+    private String minSize;
+    private String maxSize;
+    private String extensions;
+    private String mimeType;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate modifiedFrom;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate modifiedTo;
+    private SearchFilter.ItemType type = SearchFilter.ItemType.ANY;
+
+    public boolean hasAttributeFilters() {
+        return isPresent(minSize) || isPresent(maxSize) || isPresent(extensions) || isPresent(mimeType)
+                || modifiedFrom != null || modifiedTo != null || type != SearchFilter.ItemType.ANY;
+    }
+
+    public SearchFilter toFilter(String nameQuery) {
+        ZoneId zone = ZoneId.systemDefault();
+        return new SearchFilter(
+                nameQuery,
+                parseSize(minSize),
+                parseSize(maxSize),
+                isPresent(extensions) ? parseExtensions(extensions) : null,
+                isPresent(mimeType) ? parseMimeType(mimeType) : null,
+                modifiedFrom != null ? modifiedFrom.atStartOfDay(zone).toInstant() : null,
+                // Дата "по" включительно: граница — начало следующего дня
+                modifiedTo != null ? modifiedTo.plusDays(1).atStartOfDay(zone).toInstant() : null,
+                type);
+    }
+
+    private static Long parseSize(String size) {
+        if (!isPresent(size)) {
+            return null;
+        }
+        try {
+            return SizeFormatter.parseSize(size);
+        } catch (NumberFormatException e) {
+            throw new InvalidSearchFilterException("Invalid size: %s. Use a number with KB, MB or GB".formatted(size));
+        }
+    }
+
+    private static Set<String> parseExtensions(String extensions) {
+        return Arrays.stream(extensions.split(","))
+                .map(extension -> extension.strip().replaceFirst("^\\*?\\.", ""))
+                .collect(Collectors.toSet());
+    }
+
+    private static MediaType parseMimeType(String mimeType) {
+        try {
+            return MediaType.parseMediaType(mimeType.strip());
+        } catch (InvalidMediaTypeException e) {
+            throw new InvalidSearchFilterException("Invalid MIME type: %s".formatted(mimeType));
+        }
+    }
+
+    private static boolean isPresent(String value) {
+        return value != null && !value.isBlank();
+    }
+}
@@ -0,0 +1,6 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+public enum SearchMode {
+    NAME,
+    CONTENT
+}
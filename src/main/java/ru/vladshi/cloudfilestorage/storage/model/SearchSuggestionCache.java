@@ -0,0 +1,42 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import ru.vladshi.cloudfilestorage.storage.util.SearchRankUtil;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Последний результат подсказок поиска для сессии пользователя.
+ * <p>
+ * Если результат полный (все совпадения уместились в окно), уточнённый запрос, содержащий исходный,
+ * обслуживается фильтрацией этого списка: любое имя, содержащее уточнённый запрос, содержит и исходный.
+ */
+public record SearchSuggestionCache(String basePath,
+                                    String normalizedQuery,
+                                    List<StorageItem> rankedItems,
+                                    boolean complete,
+                                    Instant createdAt) {
+
+    public boolean canServe(String basePath, String normalizedQuery, int window, Instant now, Duration ttl) {
+        if (!this.basePath.equals(basePath) || isExpired(now, ttl)) {
+            return false;
+        }
+        if (this.normalizedQuery.equals(normalizedQuery)) {
+            return complete || rankedItems.size() >= window;
+        }
+        return complete && normalizedQuery.contains(this.normalizedQuery);
+    }
+
+    public boolean isExpired(Instant now, Duration ttl) {
+        return createdAt.plus(ttl).isBefore(now);
+    }
+
+    public List<StorageItem> filter(String normalizedQuery, int window) {
+        return rankedItems.stream()
+                .filter(item -> SearchRankUtil.rank(item.getName(), normalizedQuery) != SearchRankUtil.NO_MATCH)
+                .sorted(SearchRankUtil.comparator(normalizedQuery))
+                .limit(window)
+                .toList();
+    }
+}
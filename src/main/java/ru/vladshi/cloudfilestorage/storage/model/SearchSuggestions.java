@@ -0,0 +1,8 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.util.List;
+
+public record SearchSuggestions(List<StorageItem> items, boolean hasMore) {
+
+    public static final SearchSuggestions EMPTY = new SearchSuggestions(List.of(), false);
+}
@@ -0,0 +1,10 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.util.List;
+
+public record StorageItemPage(List<StorageItem> items, String nextCursor) {
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
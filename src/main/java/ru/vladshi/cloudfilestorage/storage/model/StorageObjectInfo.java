@@ -0,0 +1,26 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.time.Instant;
+
+/**
+ * @param objectKey ключ объекта MinIO с содержимым, если он отличается от {@code path}; иначе {@code null}
+ */
+public record StorageObjectInfo(String path, boolean isFolder, long size, String etag, Instant lastModified,
+                                String objectKey) {
+
+    public static StorageObjectInfo folder(String path) {
+        return new StorageObjectInfo(path, true, 0, null, Instant.now(), null);
+    }
+
+    public static StorageObjectInfo file(String path, long size, String etag) {
+        return new StorageObjectInfo(path, false, size, etag, Instant.now(), null);
+    }
+
+    public static StorageObjectInfo file(String path, long size, String etag, String objectKey) {
+        return new StorageObjectInfo(path, false, size, etag, Instant.now(), objectKey);
+    }
+
+    public String key() {
+        return objectKey != null ? objectKey : path;
+    }
+}
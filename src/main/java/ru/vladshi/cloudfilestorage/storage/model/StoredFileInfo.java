@@ -0,0 +1,10 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.time.Instant;
+
+/**
+ * @param size исходный размер файла (для сжатых при хранении — до сжатия)
+ * @param etag ETag объекта MinIO без кавычек
+ */
+public record StoredFileInfo(long size, String etag, Instant lastModified) {
+}
@@ -0,0 +1,18 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Объект, загружаемый в хранилище в составе папки. Путь папки заканчивается на "/", её содержимое пусто.
+ */
+public record UploadObject(String path, InputStream inputStream, long size) {
+
+    public static UploadObject folder(String path) {
+        return new UploadObject(path, new ByteArrayInputStream(new byte[0]), 0);
+    }
+
+    public boolean isFolder() {
+        return path.endsWith("/");
+    }
+}
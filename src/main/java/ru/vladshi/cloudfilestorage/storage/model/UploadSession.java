@@ -0,0 +1,35 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.time.Instant;
+
+/**
+ * Возобновляемая загрузка файла по частям фиксированного размера {@code chunkSize} (последняя может быть меньше).
+ * Часть с номером N (с 1) соответствует байтам {@code [(N - 1) * chunkSize, min(N * chunkSize, size))}.
+ * Если {@code objectKey} задан, файл собирается под этим неизменяемым ключом, иначе — по своему пути.
+ */
+public record UploadSession(String id,
+                            String userPrefix,
+                            String folderPath,
+                            String fileName,
+                            String uploadId,
+                            String objectKey,
+                            long size,
+                            long chunkSize,
+                            Instant expiresAt) {
+
+    public String objectName() {
+        return folderPath + fileName;
+    }
+
+    public String storageKey() {
+        return objectKey != null ? objectKey : objectName();
+    }
+
+    public int partCount() {
+        return (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+    }
+
+    public long partSize(int partNumber) {
+        return Math.min(chunkSize, size - (partNumber - 1) * chunkSize);
+    }
+}
@@ -0,0 +1,18 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * @param uploadedParts номера уже принятых частей по возрастанию
+ * @param offset        число байт от начала файла, принятых без пропусков — с него можно продолжить
+ *                      последовательную загрузку
+ */
+public record UploadSessionStatus(String id,
+                                  long size,
+                                  long chunkSize,
+                                  int partCount,
+                                  List<Integer> uploadedParts,
+                                  long offset,
+                                  Instant expiresAt) {
+}
@@ -0,0 +1,12 @@
+package ru.vladshi.cloudfilestorage.storage.model;
+
+import java.time.Duration;
+
+public record UsageReconciliationReport(int usersScanned,
+                                        long objectsScanned,
+                                        int corrections,
+                                        int reservedCorrections,
+                                        int indexDrifts,
+                                        int failures,
+                                        Duration duration) {
+}
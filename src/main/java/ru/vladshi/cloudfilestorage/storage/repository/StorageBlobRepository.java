@@ -0,0 +1,69 @@
+package ru.vladshi.cloudfilestorage.storage.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageBlob;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface StorageBlobRepository extends JpaRepository<StorageBlob, String> {
+
+    /**
+     * Создаёт запись блоба без ссылок или продлевает существующую, откладывая её удаление сборщиком.
+     * Ждёт завершения сборщика, если тот уже удаляет этот блоб.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            insert into storage_blobs (object_key, size, ref_count, updated_at) values (:objectKey, :size, 0, :now)
+            on duplicate key update updated_at = :now
+            """, nativeQuery = true)
+    void touch(@Param("objectKey") String objectKey, @Param("size") long size, @Param("now") Instant now);
+
+    @Modifying
+    @Query(value = """
+            insert into storage_blobs (object_key, size, ref_count, updated_at) values (:objectKey, 0, 1, :now)
+            on duplicate key update ref_count = ref_count + 1, updated_at = :now
+            """, nativeQuery = true)
+    void addReference(@Param("objectKey") String objectKey, @Param("now") Instant now);
+
+    @Modifying
+    @Query("update StorageBlob b set b.refCount = b.refCount - 1, b.updatedAt = :now where b.objectKey = :objectKey")
+    void removeReference(@Param("objectKey") String objectKey, @Param("now") Instant now);
+
+    /**
+     * Снимает ссылки всех файлов, путь которых подходит под шаблон. Вызывается до удаления их строк.
+     */
+    @Modifying
+    @Query(value = """
+            update storage_blobs b
+            join (select o.object_key, count(*) as refs from storage_objects o
+                  where o.path like :pathPattern escape '!' and o.object_key is not null
+                  group by o.object_key) r on r.object_key = b.object_key
+            set b.ref_count = b.ref_count - r.refs, b.updated_at = :now
+            """, nativeQuery = true)
+    void removeReferencesByPathLike(@Param("pathPattern") String pathPattern, @Param("now") Instant now);
+
+    @Query(value = """
+            select b.object_key from storage_blobs b
+            where b.ref_count <= 0 and b.updated_at < :threshold
+              and not exists (select 1 from storage_objects o where o.object_key = b.object_key)
+            limit :limit
+            """, nativeQuery = true)
+    List<String> findOrphanKeys(@Param("threshold") Instant threshold, @Param("limit") int limit);
+
+    /**
+     * Блокирует запись блоба, если он всё ещё не нужен, до конца транзакции сборщика.
+     */
+    @Query(value = """
+            select b.object_key from storage_blobs b
+            where b.object_key = :objectKey and b.ref_count <= 0 and b.updated_at < :threshold
+              and not exists (select 1 from storage_objects o where o.object_key = b.object_key)
+            for update
+            """, nativeQuery = true)
+    List<String> lockOrphan(@Param("objectKey") String objectKey, @Param("threshold") Instant threshold);
+}
@@ -0,0 +1,27 @@
+package ru.vladshi.cloudfilestorage.storage.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageNameTrigram;
+
+public interface StorageNameTrigramRepository extends JpaRepository<StorageNameTrigram, StorageNameTrigram.Key> {
+
+    // Удалённые триграммы не должны оставаться в контексте: иначе повторная вставка той же пары
+    // (объект, триграмма) в этой же транзакции конфликтует с ними
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from StorageNameTrigram t where t.objectId = :objectId")
+    int deleteAllByObjectId(@Param("objectId") Long objectId);
+
+    @Modifying
+    @Query("""
+            delete from StorageNameTrigram t
+            where t.objectId in (select o.id from StorageObject o where o.path like :pathPattern escape '!')
+            """)
+    int deleteAllByObjectPathLike(@Param("pathPattern") String pathPattern);
+
+    @Modifying
+    @Query("delete from StorageNameTrigram t where t.userPrefix = :userPrefix")
+    int deleteAllByUserPrefix(@Param("userPrefix") String userPrefix);
+}
@@ -0,0 +1,181 @@
+package ru.vladshi.cloudfilestorage.storage.repository;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageObject;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface StorageObjectRepository extends JpaRepository<StorageObject, Long>,
+        JpaSpecificationExecutor<StorageObject> {
+
+    Optional<StorageObject> findByPath(String path);
+
+    boolean existsByPath(String path);
+
+    boolean existsByUserPrefix(String userPrefix);
+
+    List<StorageObject> findAllByParentPathOrderByPath(String parentPath);
+
+    List<StorageObject> findAllByParentPathAndPathGreaterThanOrderByPath(String parentPath, String path, Limit limit);
+
+    /**
+     * Объекты пользователя, в имени которых встречаются все переданные триграммы.
+     * Порядок триграмм не проверяется, поэтому кандидатов нужно дополнительно проверить на вхождение подстроки.
+     */
+    @Query("""
+            select o from StorageObject o
+            where o.path <> :userPrefix
+              and o.id in (select t.objectId from StorageNameTrigram t
+                           where t.userPrefix = :userPrefix and t.trigram in :trigrams
+                           group by t.objectId
+                           having count(t.trigram) = :trigramCount)
+            order by o.path
+            """)
+    List<StorageObject> searchByTrigrams(@Param("userPrefix") String userPrefix,
+                                         @Param("trigrams") Collection<String> trigrams,
+                                         @Param("trigramCount") long trigramCount);
+
+    /**
+     * Объекты пользователя, у которых хотя бы одна строка триграммного индекса подходит под {@code termPattern}.
+     * Для запросов короче триграммы: подстрока входит в имя тогда и только тогда, когда входит в одну из его
+     * триграмм или в само короткое имя, поэтому дополнительная проверка не нужна, а просматривается только
+     * индекс {@code (user_prefix, trigram, object_id)}, без чтения строк {@code storage_objects}.
+     */
+    @Query("""
+            select o from StorageObject o
+            where o.path <> :userPrefix
+              and o.id in (select t.objectId from StorageNameTrigram t
+                           where t.userPrefix = :userPrefix and t.trigram like :termPattern escape '!')
+            order by o.path
+            """)
+    List<StorageObject> searchByIndexTerm(@Param("userPrefix") String userPrefix,
+                                          @Param("termPattern") String termPattern);
+
+    /**
+     * Кандидаты из {@link #searchByTrigrams} с подходящим под {@code namePattern}, но не под {@code excludedPattern}
+     * именем, от менее вложенных к более вложенным. Используется для ранжированной выборки по группам совпадений.
+     */
+    @Query("""
+            select o from StorageObject o
+            where o.path <> :userPrefix
+              and o.id in (select t.objectId from StorageNameTrigram t
+                           where t.userPrefix = :userPrefix and t.trigram in :trigrams
+                           group by t.objectId
+                           having count(t.trigram) = :trigramCount)
+              and lower(o.name) like :namePattern escape '!'
+              and lower(o.name) not like :excludedPattern escape '!'
+            order by length(o.parentPath) - length(replace(o.parentPath, '/', '')), o.path
+            """)
+    List<StorageObject> searchByTrigramsOrderByDepth(@Param("userPrefix") String userPrefix,
+                                                     @Param("trigrams") Collection<String> trigrams,
+                                                     @Param("trigramCount") long trigramCount,
+                                                     @Param("namePattern") String namePattern,
+                                                     @Param("excludedPattern") String excludedPattern,
+                                                     Limit limit);
+
+    /**
+     * Кандидаты из {@link #searchByIndexTerm} с подходящим под {@code namePattern}, но не под {@code excludedPattern}
+     * именем, от менее вложенных к более вложенным.
+     */
+    @Query("""
+            select o from StorageObject o
+            where o.path <> :userPrefix
+              and o.id in (select t.objectId from StorageNameTrigram t
+                           where t.userPrefix = :userPrefix and t.trigram like :termPattern escape '!')
+              and lower(o.name) like :namePattern escape '!'
+              and lower(o.name) not like :excludedPattern escape '!'
+            order by length(o.parentPath) - length(replace(o.parentPath, '/', '')), o.path
+            """)
+    List<StorageObject> searchByIndexTermOrderByDepth(@Param("userPrefix") String userPrefix,
+                                                      @Param("termPattern") String termPattern,
+                                                      @Param("namePattern") String namePattern,
+                                                      @Param("excludedPattern") String excludedPattern,
+                                                      Limit limit);
+
+    @Query("select o.objectKey from StorageObject o where o.path = :path")
+    Optional<String> findObjectKeyByPath(@Param("path") String path);
+
+    /**
+     * Переводит файл, хранящийся по пути, на неизменяемый ключ. Не меняет строку, если файл успели
+     * переименовать, удалить или перевести на другой ключ.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update StorageObject o set o.objectKey = :objectKey
+            where o.path = :path and o.folder = false and o.objectKey is null
+            """)
+    int assignObjectKey(@Param("path") String path, @Param("objectKey") String objectKey);
+
+    @Query("select o from StorageObject o where o.path like :pathPattern escape '!' order by o.path")
+    List<StorageObject> findAllByPathLikeOrderByPath(@Param("pathPattern") String pathPattern);
+
+    /**
+     * Объём файлов пользователя, содержимое которых хранится не под его префиксом (общие блобы).
+     */
+    @Query("""
+            select coalesce(sum(o.size), 0) from StorageObject o
+            where o.userPrefix = :userPrefix and o.objectKey is not null
+            """)
+    long sumSizeOfExternallyStoredObjects(@Param("userPrefix") String userPrefix);
+
+    @Query("select coalesce(sum(o.size), 0) from StorageObject o where o.userPrefix = :userPrefix")
+    long sumSizeByUserPrefix(@Param("userPrefix") String userPrefix);
+
+    @Query("select coalesce(sum(o.size), 0) from StorageObject o where o.path like :pathPattern escape '!'")
+    long sumSizeByPathLike(@Param("pathPattern") String pathPattern);
+
+    @Modifying
+    @Query("delete from StorageObject o where o.path like :pathPattern escape '!'")
+    int deleteAllByPathLike(@Param("pathPattern") String pathPattern);
+
+    @Modifying
+    @Query("delete from StorageObject o where o.userPrefix = :userPrefix")
+    int deleteAllByUserPrefix(@Param("userPrefix") String userPrefix);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update StorageObject o
+            set o.path = concat(:newPrefix, substring(o.path, :oldPrefixLength + 1))
+            where o.path like :pathPattern escape '!'
+            """)
+    int replacePathPrefix(@Param("pathPattern") String pathPattern,
+                          @Param("oldPrefixLength") int oldPrefixLength,
+                          @Param("newPrefix") String newPrefix);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update StorageObject o
+            set o.parentPath = concat(:newPrefix, substring(o.parentPath, :oldPrefixLength + 1))
+            where o.parentPath like :pathPattern escape '!'
+            """)
+    int replaceParentPathPrefix(@Param("pathPattern") String pathPattern,
+                                @Param("oldPrefixLength") int oldPrefixLength,
+                                @Param("newPrefix") String newPrefix);
+
+    static String startsWithPattern(String value) {
+        return escapeLike(value) + "%";
+    }
+
+    static String equalsPattern(String value) {
+        return escapeLike(value);
+    }
+
+    static String containsPattern(String value) {
+        return "%" + escapeLike(value) + "%";
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_");
+    }
+}
@@ -0,0 +1,55 @@
+package ru.vladshi.cloudfilestorage.storage.repository;
+
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageObject;
+import ru.vladshi.cloudfilestorage.storage.model.SearchFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Перевод {@link SearchFilter} в условия запроса к {@code storage_objects}, чтобы фильтрация выполнялась в MySQL.
+ * MIME-тип в таблице не хранится и проверяется отдельно.
+ */
+public final class StorageObjectSpecifications {
+
+    private StorageObjectSpecifications() {}
+
+    public static Specification<StorageObject> matching(String userPrefix, SearchFilter filter) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.equal(root.get("userPrefix"), userPrefix));
+            predicates.add(cb.notEqual(root.get("path"), userPrefix));
+
+            if (filter.filesOnly()) {
+                predicates.add(cb.isFalse(root.get("folder")));
+            } else if (filter.foldersOnly()) {
+                predicates.add(cb.isTrue(root.get("folder")));
+            }
+            if (filter.nameQuery() != null) {
+                predicates.add(cb.like(cb.lower(root.get("name")),
+                        StorageObjectRepository.containsPattern(filter.nameQuery()), '!'));
+            }
+            if (filter.minSize() != null) {
+                predicates.add(cb.ge(root.get("size"), filter.minSize()));
+            }
+            if (filter.maxSize() != null) {
+                predicates.add(cb.le(root.get("size"), filter.maxSize()));
+            }
+            if (!filter.extensions().isEmpty()) {
+                predicates.add(cb.or(filter.extensions().stream()
+                        .map(extension -> cb.like(cb.lower(root.get("name")),
+                                "%." + StorageObjectRepository.equalsPattern(extension), '!'))
+                        .toArray(Predicate[]::new)));
+            }
+            if (filter.modifiedAfter() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("lastModified"), filter.modifiedAfter()));
+            }
+            if (filter.modifiedBefore() != null) {
+                predicates.add(cb.lessThan(root.get("lastModified"), filter.modifiedBefore()));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+}
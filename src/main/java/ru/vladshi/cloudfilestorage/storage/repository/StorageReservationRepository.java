@@ -0,0 +1,40 @@
+package ru.vladshi.cloudfilestorage.storage.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageReservation;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface StorageReservationRepository extends JpaRepository<StorageReservation, String> {
+
+    @Modifying
+    @Query(value = """
+            insert into storage_reservations (id, user_prefix, bytes, expires_at)
+            values (:id, :userPrefix, :bytes, :expiresAt)
+            """, nativeQuery = true)
+    void add(@Param("id") String id, @Param("userPrefix") String userPrefix, @Param("bytes") long bytes,
+             @Param("expiresAt") Instant expiresAt);
+
+    /**
+     * Блокирует резерв до конца транзакции: параллельное освобождение того же резерва дождётся её
+     * и резерва уже не найдёт.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select r from StorageReservation r where r.id = :id")
+    Optional<StorageReservation> findByIdForUpdate(@Param("id") String id);
+
+    @Modifying
+    @Query("delete from StorageReservation r where r.id = :id")
+    void deleteReservation(@Param("id") String id);
+
+    @Query(value = "select r.id from storage_reservations r where r.expires_at < :now limit :limit",
+            nativeQuery = true)
+    List<String> findExpiredIds(@Param("now") Instant now, @Param("limit") int limit);
+}
@@ -0,0 +1,88 @@
+package ru.vladshi.cloudfilestorage.storage.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageUsage;
+
+public interface StorageUsageRepository extends JpaRepository<StorageUsage, String> {
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = """
+            insert into storage_usage (user_prefix, used_bytes) values (:userPrefix, greatest(:delta, 0))
+            on duplicate key update used_bytes = greatest(used_bytes + :delta, 0)
+            """, nativeQuery = true)
+    void addUsedBytes(@Param("userPrefix") String userPrefix, @Param("delta") long delta);
+
+    @Modifying
+    @Query(value = """
+            insert into storage_usage (user_prefix, used_bytes) values (:userPrefix, :usedBytes)
+            on duplicate key update used_bytes = :usedBytes
+            """, nativeQuery = true)
+    void setUsedBytes(@Param("userPrefix") String userPrefix, @Param("usedBytes") long usedBytes);
+
+    /**
+     * Приводит {@code used_bytes} к сумме размеров файлов пользователя в индексе. Индекс и счётчик меняются
+     * в одной транзакции, а сумма считается в том же запросе, что и обновление, поэтому параллельная загрузка
+     * или удаление не могут быть учтены дважды.
+     *
+     * @return 1, если значение исправлено
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            update storage_usage u
+            join (select coalesce(sum(o.size), 0) as bytes from storage_objects o
+                  where o.user_prefix = :userPrefix) s
+            set u.used_bytes = s.bytes
+            where u.user_prefix = :userPrefix and u.used_bytes <> s.bytes
+            """, nativeQuery = true)
+    int reconcileUsedBytes(@Param("userPrefix") String userPrefix);
+
+    /**
+     * Приводит {@code reserved_bytes} к сумме записанных резервов пользователя. Резерв и его запись
+     * меняются в одной транзакции, поэтому расхождение означает потерянное обновление, а не загрузку в процессе.
+     *
+     * @return 1, если значение исправлено
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            update storage_usage u
+            join (select coalesce(sum(r.bytes), 0) as bytes from storage_reservations r
+                  where r.user_prefix = :userPrefix) s
+            set u.reserved_bytes = s.bytes
+            where u.user_prefix = :userPrefix and u.reserved_bytes <> s.bytes
+            """, nativeQuery = true)
+    int reconcileReservedBytes(@Param("userPrefix") String userPrefix);
+
+    @Transactional
+    @Modifying
+    @Query(value = "insert ignore into storage_usage (user_prefix, used_bytes) values (:userPrefix, 0)",
+            nativeQuery = true)
+    void createIfAbsent(@Param("userPrefix") String userPrefix);
+
+    /**
+     * Атомарно резервирует место, если занятое и уже зарезервированное вместе с новым резервом не превышают лимит.
+     *
+     * @return 1, если резерв выполнен, 0 — если лимит был бы превышен
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update StorageUsage u set u.reservedBytes = u.reservedBytes + :bytes
+            where u.userPrefix = :userPrefix and u.usedBytes + u.reservedBytes + :bytes <= :maxBytes
+            """)
+    int reserve(@Param("userPrefix") String userPrefix, @Param("bytes") long bytes, @Param("maxBytes") long maxBytes);
+
+    @Transactional
+    @Modifying
+    @Query("""
+            update StorageUsage u set u.reservedBytes =
+                case when u.reservedBytes > :bytes then u.reservedBytes - :bytes else 0 end
+            where u.userPrefix = :userPrefix
+            """)
+    void release(@Param("userPrefix") String userPrefix, @Param("bytes") long bytes);
+}
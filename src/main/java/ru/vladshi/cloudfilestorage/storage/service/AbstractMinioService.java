@@ -4,6 +4,10 @@ import io.minio.MinioClient;
 import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
 
 public abstract class AbstractMinioService {
+
+    // Ограничение S3 на число ключей в одном запросе DeleteObjects
+    protected static final int DELETE_BATCH_SIZE = 1000;
+
     protected final MinioClient minioClient;
     protected final String usersBucketName;
 
@@ -0,0 +1,100 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import org.springframework.web.multipart.MultipartFile;
+import ru.vladshi.cloudfilestorage.storage.exception.StorageLimitExceededException;
+import ru.vladshi.cloudfilestorage.storage.model.StorageUsageInfo;
+import ru.vladshi.cloudfilestorage.storage.util.SizeFormatter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+
+public abstract class AbstractStorageUsageService implements StorageUsageService {
+
+    private final long maxStorageSize;
+    private final Duration reservationTtl;
+
+    protected AbstractStorageUsageService(String maxSizePerUser, Duration reservationTtl) {
+        this.maxStorageSize = SizeFormatter.parseSize(maxSizePerUser);
+        this.reservationTtl = reservationTtl;
+    }
+
+    protected abstract long getUserStorageSize(String userPrefix) throws Exception;
+
+    /**
+     * Атомарно резервирует место под загрузку, если с учётом других резервов лимит не будет превышен.
+     * Резерв сохраняется под {@code reservationId} и после {@code expiresAt} снимается очисткой.
+     */
+    protected abstract boolean tryReserve(String userPrefix, String reservationId, long bytes, Instant expiresAt)
+            throws Exception;
+
+    @Override
+    public StorageUsageInfo getInfo(String userPrefix) throws Exception {
+        long currentSize = getUserStorageSize(userPrefix);
+        long maxSize = getMaxStorageSize();
+        return new StorageUsageInfo(currentSize, maxSize);
+    }
+
+    public long getMaxStorageSize() {
+        return maxStorageSize;
+    }
+
+    @Override
+    public void checkLimit(String userPrefix, MultipartFile file) throws Exception {
+        long uploadSize = file.getSize();
+        checkLimit(userPrefix, uploadSize);
+    }
+
+    @Override
+    public void checkLimit(String userPrefix, MultipartFile[] files) throws Exception {
+        checkLimit(userPrefix, totalSize(files));
+    }
+
+    @Override
+    public QuotaReservation reserve(String userPrefix, MultipartFile file) throws Exception {
+        return reserve(userPrefix, file.getSize());
+    }
+
+    @Override
+    public QuotaReservation reserve(String userPrefix, MultipartFile[] files) throws Exception {
+        return reserve(userPrefix, totalSize(files));
+    }
+
+    @Override
+    public QuotaReservation reserve(String userPrefix, long uploadSize) throws Exception {
+        return reserve(userPrefix, uploadSize, reservationTtl);
+    }
+
+    @Override
+    public QuotaReservation reserve(String userPrefix, long uploadSize, Duration ttl) throws Exception {
+        String reservationId = UUID.randomUUID().toString();
+        if (!tryReserve(userPrefix, reservationId, uploadSize, Instant.now().plus(ttl))) {
+            throw limitExceeded(getUserStorageSize(userPrefix), uploadSize);
+        }
+        return new QuotaReservation(reservationId, uploadSize, () -> release(userPrefix, reservationId));
+    }
+
+    @Override
+    public void checkLimit(String userPrefix, long uploadSize) throws Exception {
+        long currentSize = getUserStorageSize(userPrefix);
+        if (currentSize + uploadSize > getMaxStorageSize()) {
+            throw limitExceeded(currentSize, uploadSize);
+        }
+    }
+
+    private StorageLimitExceededException limitExceeded(long currentSize, long uploadSize) {
+        long availableSize = Math.max(getMaxStorageSize() - currentSize, 0);
+        return new StorageLimitExceededException(
+                "Storage limit exceeded: available " + SizeFormatter.formatSize(availableSize)
+                        + ", uploading " + SizeFormatter.formatSize(uploadSize));
+    }
+
+    private static long totalSize(MultipartFile[] files) {
+        return Arrays.stream(files)
+                .filter(Objects::nonNull)
+                .mapToLong(MultipartFile::getSize)
+                .sum();
+    }
+}
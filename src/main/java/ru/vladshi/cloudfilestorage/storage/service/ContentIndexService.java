@@ -0,0 +1,25 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+
+import java.util.List;
+
+/**
+ * Полнотекстовый индекс содержимого файлов.
+ * <p>
+ * Методы изменения только ставят задачу в очередь и не ждут извлечения текста,
+ * поэтому их можно вызывать из потока обработки запроса сразу после записи в MinIO.
+ */
+public interface ContentIndexService {
+
+    void index(String fullFilePath, long size);
+
+    /**
+     * Удаляет из индекса файл или, если путь заканчивается на "/", все файлы папки.
+     */
+    void remove(String fullPath);
+
+    void move(String oldFullPath, String newFullPath);
+
+    List<StorageItem> search(String basePath, String query, int limit) throws Exception;
+}
@@ -0,0 +1,47 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.model.UploadObject;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Запись содержимого загружаемых файлов в MinIO. Реализация определяет, под каким ключом хранится содержимое;
+ * возвращаемые описания объектов передаются в {@link StorageIndexService}.
+ */
+public interface ContentStorageService {
+
+    StorageObjectInfo store(String fullPath, InputStream inputStream, long size) throws Exception;
+
+    List<StorageObjectInfo> storeAll(List<UploadObject> objects) throws Exception;
+
+    /**
+     * Принимает содержимое, которое клиент уже загрузил в MinIO под ключом {@code stagedKey}, копируя его
+     * на стороне хранилища. Временный объект удаляет вызывающий. Содержимое сохраняется без сжатия:
+     * перекодирование потребовало бы прочитать объект через приложение.
+     */
+    StorageObjectInfo adopt(String fullPath, String stagedKey, long size) throws Exception;
+
+    /**
+     * Записывает ли реализация объекты под путями пользователей (файлы или маркеры папок). Если нет, папки
+     * существуют только в индексе, а под префиксом пользователя в MinIO могут лежать лишь объекты,
+     * ещё не перенесённые миграцией.
+     */
+    boolean storesByPath();
+
+    /**
+     * Можно ли восстановить индекс пользователя по рекурсивному листингу его префикса. Для этого все файлы
+     * и папки должны лежать в MinIO по своим путям.
+     */
+    default boolean indexRebuildable() {
+        return storesByPath();
+    }
+
+    /**
+     * Удаляет содержимое файлов, которое хранится не по пути и принадлежит только им. Вызывается после удаления
+     * их строк из индекса; объекты по путям удаляет вызывающий.
+     */
+    void discard(Collection<StorageObjectInfo> objects);
+}
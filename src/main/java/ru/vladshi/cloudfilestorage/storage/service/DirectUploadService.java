@@ -0,0 +1,17 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import ru.vladshi.cloudfilestorage.storage.model.DirectUploadTicket;
+
+/**
+ * Загрузка файлов браузером напрямую в MinIO, минуя узлы приложения: приложение резервирует место,
+ * выдаёт подписанную форму на один объект точного размера, а после загрузки проверяет объект
+ * и добавляет файл в хранилище пользователя.
+ */
+public interface DirectUploadService {
+
+    DirectUploadTicket create(String userPrefix, String folderPath, String fileName, long size) throws Exception;
+
+    void commit(String userPrefix, String uploadId) throws Exception;
+
+    void abort(String userPrefix, String uploadId) throws Exception;
+}
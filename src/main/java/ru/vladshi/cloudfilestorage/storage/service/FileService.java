@@ -2,17 +2,51 @@ package ru.vladshi.cloudfilestorage.storage.service;
 
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.web.multipart.MultipartFile;
+import ru.vladshi.cloudfilestorage.storage.model.FileDownload;
+import ru.vladshi.cloudfilestorage.storage.model.FileDownloadRequest;
+import ru.vladshi.cloudfilestorage.storage.model.StoredFileInfo;
+import ru.vladshi.cloudfilestorage.storage.util.ByteRangeUtil.RangeOpener;
+
+import java.io.InputStream;
+import java.util.Optional;
 
 public interface FileService {
 
     void upload(String path, MultipartFile file) throws Exception;
 
+    /**
+     * Загрузка из потока известной длины без промежуточного сохранения на диск.
+     */
+    void upload(String path, String fileName, InputStream inputStream, long size) throws Exception;
+
     void delete(String path, String fileToDeleteName) throws Exception;
 
     void rename(String path, String oldFileName, String newFileName) throws Exception;
 
     InputStreamResource download(String path, String fileName) throws Exception;
 
+    /**
+     * Содержимое файла вместе с размером, ETag и датой изменения. Файл целиком отдаётся по одному запросу
+     * к хранилищу, которое само проверяет условие {@code If-None-Match} или {@code If-Modified-Since}: если копия
+     * клиента актуальна, содержимое не передаётся. Для части файла сначала запрашиваются его метаданные.
+     */
+    FileDownload download(String path, String fileName, FileDownloadRequest request) throws Exception;
+
+    /**
+     * Чтение нескольких частей файла: метаданные запрашиваются один раз, а каждая часть — когда до неё
+     * дойдёт чтение.
+     */
+    RangeOpener openRanges(String path, String fileName) throws Exception;
+
     long getFileSize(String path, String fileName) throws Exception;
 
+    StoredFileInfo getFileInfo(String path, String fileName) throws Exception;
+
+    /**
+     * Временная ссылка на скачивание файла напрямую из хранилища с заголовками имени и типа файла.
+     * Пусто, если файл должен отдаваться через приложение: выдача ссылок выключена, файл меньше порога
+     * или хранится сжатым.
+     */
+    Optional<String> getPresignedDownloadUrl(String path, String fileName) throws Exception;
+
 }
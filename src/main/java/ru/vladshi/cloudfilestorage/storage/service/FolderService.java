@@ -1,9 +1,11 @@
 package ru.vladshi.cloudfilestorage.storage.service;
 
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.web.multipart.MultipartFile;
+import ru.vladshi.cloudfilestorage.storage.model.ArchiveDownload;
 import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItemPage;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface FolderService {
@@ -12,6 +14,8 @@ public interface FolderService {
 
     List<StorageItem> getFolderContents(String path) throws Exception;
 
+    StorageItemPage getFolderContents(String path, String cursor, int pageSize) throws Exception;
+
     void create(String path, String newFolderName) throws Exception;
 
     void delete(String path, String folderName) throws Exception;
@@ -20,6 +24,18 @@ public interface FolderService {
 
     void upload(String path, String folderToUploadName, MultipartFile[] files) throws Exception;
 
-    InputStreamResource download(String path, String folderName) throws Exception;
+    /**
+     * Проверяет папку и возвращает запись её ZIP-архива: содержимое файлов читается из хранилища
+     * по мере записи архива в поток ответа. Если все файлы записываются без сжатия, размер архива
+     * известен заранее.
+     */
+    ArchiveDownload download(String path, String folderName) throws Exception;
+
+    /**
+     * Один ZIP-архив из выбранных файлов и папок папки {@code path}; папки входят в него со всем содержимым.
+     * Сначала в архив записываются папки, затем файлы, каждые в переданном порядке.
+     */
+    ArchiveDownload downloadSelected(String path, Collection<String> fileNames, Collection<String> folderNames)
+            throws Exception;
 
 }
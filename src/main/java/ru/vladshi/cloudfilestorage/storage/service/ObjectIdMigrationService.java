@@ -0,0 +1,10 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import ru.vladshi.cloudfilestorage.storage.model.ObjectIdMigrationReport;
+
+public interface ObjectIdMigrationService {
+
+    ObjectIdMigrationReport migrate();
+
+    ObjectIdMigrationReport getLastReport();
+}
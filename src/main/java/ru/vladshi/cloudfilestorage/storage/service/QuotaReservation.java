@@ -0,0 +1,40 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Место, зарезервированное под загрузку до её начала.
+ * <p>
+ * Закрытие освобождает резерв: после успешной загрузки объём уже учтён в занятом месте,
+ * после неудачной — возвращается пользователю. Повторное закрытие ничего не делает.
+ * Загрузки дольше одного запроса сохраняют {@link #id()} и освобождают резерв через
+ * {@link StorageUsageService#release(String, String)}.
+ */
+public final class QuotaReservation implements AutoCloseable {
+
+    private final String id;
+    private final long bytes;
+    private final Runnable release;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public QuotaReservation(String id, long bytes, Runnable release) {
+        this.id = id;
+        this.bytes = bytes;
+        this.release = release;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            release.run();
+        }
+    }
+}
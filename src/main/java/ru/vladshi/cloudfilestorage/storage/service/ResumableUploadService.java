@@ -0,0 +1,23 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import ru.vladshi.cloudfilestorage.storage.model.UploadSessionStatus;
+
+import java.io.InputStream;
+
+/**
+ * Загрузка больших файлов частями с возможностью продолжить после обрыва соединения.
+ * Части одной сессии можно отправлять параллельно и повторно; место резервируется при приёме каждой части.
+ */
+public interface ResumableUploadService {
+
+    UploadSessionStatus create(String userPrefix, String folderPath, String fileName, long size) throws Exception;
+
+    UploadSessionStatus getStatus(String userPrefix, String sessionId) throws Exception;
+
+    UploadSessionStatus uploadPart(String userPrefix, String sessionId, int partNumber,
+                                   InputStream data, long length) throws Exception;
+
+    void complete(String userPrefix, String sessionId) throws Exception;
+
+    void abort(String userPrefix, String sessionId) throws Exception;
+}
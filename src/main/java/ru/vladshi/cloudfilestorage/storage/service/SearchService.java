@@ -1,5 +1,7 @@
 package ru.vladshi.cloudfilestorage.storage.service;
 
+import ru.vladshi.cloudfilestorage.storage.model.SearchFilter;
+import ru.vladshi.cloudfilestorage.storage.model.SearchMode;
 import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
 
 import java.util.List;
@@ -8,4 +10,22 @@ public interface SearchService {
 
     List<StorageItem> searchItems(String basePath, String query) throws Exception;
 
+    /**
+     * Поиск в выбранном режиме: {@link SearchMode#NAME} — по подстроке имени,
+     * {@link SearchMode#CONTENT} — по словам в содержимом текстовых файлов.
+     */
+    List<StorageItem> searchItems(String basePath, String query, SearchMode mode) throws Exception;
+
+    /**
+     * Не более {@code limit} объектов, подходящих под все условия фильтра, в порядке путей.
+     * Условия проверяются при выборке, а не над готовым списком всех объектов пользователя.
+     */
+    List<StorageItem> searchItems(String basePath, SearchFilter filter, int limit) throws Exception;
+
+    /**
+     * Не более {@code limit} лучших совпадений в порядке {@link ru.vladshi.cloudfilestorage.storage.util.SearchRankUtil}.
+     * Поиск прекращается, как только набраны лучшие {@code limit} результатов.
+     */
+    List<StorageItem> suggest(String basePath, String query, int limit) throws Exception;
+
 }
@@ -0,0 +1,38 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface StorageIndexService {
+
+    List<StorageItem> getFolderContents(String path) throws Exception;
+
+    List<StorageItem> getFolderContents(String path, String startAfter, int limit) throws Exception;
+
+    boolean exists(String fullPath) throws Exception;
+
+    /**
+     * Ключ объекта MinIO, в котором хранится содержимое файла: его путь или ключ общего блоба.
+     */
+    String resolveObjectKey(String fullPath) throws Exception;
+
+    Optional<StorageObjectInfo> find(String fullPath) throws Exception;
+
+    /**
+     * Все объекты внутри папки (без неё самой), упорядоченные по пути.
+     */
+    List<StorageObjectInfo> getAllDescendants(String folderPath) throws Exception;
+
+    void add(StorageObjectInfo object) throws Exception;
+
+    void addAll(Collection<StorageObjectInfo> objects) throws Exception;
+
+    void remove(String fullPath) throws Exception;
+
+    void move(String oldFullPath, String newFullPath) throws Exception;
+
+}
@@ -0,0 +1,13 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import ru.vladshi.cloudfilestorage.storage.model.UsageReconciliationReport;
+
+import java.util.Optional;
+
+public interface StorageUsageReconciliationService {
+
+    /**
+     * @return отчёт о сверке или пустое значение, если сверку уже выполняет другой узел
+     */
+    Optional<UsageReconciliationReport> reconcile();
+}
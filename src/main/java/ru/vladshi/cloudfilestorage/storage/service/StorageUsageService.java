@@ -3,6 +3,8 @@ package ru.vladshi.cloudfilestorage.storage.service;
 import org.springframework.web.multipart.MultipartFile;
 import ru.vladshi.cloudfilestorage.storage.model.StorageUsageInfo;
 
+import java.time.Duration;
+
 public interface StorageUsageService {
 
     StorageUsageInfo getInfo(String userPrefix) throws Exception;
@@ -11,4 +13,23 @@ public interface StorageUsageService {
 
     void checkLimit(String userPrefix, MultipartFile[] files) throws Exception;
 
+    void checkLimit(String userPrefix, long uploadSize) throws Exception;
+
+    QuotaReservation reserve(String userPrefix, MultipartFile file) throws Exception;
+
+    QuotaReservation reserve(String userPrefix, MultipartFile[] files) throws Exception;
+
+    QuotaReservation reserve(String userPrefix, long bytes) throws Exception;
+
+    /**
+     * Резерв для загрузок, которые длятся дольше одного запроса (возобновляемая и прямая загрузка).
+     * Если его не освободить, он снимается по истечении {@code ttl}.
+     */
+    QuotaReservation reserve(String userPrefix, long bytes, Duration ttl) throws Exception;
+
+    /**
+     * Освобождает резерв по {@link QuotaReservation#id()}. Уже освобождённый или просроченный резерв пропускается.
+     */
+    void release(String userPrefix, String reservationId);
+
 }
@@ -0,0 +1,285 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.*;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.model.UploadObject;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageBlobRepository;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentStorageService;
+import ru.vladshi.cloudfilestorage.storage.util.ParallelUtil;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Контентно-адресуемое хранение: содержимое файла хранится в MinIO один раз под ключом из его SHA-256,
+ * а строки индекса пользователей ссылаются на этот ключ. Переименование и перемещение таких файлов
+ * меняют только индекс, удаление уменьшает число ссылок на блоб.
+ * <p>
+ * Хеш считается при потоковой загрузке во временный объект, который затем копируется на стороне MinIO
+ * под итоговый ключ или удаляется, если такой блоб уже есть. Блобы без ссылок удаляются сборщиком
+ * не раньше, чем через {@code gc-grace-period} после последнего изменения.
+ * <p>
+ * Занятое место пользователя по-прежнему считается по логическому размеру его файлов.
+ * Требует индекса в MySQL ({@code storage.index.enabled=true}).
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "storage.dedup.enabled", havingValue = "true")
+public class DeduplicatingContentStorageServiceImpl extends AbstractMinioService implements ContentStorageService {
+
+    // Префиксы пользователей начинаются с идентификатора, поэтому с этим префиксом не пересекаются
+    private static final String BLOB_PREFIX = "blobs/sha256/";
+    private static final String STAGING_PREFIX = "blobs/staging/";
+    private static final int GC_BATCH_SIZE = 500;
+
+    private final StorageCodec storageCodec;
+    private final FolderUploader folderUploader;
+    private final StorageBlobRepository storageBlobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration gcGracePeriod;
+
+    @Autowired
+    public DeduplicatingContentStorageServiceImpl(
+            MinioClientProvider minioClientProvider,
+            StorageCodec storageCodec,
+            FolderUploader folderUploader,
+            StorageBlobRepository storageBlobRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${storage.index.enabled:true}") boolean indexEnabled,
+            @Value("${storage.dedup.gc-grace-period:PT1H}") Duration gcGracePeriod) {
+        super(minioClientProvider);
+        if (!indexEnabled) {
+            throw new IllegalStateException("storage.dedup.enabled requires storage.index.enabled=true");
+        }
+        this.storageCodec = storageCodec;
+        this.folderUploader = folderUploader;
+        this.storageBlobRepository = storageBlobRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.gcGracePeriod = gcGracePeriod;
+    }
+
+    @Override
+    public StorageObjectInfo store(String fullPath, InputStream inputStream, long size) throws Exception {
+        String stagingKey = STAGING_PREFIX + UUID.randomUUID();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try {
+            // Хеш считается по исходному содержимому, а сжатие и его метаданные переходят в блоб при копировании
+            storageCodec.upload(stagingKey, fullPath, new DigestInputStream(inputStream, digest), size);
+            return promote(fullPath, stagingKey, digest, size);
+        } finally {
+            removeQuietly(stagingKey);
+        }
+    }
+
+    // Хеш загруженного браузером объекта можно получить, только прочитав его; записывается он при этом
+    // один раз — копированием в блоб на стороне MinIO, если такого блоба ещё нет
+    @Override
+    public StorageObjectInfo adopt(String fullPath, String stagedKey, long size) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream inputStream = minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(usersBucketName)
+                        .object(stagedKey)
+                        .build())) {
+            new DigestInputStream(inputStream, digest).transferTo(OutputStream.nullOutputStream());
+        }
+        return promote(fullPath, stagedKey, digest, size);
+    }
+
+    private StorageObjectInfo promote(String fullPath, String stagingKey, MessageDigest digest, long size)
+            throws Exception {
+        String blobKey = BLOB_PREFIX + HexFormat.of().formatHex(digest.digest());
+        // Запись блоба продлевается до проверки наличия объекта: сборщик, уже удаляющий этот блоб,
+        // держит блокировку записи, и после него объект будет создан заново
+        storageBlobRepository.touch(blobKey, size, Instant.now());
+        String etag = findEtag(blobKey).orElse(null);
+        if (etag == null) {
+            etag = minioClient.copyObject(
+                    CopyObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(blobKey)
+                            .source(CopySource.builder()
+                                    .bucket(usersBucketName)
+                                    .object(stagingKey)
+                                    .build())
+                            .build()
+            ).etag();
+        } else {
+            log.debug("Deduplicated {} to existing blob {}", fullPath, blobKey);
+        }
+        return StorageObjectInfo.file(fullPath, size, etag, blobKey);
+    }
+
+    // Файлы загружаются во временные объекты с подсчётом хеша, мелкие — пакетами, и затем копируются в блобы;
+    // маркеры папок записываются по путям
+    @Override
+    public List<StorageObjectInfo> storeAll(List<UploadObject> objects) throws Exception {
+        Map<UploadObject, String> objectKeys = new IdentityHashMap<>();
+        Map<UploadObject, MessageDigest> digests = new IdentityHashMap<>();
+        List<UploadObject> staged = new ArrayList<>(objects.size());
+        for (UploadObject object : objects) {
+            if (object.isFolder()) {
+                objectKeys.put(object, object.path());
+                staged.add(object);
+            } else {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                UploadObject hashed = new UploadObject(
+                        object.path(), new DigestInputStream(object.inputStream(), digest), object.size());
+                objectKeys.put(hashed, STAGING_PREFIX + UUID.randomUUID());
+                digests.put(hashed, digest);
+                staged.add(hashed);
+            }
+        }
+
+        try {
+            folderUploader.upload(staged, objectKeys::get, () -> staged.stream()
+                    .filter(UploadObject::isFolder)
+                    .forEach(folder -> removeQuietly(folder.path())));
+
+            List<Callable<StorageObjectInfo>> promotions = staged.stream()
+                    .<Callable<StorageObjectInfo>>map(object -> object.isFolder()
+                            ? () -> StorageObjectInfo.folder(object.path())
+                            : () -> promote(object.path(), objectKeys.get(object), digests.get(object),
+                                    object.size()))
+                    .toList();
+            return ParallelUtil.invokeAll(promotions, folderUploader.parallelism());
+        } finally {
+            digests.keySet().forEach(object -> removeQuietly(objectKeys.get(object)));
+        }
+    }
+
+    // Маркеры папок по-прежнему записываются по путям
+    @Override
+    public boolean storesByPath() {
+        return true;
+    }
+
+    // Листинг показал бы файлы только по маркерам папок, а их содержимое лежит в блобах
+    @Override
+    public boolean indexRebuildable() {
+        return false;
+    }
+
+    // Блобы общие: индекс уже снял ссылки удалённых файлов, а блобы без ссылок удалит сборщик
+    @Override
+    public void discard(Collection<StorageObjectInfo> objects) {
+    }
+
+    @Scheduled(fixedDelayString = "${storage.dedup.gc-interval:PT1H}")
+    public void collectGarbage() {
+        Instant threshold = Instant.now().minus(gcGracePeriod);
+        int removed = 0;
+        List<String> orphanKeys;
+        do {
+            orphanKeys = storageBlobRepository.findOrphanKeys(threshold, GC_BATCH_SIZE);
+            for (String objectKey : orphanKeys) {
+                try {
+                    if (Boolean.TRUE.equals(transactionTemplate.execute(status -> removeOrphan(objectKey, threshold)))) {
+                        removed++;
+                    }
+                } catch (Exception e) {
+                    log.warn("Failed to remove orphan blob {}", objectKey, e);
+                }
+            }
+        } while (orphanKeys.size() == GC_BATCH_SIZE);
+
+        int staging = removeAbandonedStagingObjects(threshold);
+        if (removed > 0 || staging > 0) {
+            log.info("Blob garbage collection removed {} orphan blobs and {} staging objects", removed, staging);
+        }
+    }
+
+    private boolean removeOrphan(String objectKey, Instant threshold) {
+        if (storageBlobRepository.lockOrphan(objectKey, threshold).isEmpty()) {
+            return false;
+        }
+        try {
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(objectKey)
+                            .build()
+            );
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to remove blob " + objectKey, e);
+        }
+        storageBlobRepository.deleteById(objectKey);
+        return true;
+    }
+
+    // Временные объекты загрузок, прерванных падением узла
+    private int removeAbandonedStagingObjects(Instant threshold) {
+        int removed = 0;
+        Iterable<Result<Item>> stagingObjects = minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(usersBucketName)
+                        .prefix(STAGING_PREFIX)
+                        .recursive(true)
+                        .build()
+        );
+        try {
+            for (Result<Item> result : stagingObjects) {
+                Item item = result.get();
+                if (item.lastModified().toInstant().isBefore(threshold)) {
+                    removeQuietly(item.objectName());
+                    removed++;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to list staging objects", e);
+        }
+        return removed;
+    }
+
+    private Optional<String> findEtag(String objectKey) throws Exception {
+        try {
+            return Optional.of(minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(objectKey)
+                            .build()
+            ).etag());
+        } catch (ErrorResponseException e) {
+            if (e.errorResponse().code().equals("NoSuchKey")) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    private void removeQuietly(String objectKey) {
+        try {
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(objectKey)
+                            .build()
+            );
+        } catch (Exception e) {
+            log.warn("Failed to remove object {}", objectKey, e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.service.ContentIndexService;
+
+import java.util.List;
+
+@Service
+@ConditionalOnProperty(name = "storage.content-search.enabled", havingValue = "false", matchIfMissing = true)
+public class DisabledContentIndexServiceImpl implements ContentIndexService {
+
+    @Override
+    public void index(String fullFilePath, long size) {
+    }
+
+    @Override
+    public void remove(String fullPath) {
+    }
+
+    @Override
+    public void move(String oldFullPath, String newFullPath) {
+    }
+
+    @Override
+    public List<StorageItem> search(String basePath, String query, int limit) {
+        return List.of();
+    }
+}
@@ -0,0 +1,102 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.SnowballObject;
+import io.minio.UploadSnowballObjectsArgs;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.vladshi.cloudfilestorage.storage.model.UploadObject;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.util.ParallelUtil;
+import ru.vladshi.cloudfilestorage.storage.util.SizeFormatter;
+import ru.vladshi.cloudfilestorage.storage.util.UploadPlanUtil;
+import ru.vladshi.cloudfilestorage.storage.util.UploadPlanUtil.UploadPlan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Загрузка содержимого папки под ключами, которые выбирает вызывающий. Мелкие файлы отправляются пакетами
+ * {@code uploadSnowballObjects} ограниченного размера, крупные — отдельными загрузками; пакеты и крупные файлы
+ * загружаются одновременно, не больше {@code storage.upload.folder.parallelism} сразу.
+ */
+@Component
+@Slf4j
+public class FolderUploader extends AbstractMinioService {
+
+    private final StorageCodec storageCodec;
+    private final long smallObjectThreshold;
+    private final long maxBatchBytes;
+    private final int maxBatchObjects;
+    private final boolean batchCompression;
+    private final int parallelism;
+
+    @Autowired
+    public FolderUploader(MinioClientProvider minioClientProvider,
+                          StorageCodec storageCodec,
+                          @Value("${storage.upload.folder.small-file-threshold:5MB}") String smallObjectThreshold,
+                          @Value("${storage.upload.folder.batch-size:64MB}") String maxBatchBytes,
+                          @Value("${storage.upload.folder.batch-max-objects:1000}") int maxBatchObjects,
+                          @Value("${storage.upload.folder.batch-compression:false}") boolean batchCompression,
+                          @Value("${storage.upload.folder.parallelism:4}") int parallelism) {
+        super(minioClientProvider);
+        this.storageCodec = storageCodec;
+        this.smallObjectThreshold = SizeFormatter.parseSize(smallObjectThreshold);
+        this.maxBatchBytes = SizeFormatter.parseSize(maxBatchBytes);
+        this.maxBatchObjects = maxBatchObjects;
+        this.batchCompression = batchCompression;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param objectKey ключ в MinIO для каждого загружаемого объекта
+     * @param onFailure вызывается перед передачей ошибки, чтобы убрать уже загруженные объекты
+     * @return etag отдельно загруженных файлов по ключу; etag объектов из пакетов неизвестен
+     */
+    public Map<String, String> upload(List<UploadObject> objects, Function<UploadObject, String> objectKey,
+                                      Runnable onFailure) throws Exception {
+        // Пакет не передаёт метаданные объектов, поэтому сжимаемые файлы загружаются отдельно
+        UploadPlan plan = UploadPlanUtil.plan(objects,
+                object -> object.size() >= smallObjectThreshold
+                        || storageCodec.shouldCompress(object.path(), object.size()),
+                maxBatchBytes, maxBatchObjects);
+        log.debug("Uploading {} objects: {} batches, {} large files",
+                objects.size(), plan.smallObjectBatches().size(), plan.largeObjects().size());
+
+        Map<String, String> etags = new ConcurrentHashMap<>();
+        List<Callable<Object>> uploads = new ArrayList<>();
+        for (List<UploadObject> batch : plan.smallObjectBatches()) {
+            uploads.add(() -> uploadBatch(batch, objectKey));
+        }
+        for (UploadObject object : plan.largeObjects()) {
+            String key = objectKey.apply(object);
+            uploads.add(() -> etags.put(key,
+                    storageCodec.upload(key, object.path(), object.inputStream(), object.size())));
+        }
+        ParallelUtil.invokeAll(uploads, parallelism, completed -> onFailure.run());
+        return etags;
+    }
+
+    private Object uploadBatch(List<UploadObject> batch, Function<UploadObject, String> objectKey) throws Exception {
+        minioClient.uploadSnowballObjects(
+                UploadSnowballObjectsArgs.builder()
+                        .bucket(usersBucketName)
+                        .objects(batch.stream()
+                                .map(object -> new SnowballObject(
+                                        objectKey.apply(object), object.inputStream(), object.size(), null))
+                                .toList())
+                        .compression(batchCompression)
+                        .build()
+        );
+        return null;
+    }
+}
@@ -0,0 +1,137 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.query.FluentQuery;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageObject;
+import ru.vladshi.cloudfilestorage.storage.model.SearchFilter;
+import ru.vladshi.cloudfilestorage.storage.model.SearchMode;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageObjectRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageObjectSpecifications;
+import ru.vladshi.cloudfilestorage.storage.service.ContentIndexService;
+import ru.vladshi.cloudfilestorage.storage.service.SearchService;
+import ru.vladshi.cloudfilestorage.storage.service.StorageIndexService;
+import ru.vladshi.cloudfilestorage.storage.util.TrigramUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Поиск по подстроке имени через триграммный индекс {@code storage_name_trigrams}:
+ * пересекаются списки объектов для каждой триграммы запроса, и только найденные кандидаты
+ * проверяются на точное вхождение, поэтому время поиска не растёт вместе с деревом пользователя.
+ * Запросы короче триграммы сопоставляются со строками индекса, а не с именами в {@code storage_objects}.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "storage.index.enabled", havingValue = "true", matchIfMissing = true)
+public class JpaSearchServiceImpl implements SearchService {
+
+    private static final int CONTENT_SEARCH_LIMIT = 100;
+
+    private final StorageIndexService storageIndexService;
+    private final StorageObjectRepository storageObjectRepository;
+    private final ContentIndexService contentIndexService;
+
+    @Override
+    public List<StorageItem> searchItems(String basePath, String query) throws Exception {
+        if (query == null || query.isBlank() || !storageIndexService.exists(basePath)) {
+            return List.of();
+        }
+
+        String normalizedQuery = TrigramUtil.normalize(query);
+        Set<String> trigrams = TrigramUtil.trigrams(normalizedQuery);
+        List<StorageObject> matches;
+        if (trigrams.isEmpty()) {
+            // Запрос короче триграммы ищется по вхождению в строки индекса
+            String termPattern = StorageObjectRepository.containsPattern(normalizedQuery);
+            matches = storageObjectRepository.searchByIndexTerm(basePath, termPattern);
+        } else {
+            matches = storageObjectRepository.searchByTrigrams(basePath, trigrams, trigrams.size()).stream()
+                    .filter(object -> TrigramUtil.normalize(object.getName()).contains(normalizedQuery))
+                    .toList();
+        }
+
+        return matches.stream()
+                .map(object -> new StorageItem(
+                        object.getPath().substring(basePath.length()), object.isFolder(), object.getSize()))
+                .toList();
+    }
+
+    @Override
+    public List<StorageItem> searchItems(String basePath, String query, SearchMode mode) throws Exception {
+        if (mode == SearchMode.CONTENT) {
+            if (query == null || query.isBlank()) {
+                return List.of();
+            }
+            return contentIndexService.search(basePath, query, CONTENT_SEARCH_LIMIT);
+        }
+        return searchItems(basePath, query);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<StorageItem> searchItems(String basePath, SearchFilter filter, int limit) throws Exception {
+        if (filter.isEmpty() || !storageIndexService.exists(basePath)) {
+            return List.of();
+        }
+
+        return storageObjectRepository.findBy(StorageObjectSpecifications.matching(basePath, filter), query -> {
+            FluentQuery.FetchableFluentQuery<StorageObject> sorted = query.sortBy(Sort.by("path"));
+            // Без MIME-типа все условия уже в запросе, и лимит можно передать в MySQL
+            if (filter.mimeType() == null) {
+                sorted = sorted.limit(limit);
+            }
+            try (Stream<StorageObject> objects = sorted.stream()) {
+                return objects
+                        .filter(object -> filter.matchesMimeType(object.getName()))
+                        .limit(limit)
+                        .map(object -> new StorageItem(
+                                object.getPath().substring(basePath.length()), object.isFolder(), object.getSize()))
+                        .toList();
+            }
+        });
+    }
+
+    @Override
+    public List<StorageItem> suggest(String basePath, String query, int limit) throws Exception {
+        if (query == null || query.isBlank() || !storageIndexService.exists(basePath)) {
+            return List.of();
+        }
+
+        String normalizedQuery = TrigramUtil.normalize(query);
+        String exact = StorageObjectRepository.equalsPattern(normalizedQuery);
+        String prefix = StorageObjectRepository.startsWithPattern(normalizedQuery);
+        String substring = StorageObjectRepository.containsPattern(normalizedQuery);
+        Set<String> trigrams = TrigramUtil.trigrams(normalizedQuery);
+
+        // Группы запрашиваются по убыванию качества совпадения; каждая следующая исключает предыдущие,
+        // и выборка останавливается, как только набрано нужное количество
+        List<StorageObject> matches = new ArrayList<>(limit);
+        String[][] tiers = {{exact, ""}, {prefix, exact}, {substring, prefix}};
+        for (String[] tier : tiers) {
+            if (matches.size() >= limit) {
+                break;
+            }
+            Limit remaining = Limit.of(limit - matches.size());
+            // Кандидаты берутся из триграммного индекса, имена проверяются только у них
+            matches.addAll(trigrams.isEmpty()
+                    ? storageObjectRepository.searchByIndexTermOrderByDepth(
+                            basePath, substring, tier[0], tier[1], remaining)
+                    : storageObjectRepository.searchByTrigramsOrderByDepth(
+                            basePath, trigrams, trigrams.size(), tier[0], tier[1], remaining));
+        }
+
+        return matches.stream()
+                .map(object -> new StorageItem(
+                        object.getPath().substring(basePath.length()), object.isFolder(), object.getSize()))
+                .toList();
+    }
+}
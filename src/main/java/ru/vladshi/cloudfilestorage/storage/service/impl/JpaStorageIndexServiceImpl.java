@@ -0,0 +1,343 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.ListObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageNameTrigram;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageObject;
+import ru.vladshi.cloudfilestorage.storage.exception.FolderNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageBlobRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageNameTrigramRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageObjectRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageUsageRepository;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentStorageService;
+import ru.vladshi.cloudfilestorage.storage.service.StorageIndexService;
+import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+import ru.vladshi.cloudfilestorage.storage.util.TrigramUtil;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Индекс метаданных объектов пользователей в MySQL (таблица {@code storage_objects}).
+ * <p>
+ * Файловые сервисы сначала изменяют объекты в MinIO, а затем синхронно обновляют индекс,
+ * поэтому листинг папок и проверки существования выполняются индексными запросами без обращения к MinIO.
+ * В той же транзакции поддерживается счётчик занятого пользователем места (таблица {@code storage_usage}),
+ * так что получение объёма хранилища не требует обхода объектов, и триграммы имён
+ * (таблица {@code storage_name_trigrams}) для поиска по подстроке. Для файлов, содержимое которых хранится
+ * в общем блобе, поддерживается число ссылок на блоб (таблица {@code storage_blobs}).
+ * <p>
+ * Пользователь, для которого индекс ещё не построен (например, зарегистрированный до появления индекса),
+ * индексируется однократным рекурсивным листингом его префикса при первом обращении. Если содержимое файлов
+ * хранится не по путям ({@link ContentStorageService#indexRebuildable()}), листинг не отражает файлов и папок
+ * пользователя, и вместо построения индекса выбрасывается исключение.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "storage.index.enabled", havingValue = "true", matchIfMissing = true)
+public class JpaStorageIndexServiceImpl extends AbstractMinioService implements StorageIndexService {
+
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    private final StorageObjectRepository storageObjectRepository;
+    private final StorageUsageRepository storageUsageRepository;
+    private final StorageNameTrigramRepository storageNameTrigramRepository;
+    private final StorageBlobRepository storageBlobRepository;
+    private final ContentStorageService contentStorageService;
+    private final TransactionTemplate transactionTemplate;
+    private final Set<String> indexedUserPrefixes = ConcurrentHashMap.newKeySet();
+    private final Map<String, Object> rebuildLocks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public JpaStorageIndexServiceImpl(MinioClientProvider minioClientProvider,
+                                      StorageObjectRepository storageObjectRepository,
+                                      StorageUsageRepository storageUsageRepository,
+                                      StorageNameTrigramRepository storageNameTrigramRepository,
+                                      StorageBlobRepository storageBlobRepository,
+                                      ContentStorageService contentStorageService,
+                                      TransactionTemplate transactionTemplate) {
+        super(minioClientProvider);
+        this.storageObjectRepository = storageObjectRepository;
+        this.storageUsageRepository = storageUsageRepository;
+        this.storageNameTrigramRepository = storageNameTrigramRepository;
+        this.storageBlobRepository = storageBlobRepository;
+        this.contentStorageService = contentStorageService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public List<StorageItem> getFolderContents(String path) throws Exception {
+        ensureIndexed(PathUtil.extractRootFolder(path));
+
+        if (!storageObjectRepository.existsByPath(path)) {
+            throw new FolderNotFoundException(PathUtil.removeRootFolder(path));
+        }
+
+        return storageObjectRepository.findAllByParentPathOrderByPath(path).stream()
+                .map(JpaStorageIndexServiceImpl::toStorageItem)
+                .toList();
+    }
+
+    @Override
+    public List<StorageItem> getFolderContents(String path, String startAfter, int limit) throws Exception {
+        if (startAfter == null) {
+            ensureIndexed(PathUtil.extractRootFolder(path));
+            if (!storageObjectRepository.existsByPath(path)) {
+                throw new FolderNotFoundException(PathUtil.removeRootFolder(path));
+            }
+        }
+
+        return storageObjectRepository.findAllByParentPathAndPathGreaterThanOrderByPath(
+                        path, startAfter != null ? startAfter : path, Limit.of(limit)).stream()
+                .map(JpaStorageIndexServiceImpl::toStorageItem)
+                .toList();
+    }
+
+    @Override
+    public boolean exists(String fullPath) throws Exception {
+        if (fullPath.endsWith("//")) {
+            return false;
+        }
+        ensureIndexed(PathUtil.extractRootFolder(fullPath));
+        return storageObjectRepository.existsByPath(fullPath);
+    }
+
+    @Override
+    public String resolveObjectKey(String fullPath) {
+        return storageObjectRepository.findObjectKeyByPath(fullPath).orElse(fullPath);
+    }
+
+    @Override
+    public Optional<StorageObjectInfo> find(String fullPath) throws Exception {
+        ensureIndexed(PathUtil.extractRootFolder(fullPath));
+        return storageObjectRepository.findByPath(fullPath).map(JpaStorageIndexServiceImpl::toStorageObjectInfo);
+    }
+
+    @Override
+    public List<StorageObjectInfo> getAllDescendants(String folderPath) throws Exception {
+        ensureIndexed(PathUtil.extractRootFolder(folderPath));
+        return storageObjectRepository.findAllByPathLikeOrderByPath(StorageObjectRepository.startsWithPattern(folderPath))
+                .stream()
+                .filter(entity -> !entity.getPath().equals(folderPath))
+                .map(JpaStorageIndexServiceImpl::toStorageObjectInfo)
+                .toList();
+    }
+
+    @Override
+    @Transactional
+    public void add(StorageObjectInfo object) {
+        addAll(List.of(object));
+    }
+
+    @Override
+    @Transactional
+    public void addAll(Collection<StorageObjectInfo> objects) {
+        Map<String, Long> usageDeltas = new HashMap<>();
+        for (StorageObjectInfo object : objects) {
+            StorageObject entity = storageObjectRepository.findByPath(object.path())
+                    .orElseGet(StorageObject::new);
+            long delta = object.size() - entity.getSize();
+            String previousName = entity.getName();
+            String previousObjectKey = entity.getObjectKey();
+            fill(entity, object);
+            storageObjectRepository.save(entity);
+            if (!entity.getName().equals(previousName)) {
+                replaceTrigrams(entity);
+            }
+            if (!Objects.equals(previousObjectKey, entity.getObjectKey())) {
+                replaceBlobReference(previousObjectKey, entity.getObjectKey());
+            }
+            usageDeltas.merge(entity.getUserPrefix(), delta, Long::sum);
+        }
+        usageDeltas.forEach(this::updateUsage);
+    }
+
+    @Override
+    @Transactional
+    public void remove(String fullPath) {
+        String userPrefix = PathUtil.extractRootFolder(fullPath);
+        if (fullPath.endsWith("/")) {
+            String pattern = StorageObjectRepository.startsWithPattern(fullPath);
+            long removedSize = storageObjectRepository.sumSizeByPathLike(pattern);
+            storageBlobRepository.removeReferencesByPathLike(pattern, Instant.now());
+            storageNameTrigramRepository.deleteAllByObjectPathLike(pattern);
+            storageObjectRepository.deleteAllByPathLike(pattern);
+            updateUsage(userPrefix, -removedSize);
+        } else {
+            storageObjectRepository.findByPath(fullPath).ifPresent(entity -> {
+                storageNameTrigramRepository.deleteAllByObjectId(entity.getId());
+                replaceBlobReference(entity.getObjectKey(), null);
+                storageObjectRepository.delete(entity);
+                updateUsage(userPrefix, -entity.getSize());
+            });
+        }
+    }
+
+    @Override
+    @Transactional
+    public void move(String oldFullPath, String newFullPath) {
+        if (oldFullPath.endsWith("/")) {
+            String pattern = StorageObjectRepository.startsWithPattern(oldFullPath);
+            storageObjectRepository.replaceParentPathPrefix(pattern, oldFullPath.length(), newFullPath);
+            storageObjectRepository.replacePathPrefix(pattern, oldFullPath.length(), newFullPath);
+        } else {
+            storageObjectRepository.findByPath(oldFullPath).ifPresent(entity -> entity.setPath(newFullPath));
+        }
+
+        storageObjectRepository.findByPath(newFullPath).ifPresent(entity -> {
+            entity.setParentPath(PathUtil.extractParentPath(newFullPath));
+            entity.setName(PathUtil.extractNameFromPath(newFullPath));
+            replaceTrigrams(entity);
+        });
+    }
+
+    // Имена вложенных объектов при перемещении папки не меняются, поэтому триграммы пересчитываются только для
+    // самого добавленного или переименованного объекта
+    private void replaceTrigrams(StorageObject entity) {
+        storageNameTrigramRepository.deleteAllByObjectId(entity.getId());
+        storageNameTrigramRepository.saveAll(toTrigrams(entity));
+    }
+
+    // Объекты под неизменяемыми ключами принадлежат одному файлу, счётчик ссылок ведётся только для общих блобов
+    private void replaceBlobReference(String oldObjectKey, String newObjectKey) {
+        Instant now = Instant.now();
+        if (oldObjectKey != null && !ObjectIdContentStorageServiceImpl.isObjectIdKey(oldObjectKey)) {
+            storageBlobRepository.removeReference(oldObjectKey, now);
+        }
+        if (newObjectKey != null && !ObjectIdContentStorageServiceImpl.isObjectIdKey(newObjectKey)) {
+            storageBlobRepository.addReference(newObjectKey, now);
+        }
+    }
+
+    private void updateUsage(String userPrefix, long delta) {
+        if (delta != 0) {
+            storageUsageRepository.addUsedBytes(userPrefix, delta);
+        }
+    }
+
+    private void ensureIndexed(String userPrefix) throws Exception {
+        if (indexedUserPrefixes.contains(userPrefix)) {
+            return;
+        }
+        synchronized (rebuildLocks.computeIfAbsent(userPrefix, key -> new Object())) {
+            if (indexedUserPrefixes.contains(userPrefix)) {
+                return;
+            }
+            if (!storageObjectRepository.existsByPath(userPrefix)) {
+                rebuild(userPrefix);
+            }
+            indexedUserPrefixes.add(userPrefix);
+        }
+    }
+
+    private void rebuild(String userPrefix) throws Exception {
+        Iterable<Result<Item>> userItems = minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(usersBucketName)
+                        .prefix(userPrefix)
+                        .recursive(true)
+                        .includeUserMetadata(true)
+                        .build()
+        );
+
+        Map<String, StorageObjectInfo> objects = new LinkedHashMap<>();
+        for (Result<Item> result : userItems) {
+            Item item = result.get();
+            String objectName = item.objectName();
+            boolean isFolder = objectName.endsWith("/");
+            objects.put(objectName, new StorageObjectInfo(
+                    objectName, isFolder, isFolder ? 0 : StorageCodec.logicalSize(item.userMetadata(), item.size()), item.etag(), item.lastModified().toInstant(),
+                    null));
+            addImplicitParentFolders(objects, objectName, userPrefix);
+        }
+
+        // Строки индекса удаляются перед пересборкой, а файлы в блобах или под неизменяемыми ключами и папки
+        // без маркеров в листинге не видны: восстановить их нельзя, поэтому пересборка допустима только
+        // для нового пользователя
+        if (!contentStorageService.indexRebuildable()
+                && (!objects.isEmpty() || storageObjectRepository.existsByUserPrefix(userPrefix))) {
+            throw new IllegalStateException("Storage index of %s is missing and cannot be rebuilt from the bucket listing"
+                    .formatted(userPrefix));
+        }
+        if (objects.isEmpty()) {
+            log.debug("Nothing to index for user prefix: {}", userPrefix);
+            return;
+        }
+        objects.putIfAbsent(userPrefix, StorageObjectInfo.folder(userPrefix));
+
+        log.info("Building storage index for {}: {} objects", userPrefix, objects.size());
+        transactionTemplate.executeWithoutResult(status -> {
+            storageNameTrigramRepository.deleteAllByUserPrefix(userPrefix);
+            storageObjectRepository.deleteAllByUserPrefix(userPrefix);
+            List<StorageObject> batch = new ArrayList<>(REBUILD_BATCH_SIZE);
+            for (StorageObjectInfo object : objects.values()) {
+                StorageObject entity = new StorageObject();
+                fill(entity, object);
+                batch.add(entity);
+                if (batch.size() == REBUILD_BATCH_SIZE) {
+                    saveRebuildBatch(batch);
+                    batch.clear();
+                }
+            }
+            saveRebuildBatch(batch);
+            storageUsageRepository.setUsedBytes(userPrefix, objects.values().stream()
+                    .mapToLong(StorageObjectInfo::size)
+                    .sum());
+        });
+    }
+
+    private void saveRebuildBatch(List<StorageObject> batch) {
+        storageObjectRepository.saveAllAndFlush(batch);
+        storageNameTrigramRepository.saveAllAndFlush(batch.stream()
+                .flatMap(entity -> toTrigrams(entity).stream())
+                .toList());
+    }
+
+    private static List<StorageNameTrigram> toTrigrams(StorageObject entity) {
+        return TrigramUtil.indexTerms(entity.getName()).stream()
+                .map(trigram -> new StorageNameTrigram(entity.getId(), entity.getUserPrefix(), trigram))
+                .toList();
+    }
+
+    private static void addImplicitParentFolders(Map<String, StorageObjectInfo> objects,
+                                                 String objectName, String userPrefix) {
+        String parent = PathUtil.extractParentPath(objectName);
+        while (parent.length() > userPrefix.length() && !objects.containsKey(parent)) {
+            objects.put(parent, StorageObjectInfo.folder(parent));
+            parent = PathUtil.extractParentPath(parent);
+        }
+    }
+
+    private static void fill(StorageObject entity, StorageObjectInfo object) {
+        entity.setUserPrefix(PathUtil.extractRootFolder(object.path()));
+        entity.setPath(object.path());
+        entity.setParentPath(PathUtil.extractParentPath(object.path()));
+        entity.setName(PathUtil.extractNameFromPath(object.path()));
+        entity.setFolder(object.isFolder());
+        entity.setSize(object.size());
+        entity.setEtag(object.etag());
+        entity.setLastModified(object.lastModified());
+        entity.setObjectKey(object.objectKey());
+    }
+
+    private static StorageObjectInfo toStorageObjectInfo(StorageObject entity) {
+        return new StorageObjectInfo(entity.getPath(), entity.isFolder(), entity.getSize(), entity.getEtag(),
+                entity.getLastModified(), entity.getObjectKey());
+    }
+
+    private static StorageItem toStorageItem(StorageObject entity) {
+        return new StorageItem(PathUtil.removeRootFolder(entity.getPath()), entity.isFolder(), entity.getSize());
+    }
+}
@@ -0,0 +1,99 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageUsage;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageReservationRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageUsageRepository;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractStorageUsageService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Объём хранилища пользователя из счётчика {@code storage_usage}, который поддерживается
+ * {@link JpaStorageIndexServiceImpl} при каждой загрузке, удалении и переименовании.
+ * <p>
+ * Резервы под загрузки хранятся в той же строке ({@code reserved_bytes}) и выдаются одним условным
+ * {@code UPDATE}, поэтому параллельные загрузки одного пользователя не могут вместе превысить лимит.
+ * Каждый резерв также записывается в {@code storage_reservations} со сроком действия: резерв узла,
+ * упавшего посреди загрузки, снимается очисткой по истечении срока.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "storage.index.enabled", havingValue = "true", matchIfMissing = true)
+public class JpaStorageUsageServiceImpl extends AbstractStorageUsageService {
+
+    private static final int CLEANUP_BATCH_SIZE = 500;
+
+    private final StorageUsageRepository storageUsageRepository;
+    private final StorageReservationRepository storageReservationRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public JpaStorageUsageServiceImpl(StorageUsageRepository storageUsageRepository,
+                                      StorageReservationRepository storageReservationRepository,
+                                      TransactionTemplate transactionTemplate,
+                                      @Value("${storage.max-size-per-user:40MB}") String maxSizePerUser,
+                                      @Value("${storage.usage.reservation-ttl:PT1H}") Duration reservationTtl) {
+        super(maxSizePerUser, reservationTtl);
+        this.storageUsageRepository = storageUsageRepository;
+        this.storageReservationRepository = storageReservationRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    protected long getUserStorageSize(String userPrefix) {
+        return storageUsageRepository.findById(userPrefix)
+                .map(StorageUsage::getUsedBytes)
+                .orElse(0L);
+    }
+
+    @Override
+    protected boolean tryReserve(String userPrefix, String reservationId, long bytes, Instant expiresAt) {
+        storageUsageRepository.createIfAbsent(userPrefix);
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (storageUsageRepository.reserve(userPrefix, bytes, getMaxStorageSize()) == 0) {
+                return false;
+            }
+            storageReservationRepository.add(reservationId, userPrefix, bytes, expiresAt);
+            return true;
+        }));
+    }
+
+    // Пользователь известен по записи резерва, поэтому префикс не нужен
+    @Override
+    public void release(String userPrefix, String reservationId) {
+        release(reservationId);
+    }
+
+    private void release(String reservationId) {
+        transactionTemplate.executeWithoutResult(status ->
+                storageReservationRepository.findByIdForUpdate(reservationId).ifPresent(reservation -> {
+                    storageReservationRepository.deleteReservation(reservationId);
+                    storageUsageRepository.release(reservation.getUserPrefix(), reservation.getBytes());
+                }));
+    }
+
+    @Scheduled(fixedDelayString = "${storage.usage.reservation-cleanup-interval:PT5M}")
+    public void releaseExpiredReservations() {
+        int released = 0;
+        List<String> expiredIds;
+        do {
+            expiredIds = storageReservationRepository.findExpiredIds(Instant.now(), CLEANUP_BATCH_SIZE);
+            for (String reservationId : expiredIds) {
+                release(reservationId);
+            }
+            released += expiredIds.size();
+        } while (expiredIds.size() == CLEANUP_BATCH_SIZE);
+        if (released > 0) {
+            log.info("Released {} expired storage reservations", released);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.GetObjectArgs;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentIndexService;
+import ru.vladshi.cloudfilestorage.storage.service.StorageIndexService;
+import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+import ru.vladshi.cloudfilestorage.storage.util.SizeFormatter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полнотекстовый индекс содержимого текстовых файлов в локальном индексе Lucene узла.
+ * <p>
+ * Файловые сервисы только ставят задачи в ограниченную очередь; отдельный поток забирает их пачками,
+ * читает из MinIO начало каждого файла, обновляет индекс и фиксирует его один раз на пачку.
+ * Извлечённый текст хранится в документе, поэтому перемещение переписывает документы без обращения к MinIO.
+ * При переполнении очереди задача отбрасывается с предупреждением, а не задерживает загрузку.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "storage.content-search.enabled", havingValue = "true")
+public class LuceneContentIndexServiceImpl extends AbstractMinioService implements ContentIndexService {
+
+    private static final String PATH_FIELD = "path";
+    private static final String SIZE_FIELD = "size";
+    private static final String CONTENT_FIELD = "content";
+
+    private static final Set<String> TEXT_EXTENSIONS = Set.of(
+            "txt", "md", "csv", "tsv", "json", "xml", "yaml", "yml", "log", "ini", "properties", "sql",
+            "html", "htm", "css", "js", "ts", "java", "kt", "py", "go", "rs", "c", "h", "cpp", "hpp", "cs",
+            "rb", "php", "sh", "bat");
+
+    private enum TaskType { INDEX, REMOVE, MOVE }
+
+    private record Task(TaskType type, String path, String newPath, long size) {
+    }
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final StorageIndexService storageIndexService;
+    private final StorageCodec storageCodec;
+    private final String indexPath;
+    private final BlockingQueue<Task> tasks;
+    private final int batchSize;
+    private final int maxExtractedBytes;
+
+    private IndexWriter indexWriter;
+    private SearcherManager searcherManager;
+    private Thread worker;
+    private volatile boolean running;
+
+    @Autowired
+    public LuceneContentIndexServiceImpl(
+            MinioClientProvider minioClientProvider,
+            StorageIndexService storageIndexService,
+            StorageCodec storageCodec,
+            @Value("${storage.content-search.index-path}") String indexPath,
+            @Value("${storage.content-search.queue-capacity:10000}") int queueCapacity,
+            @Value("${storage.content-search.batch-size:100}") int batchSize,
+            @Value("${storage.content-search.max-extracted-size:1MB}") String maxExtractedSize) {
+        super(minioClientProvider);
+        this.storageIndexService = storageIndexService;
+        this.storageCodec = storageCodec;
+        this.indexPath = indexPath;
+        this.tasks = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxExtractedBytes = (int) SizeFormatter.parseSize(maxExtractedSize);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        indexWriter = new IndexWriter(FSDirectory.open(Path.of(indexPath)), new IndexWriterConfig(analyzer));
+        searcherManager = new SearcherManager(indexWriter, null);
+        running = true;
+        worker = Thread.ofVirtual().name("content-indexer").start(this::processTasks);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(10));
+        searcherManager.close();
+        indexWriter.close();
+    }
+
+    @Override
+    public void index(String fullFilePath, long size) {
+        if (isTextFile(fullFilePath)) {
+            submit(new Task(TaskType.INDEX, fullFilePath, null, size));
+        }
+    }
+
+    @Override
+    public void remove(String fullPath) {
+        submit(new Task(TaskType.REMOVE, fullPath, null, 0));
+    }
+
+    @Override
+    public void move(String oldFullPath, String newFullPath) {
+        submit(new Task(TaskType.MOVE, oldFullPath, newFullPath, 0));
+    }
+
+    @Override
+    public List<StorageItem> search(String basePath, String query, int limit) throws IOException {
+        Query contentQuery = new QueryBuilder(analyzer)
+                .createBooleanQuery(CONTENT_FIELD, query, BooleanClause.Occur.MUST);
+        if (contentQuery == null) {
+            return List.of();
+        }
+        Query userQuery = new BooleanQuery.Builder()
+                .add(contentQuery, BooleanClause.Occur.MUST)
+                .add(new PrefixQuery(new Term(PATH_FIELD, basePath)), BooleanClause.Occur.FILTER)
+                .build();
+
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(userQuery, limit);
+            StoredFields storedFields = searcher.storedFields();
+            List<StorageItem> items = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                Document document = storedFields.document(scoreDoc.doc);
+                String path = document.get(PATH_FIELD);
+                long size = document.getField(SIZE_FIELD).numericValue().longValue();
+                items.add(new StorageItem(path.substring(basePath.length()), false, size));
+            }
+            return items;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private void submit(Task task) {
+        if (!tasks.offer(task)) {
+            log.warn("Content index queue is full, skipping {} of {}", task.type(), task.path());
+        }
+    }
+
+    private void processTasks() {
+        List<Task> batch = new ArrayList<>(batchSize);
+        while (running || !tasks.isEmpty()) {
+            try {
+                Task first = tasks.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                tasks.drainTo(batch, batchSize - 1);
+
+                for (Task task : batch) {
+                    try {
+                        apply(task);
+                    } catch (Exception e) {
+                        log.warn("Failed to apply content index task {} for {}", task.type(), task.path(), e);
+                    }
+                }
+                indexWriter.commit();
+                searcherManager.maybeRefresh();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Failed to commit content index batch of {} tasks", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void apply(Task task) throws Exception {
+        switch (task.type()) {
+            case INDEX -> indexFile(task.path(), task.size());
+            case REMOVE -> indexWriter.deleteDocuments(pathQuery(task.path()));
+            case MOVE -> moveDocuments(task.path(), task.newPath());
+        }
+    }
+
+    private void indexFile(String fullFilePath, long size) throws Exception {
+        byte[] head;
+        try (InputStream inputStream = storageCodec.decode(minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(usersBucketName)
+                        .object(storageIndexService.resolveObjectKey(fullFilePath))
+                        .build()
+        ))) {
+            head = inputStream.readNBytes(maxExtractedBytes);
+        }
+
+        Term pathTerm = new Term(PATH_FIELD, fullFilePath);
+        if (isBinary(head)) {
+            indexWriter.deleteDocuments(pathTerm);
+            return;
+        }
+        indexWriter.updateDocument(pathTerm,
+                createDocument(fullFilePath, size, new String(head, StandardCharsets.UTF_8)));
+    }
+
+    private void moveDocuments(String oldFullPath, String newFullPath) throws Exception {
+        List<Document> movedDocuments = new ArrayList<>();
+        searcherManager.maybeRefreshBlocking();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            StoredFields storedFields = searcher.storedFields();
+            for (ScoreDoc scoreDoc : searcher.search(pathQuery(oldFullPath), Integer.MAX_VALUE).scoreDocs) {
+                movedDocuments.add(storedFields.document(scoreDoc.doc));
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+
+        indexWriter.deleteDocuments(pathQuery(oldFullPath));
+        for (Document document : movedDocuments) {
+            String newPath = newFullPath + document.get(PATH_FIELD).substring(oldFullPath.length());
+            if (!isTextFile(newPath)) {
+                continue;
+            }
+            long size = document.getField(SIZE_FIELD).numericValue().longValue();
+            String content = document.get(CONTENT_FIELD);
+            if (content != null) {
+                indexWriter.updateDocument(new Term(PATH_FIELD, newPath), createDocument(newPath, size, content));
+                continue;
+            }
+            // Документ создан до хранения текста в индексе, и файл приходится прочитать заново
+            try {
+                indexFile(newPath, size);
+            } catch (Exception e) {
+                log.warn("Failed to reindex moved file {}", newPath, e);
+            }
+        }
+
+        // Переименование дало неиндексированному файлу текстовое расширение
+        if (movedDocuments.isEmpty() && !oldFullPath.endsWith("/") && isTextFile(newFullPath)) {
+            Optional<StorageObjectInfo> file = storageIndexService.find(newFullPath);
+            if (file.isPresent()) {
+                indexFile(newFullPath, file.get().size());
+            }
+        }
+    }
+
+    private static Document createDocument(String fullFilePath, long size, String content) {
+        Document document = new Document();
+        document.add(new StringField(PATH_FIELD, fullFilePath, Field.Store.YES));
+        document.add(new StoredField(SIZE_FIELD, size));
+        document.add(new TextField(CONTENT_FIELD, content, Field.Store.YES));
+        return document;
+    }
+
+    private static Query pathQuery(String fullPath) {
+        Term term = new Term(PATH_FIELD, fullPath);
+        return fullPath.endsWith("/") ? new PrefixQuery(term) : new TermQuery(term);
+    }
+
+    private static boolean isTextFile(String fullFilePath) {
+        String name = PathUtil.extractNameFromPath(fullFilePath);
+        int dotIndex = name.lastIndexOf('.');
+        return dotIndex > 0 && TEXT_EXTENSIONS.contains(name.substring(dotIndex + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isBinary(byte[] content) {
+        for (byte b : content) {
+            if (b == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
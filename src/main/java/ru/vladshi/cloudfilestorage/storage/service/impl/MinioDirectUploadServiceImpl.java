@@ -0,0 +1,298 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.vladshi.cloudfilestorage.storage.config.MinioPresigner;
+import ru.vladshi.cloudfilestorage.storage.config.MinioPresigner.PresignedPost;
+import ru.vladshi.cloudfilestorage.storage.exception.FileAlreadyExistsInStorageException;
+import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.exception.FolderNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.exception.UploadSessionNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.model.DirectUpload;
+import ru.vladshi.cloudfilestorage.storage.model.DirectUploadTicket;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentIndexService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentStorageService;
+import ru.vladshi.cloudfilestorage.storage.service.DirectUploadService;
+import ru.vladshi.cloudfilestorage.storage.service.QuotaReservation;
+import ru.vladshi.cloudfilestorage.storage.service.StorageIndexService;
+import ru.vladshi.cloudfilestorage.storage.service.StorageUsageService;
+import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+import ru.vladshi.cloudfilestorage.storage.validation.StorageItemNameValidator;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Прямая загрузка через POST-политику MinIO. Политика разрешает ровно один ключ временного объекта
+ * и ровно заявленный размер, поэтому браузер не может записать больше, чем зарезервировано,
+ * или в чужой префикс. Место резервируется на весь срок загрузки и освобождается при подтверждении,
+ * отмене или истечении.
+ * <p>
+ * Состояние загрузки хранится в Redis (хеш {@code direct-upload:<id>}), подтвердить её можно на любом узле.
+ * Просроченные загрузки удаляются по расписанию так же, как сессии возобновляемой загрузки.
+ * <p>
+ * На время подтверждения загрузка переносится из множества истечения в множество аренд со сроком
+ * {@code commit-lease}: если узел упадёт посреди подтверждения, по истечении аренды загрузку удалит очистка.
+ * Подтверждения загрузок на один путь выполняются по очереди под блокировкой пути в Redis.
+ */
+@Service
+@Slf4j
+public class MinioDirectUploadServiceImpl extends AbstractMinioService implements DirectUploadService {
+
+    private static final String UPLOAD_KEY_PREFIX = "direct-upload:";
+    private static final String EXPIRY_KEY = "direct-uploads:expiry";
+    private static final String LEASE_KEY = "direct-uploads:leases";
+    // Переносит загрузку между множествами, только если она всё ещё в исходном
+    private static final RedisScript<Long> MOVE_SCRIPT = RedisScript.of("""
+            if redis.call('ZREM', KEYS[1], ARGV[1]) == 1 then
+                redis.call('ZADD', KEYS[2], ARGV[2], ARGV[1])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    private final MinioPresigner minioPresigner;
+    private final StringRedisTemplate redisTemplate;
+    private final HashOperations<String, String, String> hashOperations;
+    private final StorageIndexService storageIndexService;
+    private final ContentIndexService contentIndexService;
+    private final ContentStorageService contentStorageService;
+    private final StorageUsageService storageUsageService;
+    private final UploadPathLock uploadPathLock;
+    private final Duration urlExpiry;
+    private final Duration uploadTtl;
+    private final Duration commitLease;
+
+    @Autowired
+    public MinioDirectUploadServiceImpl(MinioClientProvider minioClientProvider,
+                                        MinioPresigner minioPresigner,
+                                        StringRedisTemplate redisTemplate,
+                                        StorageIndexService storageIndexService,
+                                        ContentIndexService contentIndexService,
+                                        ContentStorageService contentStorageService,
+                                        StorageUsageService storageUsageService,
+                                        UploadPathLock uploadPathLock,
+                                        @Value("${storage.upload.direct.url-expiry:PT15M}") Duration urlExpiry,
+                                        @Value("${storage.upload.direct.ttl:PT6H}") Duration uploadTtl,
+                                        @Value("${storage.upload.direct.commit-lease:PT5M}") Duration commitLease) {
+        super(minioClientProvider);
+        this.minioPresigner = minioPresigner;
+        this.redisTemplate = redisTemplate;
+        this.hashOperations = redisTemplate.opsForHash();
+        this.storageIndexService = storageIndexService;
+        this.contentIndexService = contentIndexService;
+        this.contentStorageService = contentStorageService;
+        this.storageUsageService = storageUsageService;
+        this.uploadPathLock = uploadPathLock;
+        this.urlExpiry = urlExpiry;
+        this.uploadTtl = uploadTtl.compareTo(urlExpiry) > 0 ? uploadTtl : urlExpiry;
+        this.commitLease = commitLease;
+    }
+
+    @Override
+    public DirectUploadTicket create(String userPrefix, String folderPath, String fileName, long size)
+            throws Exception {
+        StorageItemNameValidator.validate(fileName);
+        if (size <= 0) {
+            throw new FileUploadingException("File size must be positive");
+        }
+        if (!storageIndexService.exists(folderPath)) {
+            throw new FolderNotFoundException(PathUtil.removeRootFolder(folderPath));
+        }
+        String objectName = folderPath + fileName;
+        if (storageIndexService.exists(objectName)) {
+            throw new FileAlreadyExistsInStorageException(PathUtil.removeRootFolder(objectName));
+        }
+
+        // Резерв живёт столько же, сколько ключ загрузки: после этого его уже некому освободить
+        QuotaReservation reservation = storageUsageService.reserve(userPrefix, size, uploadTtl.multipliedBy(2));
+        try {
+            DirectUpload upload = new DirectUpload(UUID.randomUUID().toString(), userPrefix, folderPath, fileName,
+                    size, Instant.now().plus(uploadTtl));
+            PresignedPost form = minioPresigner.presignPost(usersBucketName, upload.stagingKey(), size, urlExpiry);
+
+            String key = uploadKey(upload.id());
+            hashOperations.putAll(key, Map.of(
+                    "userPrefix", upload.userPrefix(),
+                    "folderPath", upload.folderPath(),
+                    "fileName", upload.fileName(),
+                    "size", String.valueOf(upload.size()),
+                    "expiresAt", String.valueOf(upload.expiresAt().toEpochMilli()),
+                    "reservationId", reservation.id()));
+            // Ключ живёт дольше загрузки, чтобы очистка успела прочитать его и удалить временный объект
+            redisTemplate.expire(key, uploadTtl.multipliedBy(2));
+            redisTemplate.opsForZSet().add(EXPIRY_KEY, upload.id(), upload.expiresAt().toEpochMilli());
+
+            log.debug("Created direct upload {} for {}", upload.id(), objectName);
+            return new DirectUploadTicket(upload.id(), form.url(), form.fields(), upload.expiresAt());
+        } catch (Exception e) {
+            reservation.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void commit(String userPrefix, String uploadId) throws Exception {
+        DirectUpload upload = getUpload(userPrefix, uploadId);
+        if (storageIndexService.exists(upload.objectName())) {
+            throw new FileAlreadyExistsInStorageException(PathUtil.removeRootFolder(upload.objectName()));
+        }
+        if (!move(EXPIRY_KEY, LEASE_KEY, uploadId, Instant.now().plus(commitLease))) {
+            throw new UploadSessionNotFoundException(uploadId);
+        }
+
+        try {
+            long uploadedSize = statStagedObject(upload);
+            if (uploadedSize != upload.size()) {
+                throw new FileUploadingException("Uploaded file must be %d bytes, got %d"
+                        .formatted(upload.size(), uploadedSize));
+            }
+            String lockToken = uploadPathLock.lock(upload.objectName());
+            try {
+                // Проверка повторяется под блокировкой: другая загрузка на этот путь могла быть подтверждена
+                if (storageIndexService.exists(upload.objectName())) {
+                    throw new FileAlreadyExistsInStorageException(PathUtil.removeRootFolder(upload.objectName()));
+                }
+                storageIndexService.add(contentStorageService.adopt(upload.objectName(), upload.stagingKey(),
+                        upload.size()));
+            } finally {
+                uploadPathLock.unlock(upload.objectName(), lockToken);
+            }
+            contentIndexService.index(upload.objectName(), upload.size());
+        } catch (Exception e) {
+            // Загрузка возвращается в очередь очистки: клиент может догрузить файл и повторить подтверждение
+            move(LEASE_KEY, EXPIRY_KEY, uploadId, upload.expiresAt());
+            throw e;
+        }
+
+        // Если аренда истекла и загрузку уже удалила очистка, резерв повторно не освобождается
+        if (take(LEASE_KEY, uploadId)) {
+            removeAndRelease(upload);
+        }
+        log.debug("Committed direct upload {} for {}", uploadId, upload.objectName());
+    }
+
+    @Override
+    public void abort(String userPrefix, String uploadId) {
+        DirectUpload upload = getUpload(userPrefix, uploadId);
+        if (!take(EXPIRY_KEY, uploadId)) {
+            throw new UploadSessionNotFoundException(uploadId);
+        }
+        removeAndRelease(upload);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.upload.direct.cleanup-interval:PT15M}")
+    public void removeExpiredUploads() {
+        removeExpired(EXPIRY_KEY);
+        // Загрузки, подтверждение которых прервалось вместе с узлом
+        removeExpired(LEASE_KEY);
+    }
+
+    private void removeExpired(String queueKey) {
+        Set<String> expiredIds = redisTemplate.opsForZSet()
+                .rangeByScore(queueKey, 0, System.currentTimeMillis());
+        if (expiredIds == null || expiredIds.isEmpty()) {
+            return;
+        }
+        for (String uploadId : expiredIds) {
+            if (!take(queueKey, uploadId)) {
+                continue;
+            }
+            DirectUpload upload = readUpload(uploadId);
+            if (upload != null) {
+                removeAndRelease(upload);
+                log.info("Removed expired direct upload {} for {}", uploadId, upload.objectName());
+            }
+        }
+    }
+
+    private long statStagedObject(DirectUpload upload) throws Exception {
+        try {
+            StatObjectResponse stat = minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(upload.stagingKey())
+                            .build()
+            );
+            return stat.size();
+        } catch (ErrorResponseException e) {
+            if (e.errorResponse().code().equals("NoSuchKey")) {
+                throw new FileUploadingException("File %s has not been uploaded yet".formatted(upload.fileName()));
+            }
+            throw e;
+        }
+    }
+
+    private void removeAndRelease(DirectUpload upload) {
+        try {
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(upload.stagingKey())
+                            .build()
+            );
+        } catch (Exception e) {
+            log.warn("Failed to remove staged object {}", upload.stagingKey(), e);
+        }
+        String reservationId = hashOperations.get(uploadKey(upload.id()), "reservationId");
+        redisTemplate.delete(uploadKey(upload.id()));
+        if (reservationId != null) {
+            storageUsageService.release(upload.userPrefix(), reservationId);
+        }
+    }
+
+    // Подтвердить, отменить или очистить загрузку может только тот, кто первым удалил её из множества,
+    // в котором она находится
+    private boolean take(String queueKey, String uploadId) {
+        Long removed = redisTemplate.opsForZSet().remove(queueKey, uploadId);
+        return removed != null && removed > 0;
+    }
+
+    private boolean move(String fromKey, String toKey, String uploadId, Instant score) {
+        Long moved = redisTemplate.execute(MOVE_SCRIPT, List.of(fromKey, toKey),
+                uploadId, String.valueOf(score.toEpochMilli()));
+        return moved != null && moved > 0;
+    }
+
+    private DirectUpload getUpload(String userPrefix, String uploadId) {
+        DirectUpload upload = readUpload(uploadId);
+        if (upload == null || !upload.userPrefix().equals(userPrefix)
+                || upload.expiresAt().isBefore(Instant.now())) {
+            throw new UploadSessionNotFoundException(uploadId);
+        }
+        return upload;
+    }
+
+    private DirectUpload readUpload(String uploadId) {
+        Map<String, String> fields = hashOperations.entries(uploadKey(uploadId));
+        if (fields.isEmpty() || !fields.containsKey("size")) {
+            return null;
+        }
+        return new DirectUpload(
+                uploadId,
+                fields.get("userPrefix"),
+                fields.get("folderPath"),
+                fields.get("fileName"),
+                Long.parseLong(fields.get("size")),
+                Instant.ofEpochMilli(Long.parseLong(fields.get("expiresAt"))));
+    }
+
+    private static String uploadKey(String uploadId) {
+        return UPLOAD_KEY_PREFIX + uploadId;
+    }
+}
@@ -2,26 +2,77 @@ package ru.vladshi.cloudfilestorage.storage.service.impl;
 
 import io.minio.*;
 import io.minio.errors.ErrorResponseException;
+import io.minio.errors.ServerException;
+import okhttp3.Headers;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import ru.vladshi.cloudfilestorage.storage.config.MinioPresigner;
 import ru.vladshi.cloudfilestorage.storage.exception.FileAlreadyExistsInStorageException;
 import ru.vladshi.cloudfilestorage.storage.exception.FileNotFoundInStorageException;
 import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.exception.RangeNotSatisfiableException;
+import ru.vladshi.cloudfilestorage.storage.model.FileDownload;
+import ru.vladshi.cloudfilestorage.storage.model.FileDownloadRequest;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.model.StoredFileInfo;
 import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentIndexService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentStorageService;
 import ru.vladshi.cloudfilestorage.storage.service.FileService;
+import ru.vladshi.cloudfilestorage.storage.service.StorageIndexService;
+import ru.vladshi.cloudfilestorage.storage.util.ByteRangeUtil.ByteRange;
+import ru.vladshi.cloudfilestorage.storage.util.ByteRangeUtil.RangeOpener;
+import ru.vladshi.cloudfilestorage.storage.util.HttpHeaderUtil;
 import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+import ru.vladshi.cloudfilestorage.storage.util.SizeFormatter;
 import ru.vladshi.cloudfilestorage.storage.validation.StorageItemNameValidator;
 
 import java.io.InputStream;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 public class MinioFileServiceImpl extends AbstractMinioService implements FileService {
 
+    private final StorageIndexService storageIndexService;
+    private final ContentIndexService contentIndexService;
+    private final ContentStorageService contentStorageService;
+    private final StorageCodec storageCodec;
+    private final MinioPresigner minioPresigner;
+    private final boolean presignedDownloadEnabled;
+    private final long presignedDownloadMinSize;
+    private final Duration presignedDownloadExpiry;
+
     @Autowired
-    public MinioFileServiceImpl(MinioClientProvider minioClientProvider) {
+    public MinioFileServiceImpl(MinioClientProvider minioClientProvider,
+                                StorageIndexService storageIndexService,
+                                ContentIndexService contentIndexService,
+                                ContentStorageService contentStorageService,
+                                StorageCodec storageCodec,
+                                MinioPresigner minioPresigner,
+                                @Value("${storage.download.presigned.enabled:false}") boolean presignedDownloadEnabled,
+                                @Value("${storage.download.presigned.min-size:8MB}") String presignedDownloadMinSize,
+                                @Value("${storage.download.presigned.expiry:PT5M}") Duration presignedDownloadExpiry) {
         super(minioClientProvider);
+        this.storageIndexService = storageIndexService;
+        this.contentIndexService = contentIndexService;
+        this.contentStorageService = contentStorageService;
+        this.storageCodec = storageCodec;
+        this.minioPresigner = minioPresigner;
+        this.presignedDownloadEnabled = presignedDownloadEnabled;
+        this.presignedDownloadMinSize = SizeFormatter.parseSize(presignedDownloadMinSize);
+        this.presignedDownloadExpiry = presignedDownloadExpiry;
     }
 
     @Override
@@ -30,19 +81,21 @@ public class MinioFileServiceImpl extends AbstractMinioService implements FileSe
             throw new FileUploadingException("File cannot be null or nameless. Choose a file to upload.");
         }
 
-        String fileName = file.getOriginalFilename();
+        try (InputStream inputStream = file.getInputStream()) {
+            upload(path, file.getOriginalFilename(), inputStream, file.getSize());
+        }
+    }
+
+    @Override
+    public void upload(String path, String fileName, InputStream inputStream, long size) throws Exception {
+        StorageItemNameValidator.validate(fileName);
 
         String fullFilePath = path + fileName;
 
         checkFileNotExists(fullFilePath);
 
-        minioClient.putObject(
-                PutObjectArgs.builder()
-                        .bucket(usersBucketName)
-                        .object(fullFilePath)
-                        .stream(file.getInputStream(), file.getSize(), -1)
-                        .build()
-        );
+        storageIndexService.add(contentStorageService.store(fullFilePath, inputStream, size));
+        contentIndexService.index(fullFilePath, size);
     }
 
     @Override
@@ -53,11 +106,21 @@ public class MinioFileServiceImpl extends AbstractMinioService implements FileSe
 
         checkFileExists(fullFilePath);
 
-        minioClient.removeObject(
-                RemoveObjectArgs.builder()
-                        .bucket(usersBucketName)
-                        .object(fullFilePath).build()
-        );
+        // Общий блоб остаётся на месте: индекс уменьшит число ссылок на него
+        StorageObjectInfo file = storageIndexService.find(fullFilePath).orElse(null);
+        if (file == null || file.objectKey() == null) {
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(fullFilePath).build()
+            );
+        }
+
+        storageIndexService.remove(fullFilePath);
+        contentIndexService.remove(fullFilePath);
+        if (file != null) {
+            contentStorageService.discard(List.of(file));
+        }
     }
 
     @Override
@@ -75,22 +138,27 @@ public class MinioFileServiceImpl extends AbstractMinioService implements FileSe
         checkFileExists(fullOldFilePath);
         checkFileNotExists(fullNewFilePath);
 
-        minioClient.copyObject(
-                CopyObjectArgs.builder()
-                        .bucket(usersBucketName)
-                        .object(fullNewFilePath)
-                        .source(CopySource.builder()
-                                .bucket(usersBucketName)
-                                .object(fullOldFilePath)
-                                .build())
-                        .build()
-        );
+        if (isStoredByPath(fullOldFilePath)) {
+            minioClient.copyObject(
+                    CopyObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(fullNewFilePath)
+                            .source(CopySource.builder()
+                                    .bucket(usersBucketName)
+                                    .object(fullOldFilePath)
+                                    .build())
+                            .build()
+            );
+
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(fullOldFilePath)
+                            .build());
+        }
 
-        minioClient.removeObject(
-                RemoveObjectArgs.builder()
-                        .bucket(usersBucketName)
-                        .object(fullOldFilePath)
-                        .build());
+        storageIndexService.move(fullOldFilePath, fullNewFilePath);
+        contentIndexService.move(fullOldFilePath, fullNewFilePath);
     }
 
     @Override
@@ -98,14 +166,14 @@ public class MinioFileServiceImpl extends AbstractMinioService implements FileSe
         String fullFilePath = path + fileName;
 
         try {
-            InputStream inputStream = minioClient.getObject(
+            GetObjectResponse response = minioClient.getObject(
                     GetObjectArgs.builder()
                             .bucket(usersBucketName)
-                            .object(fullFilePath)
+                            .object(storageIndexService.resolveObjectKey(fullFilePath))
                             .build()
             );
 
-            return new InputStreamResource(inputStream);
+            return new InputStreamResource(storageCodec.decode(response));
 
         } catch (ErrorResponseException e) {
             if (e.errorResponse().code().equals("NoSuchKey")) {
@@ -115,44 +183,181 @@ public class MinioFileServiceImpl extends AbstractMinioService implements FileSe
         }
     }
 
+    // Файл целиком отдаётся по одному запросу GetObject. Для части файла сначала запрашиваются метаданные:
+    // по ним видно, хранится ли объект сжатым, и диапазон запрашивается у MinIO только для несжатого
+    @Override
+    public FileDownload download(String path, String fileName, FileDownloadRequest request) throws Exception {
+        String objectKey = storageIndexService.resolveObjectKey(path + fileName);
+
+        if (!request.isPartial()) {
+            GetObjectResponse response = getObject(objectKey, fileName, request);
+            if (response == null) {
+                return FileDownload.notModified(request.ifNoneMatch());
+            }
+            return new FileDownload(new InputStreamResource(storageCodec.decode(response)),
+                    toFileInfo(response.headers()), null);
+        }
+
+        StatObjectResponse stat = statObject(objectKey, fileName);
+        StoredFileInfo fileInfo = toFileInfo(stat);
+        if (isNotModified(request, fileInfo)) {
+            return new FileDownload(null, fileInfo, null);
+        }
+        if (request.offset() >= fileInfo.size()) {
+            throw new RangeNotSatisfiableException(fileInfo.size());
+        }
+        long available = fileInfo.size() - request.offset();
+        ByteRange range = new ByteRange(request.offset(),
+                request.length() != null ? Math.min(request.length(), available) : available);
+
+        InputStream content = openRange(objectKey, fileName, StorageCodec.isCompressed(stat.userMetadata()), range);
+        return new FileDownload(new InputStreamResource(content), fileInfo, range);
+    }
+
+    @Override
+    public RangeOpener openRanges(String path, String fileName) throws Exception {
+        String objectKey = storageIndexService.resolveObjectKey(path + fileName);
+        boolean compressed = StorageCodec.isCompressed(statObject(objectKey, fileName).userMetadata());
+        return range -> openRange(objectKey, fileName, compressed, range);
+    }
+
     @Override
     public long getFileSize(String path, String fileName) throws Exception {
-        String fullFilePath = path + fileName;
-        StatObjectResponse stat = minioClient.statObject(
-                StatObjectArgs.builder()
-                        .bucket(usersBucketName)
-                        .object(fullFilePath)
-                        .build()
-        );
-        return stat.size();
+        return getFileInfo(path, fileName).size();
     }
 
-    private void checkFileExists(String fullFilePath) throws Exception {
-        if (!fileExists(fullFilePath)) {
-            throw new FileNotFoundInStorageException(PathUtil.extractNameFromPath(fullFilePath));
+    @Override
+    public StoredFileInfo getFileInfo(String path, String fileName) throws Exception {
+        return toFileInfo(statObject(storageIndexService.resolveObjectKey(path + fileName), fileName));
+    }
+
+    // Порог проверяется по размеру из индекса, поэтому мелкие файлы не требуют запроса к MinIO. Признак сжатия
+    // есть только в метаданных объекта: stat делается лишь для файлов от порога. Сжатый объект браузер
+    // не распакует, поэтому он всегда отдаётся через приложение
+    @Override
+    public Optional<String> getPresignedDownloadUrl(String path, String fileName) throws Exception {
+        if (!presignedDownloadEnabled) {
+            return Optional.empty();
+        }
+        StorageObjectInfo file = storageIndexService.find(path + fileName)
+                .filter(object -> !object.isFolder())
+                .orElseThrow(() -> new FileNotFoundInStorageException(fileName));
+        if (file.size() < presignedDownloadMinSize) {
+            return Optional.empty();
         }
+
+        String objectKey = file.key();
+        StatObjectResponse stat = statObject(objectKey, fileName);
+        if (StorageCodec.isCompressed(stat.userMetadata())) {
+            return Optional.empty();
+        }
+
+        return Optional.of(minioPresigner.presignGet(usersBucketName, objectKey, presignedDownloadExpiry, Map.of(
+                "response-content-disposition", HttpHeaderUtil.buildContentDisposition(fileName),
+                "response-content-type", HttpHeaderUtil.buildContentType(fileName),
+                "response-cache-control", "private, no-cache")));
     }
 
-    private void checkFileNotExists(String fullFilePath) throws Exception {
-        if (fileExists(fullFilePath)) {
-            throw new FileAlreadyExistsInStorageException(PathUtil.extractNameFromPath(fullFilePath));
+    // null — хранилище ответило 304 Not Modified
+    private GetObjectResponse getObject(String objectKey, String fileName, FileDownloadRequest request)
+            throws Exception {
+        GetObjectArgs.Builder args = GetObjectArgs.builder()
+                .bucket(usersBucketName)
+                .object(objectKey);
+        if (request.ifNoneMatch() != null) {
+            args.notMatchETag(request.ifNoneMatch());
+        } else if (request.ifModifiedSince() != null) {
+            args.modifiedSince(request.ifModifiedSince().atZone(ZoneOffset.UTC));
+        }
+
+        try {
+            return getObject(args.build(), fileName);
+        } catch (ServerException e) {
+            if (e.statusCode() == HttpStatus.NOT_MODIFIED.value()) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    // Смещения в сжатом объекте не соответствуют исходным: он читается с начала, а лишнее пропускается
+    private InputStream openRange(String objectKey, String fileName, boolean compressed, ByteRange range)
+            throws Exception {
+        GetObjectArgs.Builder args = GetObjectArgs.builder()
+                .bucket(usersBucketName)
+                .object(objectKey);
+        if (!compressed) {
+            args.offset(range.offset()).length(range.length());
         }
+        GetObjectResponse response = getObject(args.build(), fileName);
+        return compressed ? storageCodec.decode(response, range.offset(), range.length()) : response;
     }
 
-    private boolean fileExists(String filePath) throws Exception {
+    private GetObjectResponse getObject(GetObjectArgs args, String fileName) throws Exception {
         try {
-            minioClient.statObject(
+            return minioClient.getObject(args);
+        } catch (ErrorResponseException e) {
+            if (e.errorResponse().code().equals("NoSuchKey")) {
+                throw new FileNotFoundInStorageException(fileName);
+            }
+            throw e;
+        }
+    }
+
+    private StatObjectResponse statObject(String objectKey, String fileName) throws Exception {
+        try {
+            return minioClient.statObject(
                     StatObjectArgs.builder()
                             .bucket(usersBucketName)
-                            .object(filePath)
+                            .object(objectKey)
                             .build()
             );
-            return true;
         } catch (ErrorResponseException e) {
             if (e.errorResponse().code().equals("NoSuchKey")) {
-                return false;
+                throw new FileNotFoundInStorageException(fileName);
             }
             throw e;
         }
     }
+
+    // Те же условия, что MinIO проверяет для GetObject: ETag копии клиента или дата с точностью до секунды
+    private static boolean isNotModified(FileDownloadRequest request, StoredFileInfo fileInfo) {
+        if (request.ifNoneMatch() != null) {
+            return request.ifNoneMatch().equals(fileInfo.etag());
+        }
+        return request.ifModifiedSince() != null && fileInfo.lastModified() != null
+                && !fileInfo.lastModified().truncatedTo(ChronoUnit.SECONDS).isAfter(request.ifModifiedSince());
+    }
+
+    private static StoredFileInfo toFileInfo(StatObjectResponse stat) {
+        return new StoredFileInfo(StorageCodec.logicalSize(stat.userMetadata(), stat.size()),
+                stat.etag(), stat.lastModified().toInstant());
+    }
+
+    private static StoredFileInfo toFileInfo(Headers headers) {
+        long storedSize = Long.parseLong(headers.get(HttpHeaders.CONTENT_LENGTH));
+        String etag = headers.get(HttpHeaders.ETAG);
+        String lastModified = headers.get(HttpHeaders.LAST_MODIFIED);
+        return new StoredFileInfo(StorageCodec.logicalSize(headers, storedSize),
+                etag != null ? etag.replace("\"", "") : null,
+                lastModified != null
+                        ? ZonedDateTime.parse(lastModified, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+                        : null);
+    }
+
+    private boolean isStoredByPath(String fullFilePath) throws Exception {
+        return storageIndexService.resolveObjectKey(fullFilePath).equals(fullFilePath);
+    }
+
+    private void checkFileExists(String fullFilePath) throws Exception {
+        if (!storageIndexService.exists(fullFilePath)) {
+            throw new FileNotFoundInStorageException(PathUtil.extractNameFromPath(fullFilePath));
+        }
+    }
+
+    private void checkFileNotExists(String fullFilePath) throws Exception {
+        if (storageIndexService.exists(fullFilePath)) {
+            throw new FileAlreadyExistsInStorageException(PathUtil.extractNameFromPath(fullFilePath));
+        }
+    }
 }
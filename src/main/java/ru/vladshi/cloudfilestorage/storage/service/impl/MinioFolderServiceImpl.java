@@ -1,45 +1,80 @@
 package ru.vladshi.cloudfilestorage.storage.service.impl;
 
 import io.minio.*;
-import io.minio.errors.ErrorResponseException;
 import io.minio.messages.DeleteError;
 import io.minio.messages.DeleteObject;
 import io.minio.messages.Item;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import ru.vladshi.cloudfilestorage.storage.exception.EmptyDownloadSelectionException;
+import ru.vladshi.cloudfilestorage.storage.exception.FileNotFoundInStorageException;
 import ru.vladshi.cloudfilestorage.storage.exception.FolderAlreadyExistsException;
 import ru.vladshi.cloudfilestorage.storage.exception.FolderNotFoundException;
 import ru.vladshi.cloudfilestorage.storage.exception.FolderUploadingException;
 import ru.vladshi.cloudfilestorage.storage.exception.ObjectDeletionException;
+import ru.vladshi.cloudfilestorage.storage.model.ArchiveDownload;
 import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItemPage;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.model.UploadObject;
 import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentIndexService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentStorageService;
 import ru.vladshi.cloudfilestorage.storage.service.FolderService;
+import ru.vladshi.cloudfilestorage.storage.service.StorageIndexService;
+import ru.vladshi.cloudfilestorage.storage.util.PageCursorUtil;
+import ru.vladshi.cloudfilestorage.storage.util.ParallelUtil;
 import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
 import ru.vladshi.cloudfilestorage.storage.validation.StorageItemNameValidator;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.Callable;
 
 @Service
 @Slf4j
 public class MinioFolderServiceImpl extends AbstractMinioService implements FolderService {
 
+    private final StorageIndexService storageIndexService;
+    private final ContentIndexService contentIndexService;
+    private final ContentStorageService contentStorageService;
+    private final ObjectPrefetcher objectPrefetcher;
+    private final ObjectPrefixMover objectPrefixMover;
+    private final ZipCompressionPolicy zipCompressionPolicy;
+    private final int selectionListingParallelism;
+
     @Autowired
-    public MinioFolderServiceImpl(MinioClientProvider minioClientProvider) {
+    public MinioFolderServiceImpl(MinioClientProvider minioClientProvider,
+                                  StorageIndexService storageIndexService,
+                                  ContentIndexService contentIndexService,
+                                  ContentStorageService contentStorageService,
+                                  ObjectPrefetcher objectPrefetcher,
+                                  ObjectPrefixMover objectPrefixMover,
+                                  ZipCompressionPolicy zipCompressionPolicy,
+                                  @Value("${storage.download.selection.listing-parallelism:8}")
+                                  int selectionListingParallelism) {
         super(minioClientProvider);
+        this.storageIndexService = storageIndexService;
+        this.contentIndexService = contentIndexService;
+        this.contentStorageService = contentStorageService;
+        this.objectPrefetcher = objectPrefetcher;
+        this.objectPrefixMover = objectPrefixMover;
+        this.zipCompressionPolicy = zipCompressionPolicy;
+        this.selectionListingParallelism = Math.max(1, selectionListingParallelism);
     }
 
     @Override
@@ -50,44 +85,32 @@ public class MinioFolderServiceImpl extends AbstractMinioService implements Fold
 
         checkFolderNotExists(userFolderName);
 
-        minioClient.putObject(
-                PutObjectArgs.builder()
-                        .bucket(usersBucketName)
-                        .object(userFolderName)
-                        .stream(getEmptyStream(), 0, -1)
-                        .build()
-        );
+        putFolderMarker(userFolderName);
+
+        storageIndexService.add(StorageObjectInfo.folder(userFolderName));
     }
 
     @Override
     public List<StorageItem> getFolderContents(String path) throws Exception {
-        List<StorageItem> items = new ArrayList<>();
-
-        Iterable<Result<Item>> foundItems = minioClient.listObjects(
-                ListObjectsArgs.builder()
-                        .bucket(usersBucketName)
-                        .prefix(path)
-                        .delimiter("/")
-                        .recursive(false)
-                        .build()
-        );
+        return storageIndexService.getFolderContents(path);
+    }
 
-        if (!foundItems.iterator().hasNext()) {
-            throw new FolderNotFoundException(PathUtil.removeRootFolder(path));
+    @Override
+    public StorageItemPage getFolderContents(String path, String cursor, int pageSize) throws Exception {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
         }
+        String startAfter = (cursor == null || cursor.isBlank()) ? null : path + PageCursorUtil.decode(cursor);
 
-        for (Result<Item> foundItem : foundItems) {
-            Item item = foundItem.get();
-            String itemPath = item.objectName();
-            String relativePath = PathUtil.removeRootFolder(itemPath);
-            boolean isFolder = relativePath.endsWith("/");
-
-            if (!itemPath.equals(path)) {
-                items.add(new StorageItem(relativePath, isFolder, item.size()));
-            }
+        List<StorageItem> items = storageIndexService.getFolderContents(path, startAfter, pageSize + 1);
+        if (items.size() <= pageSize) {
+            return new StorageItemPage(items, null);
         }
 
-        return items;
+        List<StorageItem> pageItems = List.copyOf(items.subList(0, pageSize));
+        String folderRelativePath = PathUtil.removeRootFolder(path);
+        String lastItemName = pageItems.getLast().relativePath().substring(folderRelativePath.length());
+        return new StorageItemPage(pageItems, PageCursorUtil.encode(lastItemName));
     }
 
     @Override
@@ -99,13 +122,9 @@ public class MinioFolderServiceImpl extends AbstractMinioService implements Fold
         String newFolderPath = path + newFolderName + "/";
         checkFolderNotExists(newFolderPath);
 
-        minioClient.putObject(
-                PutObjectArgs.builder()
-                        .bucket(usersBucketName)
-                        .object(newFolderPath)
-                        .stream(getEmptyStream(), 0, -1)
-                        .build()
-        );
+        putFolderMarker(newFolderPath);
+
+        storageIndexService.add(StorageObjectInfo.folder(newFolderPath));
     }
 
     @Override
@@ -127,11 +146,22 @@ public class MinioFolderServiceImpl extends AbstractMinioService implements Fold
             ItemsToDelete.add(new DeleteObject(item.get().objectName()));
         }
 
-        if (ItemsToDelete.isEmpty()) {
-            throw new FolderNotFoundException(PathUtil.removeRootFolder(folderToDeleteFullPath));
+        // Без объектов по путям папка есть только в индексе, а листинг находит лишь не перенесённые миграцией файлы
+        List<StorageObjectInfo> descendants = List.of();
+        if (contentStorageService.storesByPath()) {
+            if (ItemsToDelete.isEmpty()) {
+                throw new FolderNotFoundException(PathUtil.removeRootFolder(folderToDeleteFullPath));
+            }
+        } else {
+            checkFolderExists(folderToDeleteFullPath);
+            descendants = storageIndexService.getAllDescendants(folderToDeleteFullPath);
         }
 
         batchDeleteObjects(ItemsToDelete);
+
+        storageIndexService.remove(folderToDeleteFullPath);
+        contentIndexService.remove(folderToDeleteFullPath);
+        contentStorageService.discard(descendants);
     }
 
     @Override
@@ -147,40 +177,50 @@ public class MinioFolderServiceImpl extends AbstractMinioService implements Fold
 
         checkFolderNotExists(fullNewPath);
 
-        Iterable<Result<Item>> ItemsToRename = minioClient.listObjects(
+        // Файлы под неизменяемыми ключами переносит только индекс; листинг префикса находит лишь объекты,
+        // ещё не перенесённые миграцией, и без них обходится одним запросом
+        int movedByPath;
+        if (contentStorageService.storesByPath()) {
+            movedByPath = objectPrefixMover.move(fullOldPath, fullNewPath);
+            if (movedByPath == 0) {
+                throw new FolderNotFoundException(PathUtil.removeRootFolder(fullOldPath));
+            }
+        } else {
+            checkFolderExists(fullOldPath);
+            movedByPath = objectPrefixMover.move(fullOldPath, fullNewPath);
+        }
+
+        storageIndexService.move(fullOldPath, fullNewPath);
+        contentIndexService.move(fullOldPath, fullNewPath);
+
+        if (!contentStorageService.storesByPath() && movedByPath > 0) {
+            removeMigratedCopies(fullNewPath);
+        }
+    }
+
+    // Миграция могла перевести файл на неизменяемый ключ, пока его объект копировался на новый путь: строка
+    // индекса уже ссылается на ключ, и копия по пути ничему не принадлежит. После переноса строк индекса
+    // миграция старого пути не найдёт, поэтому такие копии достаточно проверить один раз
+    private void removeMigratedCopies(String folderPath) throws Exception {
+        Iterable<Result<Item>> foundItems = minioClient.listObjects(
                 ListObjectsArgs.builder()
                         .bucket(usersBucketName)
-                        .prefix(fullOldPath)
+                        .prefix(folderPath)
                         .recursive(true)
                         .build()
         );
-
-        List<DeleteObject> itemsToDelete = new ArrayList<>();
-
-        for (Result<Item> itemToRename : ItemsToRename) {
-            String oldObjectFullName = itemToRename.get().objectName();
-
-            itemsToDelete.add(new DeleteObject(oldObjectFullName));
-
-            String newObjectFullName = fullNewPath + oldObjectFullName.substring(fullOldPath.length());
-
-            minioClient.copyObject(
-                    CopyObjectArgs.builder()
-                            .bucket(usersBucketName)
-                            .object(newObjectFullName)
-                            .source(CopySource.builder()
-                                    .bucket(usersBucketName)
-                                    .object(oldObjectFullName)
-                                    .build())
-                            .build()
-            );
-        }
-
-        if (itemsToDelete.isEmpty()) {
-            throw new FolderNotFoundException(PathUtil.removeRootFolder(fullOldPath));
+        List<DeleteObject> orphanCopies = new ArrayList<>();
+        for (Result<Item> result : foundItems) {
+            String objectName = result.get().objectName();
+            if (objectName.endsWith("/")) {
+                continue;
+            }
+            Optional<StorageObjectInfo> file = storageIndexService.find(objectName);
+            if (file.isPresent() && file.get().objectKey() != null) {
+                orphanCopies.add(new DeleteObject(objectName));
+            }
         }
-
-        batchDeleteObjects(itemsToDelete);
+        batchDeleteObjects(orphanCopies);
     }
 
     @Override
@@ -196,18 +236,16 @@ public class MinioFolderServiceImpl extends AbstractMinioService implements Fold
         checkFolderExists(path);
         checkFolderNotExists(fullUploadedFolderPath);
 
-        List<SnowballObject> objectsToUpload = prepareUploadObjects(files, path);
+        List<StorageObjectInfo> uploadedObjects = contentStorageService.storeAll(prepareUploadObjects(files, path));
 
-        minioClient.uploadSnowballObjects(
-                UploadSnowballObjectsArgs.builder()
-                        .bucket(usersBucketName)
-                        .objects(objectsToUpload)
-                        .build()
-        );
+        storageIndexService.addAll(uploadedObjects);
+        uploadedObjects.stream()
+                .filter(object -> !object.isFolder())
+                .forEach(object -> contentIndexService.index(object.path(), object.size()));
     }
 
-    private List<SnowballObject> prepareUploadObjects(MultipartFile[] files, String fullPrefix) throws IOException {
-        List<SnowballObject> objectsToUpload = new ArrayList<>();
+    private List<UploadObject> prepareUploadObjects(MultipartFile[] files, String fullPrefix) throws IOException {
+        List<UploadObject> objectsToUpload = new ArrayList<>();
         Set<String> foldersToCreate = new HashSet<>();
 
         for (MultipartFile file : files) {
@@ -219,23 +257,11 @@ public class MinioFolderServiceImpl extends AbstractMinioService implements Fold
 
             addParentFolders(foldersToCreate, fileFullPath);
 
-            objectsToUpload.add(
-                    new SnowballObject(
-                            fileFullPath,
-                            file.getInputStream(),
-                            file.getSize(),
-                            null)
-            );
+            objectsToUpload.add(new UploadObject(fileFullPath, file.getInputStream(), file.getSize()));
         }
 
         for (String folderPath : foldersToCreate) {
-            objectsToUpload.add(
-                    new SnowballObject(
-                            folderPath,
-                            getEmptyStream(),
-                            0,
-                            null)
-            );
+            objectsToUpload.add(UploadObject.folder(folderPath));
         }
 
         return objectsToUpload;
@@ -249,85 +275,105 @@ public class MinioFolderServiceImpl extends AbstractMinioService implements Fold
     }
 
     @Override
-    public InputStreamResource download(String path, String folderName) throws Exception {
+    public ArchiveDownload download(String path, String folderName) throws Exception {
         String fullFolderPath = path + folderName + "/";
 
-        Path tempZipFile = null;
-
-        try {
-            checkFolderExists(fullFolderPath);
+        checkFolderExists(fullFolderPath);
 
-            Iterable<Result<Item>> ItemsToDownload = minioClient.listObjects(
-                    ListObjectsArgs.builder()
-                            .bucket(usersBucketName)
-                            .startAfter(fullFolderPath)
-                            .prefix(fullFolderPath)
-                            .delimiter("/")
-                            .recursive(true)
-                            .build()
-            );
+        return archive(prepareArchiveEntries(storageIndexService.getAllDescendants(fullFolderPath), fullFolderPath));
+    }
 
-            tempZipFile = createZipArchive(ItemsToDownload, fullFolderPath);
+    // Содержимое выбранных папок и описания выбранных файлов запрашиваются из индекса одновременно.
+    // В архиве сначала идут папки, затем файлы, каждые в порядке выбора
+    @Override
+    public ArchiveDownload downloadSelected(String path, Collection<String> fileNames,
+                                            Collection<String> folderNames) throws Exception {
+        if (fileNames.isEmpty() && folderNames.isEmpty()) {
+            throw new EmptyDownloadSelectionException();
+        }
+        fileNames.forEach(StorageItemNameValidator::validate);
+        folderNames.forEach(StorageItemNameValidator::validate);
 
-            return new InputStreamResource(Files.newInputStream(tempZipFile));
+        checkFolderExists(path);
 
-        } finally {
-            cleanupTempFile(tempZipFile);
+        List<Callable<List<StorageObjectInfo>>> lookups = new ArrayList<>();
+        for (String folderName : new LinkedHashSet<>(folderNames)) {
+            lookups.add(() -> listSelectedFolder(path + folderName + "/"));
         }
+        for (String fileName : new LinkedHashSet<>(fileNames)) {
+            lookups.add(() -> List.of(storageIndexService.find(path + fileName)
+                    .filter(item -> !item.isFolder())
+                    .orElseThrow(() -> new FileNotFoundInStorageException(fileName))));
+        }
+
+        List<StorageObjectInfo> items = new ArrayList<>();
+        ParallelUtil.invokeAll(lookups, selectionListingParallelism).forEach(items::addAll);
+        return archive(prepareArchiveEntries(items, path));
     }
 
-    private Path createZipArchive(
-            Iterable<Result<Item>> items, String parentFolderFullPath) throws Exception {
+    private List<StorageObjectInfo> listSelectedFolder(String fullFolderPath) throws Exception {
+        checkFolderExists(fullFolderPath);
+        List<StorageObjectInfo> items = new ArrayList<>();
+        items.add(StorageObjectInfo.folder(fullFolderPath));
+        items.addAll(storageIndexService.getAllDescendants(fullFolderPath));
+        return items;
+    }
 
-        Path tempZipFile = Files.createTempFile("folder-", ".zip");
+    private ArchiveDownload archive(List<ArchiveEntry> entries) {
+        long archiveSize = -1;
+        if (entries.stream().allMatch(entry -> entry.compressionLevel() == StreamingZipWriter.STORED)) {
+            archiveSize = StreamingZipWriter.storedArchiveSize(entries.stream()
+                    .map(entry -> new StreamingZipWriter.EntrySize(entry.name(), entry.item().size()))
+                    .toList());
+        }
 
-        try (ZipOutputStream zipOut = new ZipOutputStream(Files.newOutputStream(tempZipFile))) {
-            Set<String> addedFolders = new HashSet<>();
+        return new ArchiveDownload(outputStream -> writeZipArchive(entries, outputStream), archiveSize);
+    }
 
-            for (Result<Item> item : items) {
-                String objectName = item.get().objectName();
-                String relativeName = objectName.substring(parentFolderFullPath.length());
-                boolean isFolder = objectName.endsWith("/");
+    private record ArchiveEntry(String name, StorageObjectInfo item, int compressionLevel) {
+    }
 
-                if (isFolder) {
-                    if (addedFolders.add(relativeName)) {
-                        addZipEntry(zipOut, relativeName, null);
-                    }
-                } else {
-                    try (InputStream inputStream = minioClient.getObject(
-                            GetObjectArgs.builder()
-                                    .bucket(usersBucketName)
-                                    .object(objectName)
-                                    .build()
-                    )) {
-                        addZipEntry(zipOut, relativeName, inputStream);
-                    }
+    private List<ArchiveEntry> prepareArchiveEntries(List<StorageObjectInfo> items, String parentFolderFullPath) {
+        List<ArchiveEntry> entries = new ArrayList<>(items.size());
+        Set<String> addedFolders = new HashSet<>();
+        for (StorageObjectInfo item : items) {
+            String relativeName = item.path().substring(parentFolderFullPath.length());
+            if (item.isFolder()) {
+                if (addedFolders.add(relativeName)) {
+                    entries.add(new ArchiveEntry(relativeName, item, StreamingZipWriter.STORED));
                 }
+            } else {
+                entries.add(new ArchiveEntry(relativeName, item, zipCompressionPolicy.levelFor(relativeName)));
             }
-        } catch (Exception e) {
-            log.error("Failed to create ZIP archive for folder: {}", parentFolderFullPath, e);
-            throw new RuntimeException("Failed to create ZIP archive for folder: " + parentFolderFullPath, e);
-        }
-
-        return tempZipFile;
-    }
-
-    private void addZipEntry(ZipOutputStream zipOut, String entryName, InputStream inputStream) throws IOException {
-        zipOut.putNextEntry(new ZipEntry(entryName));
-        if (inputStream != null) {
-            inputStream.transferTo(zipOut);
         }
-        zipOut.closeEntry();
+        return entries;
     }
 
-    private void cleanupTempFile(Path tempFile) {
-        if (tempFile != null) {
-            try {
-                Files.deleteIfExists(tempFile);
-            } catch (IOException e) {
-                log.error("Failed to delete temp file: {}", tempFile, e);
+    // Архив пишется сразу в ответ, без временного файла. Запись блокируется, пока клиент не примет
+    // предыдущие данные, поэтому объекты читаются из MinIO не быстрее, чем уходят клиенту (с упреждением
+    // в пределах бюджета памяти ObjectPrefetcher); если клиент отключился, запись завершится исключением
+    // и загрузки будут отменены.
+    private void writeZipArchive(List<ArchiveEntry> entries, OutputStream outputStream) throws IOException {
+        StreamingZipWriter zipWriter = new StreamingZipWriter(outputStream);
+        List<StorageObjectInfo> files = entries.stream()
+                .map(ArchiveEntry::item)
+                .filter(item -> !item.isFolder())
+                .toList();
+
+        try (ObjectPrefetcher.Session objects = objectPrefetcher.open(files)) {
+            for (ArchiveEntry entry : entries) {
+                StorageObjectInfo item = entry.item();
+                if (item.isFolder()) {
+                    zipWriter.addFolder(entry.name(), item.lastModified());
+                } else {
+                    try (InputStream inputStream = objects.next()) {
+                        zipWriter.addFile(entry.name(), item.lastModified(), item.size(),
+                                entry.compressionLevel(), inputStream);
+                    }
+                }
             }
         }
+        zipWriter.finish();
     }
 
     private void checkFolderExists(String path) throws Exception {
@@ -343,23 +389,7 @@ public class MinioFolderServiceImpl extends AbstractMinioService implements Fold
     }
 
     private boolean folderExists(String folderPath) throws Exception {
-        if (folderPath.endsWith("//")) {
-            return false;
-        }
-        try {
-            minioClient.statObject(
-                    StatObjectArgs.builder()
-                            .bucket(usersBucketName)
-                            .object(folderPath)
-                            .build()
-            );
-            return true;
-        } catch (ErrorResponseException e) {
-            if (e.errorResponse().code().equals("NoSuchKey")) {
-                return false;
-            }
-            throw e;
-        }
+        return storageIndexService.exists(folderPath);
     }
 
     private void batchDeleteObjects(List<DeleteObject> objectsToDelete) throws Exception {
@@ -382,6 +412,19 @@ public class MinioFolderServiceImpl extends AbstractMinioService implements Fold
         }
     }
 
+    private void putFolderMarker(String folderPath) throws Exception {
+        if (!contentStorageService.storesByPath()) {
+            return;
+        }
+        minioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(usersBucketName)
+                        .object(folderPath)
+                        .stream(getEmptyStream(), 0, -1)
+                        .build()
+        );
+    }
+
     private ByteArrayInputStream getEmptyStream() {
         return new ByteArrayInputStream(new byte[0]);
     }
@@ -0,0 +1,420 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.messages.Part;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.vladshi.cloudfilestorage.storage.config.MinioMultipartClient;
+import ru.vladshi.cloudfilestorage.storage.exception.FileAlreadyExistsInStorageException;
+import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.exception.FolderNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.exception.UploadSessionNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.model.UploadSession;
+import ru.vladshi.cloudfilestorage.storage.model.UploadSessionStatus;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentIndexService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentStorageService;
+import ru.vladshi.cloudfilestorage.storage.service.QuotaReservation;
+import ru.vladshi.cloudfilestorage.storage.service.ResumableUploadService;
+import ru.vladshi.cloudfilestorage.storage.service.StorageIndexService;
+import ru.vladshi.cloudfilestorage.storage.service.StorageUsageService;
+import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+import ru.vladshi.cloudfilestorage.storage.util.SizeFormatter;
+import ru.vladshi.cloudfilestorage.storage.validation.StorageItemNameValidator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Возобновляемая загрузка поверх multipart-загрузки MinIO.
+ * <p>
+ * Состояние сессии хранится в Redis (хеш {@code upload-session:<id>}), поэтому части одной сессии
+ * может принимать любой узел. Каждая часть загружается в MinIO отдельным запросом и может быть отправлена
+ * повторно; место под часть резервируется один раз при первом приёме и освобождается целиком
+ * при завершении или отмене сессии.
+ * <p>
+ * Просроченные сессии отменяются по расписанию: узел, первым удаливший сессию из множества
+ * {@code upload-sessions:expiry}, отменяет multipart-загрузку и освобождает резерв.
+ * <p>
+ * Запись в хеш сессии выполняется скриптом, который проверяет, что сессия ещё в множестве истечения,
+ * и продлевает срок ключа: часть, принятая после завершения или отмены, не создаёт хеш заново.
+ * Часть перед отправкой в MinIO записывается во временный файл, чтобы не держать её в памяти.
+ * Завершение собирает файл под той же блокировкой пути, что и подтверждение прямой загрузки.
+ * Если {@link ContentStorageService} не хранит файлы по путям, multipart-загрузка создаётся сразу под
+ * неизменяемым ключом. Части уходят в MinIO напрямую, поэтому дедупликация и сжатие к ним не применяются.
+ */
+@Service
+@Slf4j
+public class MinioResumableUploadServiceImpl extends AbstractMinioService implements ResumableUploadService {
+
+    // Ограничения S3: части, кроме последней, не меньше 5 МБ, частей не больше 10 000
+    private static final long MIN_CHUNK_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PART_COUNT = 10_000;
+
+    private static final String SESSION_KEY_PREFIX = "upload-session:";
+    private static final String EXPIRY_KEY = "upload-sessions:expiry";
+    private static final String PART_FIELD_PREFIX = "part:";
+    private static final String RESERVED_FIELD_PREFIX = "reserved:";
+    private static final int SPOOL_BUFFER_SIZE = 64 * 1024;
+    // Записывает поле, только если сессия не завершена и не отменена: -1 — сессии нет, 0 — поле уже есть
+    private static final RedisScript<Long> PUT_FIELD_SCRIPT = RedisScript.of("""
+            if not redis.call('ZSCORE', KEYS[2], ARGV[1]) or redis.call('EXISTS', KEYS[1]) == 0 then
+                return -1
+            end
+            if ARGV[5] == '1' then
+                redis.call('HSET', KEYS[1], ARGV[2], ARGV[3])
+            elseif redis.call('HSETNX', KEYS[1], ARGV[2], ARGV[3]) == 0 then
+                return 0
+            end
+            redis.call('PEXPIREAT', KEYS[1], ARGV[4])
+            return 1
+            """, Long.class);
+
+    private final MinioMultipartClient multipartClient;
+    private final StringRedisTemplate redisTemplate;
+    private final HashOperations<String, String, String> hashOperations;
+    private final StorageIndexService storageIndexService;
+    private final ContentIndexService contentIndexService;
+    private final ContentStorageService contentStorageService;
+    private final StorageUsageService storageUsageService;
+    private final UploadPathLock uploadPathLock;
+    private final long chunkSize;
+    private final Duration sessionTtl;
+
+    @Autowired
+    public MinioResumableUploadServiceImpl(MinioClientProvider minioClientProvider,
+                                           MinioMultipartClient multipartClient,
+                                           StringRedisTemplate redisTemplate,
+                                           StorageIndexService storageIndexService,
+                                           ContentIndexService contentIndexService,
+                                           ContentStorageService contentStorageService,
+                                           StorageUsageService storageUsageService,
+                                           UploadPathLock uploadPathLock,
+                                           @Value("${storage.upload.chunk-size:8MB}") String chunkSize,
+                                           @Value("${storage.upload.session-ttl:PT24H}") Duration sessionTtl) {
+        super(minioClientProvider);
+        this.multipartClient = multipartClient;
+        this.redisTemplate = redisTemplate;
+        this.hashOperations = redisTemplate.opsForHash();
+        this.storageIndexService = storageIndexService;
+        this.contentIndexService = contentIndexService;
+        this.contentStorageService = contentStorageService;
+        this.storageUsageService = storageUsageService;
+        this.uploadPathLock = uploadPathLock;
+        this.chunkSize = Math.max(MIN_CHUNK_SIZE, SizeFormatter.parseSize(chunkSize));
+        this.sessionTtl = sessionTtl;
+    }
+
+    @Override
+    public UploadSessionStatus create(String userPrefix, String folderPath, String fileName, long size)
+            throws Exception {
+        StorageItemNameValidator.validate(fileName);
+        if (size <= 0) {
+            throw new FileUploadingException("File size must be positive");
+        }
+        storageUsageService.checkLimit(userPrefix, size);
+        if (!storageIndexService.exists(folderPath)) {
+            throw new FolderNotFoundException(PathUtil.removeRootFolder(folderPath));
+        }
+        String objectName = folderPath + fileName;
+        if (storageIndexService.exists(objectName)) {
+            throw new FileAlreadyExistsInStorageException(PathUtil.removeRootFolder(objectName));
+        }
+
+        // Без хранения по путям файл собирается сразу под неизменяемым ключом, как при обычной загрузке
+        String objectKey = contentStorageService.storesByPath()
+                ? null
+                : ObjectIdContentStorageServiceImpl.newObjectKey();
+        String storageKey = objectKey != null ? objectKey : objectName;
+        String uploadId = multipartClient.createMultipartUpload(usersBucketName, storageKey);
+        UploadSession session = new UploadSession(UUID.randomUUID().toString(), userPrefix, folderPath, fileName,
+                uploadId, objectKey, size, chunkSizeFor(size), Instant.now().plus(sessionTtl));
+
+        String key = sessionKey(session.id());
+        Map<String, String> fields = new HashMap<>(Map.of(
+                "userPrefix", session.userPrefix(),
+                "folderPath", session.folderPath(),
+                "fileName", session.fileName(),
+                "uploadId", session.uploadId(),
+                "size", String.valueOf(session.size()),
+                "chunkSize", String.valueOf(session.chunkSize()),
+                "expiresAt", String.valueOf(session.expiresAt().toEpochMilli())));
+        if (objectKey != null) {
+            fields.put("objectKey", objectKey);
+        }
+        hashOperations.putAll(key, fields);
+        redisTemplate.expireAt(key, keyDeadline(session));
+        redisTemplate.opsForZSet().add(EXPIRY_KEY, session.id(), session.expiresAt().toEpochMilli());
+
+        log.debug("Created upload session {} for {}", session.id(), objectName);
+        return toStatus(session, Map.of());
+    }
+
+    @Override
+    public UploadSessionStatus getStatus(String userPrefix, String sessionId) {
+        UploadSession session = getSession(userPrefix, sessionId);
+        return toStatus(session, uploadedParts(sessionId));
+    }
+
+    @Override
+    public UploadSessionStatus uploadPart(String userPrefix, String sessionId, int partNumber,
+                                          InputStream data, long length) throws Exception {
+        UploadSession session = getSession(userPrefix, sessionId);
+        if (partNumber < 1 || partNumber > session.partCount()) {
+            throw new FileUploadingException("Part number must be between 1 and %d".formatted(session.partCount()));
+        }
+        long expectedLength = session.partSize(partNumber);
+        if (length != expectedLength) {
+            throw new FileUploadingException("Part %d must be %d bytes, got %d"
+                    .formatted(partNumber, expectedLength, length));
+        }
+
+        reservePart(session, partNumber, expectedLength);
+
+        Path partFile = spool(data, partNumber, expectedLength);
+        String etag;
+        try (RandomAccessFile part = new RandomAccessFile(partFile.toFile(), "r")) {
+            etag = multipartClient.uploadPart(
+                    usersBucketName, session.storageKey(), session.uploadId(), partNumber, part, expectedLength);
+        } finally {
+            Files.deleteIfExists(partFile);
+        }
+        if (putField(session, PART_FIELD_PREFIX + partNumber, etag, true) < 0) {
+            throw new UploadSessionNotFoundException(sessionId);
+        }
+
+        return toStatus(session, uploadedParts(sessionId));
+    }
+
+    @Override
+    public void complete(String userPrefix, String sessionId) throws Exception {
+        UploadSession session = getSession(userPrefix, sessionId);
+        Map<Integer, String> parts = uploadedParts(sessionId);
+        if (parts.size() != session.partCount()) {
+            throw new FileUploadingException("Upload is incomplete: %d of %d parts received"
+                    .formatted(parts.size(), session.partCount()));
+        }
+        if (storageIndexService.exists(session.objectName())) {
+            throw new FileAlreadyExistsInStorageException(PathUtil.removeRootFolder(session.objectName()));
+        }
+        if (!claim(sessionId)) {
+            throw new UploadSessionNotFoundException(sessionId);
+        }
+
+        try {
+            Part[] completedParts = parts.entrySet().stream()
+                    .map(part -> new Part(part.getKey(), part.getValue()))
+                    .toArray(Part[]::new);
+            String lockToken = uploadPathLock.lock(session.objectName());
+            try {
+                // Проверка повторяется под блокировкой: другая загрузка на этот путь могла быть завершена,
+                // и сборка частей заменила бы её файл
+                if (storageIndexService.exists(session.objectName())) {
+                    throw new FileAlreadyExistsInStorageException(PathUtil.removeRootFolder(session.objectName()));
+                }
+                String etag = multipartClient.completeMultipartUpload(
+                        usersBucketName, session.storageKey(), session.uploadId(), completedParts).etag();
+                storageIndexService.add(StorageObjectInfo.file(session.objectName(), session.size(), etag,
+                        session.objectKey()));
+            } finally {
+                uploadPathLock.unlock(session.objectName(), lockToken);
+            }
+            contentIndexService.index(session.objectName(), session.size());
+        } catch (Exception e) {
+            // Сессия возвращается в очередь очистки: клиент может повторить завершение до её истечения
+            redisTemplate.opsForZSet().add(EXPIRY_KEY, sessionId, session.expiresAt().toEpochMilli());
+            throw e;
+        }
+
+        releaseAndDelete(session);
+        log.debug("Completed upload session {} for {}", sessionId, session.objectName());
+    }
+
+    @Override
+    public void abort(String userPrefix, String sessionId) throws Exception {
+        UploadSession session = getSession(userPrefix, sessionId);
+        if (!claim(sessionId)) {
+            throw new UploadSessionNotFoundException(sessionId);
+        }
+        abortAndDelete(session);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.upload.session-cleanup-interval:PT15M}")
+    public void abortExpiredSessions() {
+        Set<String> expiredIds = redisTemplate.opsForZSet()
+                .rangeByScore(EXPIRY_KEY, 0, System.currentTimeMillis());
+        if (expiredIds == null || expiredIds.isEmpty()) {
+            return;
+        }
+        for (String sessionId : expiredIds) {
+            if (!claim(sessionId)) {
+                continue;
+            }
+            UploadSession session = readSession(sessionId);
+            if (session == null) {
+                continue;
+            }
+            try {
+                abortAndDelete(session);
+                log.info("Aborted expired upload session {} for {}", sessionId, session.objectName());
+            } catch (Exception e) {
+                log.warn("Failed to abort expired upload session {}", sessionId, e);
+            }
+        }
+    }
+
+    // Резерв под часть создаётся только при первом приёме: повторная отправка той же части места не занимает.
+    // Номер резерва хранится в поле reserved:N.
+    // Место резервируется до отметки в хеше: отметку видит освобождение при завершении, и к этому моменту
+    // место уже занято. Если отметку поставил параллельный запрос или сессия уже закрыта, резерв возвращается.
+    private void reservePart(UploadSession session, int partNumber, long bytes) throws Exception {
+        String field = RESERVED_FIELD_PREFIX + partNumber;
+        if (hashOperations.hasKey(sessionKey(session.id()), field)) {
+            return;
+        }
+        // Резерв живёт столько же, сколько ключ сессии: после этого его уже некому освободить
+        QuotaReservation reservation = storageUsageService.reserve(session.userPrefix(), bytes,
+                Duration.between(Instant.now(), keyDeadline(session)));
+        long marked;
+        try {
+            marked = putField(session, field, reservation.id(), false);
+        } catch (Exception e) {
+            reservation.close();
+            throw e;
+        }
+        if (marked <= 0) {
+            reservation.close();
+        }
+        if (marked < 0) {
+            throw new UploadSessionNotFoundException(session.id());
+        }
+    }
+
+    private long putField(UploadSession session, String field, String value, boolean overwrite) {
+        Long result = redisTemplate.execute(PUT_FIELD_SCRIPT, List.of(sessionKey(session.id()), EXPIRY_KEY),
+                session.id(), field, value, String.valueOf(keyDeadline(session).toEpochMilli()),
+                overwrite ? "1" : "0");
+        return result == null ? -1 : result;
+    }
+
+    // Ключ живёт дольше сессии, чтобы очистка успела прочитать его и отменить загрузку в MinIO
+    private Instant keyDeadline(UploadSession session) {
+        return session.expiresAt().plus(sessionTtl);
+    }
+
+    private static Path spool(InputStream data, int partNumber, long length) throws IOException {
+        Path file = Files.createTempFile("upload-part-", ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            byte[] buffer = new byte[SPOOL_BUFFER_SIZE];
+            long remaining = length;
+            int read;
+            while (remaining > 0
+                    && (read = data.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                outputStream.write(buffer, 0, read);
+                remaining -= read;
+            }
+            if (remaining > 0) {
+                throw new FileUploadingException("Part %d is truncated: %d of %d bytes"
+                        .formatted(partNumber, length - remaining, length));
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    private void abortAndDelete(UploadSession session) throws Exception {
+        try {
+            multipartClient.abortMultipartUpload(usersBucketName, session.storageKey(), session.uploadId());
+        } finally {
+            releaseAndDelete(session);
+        }
+    }
+
+    private void releaseAndDelete(UploadSession session) {
+        List<String> reservationIds = hashOperations.entries(sessionKey(session.id())).entrySet().stream()
+                .filter(field -> field.getKey().startsWith(RESERVED_FIELD_PREFIX))
+                .map(Map.Entry::getValue)
+                .toList();
+        redisTemplate.delete(sessionKey(session.id()));
+        for (String reservationId : reservationIds) {
+            storageUsageService.release(session.userPrefix(), reservationId);
+        }
+    }
+
+    // Завершить, отменить или очистить сессию может только тот, кто первым удалил её из множества истечения
+    private boolean claim(String sessionId) {
+        Long removed = redisTemplate.opsForZSet().remove(EXPIRY_KEY, sessionId);
+        return removed != null && removed > 0;
+    }
+
+    private UploadSession getSession(String userPrefix, String sessionId) {
+        UploadSession session = readSession(sessionId);
+        if (session == null || !session.userPrefix().equals(userPrefix)
+                || session.expiresAt().isBefore(Instant.now())) {
+            throw new UploadSessionNotFoundException(sessionId);
+        }
+        return session;
+    }
+
+    private UploadSession readSession(String sessionId) {
+        Map<String, String> fields = hashOperations.entries(sessionKey(sessionId));
+        if (fields.isEmpty() || !fields.containsKey("uploadId")) {
+            return null;
+        }
+        return new UploadSession(
+                sessionId,
+                fields.get("userPrefix"),
+                fields.get("folderPath"),
+                fields.get("fileName"),
+                fields.get("uploadId"),
+                fields.get("objectKey"),
+                Long.parseLong(fields.get("size")),
+                Long.parseLong(fields.get("chunkSize")),
+                Instant.ofEpochMilli(Long.parseLong(fields.get("expiresAt"))));
+    }
+
+    private SortedMap<Integer, String> uploadedParts(String sessionId) {
+        SortedMap<Integer, String> parts = new TreeMap<>();
+        hashOperations.entries(sessionKey(sessionId)).forEach((field, value) -> {
+            if (field.startsWith(PART_FIELD_PREFIX)) {
+                parts.put(Integer.parseInt(field.substring(PART_FIELD_PREFIX.length())), value);
+            }
+        });
+        return parts;
+    }
+
+    private long chunkSizeFor(long size) {
+        long minChunkSize = (size + MAX_PART_COUNT - 1) / MAX_PART_COUNT;
+        return Math.max(chunkSize, minChunkSize);
+    }
+
+    private static UploadSessionStatus toStatus(UploadSession session, Map<Integer, String> parts) {
+        long offset = 0;
+        int partNumber = 1;
+        while (parts.containsKey(partNumber)) {
+            offset += session.partSize(partNumber);
+            partNumber++;
+        }
+        return new UploadSessionStatus(session.id(), session.size(), session.chunkSize(), session.partCount(),
+                parts.keySet().stream().sorted().toList(), offset, session.expiresAt());
+    }
+
+    private static String sessionKey(String sessionId) {
+        return SESSION_KEY_PREFIX + sessionId;
+    }
+}
@@ -4,21 +4,36 @@ import io.minio.ListObjectsArgs;
 import io.minio.Result;
 import io.minio.messages.Item;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import ru.vladshi.cloudfilestorage.storage.model.SearchFilter;
+import ru.vladshi.cloudfilestorage.storage.model.SearchMode;
 import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
 import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentIndexService;
 import ru.vladshi.cloudfilestorage.storage.service.SearchService;
 import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+import ru.vladshi.cloudfilestorage.storage.util.SearchRankUtil;
+import ru.vladshi.cloudfilestorage.storage.util.TrigramUtil;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 @Service
+@ConditionalOnProperty(name = "storage.index.enabled", havingValue = "false")
 public class MinioSearchServiceImpl extends AbstractMinioService implements SearchService {
 
+    private static final int CONTENT_SEARCH_LIMIT = 100;
+
+    private final ContentIndexService contentIndexService;
+
     @Autowired
-    public MinioSearchServiceImpl(MinioClientProvider minioClientProvider) {
+    public MinioSearchServiceImpl(MinioClientProvider minioClientProvider, ContentIndexService contentIndexService) {
         super(minioClientProvider);
+        this.contentIndexService = contentIndexService;
     }
 
     @Override
@@ -27,6 +42,7 @@ public class MinioSearchServiceImpl extends AbstractMinioService implements Sear
         if (query == null || query.isBlank()) {
             return itemsThatMatch;
         }
+        String lowerCaseQuery = query.toLowerCase();
 
         Iterable<Result<Item>> allUserItems = minioClient.listObjects(
                 ListObjectsArgs.builder()
@@ -34,6 +50,7 @@ public class MinioSearchServiceImpl extends AbstractMinioService implements Sear
                         .startAfter(basePath)
                         .prefix(basePath)
                         .recursive(true)
+                        .includeUserMetadata(true)
                         .build()
         );
 
@@ -44,12 +61,108 @@ public class MinioSearchServiceImpl extends AbstractMinioService implements Sear
 
             String itemName = PathUtil.extractNameFromPath(fullItemPath);
 
-            if (itemName.toLowerCase().contains(query.toLowerCase())) {
+            if (itemName.toLowerCase().contains(lowerCaseQuery)) {
                 String relativePath = fullItemPath.substring(basePath.length());
-                itemsThatMatch.add(new StorageItem(relativePath, isFolder, item.size()));
+                itemsThatMatch.add(new StorageItem(relativePath, isFolder, StorageCodec.logicalSize(item.userMetadata(), item.size())));
+            }
+        }
+
+        return itemsThatMatch;
+    }
+
+    @Override
+    public List<StorageItem> searchItems(String basePath, String query, SearchMode mode) throws Exception {
+        if (mode == SearchMode.CONTENT) {
+            if (query == null || query.isBlank()) {
+                return List.of();
+            }
+            return contentIndexService.search(basePath, query, CONTENT_SEARCH_LIMIT);
+        }
+        return searchItems(basePath, query);
+    }
+
+    @Override
+    public List<StorageItem> searchItems(String basePath, SearchFilter filter, int limit) throws Exception {
+        List<StorageItem> itemsThatMatch = new ArrayList<>();
+        if (filter.isEmpty()) {
+            return itemsThatMatch;
+        }
+
+        Iterable<Result<Item>> allUserItems = minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(usersBucketName)
+                        .startAfter(basePath)
+                        .prefix(basePath)
+                        .recursive(true)
+                        .includeUserMetadata(true)
+                        .build()
+        );
+
+        // Условия проверяются по метаданным из листинга до создания StorageItem; обход прекращается на лимите
+        for (Result<Item> itemResult : allUserItems) {
+            Item item = itemResult.get();
+            String fullItemPath = item.objectName();
+            boolean isFolder = fullItemPath.endsWith("/");
+            String itemName = PathUtil.extractNameFromPath(fullItemPath);
+            Instant lastModified = item.lastModified() != null ? item.lastModified().toInstant() : null;
+
+            if (filter.matches(itemName, isFolder, StorageCodec.logicalSize(item.userMetadata(), item.size()), lastModified)) {
+                itemsThatMatch.add(new StorageItem(fullItemPath.substring(basePath.length()), isFolder, StorageCodec.logicalSize(item.userMetadata(), item.size())));
+                if (itemsThatMatch.size() >= limit) {
+                    break;
+                }
             }
         }
 
         return itemsThatMatch;
     }
+
+    @Override
+    public List<StorageItem> suggest(String basePath, String query, int limit) throws Exception {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        String normalizedQuery = TrigramUtil.normalize(query);
+        Comparator<StorageItem> ranking = SearchRankUtil.comparator(normalizedQuery);
+        // Куча ограниченного размера с худшим из отобранных элементов в вершине
+        PriorityQueue<StorageItem> best = new PriorityQueue<>(limit + 1, ranking.reversed());
+
+        Iterable<Result<Item>> allUserItems = minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(usersBucketName)
+                        .startAfter(basePath)
+                        .prefix(basePath)
+                        .recursive(true)
+                        .includeUserMetadata(true)
+                        .build()
+        );
+
+        for (Result<Item> itemResult : allUserItems) {
+            Item item = itemResult.get();
+            String fullItemPath = item.objectName();
+            StorageItem candidate = new StorageItem(
+                    fullItemPath.substring(basePath.length()), fullItemPath.endsWith("/"), StorageCodec.logicalSize(item.userMetadata(), item.size()));
+            if (SearchRankUtil.rank(candidate.getName(), normalizedQuery) == SearchRankUtil.NO_MATCH) {
+                continue;
+            }
+            best.add(candidate);
+            if (best.size() > limit) {
+                best.poll();
+            }
+            // Листинг упорядочен по ключам, а не по рангу, поэтому остановиться можно, только когда
+            // даже худший из отобранных — точное совпадение в корне поиска
+            if (best.size() == limit && isBestPossible(best.peek(), normalizedQuery)) {
+                break;
+            }
+        }
+
+        List<StorageItem> result = new ArrayList<>(best);
+        result.sort(ranking);
+        return result;
+    }
+
+    private static boolean isBestPossible(StorageItem item, String normalizedQuery) {
+        return SearchRankUtil.rank(item.getName(), normalizedQuery) == SearchRankUtil.EXACT
+                && SearchRankUtil.depth(item) == 0;
+    }
 }
@@ -0,0 +1,207 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.ListObjectsArgs;
+import io.minio.Result;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.Item;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.vladshi.cloudfilestorage.storage.exception.FolderNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.StorageIndexService;
+import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Реализация индекса без базы данных: каждое чтение выполняется листингом MinIO,
+ * а операции записи ничего не делают, так как источником данных остаётся сам бакет.
+ * Включается свойством {@code storage.index.enabled=false}.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.index.enabled", havingValue = "false")
+public class MinioStorageIndexServiceImpl extends AbstractMinioService implements StorageIndexService {
+
+    @Autowired
+    public MinioStorageIndexServiceImpl(MinioClientProvider minioClientProvider) {
+        super(minioClientProvider);
+    }
+
+    @Override
+    public List<StorageItem> getFolderContents(String path) throws Exception {
+        List<StorageItem> items = new ArrayList<>();
+        boolean folderFound = false;
+
+        Iterable<Result<Item>> foundItems = minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(usersBucketName)
+                        .prefix(path)
+                        .delimiter("/")
+                        .recursive(false)
+                        .includeUserMetadata(true)
+                        .build()
+        );
+
+        for (Result<Item> foundItem : foundItems) {
+            folderFound = true;
+            Item item = foundItem.get();
+            String itemPath = item.objectName();
+            String relativePath = PathUtil.removeRootFolder(itemPath);
+            boolean isFolder = relativePath.endsWith("/");
+
+            if (!itemPath.equals(path)) {
+                items.add(new StorageItem(relativePath, isFolder, StorageCodec.logicalSize(item.userMetadata(), item.size())));
+            }
+        }
+
+        if (!folderFound) {
+            throw new FolderNotFoundException(PathUtil.removeRootFolder(path));
+        }
+
+        return items;
+    }
+
+    @Override
+    public List<StorageItem> getFolderContents(String path, String startAfter, int limit) throws Exception {
+        List<StorageItem> items = new ArrayList<>();
+        boolean folderFound = startAfter != null;
+
+        ListObjectsArgs.Builder args = ListObjectsArgs.builder()
+                .bucket(usersBucketName)
+                .prefix(path)
+                .delimiter("/")
+                .recursive(false)
+                .includeUserMetadata(true)
+                .maxKeys(limit + 1);
+        if (startAfter != null) {
+            args.startAfter(startAfter);
+        }
+
+        // Клиент отдаёт файлы страницы раньше её общих префиксов, поэтому читается ровно одна страница
+        // (не больше maxKeys записей, иначе клиент запросит следующую) и упорядочивается по ключу
+        List<Item> page = new ArrayList<>(limit + 1);
+        for (Result<Item> foundItem : minioClient.listObjects(args.build())) {
+            folderFound = true;
+            page.add(foundItem.get());
+            if (page.size() == limit + 1) {
+                break;
+            }
+        }
+        page.sort(Comparator.comparing(Item::objectName));
+
+        for (Item item : page) {
+            String itemPath = item.objectName();
+
+            // подпапка, на которой закончилась предыдущая страница, возвращается повторно как общий префикс
+            if (itemPath.equals(path) || itemPath.equals(startAfter)) {
+                continue;
+            }
+
+            String relativePath = PathUtil.removeRootFolder(itemPath);
+            items.add(new StorageItem(relativePath, relativePath.endsWith("/"), StorageCodec.logicalSize(item.userMetadata(), item.size())));
+            if (items.size() == limit) {
+                break;
+            }
+        }
+
+        if (!folderFound) {
+            throw new FolderNotFoundException(PathUtil.removeRootFolder(path));
+        }
+
+        return items;
+    }
+
+    @Override
+    public boolean exists(String fullPath) throws Exception {
+        if (fullPath.endsWith("//")) {
+            return false;
+        }
+        try {
+            minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(fullPath)
+                            .build()
+            );
+            return true;
+        } catch (ErrorResponseException e) {
+            if (e.errorResponse().code().equals("NoSuchKey")) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String resolveObjectKey(String fullPath) {
+        return fullPath;
+    }
+
+    @Override
+    public Optional<StorageObjectInfo> find(String fullPath) throws Exception {
+        try {
+            StatObjectResponse stat = minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(fullPath)
+                            .build()
+            );
+            boolean isFolder = fullPath.endsWith("/");
+            return Optional.of(new StorageObjectInfo(fullPath, isFolder,
+                    isFolder ? 0 : StorageCodec.logicalSize(stat.userMetadata(), stat.size()), stat.etag(),
+                    stat.lastModified().toInstant(), null));
+        } catch (ErrorResponseException e) {
+            if (e.errorResponse().code().equals("NoSuchKey")) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public List<StorageObjectInfo> getAllDescendants(String folderPath) throws Exception {
+        Iterable<Result<Item>> foundItems = minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(usersBucketName)
+                        .startAfter(folderPath)
+                        .prefix(folderPath)
+                        .recursive(true)
+                        .includeUserMetadata(true)
+                        .build()
+        );
+
+        List<StorageObjectInfo> objects = new ArrayList<>();
+        for (Result<Item> foundItem : foundItems) {
+            Item item = foundItem.get();
+            boolean isFolder = item.objectName().endsWith("/");
+            objects.add(new StorageObjectInfo(item.objectName(), isFolder, isFolder ? 0 : StorageCodec.logicalSize(item.userMetadata(), item.size()), item.etag(),
+                    item.lastModified() != null ? item.lastModified().toInstant() : null, null));
+        }
+        return objects;
+    }
+
+    @Override
+    public void add(StorageObjectInfo object) {
+    }
+
+    @Override
+    public void addAll(Collection<StorageObjectInfo> objects) {
+    }
+
+    @Override
+    public void remove(String fullPath) {
+    }
+
+    @Override
+    public void move(String oldFullPath, String newFullPath) {
+    }
+}
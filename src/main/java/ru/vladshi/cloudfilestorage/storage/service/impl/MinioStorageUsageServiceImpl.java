@@ -1,99 +1,132 @@
 package ru.vladshi.cloudfilestorage.storage.service.impl;
 
 import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
 import io.minio.Result;
 import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
-import ru.vladshi.cloudfilestorage.storage.exception.StorageLimitExceededException;
-import ru.vladshi.cloudfilestorage.storage.model.StorageUsageInfo;
-import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
-import ru.vladshi.cloudfilestorage.storage.service.StorageUsageService;
-import ru.vladshi.cloudfilestorage.storage.util.SizeFormatter;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractStorageUsageService;
 
-import java.util.Arrays;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
 
 @Service
-public class MinioStorageUsageServiceImpl extends AbstractMinioService implements StorageUsageService {
+@Slf4j
+@ConditionalOnProperty(name = "storage.index.enabled", havingValue = "false")
+public class MinioStorageUsageServiceImpl extends AbstractStorageUsageService {
 
-    private final String maxSizePerUser;
+    private static final String RESERVED_KEY_PREFIX = "storage-reserved:";
+    private static final String RESERVATION_KEY_PREFIX = "storage-reservation:";
+    private static final String EXPIRY_KEY = "storage-reservations:expiry";
+    // Резерв добавляется к счётчику, только если вместе с занятым местом он укладывается в лимит
+    private static final RedisScript<Long> RESERVE_SCRIPT = RedisScript.of("""
+            local reserved = redis.call('INCRBY', KEYS[1], ARGV[1])
+            if reserved + tonumber(ARGV[2]) > tonumber(ARGV[3]) then
+                if redis.call('DECRBY', KEYS[1], ARGV[1]) <= 0 then
+                    redis.call('DEL', KEYS[1])
+                end
+                return 0
+            end
+            redis.call('HSET', KEYS[2], 'userPrefix', ARGV[6], 'bytes', ARGV[1])
+            redis.call('ZADD', KEYS[3], ARGV[5], ARGV[4])
+            return 1
+            """, Long.class);
+    // Снимает резерв один раз: повторное освобождение и очистка уже снятого резерва ничего не делают
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of("""
+            local bytes = redis.call('HGET', KEYS[2], 'bytes')
+            if not bytes then
+                redis.call('ZREM', KEYS[3], ARGV[1])
+                return 0
+            end
+            redis.call('DEL', KEYS[2])
+            redis.call('ZREM', KEYS[3], ARGV[1])
+            if redis.call('DECRBY', KEYS[1], bytes) <= 0 then
+                redis.call('DEL', KEYS[1])
+            end
+            return 1
+            """, Long.class);
+
+    private final MinioClient minioClient;
+    private final String usersBucketName;
+    private final StringRedisTemplate redisTemplate;
 
     @Autowired
     public MinioStorageUsageServiceImpl(MinioClientProvider minioClientProvider,
-                                        @Value("${storage.max-size-per-user:40MB}") String maxSizePerUser) {
-        super(minioClientProvider);
-        this.maxSizePerUser = maxSizePerUser;
+                                        StringRedisTemplate redisTemplate,
+                                        @Value("${storage.max-size-per-user:40MB}") String maxSizePerUser,
+                                        @Value("${storage.usage.reservation-ttl:PT1H}") Duration reservationTtl) {
+        super(maxSizePerUser, reservationTtl);
+        this.minioClient = minioClientProvider.getMinioClient();
+        this.usersBucketName = minioClientProvider.getUsersBucketName();
+        this.redisTemplate = redisTemplate;
     }
 
     @Override
-    public StorageUsageInfo getInfo(String userPrefix) throws Exception {
-        long currentSize = getUserStorageSize(userPrefix);
-        long maxSize = getMaxStorageSize();
-        return new StorageUsageInfo(currentSize, maxSize);
-    }
-
-    private long getUserStorageSize(String userPrefix) throws Exception {
+    protected long getUserStorageSize(String userPrefix) throws Exception {
         long totalSize = 0;
         Iterable<Result<Item>> objects = minioClient.listObjects(
                 ListObjectsArgs.builder()
                         .bucket(usersBucketName)
                         .prefix(userPrefix)
                         .recursive(true)
+                        .includeUserMetadata(true)
                         .build()
         );
 
         for (Result<Item> result : objects) {
             Item item = result.get();
             if (!item.isDir()) {
-                totalSize += item.size();
+                totalSize += StorageCodec.logicalSize(item.userMetadata(), item.size());
             }
         }
         return totalSize;
     }
 
-    public long getMaxStorageSize() {
-        return parseSize(maxSizePerUser);
-    }
-
-    private long parseSize(String sizeStr) {
-        sizeStr = sizeStr.trim().toUpperCase();
-        if (sizeStr.endsWith("MB")) {
-            return Long.parseLong(sizeStr.replace("MB", "")) * 1024 * 1024;
-        } else if (sizeStr.endsWith("GB")) {
-            return Long.parseLong(sizeStr.replace("GB", "")) * 1024 * 1024 * 1024;
-        } else if (sizeStr.endsWith("KB")) {
-            return Long.parseLong(sizeStr.replace("KB", "")) * 1024;
-        } else {
-            return Long.parseLong(sizeStr);
-        }
-    }
-
+    // Резервы хранятся в Redis и общие для всех узлов: счётчик пользователя и запись каждого резерва
+    // со сроком в множестве истечения. Занятое место считается до добавления резерва, а резерв освобождается
+    // только после записи объекта, поэтому завершившаяся загрузка учитывается хотя бы одним из слагаемых.
     @Override
-    public void checkLimit(String userPrefix, MultipartFile file) throws Exception {
-        long uploadSize = file.getSize();
-        checkStorageLimit(userPrefix, uploadSize);
+    protected boolean tryReserve(String userPrefix, String reservationId, long bytes, Instant expiresAt)
+            throws Exception {
+        long usedBytes = getUserStorageSize(userPrefix);
+        Long reserved = redisTemplate.execute(RESERVE_SCRIPT, keys(userPrefix, reservationId),
+                String.valueOf(bytes), String.valueOf(usedBytes), String.valueOf(getMaxStorageSize()),
+                reservationId, String.valueOf(expiresAt.toEpochMilli()), userPrefix);
+        return reserved != null && reserved == 1;
     }
 
     @Override
-    public void checkLimit(String userPrefix, MultipartFile[] files) throws Exception {
-        long uploadSize = Arrays.stream(files)
-                .filter(file -> file != null)
-                .mapToLong(MultipartFile::getSize)
-                .sum();
-        checkStorageLimit(userPrefix, uploadSize);
+    public void release(String userPrefix, String reservationId) {
+        redisTemplate.execute(RELEASE_SCRIPT, keys(userPrefix, reservationId), reservationId);
     }
 
-    private void checkStorageLimit(String userPrefix, long uploadSize) throws Exception {
-        long currentSize = getUserStorageSize(userPrefix);
-        long maxSize = getMaxStorageSize();
-        long availableSize = maxSize - currentSize;
-
-        if (uploadSize > availableSize) {
-            throw new StorageLimitExceededException(
-                    "Storage limit exceeded: available " + SizeFormatter.formatSize(availableSize)
-                            + ", uploading " + SizeFormatter.formatSize(uploadSize));
+    @Scheduled(fixedDelayString = "${storage.usage.reservation-cleanup-interval:PT5M}")
+    public void releaseExpiredReservations() {
+        Set<String> expiredIds = redisTemplate.opsForZSet().rangeByScore(EXPIRY_KEY, 0, System.currentTimeMillis());
+        if (expiredIds == null || expiredIds.isEmpty()) {
+            return;
+        }
+        for (String reservationId : expiredIds) {
+            Object userPrefix = redisTemplate.opsForHash().get(RESERVATION_KEY_PREFIX + reservationId, "userPrefix");
+            if (userPrefix == null) {
+                redisTemplate.opsForZSet().remove(EXPIRY_KEY, reservationId);
+                continue;
+            }
+            release((String) userPrefix, reservationId);
         }
+        log.info("Released {} expired storage reservations", expiredIds.size());
+    }
+
+    private static List<String> keys(String userPrefix, String reservationId) {
+        return List.of(RESERVED_KEY_PREFIX + userPrefix, RESERVATION_KEY_PREFIX + reservationId, EXPIRY_KEY);
     }
 }
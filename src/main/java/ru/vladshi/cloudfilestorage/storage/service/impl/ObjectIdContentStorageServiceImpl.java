@@ -0,0 +1,146 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.CopyObjectArgs;
+import io.minio.CopySource;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.model.UploadObject;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentStorageService;
+
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Содержимое каждого файла хранится в MinIO под неизменяемым ключом {@code objects/<uuid>}, а путь файла
+ * существует только в индексе. Переименование и перемещение файлов и папок меняют только строки индекса
+ * и не обращаются к MinIO, сколько бы файлов ни было в папке. Папки хранятся только в индексе.
+ * <p>
+ * Файлы, загруженные до включения, остаются по своим путям и обслуживаются как раньше, пока их не перенесёт
+ * {@link ObjectIdMigrationServiceImpl}. Требует индекса в MySQL ({@code storage.index.enabled=true}), который
+ * становится единственным источником путей: восстановить его из листинга бакета нельзя.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "storage.object-ids.enabled", havingValue = "true")
+public class ObjectIdContentStorageServiceImpl extends AbstractMinioService implements ContentStorageService {
+
+    // Префиксы пользователей начинаются с идентификатора, поэтому с этим префиксом не пересекаются
+    public static final String OBJECT_PREFIX = "objects/";
+
+    private final StorageCodec storageCodec;
+    private final FolderUploader folderUploader;
+
+    @Autowired
+    public ObjectIdContentStorageServiceImpl(
+            MinioClientProvider minioClientProvider,
+            StorageCodec storageCodec,
+            FolderUploader folderUploader,
+            @Value("${storage.index.enabled:true}") boolean indexEnabled,
+            @Value("${storage.dedup.enabled:false}") boolean dedupEnabled) {
+        super(minioClientProvider);
+        if (!indexEnabled) {
+            throw new IllegalStateException("storage.object-ids.enabled requires storage.index.enabled=true");
+        }
+        if (dedupEnabled) {
+            throw new IllegalStateException("storage.object-ids.enabled cannot be combined with storage.dedup.enabled");
+        }
+        this.storageCodec = storageCodec;
+        this.folderUploader = folderUploader;
+    }
+
+    public static boolean isObjectIdKey(String objectKey) {
+        return objectKey != null && objectKey.startsWith(OBJECT_PREFIX);
+    }
+
+    public static String newObjectKey() {
+        return OBJECT_PREFIX + UUID.randomUUID();
+    }
+
+    @Override
+    public StorageObjectInfo store(String fullPath, InputStream inputStream, long size) throws Exception {
+        String objectKey = newObjectKey();
+        String etag = storageCodec.upload(objectKey, fullPath, inputStream, size);
+        return StorageObjectInfo.file(fullPath, size, etag, objectKey);
+    }
+
+    @Override
+    public List<StorageObjectInfo> storeAll(List<UploadObject> objects) throws Exception {
+        // Ключи выбираются заранее, чтобы мелкие файлы можно было отправить пакетами
+        Map<UploadObject, String> objectKeys = new IdentityHashMap<>();
+        List<UploadObject> files = new ArrayList<>();
+        for (UploadObject object : objects) {
+            if (!object.isFolder()) {
+                objectKeys.put(object, newObjectKey());
+                files.add(object);
+            }
+        }
+        List<StorageObjectInfo> planned = files.stream()
+                .map(file -> StorageObjectInfo.file(file.path(), file.size(), null, objectKeys.get(file)))
+                .toList();
+        Map<String, String> etags = folderUploader.upload(files, objectKeys::get, () -> discard(planned));
+
+        return objects.stream()
+                .map(object -> object.isFolder()
+                        ? StorageObjectInfo.folder(object.path())
+                        : StorageObjectInfo.file(object.path(), object.size(),
+                                etags.get(objectKeys.get(object)), objectKeys.get(object)))
+                .toList();
+    }
+
+    @Override
+    public StorageObjectInfo adopt(String fullPath, String stagedKey, long size) throws Exception {
+        String objectKey = newObjectKey();
+        String etag = minioClient.copyObject(
+                CopyObjectArgs.builder()
+                        .bucket(usersBucketName)
+                        .object(objectKey)
+                        .source(CopySource.builder()
+                                .bucket(usersBucketName)
+                                .object(stagedKey)
+                                .build())
+                        .build()
+        ).etag();
+        return StorageObjectInfo.file(fullPath, size, etag, objectKey);
+    }
+
+    @Override
+    public boolean storesByPath() {
+        return false;
+    }
+
+    // Строки индекса уже удалены, поэтому неудача не возвращается пользователю: объект остаётся в бакете
+    // без ссылок и только занимает место
+    @Override
+    public void discard(Collection<StorageObjectInfo> objects) {
+        List<String> objectKeys = objects.stream()
+                .map(StorageObjectInfo::objectKey)
+                .filter(ObjectIdContentStorageServiceImpl::isObjectIdKey)
+                .toList();
+        for (int from = 0; from < objectKeys.size(); from += DELETE_BATCH_SIZE) {
+            List<String> batch = objectKeys.subList(from, Math.min(from + DELETE_BATCH_SIZE, objectKeys.size()));
+            try {
+                Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                        RemoveObjectsArgs.builder()
+                                .bucket(usersBucketName)
+                                .objects(batch.stream().map(DeleteObject::new).toList())
+                                .build()
+                );
+                for (Result<DeleteError> result : results) {
+                    DeleteError error = result.get();
+                    log.warn("Failed to remove object {}: {}", error.objectName(), error.message());
+                }
+            } catch (Exception e) {
+                log.warn("Failed to remove {} objects", batch.size(), e);
+            }
+        }
+    }
+}
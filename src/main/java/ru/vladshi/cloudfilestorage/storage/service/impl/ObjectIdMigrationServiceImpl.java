@@ -0,0 +1,230 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.CopyObjectArgs;
+import io.minio.CopySource;
+import io.minio.ListObjectsArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageObject;
+import ru.vladshi.cloudfilestorage.storage.model.ObjectIdMigrationReport;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageObjectRepository;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.ObjectIdMigrationService;
+import ru.vladshi.cloudfilestorage.storage.service.StorageIndexService;
+import ru.vladshi.cloudfilestorage.storage.service.UserPrefixService;
+import ru.vladshi.cloudfilestorage.user.entity.User;
+import ru.vladshi.cloudfilestorage.user.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Перевод файлов, загруженных до включения {@code storage.object-ids.enabled}, с хранения по путям
+ * на неизменяемые ключи {@code objects/<uuid>}.
+ * <p>
+ * Префикс каждого пользователя просматривается в MinIO: файл копируется на стороне хранилища под новый ключ,
+ * ключ записывается в строку индекса, после чего объект по пути удаляется. Строка меняется, только если файл
+ * всё ещё лежит по тому же пути без ключа; иначе (файл переименовали или удалили во время миграции) копия
+ * удаляется. Маркеры папок, известных индексу, удаляются после файлов. Миграцию можно прерывать
+ * и запускать повторно: перенесённые объекты под префиксом пользователя уже не встречаются.
+ * <p>
+ * Запускается по расписанию {@code storage.object-ids.migration.cron} (по умолчанию выключено).
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "storage.object-ids.enabled", havingValue = "true")
+public class ObjectIdMigrationServiceImpl extends AbstractMinioService implements ObjectIdMigrationService {
+
+    private static final int USERS_PAGE_SIZE = 500;
+
+    private final UserRepository userRepository;
+    private final StorageObjectRepository storageObjectRepository;
+    private final StorageIndexService storageIndexService;
+    private final UserPrefixService userPrefixService;
+    private final int parallelism;
+    private final AtomicReference<ObjectIdMigrationReport> lastReport = new AtomicReference<>();
+
+    @Autowired
+    public ObjectIdMigrationServiceImpl(
+            MinioClientProvider minioClientProvider,
+            UserRepository userRepository,
+            StorageObjectRepository storageObjectRepository,
+            StorageIndexService storageIndexService,
+            UserPrefixService userPrefixService,
+            @Value("${storage.object-ids.migration.parallelism:8}") int parallelism) {
+        super(minioClientProvider);
+        this.userRepository = userRepository;
+        this.storageObjectRepository = storageObjectRepository;
+        this.storageIndexService = storageIndexService;
+        this.userPrefixService = userPrefixService;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Scheduled(cron = "${storage.object-ids.migration.cron:-}")
+    public void scheduledMigrate() {
+        migrate();
+    }
+
+    @Override
+    public ObjectIdMigrationReport migrate() {
+        long startedAt = System.nanoTime();
+        int usersScanned = 0;
+        AtomicLong filesMigrated = new AtomicLong();
+        AtomicLong folderMarkersRemoved = new AtomicLong();
+        AtomicInteger failures = new AtomicInteger();
+
+        Pageable pageable = PageRequest.of(0, USERS_PAGE_SIZE, Sort.by("id"));
+        Page<User> users;
+        do {
+            users = userRepository.findAll(pageable);
+            for (User user : users) {
+                String userPrefix = userPrefixService.buildUserPrefix(user.getId(), user.getUsername());
+                try {
+                    migrateUser(userPrefix, filesMigrated, folderMarkersRemoved, failures);
+                    usersScanned++;
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    log.warn("Failed to migrate objects of {} to object ids", userPrefix, e);
+                }
+            }
+            pageable = users.nextPageable();
+        } while (users.hasNext());
+
+        ObjectIdMigrationReport report = new ObjectIdMigrationReport(usersScanned, filesMigrated.get(),
+                folderMarkersRemoved.get(), failures.get(), Duration.ofNanos(System.nanoTime() - startedAt));
+        lastReport.set(report);
+        log.info("Object id migration finished: users={}, files={}, folderMarkers={}, failures={}, duration={}ms",
+                report.usersScanned(), report.filesMigrated(), report.folderMarkersRemoved(), report.failures(),
+                report.duration().toMillis());
+        return report;
+    }
+
+    @Override
+    public ObjectIdMigrationReport getLastReport() {
+        return lastReport.get();
+    }
+
+    private void migrateUser(String userPrefix, AtomicLong filesMigrated, AtomicLong folderMarkersRemoved,
+                             AtomicInteger failures) throws Exception {
+        // Индекс пользователя строится из листинга по путям, поэтому до переноса объектов он должен существовать
+        if (!storageIndexService.exists(userPrefix)) {
+            return;
+        }
+
+        List<String> folderMarkers = new ArrayList<>();
+        Semaphore permits = new Semaphore(parallelism);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Iterable<Result<Item>> objects = minioClient.listObjects(
+                    ListObjectsArgs.builder()
+                            .bucket(usersBucketName)
+                            .prefix(userPrefix)
+                            .recursive(true)
+                            .build()
+            );
+            for (Result<Item> result : objects) {
+                String objectName = result.get().objectName();
+                if (objectName.endsWith("/")) {
+                    folderMarkers.add(objectName);
+                    continue;
+                }
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        if (migrateFile(objectName)) {
+                            filesMigrated.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                        log.warn("Failed to migrate {} to an object id", objectName, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+
+        // Маркер папки, которой нет в индексе, остаётся: без него папка пропала бы
+        List<String> indexedMarkers = folderMarkers.stream()
+                .filter(storageObjectRepository::existsByPath)
+                .toList();
+        for (int from = 0; from < indexedMarkers.size(); from += DELETE_BATCH_SIZE) {
+            List<String> batch = indexedMarkers.subList(from, Math.min(from + DELETE_BATCH_SIZE, indexedMarkers.size()));
+            folderMarkersRemoved.addAndGet(removeAll(batch));
+        }
+    }
+
+    private boolean migrateFile(String path) throws Exception {
+        Optional<StorageObject> entity = storageObjectRepository.findByPath(path);
+        if (entity.isEmpty() || entity.get().isFolder() || entity.get().getObjectKey() != null) {
+            log.debug("Skipping {}: it is not a file stored by path in the index", path);
+            return false;
+        }
+
+        String objectKey = ObjectIdContentStorageServiceImpl.newObjectKey();
+        // Метаданные (в том числе признак сжатия) копируются вместе с содержимым
+        minioClient.copyObject(
+                CopyObjectArgs.builder()
+                        .bucket(usersBucketName)
+                        .object(objectKey)
+                        .source(CopySource.builder()
+                                .bucket(usersBucketName)
+                                .object(path)
+                                .build())
+                        .build()
+        );
+
+        if (storageObjectRepository.assignObjectKey(path, objectKey) == 0) {
+            remove(objectKey);
+            return false;
+        }
+        remove(path);
+        return true;
+    }
+
+    private void remove(String objectName) throws Exception {
+        minioClient.removeObject(
+                RemoveObjectArgs.builder()
+                        .bucket(usersBucketName)
+                        .object(objectName)
+                        .build()
+        );
+    }
+
+    private int removeAll(List<String> objectNames) throws Exception {
+        Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                RemoveObjectsArgs.builder()
+                        .bucket(usersBucketName)
+                        .objects(objectNames.stream().map(DeleteObject::new).toList())
+                        .build()
+        );
+        int failed = 0;
+        for (Result<DeleteError> result : results) {
+            DeleteError error = result.get();
+            log.warn("Failed to remove folder marker {}: {}", error.objectName(), error.message());
+            failed++;
+        }
+        return objectNames.size() - failed;
+    }
+}
@@ -0,0 +1,178 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.GetObjectArgs;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.util.SizeFormatter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Чтение файлов по порядку с упреждающей загрузкой следующих: пока получатель обрабатывает текущий файл,
+ * до {@code storage.download.prefetch.parallelism} следующих уже запрашиваются из MinIO и целиком
+ * буферизуются в памяти. Бюджет {@code memory-budget} общий для всех одновременных скачиваний: когда он
+ * занят, файлы не загружаются заранее, а читаются потоком в свою очередь. Файлы от
+ * {@code direct-threshold} не буферизуются никогда. Для папок из тысяч мелких файлов время сборки архива
+ * перестаёт складываться из задержек отдельных запросов.
+ */
+@Component
+@Slf4j
+public class ObjectPrefetcher extends AbstractMinioService {
+
+    private final StorageCodec storageCodec;
+    private final int parallelism;
+    private final long directThreshold;
+    // Одно разрешение на байт буфера; бюджет ограничен максимумом int, что больше любого разумного значения
+    private final Semaphore memory;
+
+    @Autowired
+    public ObjectPrefetcher(MinioClientProvider minioClientProvider,
+                            StorageCodec storageCodec,
+                            @Value("${storage.download.prefetch.parallelism:8}") int parallelism,
+                            @Value("${storage.download.prefetch.memory-budget:64MB}") String memoryBudget,
+                            @Value("${storage.download.prefetch.direct-threshold:4MB}") String directThreshold) {
+        super(minioClientProvider);
+        this.storageCodec = storageCodec;
+        this.parallelism = Math.max(1, parallelism);
+        int budget = (int) Math.min(SizeFormatter.parseSize(memoryBudget), Integer.MAX_VALUE);
+        this.memory = new Semaphore(budget);
+        this.directThreshold = Math.min(SizeFormatter.parseSize(directThreshold), budget);
+    }
+
+    /**
+     * @param files файлы в том порядке, в котором их будет читать получатель
+     */
+    public Session open(List<StorageObjectInfo> files) {
+        return new Session(files);
+    }
+
+    /**
+     * Последовательное чтение файлов; закрытие отменяет ещё не полученные загрузки.
+     */
+    public final class Session implements AutoCloseable {
+
+        private final List<StorageObjectInfo> files;
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        // Загрузки по номеру файла в списке
+        private final Map<Integer, Future<byte[]>> prefetched = new HashMap<>();
+        private int nextToRead;
+        private int nextToFetch;
+        private int currentBytes;
+
+        private Session(List<StorageObjectInfo> files) {
+            this.files = files;
+        }
+
+        /**
+         * Содержимое следующего файла списка.
+         */
+        public InputStream next() throws IOException {
+            if (nextToRead >= files.size()) {
+                throw new IllegalStateException("All files have already been read");
+            }
+            // Буфер предыдущего файла уже записан получателем
+            memory.release(currentBytes);
+            currentBytes = 0;
+
+            fill();
+            StorageObjectInfo file = files.get(nextToRead);
+            Future<byte[]> future = prefetched.remove(nextToRead);
+            nextToRead++;
+            if (future == null) {
+                // Крупный файл или файл, на который не хватило общего бюджета памяти
+                fill();
+                return openObject(file);
+            }
+
+            currentBytes = (int) file.size();
+            byte[] content = await(future, file);
+            fill();
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public void close() {
+            prefetched.values().forEach(future -> future.cancel(true));
+            executor.shutdownNow();
+            int reserved = currentBytes;
+            for (int index : prefetched.keySet()) {
+                reserved += (int) files.get(index).size();
+            }
+            prefetched.clear();
+            currentBytes = 0;
+            memory.release(reserved);
+        }
+
+        // Запрашивает файлы начиная с текущего, пока есть свободные слоты и память
+        private void fill() {
+            nextToFetch = Math.max(nextToFetch, nextToRead);
+            while (nextToFetch < files.size() && prefetched.size() < parallelism) {
+                StorageObjectInfo file = files.get(nextToFetch);
+                // Крупный файл будет открыт в свою очередь, а следующие за ним загружаются заранее
+                if (isDirect(file)) {
+                    nextToFetch++;
+                    continue;
+                }
+                if (!memory.tryAcquire((int) file.size())) {
+                    // Текущий файл без буфера читается потоком, чтобы не ждать освобождения памяти
+                    if (nextToFetch == nextToRead) {
+                        nextToFetch++;
+                        continue;
+                    }
+                    return;
+                }
+                prefetched.put(nextToFetch, executor.submit(() -> readObject(file)));
+                nextToFetch++;
+            }
+        }
+
+        private byte[] await(Future<byte[]> future, StorageObjectInfo file) throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading " + file.path(), e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException cause) {
+                    throw cause;
+                }
+                throw new IOException("Failed to read object " + file.path(), e.getCause());
+            }
+        }
+    }
+
+    private boolean isDirect(StorageObjectInfo file) {
+        return file.size() >= directThreshold;
+    }
+
+    private byte[] readObject(StorageObjectInfo file) throws IOException {
+        try (InputStream inputStream = openObject(file)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private InputStream openObject(StorageObjectInfo file) throws IOException {
+        try {
+            return storageCodec.decode(minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(file.key())
+                            .build()
+            ));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to read object " + file.path(), e);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.CopyObjectArgs;
+import io.minio.CopySource;
+import io.minio.ListObjectsArgs;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.vladshi.cloudfilestorage.storage.exception.ObjectDeletionException;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Перенос всех объектов под префиксом на новый префикс копированием на стороне MinIO.
+ * <p>
+ * Листинг читается постранично и сразу передаётся в копирование, которое идёт одновременно, не больше
+ * {@code storage.folder.move.parallelism} объектов сразу. Исходные объекты удаляются пакетами
+ * по мере успешного копирования. Если копирование, листинг или удаление не удались, перенос
+ * откатывается: удалённые исходные объекты восстанавливаются из копий, копии удаляются.
+ */
+@Component
+@Slf4j
+public class ObjectPrefixMover extends AbstractMinioService {
+
+    private final int parallelism;
+
+    @Autowired
+    public ObjectPrefixMover(MinioClientProvider minioClientProvider,
+                             @Value("${storage.folder.move.parallelism:16}") int parallelism) {
+        super(minioClientProvider);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @return число перенесённых объектов; 0, если под префиксом нет объектов
+     */
+    public int move(String sourcePrefix, String targetPrefix) throws Exception {
+        Semaphore permits = new Semaphore(parallelism);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Queue<String> copied = new ConcurrentLinkedQueue<>();
+        Queue<String> awaitingDeletion = new ConcurrentLinkedQueue<>();
+        List<String> deleted = new ArrayList<>();
+        int moved = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Iterable<Result<Item>> listing = minioClient.listObjects(
+                    ListObjectsArgs.builder()
+                            .bucket(usersBucketName)
+                            .prefix(sourcePrefix)
+                            .recursive(true)
+                            .build()
+            );
+            try {
+                for (Result<Item> result : listing) {
+                    String source = result.get().objectName();
+                    permits.acquire();
+                    if (failure.get() != null) {
+                        permits.release();
+                        break;
+                    }
+                    moved++;
+                    executor.submit(() -> {
+                        try {
+                            copy(source, targetPrefix + source.substring(sourcePrefix.length()));
+                            copied.add(source);
+                            awaitingDeletion.add(source);
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                    if (awaitingDeletion.size() >= DELETE_BATCH_SIZE) {
+                        deleteBatch(awaitingDeletion, deleted);
+                    }
+                }
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        if (failure.get() == null) {
+            try {
+                while (!awaitingDeletion.isEmpty()) {
+                    deleteBatch(awaitingDeletion, deleted);
+                }
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        }
+
+        if (failure.get() != null) {
+            log.warn("Failed to move {} to {}: {} of {} objects copied, rolling back",
+                    sourcePrefix, targetPrefix, copied.size(), moved);
+            rollback(sourcePrefix, targetPrefix, List.copyOf(copied), deleted);
+            throw failure.get();
+        }
+        return moved;
+    }
+
+    // Копии удаляются, только если все удалённые исходные объекты восстановлены: иначе копия остаётся
+    // единственным экземпляром содержимого
+    private void rollback(String sourcePrefix, String targetPrefix, List<String> copied, List<String> deleted) {
+        Queue<String> notRestored = new ConcurrentLinkedQueue<>();
+        Semaphore permits = new Semaphore(parallelism);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String source : deleted) {
+                permits.acquireUninterruptibly();
+                executor.submit(() -> {
+                    try {
+                        copy(targetPrefix + source.substring(sourcePrefix.length()), source);
+                    } catch (Exception e) {
+                        notRestored.add(source);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+        if (!notRestored.isEmpty()) {
+            log.error("Failed to restore {} objects under {}; their copies under {} are kept",
+                    notRestored.size(), sourcePrefix, targetPrefix);
+            return;
+        }
+
+        try {
+            for (int from = 0; from < copied.size(); from += DELETE_BATCH_SIZE) {
+                delete(copied.subList(from, Math.min(from + DELETE_BATCH_SIZE, copied.size())).stream()
+                        .map(source -> targetPrefix + source.substring(sourcePrefix.length()))
+                        .toList());
+            }
+        } catch (Exception e) {
+            log.error("Failed to remove copies under {} after rollback", targetPrefix, e);
+        }
+    }
+
+    // Пакет считается удалённым до запроса: при ошибке часть его объектов могла быть уже удалена,
+    // а восстановление существующего объекта из копии безвредно
+    private void deleteBatch(Queue<String> awaitingDeletion, List<String> deleted) throws Exception {
+        List<String> batch = poll(awaitingDeletion, DELETE_BATCH_SIZE);
+        deleted.addAll(batch);
+        delete(batch);
+    }
+
+    private void copy(String source, String target) throws Exception {
+        minioClient.copyObject(
+                CopyObjectArgs.builder()
+                        .bucket(usersBucketName)
+                        .object(target)
+                        .source(CopySource.builder()
+                                .bucket(usersBucketName)
+                                .object(source)
+                                .build())
+                        .build()
+        );
+    }
+
+    private void delete(List<String> objectNames) throws Exception {
+        Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                RemoveObjectsArgs.builder()
+                        .bucket(usersBucketName)
+                        .objects(objectNames.stream().map(DeleteObject::new).toList())
+                        .build()
+        );
+        for (Result<DeleteError> result : results) {
+            DeleteError error = result.get();
+            log.error("Failed to delete object: {}. {}", error.objectName(), error.message());
+            throw new ObjectDeletionException(PathUtil.removeRootFolder(error.objectName()));
+        }
+    }
+
+    private static List<String> poll(Queue<String> queue, int limit) {
+        List<String> batch = new ArrayList<>(limit);
+        String objectName;
+        while (batch.size() < limit && (objectName = queue.poll()) != null) {
+            batch.add(objectName);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,175 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.PutObjectArgs;
+import io.minio.messages.Part;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.vladshi.cloudfilestorage.storage.config.MinioMultipartClient;
+import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.util.SizeFormatter;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Загрузка объекта известного размера в MinIO.
+ * <p>
+ * Небольшие объекты передаются одним {@code putObject}. Объекты от {@code parallel-threshold} загружаются
+ * multipart-загрузкой: входной поток последовательно читается в кольцо из {@code parallelism} буферов
+ * размером с часть, а заполненные части отправляются одновременно по отдельным соединениям.
+ * Чтение ждёт свободного буфера, поэтому на одну загрузку в памяти не больше {@code parallelism} частей.
+ * <p>
+ * Буферы берутся из бюджета {@code memory-budget}, общего для всех одновременных загрузок. Загрузка ждёт
+ * память только на первый буфер, а остальные получает, пока бюджет не занят, поэтому при нехватке памяти
+ * части отправляются по одной.
+ */
+@Component
+@Slf4j
+public class ParallelPartUploader extends AbstractMinioService {
+
+    // Минимальный размер части S3, кроме последней
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PART_COUNT = 10_000;
+
+    private final MinioMultipartClient multipartClient;
+    private final long partSize;
+    private final int parallelism;
+    private final long parallelThreshold;
+    // Одно разрешение на байт буфера; бюджет ограничен максимумом int, что больше любого разумного значения
+    private final Semaphore memory;
+    private final int memoryBudget;
+
+    @Autowired
+    public ParallelPartUploader(MinioClientProvider minioClientProvider,
+                                MinioMultipartClient multipartClient,
+                                @Value("${storage.upload.part-size:16MB}") String partSize,
+                                @Value("${storage.upload.parallelism:4}") int parallelism,
+                                @Value("${storage.upload.parallel-threshold:64MB}") String parallelThreshold,
+                                @Value("${storage.upload.memory-budget:256MB}") String memoryBudget) {
+        super(minioClientProvider);
+        this.multipartClient = multipartClient;
+        this.partSize = Math.max(MIN_PART_SIZE, SizeFormatter.parseSize(partSize));
+        this.parallelism = Math.max(1, parallelism);
+        this.parallelThreshold = SizeFormatter.parseSize(parallelThreshold);
+        this.memoryBudget = (int) Math.min(SizeFormatter.parseSize(memoryBudget), Integer.MAX_VALUE);
+        this.memory = new Semaphore(this.memoryBudget);
+    }
+
+    /**
+     * @return ETag загруженного объекта
+     */
+    public String upload(String objectName, InputStream inputStream, long size) throws Exception {
+        if (size < parallelThreshold) {
+            return minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(objectName)
+                            .stream(inputStream, size, -1)
+                            .build()
+            ).etag();
+        }
+        return uploadParts(objectName, inputStream, size);
+    }
+
+    private String uploadParts(String objectName, InputStream inputStream, long size) throws Exception {
+        long objectPartSize = Math.max(partSize, (size + MAX_PART_COUNT - 1) / MAX_PART_COUNT);
+        int partCount = (int) ((size + objectPartSize - 1) / objectPartSize);
+
+        String uploadId = multipartClient.createMultipartUpload(usersBucketName, objectName);
+        try {
+            Part[] parts = uploadPartsConcurrently(objectName, uploadId, inputStream, size, objectPartSize, partCount);
+            return multipartClient.completeMultipartUpload(usersBucketName, objectName, uploadId, parts).etag();
+        } catch (Exception e) {
+            abortQuietly(objectName, uploadId);
+            throw e;
+        }
+    }
+
+    private Part[] uploadPartsConcurrently(String objectName, String uploadId, InputStream inputStream,
+                                           long size, long objectPartSize, int partCount) throws Exception {
+        // Часть крупнее всего бюджета занимает его целиком
+        int bufferPermits = (int) Math.min(objectPartSize, memoryBudget);
+        int bufferCount = reserveBuffers(bufferPermits, Math.min(parallelism, partCount));
+        List<Future<Part>> uploads = new ArrayList<>(partCount);
+        // Потоки частей завершаются до возврата памяти в бюджет
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+            for (int i = 0; i < bufferCount; i++) {
+                freeBuffers.add(new byte[(int) objectPartSize]);
+            }
+
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                byte[] buffer = freeBuffers.take();
+                // Буфер возвращается и после ошибки части: чтение остальных частей не имеет смысла
+                throwIfFailed(uploads);
+
+                int length = (int) Math.min(objectPartSize, size - (partNumber - 1) * objectPartSize);
+                if (inputStream.readNBytes(buffer, 0, length) != length) {
+                    throw new FileUploadingException("Upload stream ended before %s"
+                            .formatted(SizeFormatter.formatSize(size)));
+                }
+
+                int currentPartNumber = partNumber;
+                uploads.add(executor.submit(() -> {
+                    try {
+                        String etag = multipartClient.uploadPart(
+                                usersBucketName, objectName, uploadId, currentPartNumber, buffer, length);
+                        return new Part(currentPartNumber, etag);
+                    } finally {
+                        freeBuffers.add(buffer);
+                    }
+                }));
+            }
+        } finally {
+            memory.release(bufferPermits * bufferCount);
+        }
+
+        Part[] parts = new Part[partCount];
+        for (int i = 0; i < partCount; i++) {
+            parts[i] = getPart(uploads.get(i));
+        }
+        return parts;
+    }
+
+    // Первый буфер загрузка ждёт, остальные берёт только из свободной части бюджета
+    private int reserveBuffers(int bufferPermits, int maxBuffers) throws InterruptedException {
+        memory.acquire(bufferPermits);
+        int bufferCount = 1;
+        while (bufferCount < maxBuffers && memory.tryAcquire(bufferPermits)) {
+            bufferCount++;
+        }
+        if (bufferCount < maxBuffers) {
+            log.debug("Upload memory budget is exhausted, uploading {} of {} parts at once", bufferCount, maxBuffers);
+        }
+        return bufferCount;
+    }
+
+    private static void throwIfFailed(List<Future<Part>> uploads) throws Exception {
+        for (Future<Part> upload : uploads) {
+            if (upload.state() == Future.State.FAILED) {
+                getPart(upload);
+            }
+        }
+    }
+
+    private static Part getPart(Future<Part> upload) throws Exception {
+        try {
+            return upload.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    private void abortQuietly(String objectName, String uploadId) {
+        try {
+            multipartClient.abortMultipartUpload(usersBucketName, objectName, uploadId);
+        } catch (Exception e) {
+            log.warn("Failed to abort multipart upload {} of {}", uploadId, objectName, e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.CopyObjectArgs;
+import io.minio.CopySource;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.model.UploadObject;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.ContentStorageService;
+
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Содержимое каждого файла хранится в MinIO по его пути.
+ * <p>
+ * Папка загружается через {@link FolderUploader}. Если часть загрузки не удалась, уже загруженные объекты
+ * удаляются, чтобы папка не появилась в бакете без записи в индексе.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = {"storage.dedup.enabled", "storage.object-ids.enabled"}, havingValue = "false",
+        matchIfMissing = true)
+public class PathContentStorageServiceImpl extends AbstractMinioService implements ContentStorageService {
+
+    private final StorageCodec storageCodec;
+    private final FolderUploader folderUploader;
+
+    @Autowired
+    public PathContentStorageServiceImpl(MinioClientProvider minioClientProvider,
+                                         StorageCodec storageCodec,
+                                         FolderUploader folderUploader) {
+        super(minioClientProvider);
+        this.storageCodec = storageCodec;
+        this.folderUploader = folderUploader;
+    }
+
+    @Override
+    public StorageObjectInfo store(String fullPath, InputStream inputStream, long size) throws Exception {
+        String etag = storageCodec.upload(fullPath, fullPath, inputStream, size);
+        return StorageObjectInfo.file(fullPath, size, etag);
+    }
+
+    @Override
+    public List<StorageObjectInfo> storeAll(List<UploadObject> objects) throws Exception {
+        Map<String, String> etags = folderUploader.upload(objects, UploadObject::path, () -> removeQuietly(objects));
+
+        return objects.stream()
+                .map(object -> object.isFolder()
+                        ? StorageObjectInfo.folder(object.path())
+                        : StorageObjectInfo.file(object.path(), object.size(), etags.get(object.path())))
+                .toList();
+    }
+
+    @Override
+    public StorageObjectInfo adopt(String fullPath, String stagedKey, long size) throws Exception {
+        String etag = minioClient.copyObject(
+                CopyObjectArgs.builder()
+                        .bucket(usersBucketName)
+                        .object(fullPath)
+                        .source(CopySource.builder()
+                                .bucket(usersBucketName)
+                                .object(stagedKey)
+                                .build())
+                        .build()
+        ).etag();
+        return StorageObjectInfo.file(fullPath, size, etag);
+    }
+
+    @Override
+    public boolean storesByPath() {
+        return true;
+    }
+
+    // Всё содержимое лежит по путям и удаляется вместе с ними
+    @Override
+    public void discard(Collection<StorageObjectInfo> objects) {
+    }
+
+    private void removeQuietly(List<UploadObject> objects) {
+        try {
+            Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                    RemoveObjectsArgs.builder()
+                            .bucket(usersBucketName)
+                            .objects(objects.stream().map(object -> new DeleteObject(object.path())).toList())
+                            .build()
+            );
+            for (Result<DeleteError> result : results) {
+                DeleteError error = result.get();
+                log.warn("Failed to remove partially uploaded object {}: {}", error.objectName(), error.message());
+            }
+        } catch (Exception e) {
+            log.warn("Failed to remove partially uploaded objects", e);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import io.minio.GetObjectResponse;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import okhttp3.Headers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.util.HttpHeaderUtil;
+import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+import ru.vladshi.cloudfilestorage.storage.util.SizeFormatter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Сжатие при хранении: файлы сжимаемых типов записываются в MinIO в формате zstd, а кодек и исходный размер
+ * сохраняются в пользовательских метаданных объекта ({@code X-Amz-Meta-Codec}, {@code X-Amz-Meta-Original-Size}).
+ * При чтении содержимое распаковывается потоком, а в листингах и квотах учитывается исходный размер.
+ * <p>
+ * Размер сжатого объекта заранее неизвестен, поэтому он загружается частями {@code storage.upload.part-size}
+ * без параллельной отправки частей.
+ */
+@Component
+public class StorageCodec extends AbstractMinioService {
+
+    private static final String CODEC_METADATA = "codec";
+    private static final String ORIGINAL_SIZE_METADATA = "original-size";
+    private static final String USER_METADATA_HEADER_PREFIX = "x-amz-meta-";
+    private static final String ZSTD = "zstd";
+
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = Set.of(
+            "txt", "md", "csv", "tsv", "json", "ndjson", "xml", "yaml", "yml", "log", "ini", "properties", "sql",
+            "html", "htm", "css", "js", "ts", "java", "kt", "py", "go", "rs", "c", "h", "cpp", "hpp", "cs",
+            "rb", "php", "sh", "bat", "svg", "tex", "rtf");
+    private static final Set<String> COMPRESSIBLE_MIME_TYPES = Set.of(
+            "application/json", "application/xml", "application/javascript", "application/sql",
+            "application/x-yaml", "application/x-sh", "image/svg+xml");
+
+    private final ParallelPartUploader parallelPartUploader;
+    private final boolean enabled;
+    private final long minSize;
+    private final int level;
+    private final long partSize;
+
+    @Autowired
+    public StorageCodec(MinioClientProvider minioClientProvider,
+                        ParallelPartUploader parallelPartUploader,
+                        @Value("${storage.compression.enabled:false}") boolean enabled,
+                        @Value("${storage.compression.min-size:4KB}") String minSize,
+                        @Value("${storage.compression.level:3}") int level,
+                        @Value("${storage.upload.part-size:16MB}") String partSize) {
+        super(minioClientProvider);
+        this.parallelPartUploader = parallelPartUploader;
+        this.enabled = enabled;
+        this.minSize = SizeFormatter.parseSize(minSize);
+        this.level = level;
+        this.partSize = Math.max(5L * 1024 * 1024, SizeFormatter.parseSize(partSize));
+    }
+
+    public boolean shouldCompress(String fileName, long size) {
+        if (!enabled || size < minSize) {
+            return false;
+        }
+        String name = PathUtil.extractNameFromPath(fileName);
+        int dotIndex = name.lastIndexOf('.');
+        if (dotIndex > 0 && COMPRESSIBLE_EXTENSIONS.contains(name.substring(dotIndex + 1).toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        String mimeType = HttpHeaderUtil.buildContentType(name);
+        return mimeType.startsWith("text/") || COMPRESSIBLE_MIME_TYPES.contains(mimeType);
+    }
+
+    /**
+     * Загружает объект, сжимая его, если тип файла {@code fileName} сжимаем.
+     *
+     * @return ETag загруженного объекта
+     */
+    public String upload(String objectName, String fileName, InputStream inputStream, long size) throws Exception {
+        if (!shouldCompress(fileName, size)) {
+            return parallelPartUploader.upload(objectName, inputStream, size);
+        }
+
+        CompressingInputStream compressed = new CompressingInputStream(inputStream, level);
+        String etag = minioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(usersBucketName)
+                        .object(objectName)
+                        .stream(compressed, -1, partSize)
+                        .userMetadata(Map.of(
+                                CODEC_METADATA, ZSTD,
+                                ORIGINAL_SIZE_METADATA, String.valueOf(size)))
+                        .build()
+        ).etag();
+        if (compressed.sourceBytes() != size) {
+            // Размер известен только после записи: объект с неполным или лишним содержимым не должен остаться
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(usersBucketName)
+                            .object(objectName)
+                            .build()
+            );
+            throw new FileUploadingException("Upload stream size %d does not match declared size %d"
+                    .formatted(compressed.sourceBytes(), size));
+        }
+        return etag;
+    }
+
+    /**
+     * Поток с исходным содержимым объекта, полученного {@code getObject}.
+     */
+    public InputStream decode(GetObjectResponse response) throws IOException {
+        return isCompressed(response) ? new ZstdInputStream(response) : response;
+    }
+
+    /**
+     * Часть исходного содержимого объекта, полученного {@code getObject} целиком.
+     */
+    public InputStream decode(GetObjectResponse response, long offset, long length) throws IOException {
+        InputStream decoded = decode(response);
+        try {
+            decoded.skipNBytes(offset);
+        } catch (IOException e) {
+            decoded.close();
+            throw e;
+        }
+        return new BoundedInputStream(decoded, length);
+    }
+
+    public boolean isCompressed(GetObjectResponse response) {
+        return ZSTD.equals(response.headers().get(USER_METADATA_HEADER_PREFIX + CODEC_METADATA));
+    }
+
+    /**
+     * Исходный размер объекта по заголовкам ответа {@code getObject}.
+     */
+    public static long logicalSize(Headers headers, long storedSize) {
+        String originalSize = headers.get(USER_METADATA_HEADER_PREFIX + ORIGINAL_SIZE_METADATA);
+        return originalSize != null ? Long.parseLong(originalSize) : storedSize;
+    }
+
+    public static boolean isCompressed(Map<String, String> userMetadata) {
+        return ZSTD.equals(findMetadata(userMetadata, CODEC_METADATA));
+    }
+
+    /**
+     * Исходный размер объекта по метаданным из {@code statObject} или листинга с {@code includeUserMetadata}.
+     */
+    public static long logicalSize(Map<String, String> userMetadata, long storedSize) {
+        String originalSize = findMetadata(userMetadata, ORIGINAL_SIZE_METADATA);
+        return originalSize != null ? Long.parseLong(originalSize) : storedSize;
+    }
+
+    // statObject возвращает ключи без префикса, листинг — с префиксом и в другом регистре
+    private static String findMetadata(Map<String, String> userMetadata, String name) {
+        if (userMetadata == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+            String key = entry.getKey().toLowerCase(Locale.ROOT);
+            if (key.startsWith(USER_METADATA_HEADER_PREFIX)) {
+                key = key.substring(USER_METADATA_HEADER_PREFIX.length());
+            }
+            if (key.equals(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static final class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(InputStream source, long length) {
+            super(source);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = super.read();
+            if (value >= 0) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+
+    // Сжимает источник по мере чтения, без отдельного потока и без буферизации всего файла
+    private static final class CompressingInputStream extends InputStream {
+
+        private static final int CHUNK_SIZE = 128 * 1024;
+
+        private final InputStream source;
+        private final ByteArrayOutputStream compressedChunk = new ByteArrayOutputStream();
+        private final ZstdOutputStream zstd;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private byte[] pending = new byte[0];
+        private int position;
+        private long sourceBytes;
+        private boolean finished;
+
+        CompressingInputStream(InputStream source, int level) throws IOException {
+            this.source = source;
+            this.zstd = new ZstdOutputStream(compressedChunk, level);
+        }
+
+        long sourceBytes() {
+            return sourceBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            while (position == pending.length) {
+                if (finished) {
+                    return -1;
+                }
+                int read = source.read(chunk);
+                if (read < 0) {
+                    zstd.close();
+                    finished = true;
+                } else {
+                    zstd.write(chunk, 0, read);
+                    sourceBytes += read;
+                }
+                pending = compressedChunk.toByteArray();
+                compressedChunk.reset();
+                position = 0;
+            }
+            int count = Math.min(length, pending.length - position);
+            System.arraycopy(pending, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
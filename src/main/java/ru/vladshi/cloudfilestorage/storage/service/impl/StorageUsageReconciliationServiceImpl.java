@@ -0,0 +1,222 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import io.minio.ListObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.vladshi.cloudfilestorage.storage.model.UsageReconciliationReport;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageObjectRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageUsageRepository;
+import ru.vladshi.cloudfilestorage.storage.service.AbstractMinioService;
+import ru.vladshi.cloudfilestorage.storage.service.StorageUsageReconciliationService;
+import ru.vladshi.cloudfilestorage.storage.service.UserPrefixService;
+import ru.vladshi.cloudfilestorage.user.entity.User;
+import ru.vladshi.cloudfilestorage.user.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Периодическая сверка счётчиков {@code storage_usage} с индексом и индекса с содержимым бакета.
+ * <p>
+ * Занятый объём приводится к сумме размеров файлов пользователя в {@code storage_objects} одним запросом:
+ * индекс и счётчик меняются в одной транзакции, поэтому загрузка, идущая во время сверки, не учитывается
+ * дважды. Листинг бакета только сообщает о расхождении индекса с MinIO после сбоев между записью объекта
+ * и обновлением индекса или после ручных изменений в бакете; исправляет такое расхождение перестроение индекса.
+ * Пользователи обходятся на виртуальных потоках, число одновременных листингов ограничено, а запросы
+ * страниц листинга к MinIO равномерно распределены во времени.
+ * <p>
+ * Зарезервированный объём приводится к сумме записей {@code storage_reservations}.
+ * <p>
+ * Сверку выполняет один узел: запуск берёт блокировку в Redis на {@code lock-ttl}, остальные узлы его пропускают.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "storage.index.enabled", havingValue = "true", matchIfMissing = true)
+public class StorageUsageReconciliationServiceImpl extends AbstractMinioService
+        implements StorageUsageReconciliationService {
+
+    private static final int USERS_PAGE_SIZE = 500;
+    // Столько ключей MinIO возвращает за один запрос листинга
+    private static final int LIST_PAGE_SIZE = 1000;
+    private static final String LOCK_KEY = "storage-usage-reconciliation:lock";
+    private static final RedisScript<Long> UNLOCK_SCRIPT = RedisScript.of("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final UserRepository userRepository;
+    private final StorageUsageRepository storageUsageRepository;
+    private final StorageObjectRepository storageObjectRepository;
+    private final UserPrefixService userPrefixService;
+    private final StringRedisTemplate redisTemplate;
+    private final int parallelism;
+    private final long listIntervalNanos;
+    private final Duration lockTtl;
+    private final AtomicLong nextListRequestAt = new AtomicLong();
+
+    @Autowired
+    public StorageUsageReconciliationServiceImpl(
+            MinioClientProvider minioClientProvider,
+            UserRepository userRepository,
+            StorageUsageRepository storageUsageRepository,
+            StorageObjectRepository storageObjectRepository,
+            UserPrefixService userPrefixService,
+            StringRedisTemplate redisTemplate,
+            @Value("${storage.usage.reconciliation.parallelism:8}") int parallelism,
+            @Value("${storage.usage.reconciliation.list-requests-per-second:20}") int listRequestsPerSecond,
+            @Value("${storage.usage.reconciliation.lock-ttl:PT2H}") Duration lockTtl) {
+        super(minioClientProvider);
+        this.userRepository = userRepository;
+        this.storageUsageRepository = storageUsageRepository;
+        this.storageObjectRepository = storageObjectRepository;
+        this.userPrefixService = userPrefixService;
+        this.redisTemplate = redisTemplate;
+        this.parallelism = parallelism;
+        this.listIntervalNanos = TimeUnit.SECONDS.toNanos(1) / listRequestsPerSecond;
+        this.lockTtl = lockTtl;
+    }
+
+    @Scheduled(cron = "${storage.usage.reconciliation.cron:0 0 3 * * *}")
+    public void scheduledReconcile() {
+        if (reconcile().isEmpty()) {
+            log.info("Storage usage reconciliation is running on another node, skipping");
+        }
+    }
+
+    @Override
+    public Optional<UsageReconciliationReport> reconcile() {
+        String lockToken = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, lockToken, lockTtl))) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(reconcileAll());
+        } finally {
+            redisTemplate.execute(UNLOCK_SCRIPT, List.of(LOCK_KEY), lockToken);
+        }
+    }
+
+    private UsageReconciliationReport reconcileAll() {
+        long startedAt = System.nanoTime();
+        AtomicInteger usersScanned = new AtomicInteger();
+        AtomicLong objectsScanned = new AtomicLong();
+        AtomicInteger corrections = new AtomicInteger();
+        AtomicInteger reservedCorrections = new AtomicInteger();
+        AtomicInteger indexDrifts = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        Semaphore permits = new Semaphore(parallelism);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Pageable pageable = PageRequest.of(0, USERS_PAGE_SIZE, Sort.by("id"));
+            Page<User> users;
+            do {
+                users = userRepository.findAll(pageable);
+                for (User user : users) {
+                    String userPrefix = userPrefixService.buildUserPrefix(user.getId(), user.getUsername());
+                    permits.acquireUninterruptibly();
+                    executor.execute(() -> {
+                        try {
+                            if (storageUsageRepository.reconcileUsedBytes(userPrefix) > 0) {
+                                corrections.incrementAndGet();
+                                log.info("Corrected storage usage of {} from the index", userPrefix);
+                            }
+                            if (storageUsageRepository.reconcileReservedBytes(userPrefix) > 0) {
+                                reservedCorrections.incrementAndGet();
+                                log.info("Corrected reserved storage of {}", userPrefix);
+                            }
+                            if (hasIndexDrift(userPrefix, objectsScanned)) {
+                                indexDrifts.incrementAndGet();
+                            }
+                            usersScanned.incrementAndGet();
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                            log.warn("Failed to reconcile storage usage for {}", userPrefix, e);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+                pageable = users.nextPageable();
+            } while (users.hasNext());
+        }
+
+        UsageReconciliationReport report = new UsageReconciliationReport(usersScanned.get(), objectsScanned.get(),
+                corrections.get(), reservedCorrections.get(), indexDrifts.get(), failures.get(),
+                Duration.ofNanos(System.nanoTime() - startedAt));
+        log.info("Storage usage reconciliation finished: users={}, objects={}, corrections={}, reservedCorrections={}, "
+                        + "indexDrifts={}, failures={}, duration={}ms", report.usersScanned(), report.objectsScanned(),
+                report.corrections(), report.reservedCorrections(), report.indexDrifts(), report.failures(),
+                report.duration().toMillis());
+        return report;
+    }
+
+    // Сумма индекса читается до и после листинга: расхождением считается только отличие от обеих,
+    // чтобы загрузка или удаление во время листинга не принимались за рассинхронизацию
+    private boolean hasIndexDrift(String userPrefix, AtomicLong objectsScanned) throws Exception {
+        long indexedBefore = storageObjectRepository.sumSizeByUserPrefix(userPrefix);
+
+        long storedSize = 0;
+        long objectCount = 0;
+        awaitListRequestSlot();
+        Iterable<Result<Item>> objects = minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(usersBucketName)
+                        .prefix(userPrefix)
+                        .recursive(true)
+                        .includeUserMetadata(true)
+                        .build()
+        );
+        for (Result<Item> result : objects) {
+            Item item = result.get();
+            if (!item.isDir()) {
+                storedSize += StorageCodec.logicalSize(item.userMetadata(), item.size());
+            }
+            if (++objectCount % LIST_PAGE_SIZE == 0) {
+                awaitListRequestSlot();
+            }
+        }
+        objectsScanned.addAndGet(objectCount);
+        // Файлы в общих блобах не лежат под префиксом пользователя, их размер известен только индексу
+        storedSize += storageObjectRepository.sumSizeOfExternallyStoredObjects(userPrefix);
+
+        long indexedAfter = storageObjectRepository.sumSizeByUserPrefix(userPrefix);
+        if (storedSize == indexedBefore || storedSize == indexedAfter) {
+            return false;
+        }
+        log.warn("Index of {} differs from the bucket: indexed {} bytes, stored {} bytes",
+                userPrefix, indexedAfter, storedSize);
+        return true;
+    }
+
+    private void awaitListRequestSlot() {
+        long now = System.nanoTime();
+        long slot = nextListRequestAt.getAndUpdate(next -> Math.max(next, now) + listIntervalNanos);
+        long delay = Math.max(slot, now) - now;
+        if (delay > 0) {
+            LockSupport.parkNanos(delay);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Запись ZIP-архива в поток без перемотки. Каждая запись завершается дескриптором данных (бит 3 флагов),
+ * поэтому CRC и сжатый размер не нужны заранее — в том числе для записей без сжатия (STORED), которые
+ * {@code ZipOutputStream} пишет только при известной CRC. Поля Zip64 добавляются записям от 4 ГБ или
+ * лежащим дальше 4 ГБ от начала архива, а концу архива — при более чем 65535 записях.
+ * <p>
+ * Разметка архива детерминирована, поэтому размер архива из одних записей STORED вычисляется заранее
+ * ({@link #storedArchiveSize}). Такие архивы открывают читатели центрального каталога (unzip, 7-Zip,
+ * проводники Windows и macOS, {@code java.util.zip.ZipFile}); потоковый {@code ZipInputStream}
+ * записи STORED с дескриптором не читает.
+ */
+public final class StreamingZipWriter {
+
+    /**
+     * Уровень сжатия записи без сжатия (метод STORED).
+     */
+    public static final int STORED = 0;
+
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRY_LIMIT = 0xFFFF;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int LOCAL_ZIP64_EXTRA_SIZE = 20;
+    private static final int DATA_DESCRIPTOR_SIZE = 16;
+    private static final int ZIP64_DATA_DESCRIPTOR_SIZE = 24;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int CENTRAL_ZIP64_EXTRA_SIZE = 28;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int END_SIZE = 22;
+
+    // Дескриптор данных и имена в UTF-8
+    private static final int FLAGS = 0x0808;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    private static final int DIRECTORY_ATTRIBUTE = 0x10;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Имя записи и её исходный размер для расчёта размера архива.
+     */
+    public record EntrySize(String name, long size) {
+    }
+
+    private record CentralEntry(byte[] name, int method, long dosTime, long crc, long compressedSize, long size,
+                                long offset, boolean zip64, boolean directory) {
+    }
+
+    private final CountingOutputStream out;
+    private final List<CentralEntry> entries = new ArrayList<>();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    public StreamingZipWriter(OutputStream outputStream) {
+        this.out = new CountingOutputStream(outputStream);
+    }
+
+    public void addFolder(String name, Instant lastModified) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = out.count;
+        boolean zip64 = offset >= ZIP64_LIMIT;
+        long dosTime = dosTime(lastModified);
+        writeLocalHeader(nameBytes, METHOD_STORED, dosTime, zip64);
+        writeDataDescriptor(0, 0, 0, zip64);
+        entries.add(new CentralEntry(nameBytes, METHOD_STORED, dosTime, 0, 0, 0, offset, zip64, true));
+    }
+
+    /**
+     * @param size             исходный размер файла; для записи без сжатия должен совпасть с прочитанным
+     * @param compressionLevel уровень {@link Deflater} или {@link #STORED}
+     */
+    public void addFile(String name, Instant lastModified, long size, int compressionLevel,
+                        InputStream content) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        boolean stored = compressionLevel == STORED;
+        int method = stored ? METHOD_STORED : METHOD_DEFLATED;
+        long offset = out.count;
+        boolean zip64 = needsZip64(size, offset, stored);
+        long dosTime = dosTime(lastModified);
+        writeLocalHeader(nameBytes, method, dosTime, zip64);
+
+        CRC32 crc = new CRC32();
+        long dataStart = out.count;
+        long actualSize = 0;
+        if (stored) {
+            int read;
+            while ((read = content.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                actualSize += read;
+            }
+            if (actualSize != size) {
+                throw new ZipException("Entry %s has %d bytes instead of declared %d".formatted(name, actualSize, size));
+            }
+        } else {
+            Deflater deflater = new Deflater(compressionLevel, true);
+            try {
+                DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+                int read;
+                while ((read = content.read(buffer)) >= 0) {
+                    crc.update(buffer, 0, read);
+                    deflaterOut.write(buffer, 0, read);
+                    actualSize += read;
+                }
+                deflaterOut.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+        long compressedSize = out.count - dataStart;
+        if (!zip64 && (actualSize >= ZIP64_LIMIT || compressedSize >= ZIP64_LIMIT)) {
+            throw new ZipException("Entry %s exceeds 4 GB but was declared as %d bytes".formatted(name, size));
+        }
+
+        writeDataDescriptor(crc.getValue(), compressedSize, actualSize, zip64);
+        entries.add(new CentralEntry(nameBytes, method, dosTime, crc.getValue(), compressedSize, actualSize,
+                offset, zip64, false));
+    }
+
+    /**
+     * Записывает центральный каталог. Исходный поток не закрывается.
+     */
+    public void finish() throws IOException {
+        long centralDirectoryOffset = out.count;
+        for (CentralEntry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long centralDirectorySize = out.count - centralDirectoryOffset;
+
+        if (needsZip64End(entries.size(), centralDirectoryOffset, centralDirectorySize)) {
+            long zip64EndOffset = out.count;
+            writeInt(ZIP64_END_SIGNATURE);
+            writeLong(ZIP64_END_SIZE - 12);
+            writeShort(ZIP64_VERSION);
+            writeShort(ZIP64_VERSION);
+            writeInt(0);
+            writeInt(0);
+            writeLong(entries.size());
+            writeLong(entries.size());
+            writeLong(centralDirectorySize);
+            writeLong(centralDirectoryOffset);
+
+            writeInt(ZIP64_LOCATOR_SIGNATURE);
+            writeInt(0);
+            writeLong(zip64EndOffset);
+            writeInt(1);
+        }
+
+        writeInt(END_SIGNATURE);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(entries.size(), ZIP64_ENTRY_LIMIT));
+        writeShort(Math.min(entries.size(), ZIP64_ENTRY_LIMIT));
+        writeInt(Math.min(centralDirectorySize, ZIP64_LIMIT));
+        writeInt(Math.min(centralDirectoryOffset, ZIP64_LIMIT));
+        writeShort(0);
+        out.flush();
+    }
+
+    /**
+     * Точный размер архива, в котором все файлы записаны без сжатия; папки передаются с размером 0
+     * и именем, оканчивающимся на {@code /}.
+     */
+    public static long storedArchiveSize(List<EntrySize> archiveEntries) {
+        long offset = 0;
+        long centralDirectorySize = 0;
+        for (EntrySize entry : archiveEntries) {
+            int nameLength = entry.name().getBytes(StandardCharsets.UTF_8).length;
+            boolean zip64 = needsZip64(entry.size(), offset, true);
+            offset += LOCAL_HEADER_SIZE + nameLength + (zip64 ? LOCAL_ZIP64_EXTRA_SIZE : 0)
+                    + entry.size()
+                    + (zip64 ? ZIP64_DATA_DESCRIPTOR_SIZE : DATA_DESCRIPTOR_SIZE);
+            centralDirectorySize += CENTRAL_HEADER_SIZE + nameLength + (zip64 ? CENTRAL_ZIP64_EXTRA_SIZE : 0);
+        }
+        boolean zip64End = needsZip64End(archiveEntries.size(), offset, centralDirectorySize);
+        return offset + centralDirectorySize + (zip64End ? ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE : 0) + END_SIZE;
+    }
+
+    // Размер сжатых данных может превысить исходный на служебные байты блоков deflate
+    private static boolean needsZip64(long size, long offset, boolean stored) {
+        long maxDataSize = stored ? size : size + size / 1000 + 1024;
+        return maxDataSize >= ZIP64_LIMIT || offset >= ZIP64_LIMIT;
+    }
+
+    private static boolean needsZip64End(int entryCount, long centralDirectoryOffset, long centralDirectorySize) {
+        return entryCount >= ZIP64_ENTRY_LIMIT
+                || centralDirectoryOffset >= ZIP64_LIMIT
+                || centralDirectorySize >= ZIP64_LIMIT;
+    }
+
+    private void writeLocalHeader(byte[] name, int method, long dosTime, boolean zip64) throws IOException {
+        writeInt(LOCAL_HEADER_SIGNATURE);
+        writeShort(zip64 ? ZIP64_VERSION : VERSION);
+        writeShort(FLAGS);
+        writeShort(method);
+        writeInt(dosTime);
+        writeInt(0);
+        writeInt(zip64 ? ZIP64_LIMIT : 0);
+        writeInt(zip64 ? ZIP64_LIMIT : 0);
+        writeShort(name.length);
+        writeShort(zip64 ? LOCAL_ZIP64_EXTRA_SIZE : 0);
+        out.write(name);
+        if (zip64) {
+            writeShort(0x0001);
+            writeShort(LOCAL_ZIP64_EXTRA_SIZE - 4);
+            writeLong(0);
+            writeLong(0);
+        }
+    }
+
+    private void writeDataDescriptor(long crc, long compressedSize, long size, boolean zip64) throws IOException {
+        writeInt(DATA_DESCRIPTOR_SIGNATURE);
+        writeInt(crc);
+        if (zip64) {
+            writeLong(compressedSize);
+            writeLong(size);
+        } else {
+            writeInt(compressedSize);
+            writeInt(size);
+        }
+    }
+
+    private void writeCentralHeader(CentralEntry entry) throws IOException {
+        writeInt(CENTRAL_HEADER_SIGNATURE);
+        writeShort(ZIP64_VERSION);
+        writeShort(entry.zip64() ? ZIP64_VERSION : VERSION);
+        writeShort(FLAGS);
+        writeShort(entry.method());
+        writeInt(entry.dosTime());
+        writeInt(entry.crc());
+        writeInt(entry.zip64() ? ZIP64_LIMIT : entry.compressedSize());
+        writeInt(entry.zip64() ? ZIP64_LIMIT : entry.size());
+        writeShort(entry.name().length);
+        writeShort(entry.zip64() ? CENTRAL_ZIP64_EXTRA_SIZE : 0);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt(entry.directory() ? DIRECTORY_ATTRIBUTE : 0);
+        writeInt(entry.zip64() ? ZIP64_LIMIT : entry.offset());
+        out.write(entry.name());
+        if (entry.zip64()) {
+            writeShort(0x0001);
+            writeShort(CENTRAL_ZIP64_EXTRA_SIZE - 4);
+            writeLong(entry.size());
+            writeLong(entry.compressedSize());
+            writeLong(entry.offset());
+        }
+    }
+
+    // Дата и время в формате MS-DOS; раньше 1980 года формат не позволяет
+    private static long dosTime(Instant instant) {
+        LocalDateTime time = LocalDateTime.ofInstant(instant != null ? instant : Instant.now(), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (time.getYear() - 1980) << 25)
+                | ((long) time.getMonthValue() << 21)
+                | ((long) time.getDayOfMonth() << 16)
+                | ((long) time.getHour() << 11)
+                | ((long) time.getMinute() << 5)
+                | ((long) time.getSecond() >> 1);
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xFFFF));
+        writeShort((int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt(value & 0xFFFFFFFFL);
+        writeInt(value >>> 32);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        // DeflaterOutputStream закрывает вложенный поток при close(), а архив продолжается
+        @Override
+        public void close() {
+        }
+    }
+}
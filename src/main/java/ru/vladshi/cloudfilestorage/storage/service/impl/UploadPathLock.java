@@ -0,0 +1,56 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Блокировка пути файла в Redis на время завершения загрузки. Прямые и возобновляемые загрузки на один путь
+ * завершаются по очереди на любом узле, и проверка существования файла под блокировкой не устаревает
+ * до записи в индекс. Если узел упадёт, не сняв блокировку, она истечёт через {@code lease}.
+ */
+@Component
+public class UploadPathLock {
+
+    private static final String KEY_PREFIX = "upload-path-lock:";
+    private static final RedisScript<Long> UNLOCK_SCRIPT = RedisScript.of("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration lease;
+
+    public UploadPathLock(StringRedisTemplate redisTemplate,
+                          @Value("${storage.upload.path-lock-lease:PT5M}") Duration lease) {
+        this.redisTemplate = redisTemplate;
+        this.lease = lease;
+    }
+
+    /**
+     * @return токен, которым блокировку нужно снять в {@link #unlock}
+     * @throws FileUploadingException если путь уже заблокирован другой загрузкой
+     */
+    public String lock(String objectName) {
+        String token = UUID.randomUUID().toString();
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + objectName, token, lease);
+        if (!Boolean.TRUE.equals(locked)) {
+            throw new FileUploadingException("Another upload of %s is being committed"
+                    .formatted(PathUtil.removeRootFolder(objectName)));
+        }
+        return token;
+    }
+
+    public void unlock(String objectName, String token) {
+        redisTemplate.execute(UNLOCK_SCRIPT, List.of(KEY_PREFIX + objectName), token);
+    }
+}
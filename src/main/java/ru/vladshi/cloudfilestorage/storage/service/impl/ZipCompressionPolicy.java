@@ -0,0 +1,60 @@
+package ru.vladshi.cloudfilestorage.storage.service.impl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.vladshi.cloudfilestorage.storage.util.HttpHeaderUtil;
+import ru.vladshi.cloudfilestorage.storage.util.PathUtil;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Уровень сжатия записей ZIP-архива при скачивании папки: уже сжатые форматы (изображения, видео, аудио,
+ * архивы, документы Office) записываются без сжатия, остальные файлы — с уровнем
+ * {@code storage.download.zip.compression-level}. Уровень 0 отключает сжатие всех записей.
+ */
+@Component
+public class ZipCompressionPolicy {
+
+    private static final Set<String> INCOMPRESSIBLE_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "heif", "avif", "jxl",
+            "mp4", "m4v", "mkv", "mov", "avi", "webm", "wmv", "flv",
+            "mp3", "m4a", "aac", "ogg", "oga", "opus", "flac", "wma",
+            "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar", "lz4", "br",
+            "jar", "war", "apk", "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub", "pdf", "woff", "woff2");
+    private static final Set<String> INCOMPRESSIBLE_MIME_PREFIXES = Set.of("video/", "audio/");
+    private static final Set<String> INCOMPRESSIBLE_MIME_TYPES = Set.of(
+            "image/jpeg", "image/png", "image/gif", "image/webp", "image/heic", "image/avif",
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2", "application/x-xz",
+            "application/zstd", "application/x-7z-compressed", "application/vnd.rar", "application/x-rar-compressed",
+            "application/java-archive", "application/pdf", "application/epub+zip");
+
+    private final int level;
+
+    @Autowired
+    public ZipCompressionPolicy(@Value("${storage.download.zip.compression-level:6}") int level) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("storage.download.zip.compression-level must be between 0 and 9");
+        }
+        this.level = level;
+    }
+
+    /**
+     * @return уровень {@link java.util.zip.Deflater} или {@link StreamingZipWriter#STORED}
+     */
+    public int levelFor(String fileName) {
+        return level == StreamingZipWriter.STORED || isIncompressible(fileName) ? StreamingZipWriter.STORED : level;
+    }
+
+    private static boolean isIncompressible(String fileName) {
+        String name = PathUtil.extractNameFromPath(fileName);
+        int dotIndex = name.lastIndexOf('.');
+        if (dotIndex > 0 && INCOMPRESSIBLE_EXTENSIONS.contains(name.substring(dotIndex + 1).toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        String mimeType = HttpHeaderUtil.buildContentType(name);
+        return INCOMPRESSIBLE_MIME_TYPES.contains(mimeType)
+                || INCOMPRESSIBLE_MIME_PREFIXES.stream().anyMatch(mimeType::startsWith);
+    }
+}
@@ -0,0 +1,258 @@
+package ru.vladshi.cloudfilestorage.storage.util;
+
+import org.springframework.http.HttpRange;
+import ru.vladshi.cloudfilestorage.storage.model.StoredFileInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Запросы части файла ({@code Range}, {@code If-Range}) и ответ {@code multipart/byteranges} (RFC 9110, раздел 14).
+ */
+public final class ByteRangeUtil {
+
+    private static final Pattern LEADING_RANGE = Pattern.compile("bytes=(\\d{1,18})-(\\d{0,18})");
+
+    private ByteRangeUtil() {
+    }
+
+    public record ByteRange(long offset, long length) {
+
+        public long end() {
+            return offset + length - 1;
+        }
+
+        public String contentRange(long size) {
+            return "bytes %d-%d/%d".formatted(offset, end(), size);
+        }
+    }
+
+    /**
+     * Диапазон с явным началом: {@code last == null} — до конца файла.
+     */
+    public record LeadingRange(long first, Long last) {
+
+        public Long length() {
+            return last != null ? last - first + 1 : null;
+        }
+    }
+
+    @FunctionalInterface
+    public interface RangeOpener {
+        InputStream open(ByteRange range) throws Exception;
+    }
+
+    /**
+     * Диапазоны из заголовка {@code Range}, ограниченные размером файла.
+     * Некорректный заголовок игнорируется, как того требует RFC, — возвращается пустой список.
+     * Если корректный заголовок не содержит ни одного выполнимого диапазона, возвращается {@code null}
+     * (ответ 416). Пересекающиеся и смежные диапазоны объединяются и упорядочиваются по началу, что RFC
+     * разрешает: иначе одни и те же байты запрашивались бы из хранилища по нескольку раз.
+     */
+    public static List<ByteRange> parse(String rangeHeader, long size) {
+        List<HttpRange> httpRanges;
+        try {
+            httpRanges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+        if (httpRanges.isEmpty()) {
+            return List.of();
+        }
+
+        List<ByteRange> ranges = new ArrayList<>(httpRanges.size());
+        for (HttpRange httpRange : httpRanges) {
+            if (size == 0) {
+                break;
+            }
+            long start;
+            long end;
+            try {
+                start = httpRange.getRangeStart(size);
+                end = httpRange.getRangeEnd(size);
+            } catch (IllegalArgumentException e) {
+                return List.of();
+            }
+            if (start < size && start <= end) {
+                ranges.add(new ByteRange(start, end - start + 1));
+            }
+        }
+        return ranges.isEmpty() ? null : coalesce(ranges);
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(ByteRange::offset));
+        List<ByteRange> coalesced = new ArrayList<>(sorted.size());
+        ByteRange current = sorted.getFirst();
+        for (ByteRange next : sorted.subList(1, sorted.size())) {
+            if (next.offset() <= current.end() + 1) {
+                long end = Math.max(current.end(), next.end());
+                current = new ByteRange(current.offset(), end - current.offset() + 1);
+            } else {
+                coalesced.add(current);
+                current = next;
+            }
+        }
+        coalesced.add(current);
+        return coalesced;
+    }
+
+    /**
+     * Единственный диапазон вида {@code bytes=first-} или {@code bytes=first-last}: его можно запросить у MinIO
+     * вместе с файлом, не узнавая заранее размер. Для остальных заголовков возвращает пустой результат.
+     */
+    public static Optional<LeadingRange> leadingRange(String rangeHeader) {
+        Matcher matcher = LEADING_RANGE.matcher(rangeHeader.strip());
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        long first = Long.parseLong(matcher.group(1));
+        Long last = matcher.group(2).isEmpty() ? null : Long.parseLong(matcher.group(2));
+        return last == null || first <= last ? Optional.of(new LeadingRange(first, last)) : Optional.empty();
+    }
+
+    /**
+     * Условие {@code If-Range}: диапазон отдаётся, только если файл не изменился. Слабые ETag не подходят.
+     */
+    public static boolean ifRangeMatches(String ifRange, StoredFileInfo fileInfo) {
+        if (ifRange == null || ifRange.isBlank()) {
+            return true;
+        }
+        String value = ifRange.strip();
+        if (value.startsWith("\"")) {
+            return fileInfo.etag() != null && value.equals("\"" + fileInfo.etag() + "\"");
+        }
+        if (value.startsWith("W/")) {
+            return false;
+        }
+        try {
+            Instant date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return fileInfo.lastModified() != null
+                    && date.equals(fileInfo.lastModified().truncatedTo(ChronoUnit.SECONDS));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    public static long multipartLength(List<ByteRange> ranges, long size, String contentType, String boundary) {
+        long length = closingDelimiter(boundary).length;
+        for (ByteRange range : ranges) {
+            length += partHeader(range, size, contentType, boundary).length + range.length();
+        }
+        return length;
+    }
+
+    /**
+     * Тело {@code multipart/byteranges}; содержимое каждого диапазона запрашивается, только когда до него
+     * дойдёт чтение.
+     */
+    public static InputStream multipartBody(List<ByteRange> ranges, long size, String contentType, String boundary,
+                                            RangeOpener opener) {
+        return new MultipartByteRangesInputStream(ranges, size, contentType, boundary, opener);
+    }
+
+    private static byte[] partHeader(ByteRange range, long size, String contentType, String boundary) {
+        return ("\r\n--%s\r\nContent-Type: %s\r\nContent-Range: %s\r\n\r\n"
+                .formatted(boundary, contentType, range.contentRange(size)))
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] closingDelimiter(String boundary) {
+        return "\r\n--%s--\r\n".formatted(boundary).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class MultipartByteRangesInputStream extends InputStream {
+
+        private final List<ByteRange> ranges;
+        private final long size;
+        private final String contentType;
+        private final String boundary;
+        private final RangeOpener opener;
+        private int nextRange;
+        private boolean closingWritten;
+        private InputStream current = InputStream.nullInputStream();
+
+        MultipartByteRangesInputStream(List<ByteRange> ranges, long size, String contentType, String boundary,
+                                       RangeOpener opener) {
+            this.ranges = ranges;
+            this.size = size;
+            this.contentType = contentType;
+            this.boundary = boundary;
+            this.opener = opener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            while (true) {
+                int read = current.read(buffer, offset, length);
+                if (read >= 0) {
+                    return read;
+                }
+                if (!advance()) {
+                    return -1;
+                }
+            }
+        }
+
+        // Переходит к следующему фрагменту тела: заголовку части, её содержимому или завершающему разделителю
+        private boolean advance() throws IOException {
+            current.close();
+            if (current instanceof PartHeader header) {
+                try {
+                    current = opener.open(header.range);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Failed to read range " + header.range, e);
+                }
+                return true;
+            }
+            if (nextRange < ranges.size()) {
+                ByteRange range = ranges.get(nextRange++);
+                current = new PartHeader(range, partHeader(range, size, contentType, boundary));
+                return true;
+            }
+            if (!closingWritten) {
+                closingWritten = true;
+                current = new ByteArrayInputStream(closingDelimiter(boundary));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            current.close();
+        }
+    }
+
+    private static final class PartHeader extends ByteArrayInputStream {
+
+        private final ByteRange range;
+
+        PartHeader(ByteRange range, byte[] header) {
+            super(header);
+            this.range = range;
+        }
+    }
+}
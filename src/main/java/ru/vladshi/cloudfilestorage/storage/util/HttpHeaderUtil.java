@@ -1,12 +1,16 @@
 package ru.vladshi.cloudfilestorage.storage.util;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import ru.vladshi.cloudfilestorage.storage.model.StoredFileInfo;
 
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
 
 public final class HttpHeaderUtil {
 
@@ -18,6 +22,28 @@ public final class HttpHeaderUtil {
         return "attachment; filename*=UTF-8''" + encodedFileName;
     }
 
+    /**
+     * Условия {@code If-None-Match} и {@code If-Modified-Since} (RFC 9110, раздел 13.2.2):
+     * {@code true}, если копия файла у клиента актуальна и можно ответить 304.
+     */
+    public static boolean isNotModified(HttpHeaders requestHeaders, StoredFileInfo fileInfo) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            String etag = "\"" + fileInfo.etag() + "\"";
+            return fileInfo.etag() != null && ifNoneMatch.stream()
+                    .map(tag -> tag.strip().startsWith("W/") ? tag.strip().substring(2) : tag.strip())
+                    .anyMatch(tag -> tag.equals("*") || tag.equals(etag));
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = requestHeaders.getIfModifiedSince();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return ifModifiedSince >= 0 && fileInfo.lastModified() != null
+                && fileInfo.lastModified().truncatedTo(ChronoUnit.SECONDS).toEpochMilli() <= ifModifiedSince;
+    }
+
     public static String buildContentType(String fileName) {
         try {
             String mimeType = Files.probeContentType(Path.of(fileName));
@@ -0,0 +1,34 @@
+package ru.vladshi.cloudfilestorage.storage.util;
+
+import ru.vladshi.cloudfilestorage.storage.exception.InvalidPageCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор постраничного листинга папки: имя последнего отданного элемента
+ * относительно листингуемой папки в кодировке Base64 URL. Продолжение листинга начинается
+ * строго после этого имени ({@code startAfter}), поэтому курсор не может указывать за пределы папки.
+ */
+public final class PageCursorUtil {
+
+    private PageCursorUtil() {
+    }
+
+    public static String encode(String lastItemName) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastItemName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decode(String cursor) {
+        try {
+            String lastItemName = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (lastItemName.isEmpty()) {
+                throw new InvalidPageCursorException(cursor);
+            }
+            return lastItemName;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPageCursorException(cursor);
+        }
+    }
+}
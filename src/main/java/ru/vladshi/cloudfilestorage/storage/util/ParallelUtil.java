@@ -0,0 +1,62 @@
+package ru.vladshi.cloudfilestorage.storage.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+public final class ParallelUtil {
+
+    private ParallelUtil() {
+    }
+
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, int parallelism) throws Exception {
+        return invokeAll(tasks, parallelism, completed -> {
+        });
+    }
+
+    /**
+     * Выполняет задачи на виртуальных потоках, не больше {@code parallelism} одновременно, и дожидается всех.
+     * Результаты возвращаются в порядке задач. Если какие-то задачи не удались, {@code onFailure} получает
+     * результаты успешных, чтобы вызывающий мог убрать уже записанное, и выбрасывается первая по порядку ошибка.
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, int parallelism,
+                                        Consumer<List<T>> onFailure) throws Exception {
+        Semaphore permits = new Semaphore(Math.max(1, parallelism));
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return task.call();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        Exception failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+        }
+        if (failure != null) {
+            onFailure.accept(results);
+            throw failure;
+        }
+        return results;
+    }
+}
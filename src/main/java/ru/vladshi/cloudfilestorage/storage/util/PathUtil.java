@@ -24,4 +24,24 @@ public final class PathUtil {
         }
         return path.substring(firstSlash + 1);
     }
+
+    public static String extractRootFolder(String path) {
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("Path cannot be null or empty");
+        }
+        int firstSlash = path.indexOf('/');
+        if (firstSlash == -1) {
+            throw new IllegalArgumentException("Invalid path: " + path);
+        }
+        return path.substring(0, firstSlash + 1);
+    }
+
+    public static String extractParentPath(String path) {
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("Path cannot be null or empty");
+        }
+        int searchFrom = path.endsWith("/") ? path.length() - 2 : path.length() - 1;
+        int lastSlash = path.lastIndexOf('/', searchFrom);
+        return path.substring(0, lastSlash + 1);
+    }
 }
@@ -0,0 +1,44 @@
+package ru.vladshi.cloudfilestorage.storage.util;
+
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+
+import java.util.Comparator;
+
+/**
+ * Ранжирование результатов поиска по имени: точное совпадение, затем совпадение с начала имени,
+ * затем вхождение подстроки; внутри одной группы выше объекты с меньшей глубиной вложенности.
+ */
+public final class SearchRankUtil {
+
+    public static final int EXACT = 0;
+    public static final int PREFIX = 1;
+    public static final int SUBSTRING = 2;
+    public static final int NO_MATCH = -1;
+
+    private SearchRankUtil() {}
+
+    /**
+     * @param normalizedQuery запрос, приведённый через {@link TrigramUtil#normalize(String)}
+     */
+    public static int rank(String name, String normalizedQuery) {
+        String normalizedName = TrigramUtil.normalize(name);
+        if (normalizedName.equals(normalizedQuery)) {
+            return EXACT;
+        }
+        if (normalizedName.startsWith(normalizedQuery)) {
+            return PREFIX;
+        }
+        return normalizedName.contains(normalizedQuery) ? SUBSTRING : NO_MATCH;
+    }
+
+    public static int depth(StorageItem item) {
+        String parentPath = item.getParentPath();
+        return (int) parentPath.chars().filter(ch -> ch == '/').count();
+    }
+
+    public static Comparator<StorageItem> comparator(String normalizedQuery) {
+        return Comparator.<StorageItem>comparingInt(item -> rank(item.getName(), normalizedQuery))
+                .thenComparingInt(SearchRankUtil::depth)
+                .thenComparing(StorageItem::relativePath);
+    }
+}
@@ -20,4 +20,17 @@ public final class SizeFormatter {
             return sizeInBytes + " B";
         }
     }
+
+    public static long parseSize(String sizeStr) {
+        sizeStr = sizeStr.trim().toUpperCase();
+        if (sizeStr.endsWith("MB")) {
+            return Long.parseLong(sizeStr.replace("MB", "")) * 1024 * 1024;
+        } else if (sizeStr.endsWith("GB")) {
+            return Long.parseLong(sizeStr.replace("GB", "")) * 1024 * 1024 * 1024;
+        } else if (sizeStr.endsWith("KB")) {
+            return Long.parseLong(sizeStr.replace("KB", "")) * 1024;
+        } else {
+            return Long.parseLong(sizeStr);
+        }
+    }
 }
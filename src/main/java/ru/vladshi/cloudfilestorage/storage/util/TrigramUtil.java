@@ -0,0 +1,41 @@
+package ru.vladshi.cloudfilestorage.storage.util;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+public final class TrigramUtil {
+
+    public static final int TRIGRAM_LENGTH = 3;
+
+    private TrigramUtil() {}
+
+    public static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Все различные подстроки из трёх символов (кодовых точек) нормализованной строки.
+     * Для строк короче трёх символов возвращает пустое множество.
+     */
+    public static Set<String> trigrams(String value) {
+        int[] codePoints = normalize(value).codePoints().toArray();
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + TRIGRAM_LENGTH <= codePoints.length; i++) {
+            trigrams.add(new String(codePoints, i, TRIGRAM_LENGTH));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Строки индекса для имени: его триграммы, а для непустого имени короче трёх символов — само имя.
+     * Так запрос короче триграммы находит любое имя по вхождению в одну из строк индекса.
+     */
+    public static Set<String> indexTerms(String name) {
+        Set<String> trigrams = trigrams(name);
+        if (trigrams.isEmpty() && !name.isEmpty()) {
+            return Set.of(normalize(name));
+        }
+        return trigrams;
+    }
+}
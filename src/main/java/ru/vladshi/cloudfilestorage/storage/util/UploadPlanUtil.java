@@ -0,0 +1,50 @@
+package ru.vladshi.cloudfilestorage.storage.util;
+
+import ru.vladshi.cloudfilestorage.storage.model.UploadObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Разбиение загружаемой папки: мелкие файлы и маркеры папок объединяются в пакеты
+ * для {@code uploadSnowballObjects} с ограниченным размером tar, остальные загружаются отдельными запросами.
+ */
+public final class UploadPlanUtil {
+
+    private UploadPlanUtil() {
+    }
+
+    public record UploadPlan(List<List<UploadObject>> smallObjectBatches, List<UploadObject> largeObjects) {
+    }
+
+    /**
+     * @param uploadSeparately объекты, которые нельзя включать в пакет (крупные или требующие метаданных)
+     */
+    public static UploadPlan plan(List<UploadObject> objects, Predicate<UploadObject> uploadSeparately,
+                                  long maxBatchBytes, int maxBatchObjects) {
+        List<List<UploadObject>> batches = new ArrayList<>();
+        List<UploadObject> largeObjects = new ArrayList<>();
+        List<UploadObject> batch = new ArrayList<>();
+        long batchBytes = 0;
+
+        for (UploadObject object : objects) {
+            if (uploadSeparately.test(object)) {
+                largeObjects.add(object);
+                continue;
+            }
+            if (!batch.isEmpty() && (batchBytes + object.size() > maxBatchBytes || batch.size() == maxBatchObjects)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(object);
+            batchBytes += object.size();
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        return new UploadPlan(batches, largeObjects);
+    }
+}
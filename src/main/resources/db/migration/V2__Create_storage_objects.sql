@@ -0,0 +1,16 @@
+CREATE TABLE storage_objects (
+                       id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                       user_prefix VARCHAR(100) COLLATE utf8mb4_bin NOT NULL,
+                       path VARCHAR(768) COLLATE utf8mb4_bin NOT NULL,
+                       parent_path VARCHAR(768) COLLATE utf8mb4_bin NOT NULL,
+                       name VARCHAR(255) NOT NULL,
+                       is_folder BOOLEAN NOT NULL,
+                       size BIGINT NOT NULL DEFAULT 0,
+                       last_modified TIMESTAMP(6) NULL,
+                       etag VARCHAR(64) NULL
+);
+
+CREATE UNIQUE INDEX uk_storage_objects_path ON storage_objects (path);
+-- Составной индекс (parent_path, path) превысил бы предел InnoDB в 3072 байта для utf8mb4
+CREATE INDEX idx_storage_objects_parent ON storage_objects (parent_path);
+CREATE INDEX idx_storage_objects_user_name ON storage_objects (user_prefix, name);
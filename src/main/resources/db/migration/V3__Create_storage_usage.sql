@@ -0,0 +1,7 @@
+CREATE TABLE storage_usage (
+                       user_prefix VARCHAR(100) COLLATE utf8mb4_bin PRIMARY KEY,
+                       used_bytes BIGINT NOT NULL DEFAULT 0
+);
+
+INSERT INTO storage_usage (user_prefix, used_bytes)
+SELECT user_prefix, SUM(size) FROM storage_objects GROUP BY user_prefix;
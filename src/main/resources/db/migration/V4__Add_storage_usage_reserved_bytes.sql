@@ -0,0 +1,2 @@
+ALTER TABLE storage_usage
+    ADD COLUMN reserved_bytes BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,13 @@
+CREATE TABLE storage_name_trigrams (
+                       object_id BIGINT NOT NULL,
+                       user_prefix VARCHAR(100) COLLATE utf8mb4_bin NOT NULL,
+                       trigram VARCHAR(3) COLLATE utf8mb4_bin NOT NULL,
+                       PRIMARY KEY (object_id, trigram),
+                       CONSTRAINT fk_storage_name_trigrams_object
+                           FOREIGN KEY (object_id) REFERENCES storage_objects (id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_storage_name_trigrams_user ON storage_name_trigrams (user_prefix, trigram, object_id);
+
+-- Индекс пользователей перестраивается из MinIO при первом обращении, заодно заполняя триграммы
+DELETE FROM storage_objects;
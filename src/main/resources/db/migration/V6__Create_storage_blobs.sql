@@ -0,0 +1,13 @@
+ALTER TABLE storage_objects
+    ADD COLUMN object_key VARCHAR(255) COLLATE utf8mb4_bin NULL;
+
+CREATE INDEX idx_storage_objects_object_key ON storage_objects (object_key);
+
+CREATE TABLE storage_blobs (
+                       object_key VARCHAR(255) COLLATE utf8mb4_bin PRIMARY KEY,
+                       size BIGINT NOT NULL,
+                       ref_count INT NOT NULL DEFAULT 0,
+                       updated_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_storage_blobs_orphans ON storage_blobs (ref_count, updated_at);
@@ -0,0 +1,9 @@
+CREATE TABLE storage_reservations (
+                       id VARCHAR(36) PRIMARY KEY,
+                       user_prefix VARCHAR(100) COLLATE utf8mb4_bin NOT NULL,
+                       bytes BIGINT NOT NULL,
+                       expires_at TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX idx_storage_reservations_user_prefix ON storage_reservations (user_prefix);
+CREATE INDEX idx_storage_reservations_expires_at ON storage_reservations (expires_at);
@@ -0,0 +1,5 @@
+-- Имена короче триграммы попадают в индекс целиком, чтобы короткие запросы тоже шли через storage_name_trigrams
+INSERT INTO storage_name_trigrams (object_id, user_prefix, trigram)
+SELECT id, user_prefix, LOWER(name)
+FROM storage_objects
+WHERE CHAR_LENGTH(name) BETWEEN 1 AND 2;
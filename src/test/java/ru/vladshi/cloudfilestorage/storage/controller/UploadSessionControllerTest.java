@@ -0,0 +1,142 @@
+package ru.vladshi.cloudfilestorage.storage.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.MethodParameter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import ru.vladshi.cloudfilestorage.security.annotation.FullPath;
+import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.exception.StorageLimitExceededException;
+import ru.vladshi.cloudfilestorage.storage.exception.UploadSessionNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.model.FullItemPath;
+import ru.vladshi.cloudfilestorage.storage.model.UploadSessionStatus;
+import ru.vladshi.cloudfilestorage.storage.service.ResumableUploadService;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class UploadSessionControllerTest {
+
+    private static final String USER_PREFIX = "1-user/";
+    private static final String SESSION_ID = "session-id";
+    private static final byte[] PART_BYTES = "Hello Minio".getBytes(StandardCharsets.UTF_8);
+    private static final UploadSessionStatus STATUS = new UploadSessionStatus(SESSION_ID, PART_BYTES.length,
+            PART_BYTES.length, 1, List.of(), 0, Instant.parse("2030-01-01T00:00:00Z"));
+
+    // Вместо пользователя из контекста безопасности подставляется фиксированный префикс
+    private static final HandlerMethodArgumentResolver FULL_PATH_RESOLVER = new HandlerMethodArgumentResolver() {
+        @Override
+        public boolean supportsParameter(MethodParameter parameter) {
+            return parameter.hasParameterAnnotation(FullPath.class);
+        }
+
+        @Override
+        public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                      NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+            return new FullItemPath(USER_PREFIX, webRequest.getParameter("path"));
+        }
+    };
+
+    private ResumableUploadService resumableUploadService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        resumableUploadService = mock(ResumableUploadService.class);
+        mockMvc = MockMvcBuilders.standaloneSetup(new UploadSessionController(resumableUploadService))
+                .setCustomArgumentResolvers(FULL_PATH_RESOLVER)
+                .build();
+    }
+
+    @Test
+    @DisplayName("Создание сессии возвращает 201 и статус сессии в папке из параметра path")
+    void shouldCreateSessionInRequestedFolder() throws Exception {
+        when(resumableUploadService.create(USER_PREFIX, USER_PREFIX + "docs/", "file.txt", PART_BYTES.length))
+                .thenReturn(STATUS);
+
+        mockMvc.perform(post("/upload-sessions")
+                        .param("path", "docs")
+                        .param("fileName", "file.txt")
+                        .param("size", String.valueOf(PART_BYTES.length)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(SESSION_ID))
+                .andExpect(jsonPath("$.partCount").value(1));
+    }
+
+    @Test
+    @DisplayName("Часть передаётся сервису телом запроса с длиной из Content-Length")
+    void shouldPassPartBodyWithContentLength() throws Exception {
+        byte[][] received = new byte[1][];
+        when(resumableUploadService.uploadPart(eq(USER_PREFIX), eq(SESSION_ID), eq(1), any(InputStream.class),
+                eq((long) PART_BYTES.length))).thenAnswer(invocation -> {
+            received[0] = invocation.<InputStream>getArgument(3).readAllBytes();
+            return STATUS;
+        });
+
+        mockMvc.perform(put("/upload-sessions/{sessionId}/parts/{partNumber}", SESSION_ID, 1)
+                        .content(PART_BYTES))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(SESSION_ID));
+
+        assertArrayEquals(PART_BYTES, received[0], "Сервис должен получить тело запроса без изменений");
+    }
+
+    @Test
+    @DisplayName("Статус, завершение и отмена сессии обращаются к сервису от имени пользователя")
+    void shouldDelegateStatusCompleteAndAbort() throws Exception {
+        when(resumableUploadService.getStatus(USER_PREFIX, SESSION_ID)).thenReturn(STATUS);
+
+        mockMvc.perform(get("/upload-sessions/{sessionId}", SESSION_ID))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.offset").value(0));
+        mockMvc.perform(post("/upload-sessions/{sessionId}/complete", SESSION_ID))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(delete("/upload-sessions/{sessionId}", SESSION_ID))
+                .andExpect(status().isNoContent());
+
+        verify(resumableUploadService).complete(USER_PREFIX, SESSION_ID);
+        verify(resumableUploadService).abort(USER_PREFIX, SESSION_ID);
+    }
+
+    @Test
+    @DisplayName("Ошибки хранилища возвращаются кодами 404, 413 и 400 с текстом ошибки")
+    void shouldMapStorageExceptionsToStatusCodes() throws Exception {
+        when(resumableUploadService.getStatus(USER_PREFIX, SESSION_ID))
+                .thenThrow(new UploadSessionNotFoundException(SESSION_ID));
+        when(resumableUploadService.create(anyString(), anyString(), anyString(), anyLong()))
+                .thenThrow(new StorageLimitExceededException("Storage limit exceeded"));
+        when(resumableUploadService.uploadPart(anyString(), anyString(), anyInt(), any(InputStream.class), anyLong()))
+                .thenThrow(new FileUploadingException("Part 1 is truncated"));
+
+        mockMvc.perform(get("/upload-sessions/{sessionId}", SESSION_ID))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/upload-sessions")
+                        .param("fileName", "file.txt")
+                        .param("size", "1"))
+                .andExpect(status().isPayloadTooLarge())
+                .andExpect(jsonPath("$.error").value("Storage limit exceeded"));
+        mockMvc.perform(put("/upload-sessions/{sessionId}/parts/{partNumber}", SESSION_ID, 1)
+                        .content(PART_BYTES))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Part 1 is truncated"));
+    }
+}
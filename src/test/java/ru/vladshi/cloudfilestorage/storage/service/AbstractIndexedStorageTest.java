@@ -0,0 +1,133 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import io.minio.GetObjectArgs;
+import io.minio.ListObjectsArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.Result;
+import io.minio.messages.Item;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureDataJpa;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageBlobRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageNameTrigramRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageObjectRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageReservationRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageUsageRepository;
+import ru.vladshi.cloudfilestorage.user.entity.User;
+import ru.vladshi.cloudfilestorage.user.repository.UserRepository;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Сервисы хранилища с индексом в MySQL: к MinIO добавляется база со схемой из миграций Flyway.
+ * Перед каждым тестом очищаются таблицы индекса и пользователей, префиксы сохранённых пользователей
+ * и общие для всех пользователей префиксы бакета.
+ */
+@AutoConfigureDataJpa
+public abstract class AbstractIndexedStorageTest extends AbstractMinioServiceTest {
+
+    private static final String MYSQL_IMAGE = "mysql:9.1.0";
+    private static final List<String> SHARED_PREFIXES = List.of("objects/", "blobs/", "uploads/");
+
+    @Container
+    protected static final MySQLContainer<?> mysqlContainer = new MySQLContainer<>(DockerImageName.parse(MYSQL_IMAGE))
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @Autowired
+    protected StorageObjectRepository storageObjectRepository;
+
+    @Autowired
+    protected StorageUsageRepository storageUsageRepository;
+
+    @Autowired
+    protected StorageNameTrigramRepository storageNameTrigramRepository;
+
+    @Autowired
+    protected StorageBlobRepository storageBlobRepository;
+
+    @Autowired
+    protected StorageReservationRepository storageReservationRepository;
+
+    @Autowired
+    protected UserRepository userRepository;
+
+    @TestConfiguration
+    @EnableJpaRepositories(basePackages = "ru.vladshi.cloudfilestorage")
+    @EntityScan(basePackages = "ru.vladshi.cloudfilestorage")
+    static class JpaConfig {
+    }
+
+    @DynamicPropertySource
+    static void registerDatasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", mysqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", mysqlContainer::getUsername);
+        registry.add("spring.datasource.password", mysqlContainer::getPassword);
+    }
+
+    @BeforeEach
+    void cleanIndex() throws Exception {
+        for (User user : userRepository.findAll()) {
+            removePrefix(user.getId() + "-" + user.getUsername() + "/");
+        }
+        for (String prefix : SHARED_PREFIXES) {
+            removePrefix(prefix);
+        }
+        storageNameTrigramRepository.deleteAll();
+        storageObjectRepository.deleteAll();
+        storageUsageRepository.deleteAll();
+        storageReservationRepository.deleteAll();
+        storageBlobRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    protected User saveUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("password");
+        return userRepository.save(user);
+    }
+
+    protected List<String> listObjects(String prefix) throws Exception {
+        List<String> objectNames = new ArrayList<>();
+        for (Result<Item> result : minioClient.listObjects(ListObjectsArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .prefix(prefix)
+                .recursive(true)
+                .build())) {
+            objectNames.add(result.get().objectName());
+        }
+        return objectNames;
+    }
+
+    // В отличие от cleanFolder удаляет и маркер самого префикса
+    protected void removePrefix(String prefix) throws Exception {
+        for (String objectName : listObjects(prefix)) {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(TEST_BUCKET_NAME)
+                    .object(objectName)
+                    .build());
+        }
+    }
+
+    protected String readObject(String objectName) throws Exception {
+        try (InputStream inputStream = minioClient.getObject(GetObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(objectName)
+                .build())) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -13,6 +13,8 @@ import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.web.multipart.MultipartFile;
 import org.testcontainers.containers.MinIOContainer;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.vladshi.cloudfilestorage.storage.config.MinioMultipartClient;
+import ru.vladshi.cloudfilestorage.storage.config.MinioPresigner;
 
 import java.nio.charset.StandardCharsets;
 
@@ -43,6 +45,23 @@ public abstract class AbstractMinioServiceTest {
                     .credentials(minioContainer.getUserName(), minioContainer.getPassword())
                     .build();
         }
+
+        @Bean
+        public MinioMultipartClient minioMultipartClient() {
+            return new MinioMultipartClient(MinioAsyncClient.builder()
+                    .endpoint("http://" + minioContainer.getHost() + ":" + minioContainer.getMappedPort(9000))
+                    .credentials(minioContainer.getUserName(), minioContainer.getPassword())
+                    .build());
+        }
+
+        @Bean
+        public MinioPresigner minioPresigner() {
+            return new MinioPresigner(MinioClient.builder()
+                    .endpoint("http://" + minioContainer.getHost() + ":" + minioContainer.getMappedPort(9000))
+                    .credentials(minioContainer.getUserName(), minioContainer.getPassword())
+                    .region("us-east-1")
+                    .build(), "http://" + minioContainer.getHost() + ":" + minioContainer.getMappedPort(9000));
+        }
     }
 
     @DynamicPropertySource
@@ -0,0 +1,248 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageBlob;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.model.UploadObject;
+import ru.vladshi.cloudfilestorage.storage.service.impl.DeduplicatingContentStorageServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.DisabledContentIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.FolderUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.JpaStorageIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioFileServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ParallelPartUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.StorageCodec;
+import ru.vladshi.cloudfilestorage.user.entity.User;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+@SpringBootTest(
+        classes = {MinioFileServiceImpl.class, JpaStorageIndexServiceImpl.class, DeduplicatingContentStorageServiceImpl.class,
+                DisabledContentIndexServiceImpl.class, StorageCodec.class,
+                FolderUploader.class, ParallelPartUploader.class, MinioClientProvider.class,
+                AbstractMinioServiceTest.MinioClientConfig.class, AbstractIndexedStorageTest.JpaConfig.class},
+        properties = {
+                "storage.index.enabled=true",
+                "storage.dedup.enabled=true"
+})
+public class DeduplicatingStorageTest extends AbstractIndexedStorageTest {
+
+    private static final String BLOB_PREFIX = "blobs/sha256/";
+    private static final String STAGING_PREFIX = "blobs/staging/";
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private StorageIndexService storageIndexService;
+
+    @Autowired
+    private ContentStorageService contentStorageService;
+
+    @Autowired
+    private StorageCodec storageCodec;
+
+    @Autowired
+    private FolderUploader folderUploader;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void indexRootFolder() throws Exception {
+        storageIndexService.add(StorageObjectInfo.folder(ROOT_USER_FOLDER));
+    }
+
+    @Test
+    @DisplayName("Содержимое сохраняется под ключом из SHA-256, временный объект удаляется")
+    void shouldStoreUnderContentHash() throws Exception {
+        StorageObjectInfo stored = contentStorageService.store(
+                ROOT_USER_FOLDER + TEST_FILE_NAME, new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length);
+
+        assertEquals(BLOB_PREFIX + sha256(HELLO_MINIO_BYTES), stored.objectKey(),
+                "Ключ блоба должен совпадать с хешем содержимого");
+        assertEquals("Hello Minio", readObject(stored.objectKey()), "Содержимое должно лежать в блобе");
+        assertTrue(listObjects(STAGING_PREFIX).isEmpty(), "Временный объект должен быть удалён");
+        assertFalse(fileExists(ROOT_USER_FOLDER + TEST_FILE_NAME), "Файл не должен храниться по пути");
+    }
+
+    @Test
+    @DisplayName("Одинаковые файлы ссылаются на один блоб, удаление файла снимает одну ссылку")
+    void shouldShareBlobBetweenEqualFiles() throws Exception {
+        fileService.upload(ROOT_USER_FOLDER, "first.txt", new ByteArrayInputStream(HELLO_MINIO_BYTES),
+                HELLO_MINIO_BYTES.length);
+        fileService.upload(ROOT_USER_FOLDER, "second.txt", new ByteArrayInputStream(HELLO_MINIO_BYTES),
+                HELLO_MINIO_BYTES.length);
+        String blobKey = storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + "first.txt");
+
+        assertEquals(blobKey, storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + "second.txt"),
+                "Оба файла должны ссылаться на один блоб");
+        assertEquals(List.of(blobKey), listObjects(BLOB_PREFIX), "Содержимое должно храниться один раз");
+        assertEquals(2, blob(blobKey).getRefCount(), "У блоба должно быть две ссылки");
+
+        fileService.delete(ROOT_USER_FOLDER, "first.txt");
+
+        assertEquals(1, blob(blobKey).getRefCount(), "Удаление файла должно снять одну ссылку");
+        assertTrue(fileExists(blobKey), "Блоб, на который остались ссылки, не должен удаляться");
+        assertEquals("Hello Minio", new String(fileService.download(ROOT_USER_FOLDER, "second.txt")
+                .getInputStream().readAllBytes(), StandardCharsets.UTF_8), "Второй файл должен читаться");
+    }
+
+    @Test
+    @DisplayName("Загрузка папки хеширует файлы при пакетной загрузке и записывает одинаковое содержимое один раз")
+    void shouldStoreFolderIntoSharedBlobs() throws Exception {
+        List<StorageObjectInfo> stored = contentStorageService.storeAll(List.of(
+                UploadObject.folder(ROOT_USER_FOLDER + "docs/"),
+                new UploadObject(ROOT_USER_FOLDER + "docs/first.txt",
+                        new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length),
+                new UploadObject(ROOT_USER_FOLDER + "docs/second.txt",
+                        new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length)));
+
+        String blobKey = BLOB_PREFIX + sha256(HELLO_MINIO_BYTES);
+        assertEquals(ROOT_USER_FOLDER + "docs/", stored.get(0).path(), "Папка должна вернуться первой");
+        assertEquals(blobKey, stored.get(1).objectKey(), "Первый файл должен ссылаться на блоб по хешу");
+        assertEquals(blobKey, stored.get(2).objectKey(), "Второй файл должен ссылаться на тот же блоб");
+        assertEquals(List.of(blobKey), listObjects(BLOB_PREFIX), "Содержимое должно храниться один раз");
+        assertEquals("Hello Minio", readObject(blobKey), "Блоб должен содержать исходное содержимое");
+        assertTrue(listObjects(STAGING_PREFIX).isEmpty(), "Временные объекты должны быть удалены");
+        assertTrue(fileExists(ROOT_USER_FOLDER + "docs/"), "Маркер папки должен быть записан по пути");
+    }
+
+    @Test
+    @DisplayName("Сборщик удаляет блоб без ссылок только после истечения периода ожидания")
+    void shouldCollectOrphanBlobAfterGracePeriod() throws Exception {
+        fileService.upload(ROOT_USER_FOLDER, TEST_FILE_NAME, new ByteArrayInputStream(HELLO_MINIO_BYTES),
+                HELLO_MINIO_BYTES.length);
+        String blobKey = storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + TEST_FILE_NAME);
+        fileService.delete(ROOT_USER_FOLDER, TEST_FILE_NAME);
+
+        ((DeduplicatingContentStorageServiceImpl) contentStorageService).collectGarbage();
+
+        assertTrue(fileExists(blobKey), "Блоб не должен удаляться до истечения периода ожидания");
+
+        collector(minioClient).collectGarbage();
+
+        assertFalse(fileExists(blobKey), "Блоб без ссылок должен быть удалён");
+        assertTrue(storageBlobRepository.findById(blobKey).isEmpty(), "Запись блоба должна быть удалена");
+    }
+
+    @Test
+    @DisplayName("Загрузка того же содержимого во время удаления блоба сборщиком создаёт блоб заново")
+    void shouldRecreateBlobTouchedWhileCollected() throws Exception {
+        String blobKey = contentStorageService.store(ROOT_USER_FOLDER + TEST_FILE_NAME,
+                new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length).objectKey();
+        MinioClient collectingClient = spy(minioClient);
+        AtomicReference<CompletableFuture<StorageObjectInfo>> concurrentStore = new AtomicReference<>();
+        // Загрузка начинается, когда сборщик уже заблокировал запись блоба, но ещё не удалил объект
+        doAnswer(invocation -> {
+            concurrentStore.set(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return contentStorageService.store(ROOT_USER_FOLDER + "copy.txt",
+                            new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+            Thread.sleep(500);
+            return invocation.callRealMethod();
+        }).when(collectingClient).removeObject(argThat((RemoveObjectArgs args) ->
+                args != null && args.object().equals(blobKey)));
+
+        collector(collectingClient).collectGarbage();
+        StorageObjectInfo stored = concurrentStore.get().get(30, TimeUnit.SECONDS);
+
+        assertEquals(blobKey, stored.objectKey(), "Загрузка должна сослаться на тот же блоб");
+        assertEquals("Hello Minio", readObject(blobKey), "Блоб должен существовать после сборки");
+        assertTrue(storageBlobRepository.findById(blobKey).isPresent(), "Запись блоба должна существовать");
+    }
+
+    @Test
+    @DisplayName("Сборщик удаляет временные объекты прерванных загрузок")
+    void shouldRemoveAbandonedStagingObjects() throws Exception {
+        String abandoned = STAGING_PREFIX + "abandoned";
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(abandoned)
+                .stream(new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length, -1)
+                .build());
+
+        ((DeduplicatingContentStorageServiceImpl) contentStorageService).collectGarbage();
+
+        assertTrue(fileExists(abandoned), "Временный объект не должен удаляться до истечения периода ожидания");
+
+        collector(minioClient).collectGarbage();
+
+        assertFalse(fileExists(abandoned), "Временный объект должен быть удалён");
+    }
+
+    @Test
+    @DisplayName("Принятый из временного объекта файл хешируется и ссылается на существующий блоб")
+    void shouldAdoptStagedObjectIntoBlob() throws Exception {
+        String blobKey = contentStorageService.store(ROOT_USER_FOLDER + TEST_FILE_NAME,
+                new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length).objectKey();
+        String stagedKey = "uploads/staged-object";
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(stagedKey)
+                .stream(new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length, -1)
+                .build());
+
+        StorageObjectInfo adopted = contentStorageService.adopt(ROOT_USER_FOLDER + "adopted.txt", stagedKey,
+                HELLO_MINIO_BYTES.length);
+
+        assertEquals(blobKey, adopted.objectKey(), "Файл с тем же содержимым должен ссылаться на тот же блоб");
+        assertEquals(List.of(blobKey), listObjects(BLOB_PREFIX), "Новый блоб не должен создаваться");
+        assertTrue(fileExists(stagedKey), "Временный объект удаляет вызывающий");
+    }
+
+    @Test
+    @DisplayName("Индекс пользователя с файлами в бакете не пересобирается из листинга")
+    void shouldRefuseRebuildFromListing() throws Exception {
+        User user = saveUser("unindexed_user");
+        String userPrefix = user.getId() + "-" + user.getUsername() + "/";
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(userPrefix + "docs/")
+                .stream(new ByteArrayInputStream(new byte[0]), 0, -1)
+                .build());
+
+        assertThrows(IllegalStateException.class, () -> storageIndexService.exists(userPrefix + "docs/"),
+                "Листинг не содержит файлов, хранящихся в блобах");
+    }
+
+    // Сборщик без периода ожидания: все блобы без ссылок и временные объекты уже считаются брошенными
+    private DeduplicatingContentStorageServiceImpl collector(MinioClient client) throws InterruptedException {
+        Thread.sleep(10);
+        return new DeduplicatingContentStorageServiceImpl(new MinioClientProvider(client, TEST_BUCKET_NAME),
+                storageCodec, folderUploader, storageBlobRepository, transactionTemplate, true, Duration.ZERO);
+    }
+
+    private StorageBlob blob(String blobKey) {
+        return storageBlobRepository.findById(blobKey).orElseThrow();
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
@@ -0,0 +1,116 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import io.minio.SnowballObject;
+import io.minio.UploadSnowballObjectsArgs;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ObjectPrefetcher;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ParallelPartUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.StorageCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Время сборки ZIP-архива папки из множества мелких файлов при последовательном чтении объектов
+ * и с упреждающей загрузкой {@link ObjectPrefetcher}.
+ * Запуск: {@code mvn test -Dtest=FolderArchiveBenchmark -Dbenchmark=true [-Dbenchmark.files=10000]}.
+ */
+@SpringBootTest(
+        classes = {ObjectPrefetcher.class, StorageCodec.class, ParallelPartUploader.class, MinioClientProvider.class,
+                AbstractMinioServiceTest.MinioClientConfig.class},
+        properties = {
+                "spring.flyway.enabled=false",
+                "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration"
+        })
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class FolderArchiveBenchmark extends AbstractMinioServiceTest {
+
+    private static final int ROUNDS = 3;
+    private static final int FILE_SIZE = 4 * 1024;
+    private static final int BATCH_SIZE = 1000;
+    private static final String FOLDER = ROOT_USER_FOLDER + "benchmark/";
+
+    @Autowired
+    private MinioClientProvider minioClientProvider;
+
+    @Autowired
+    private StorageCodec storageCodec;
+
+    @Test
+    @DisplayName("Сборка архива папки с последовательным и упреждающим чтением файлов")
+    void compareSequentialAndPrefetchedArchive() throws Exception {
+        List<StorageObjectInfo> files = uploadFiles(Integer.getInteger("benchmark.files", 10_000));
+
+        // Порог прямого чтения 0: каждый файл открывается, только когда до него дошла очередь
+        ObjectPrefetcher sequential = new ObjectPrefetcher(minioClientProvider, storageCodec, 1, "64MB", "0");
+        ObjectPrefetcher prefetching = new ObjectPrefetcher(minioClientProvider, storageCodec,
+                Integer.getInteger("benchmark.parallelism", 16), "64MB", "4MB");
+
+        // Прогрев соединений и JIT
+        writeArchive(prefetching, files);
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            double sequentialSeconds = measure(() -> writeArchive(sequential, files));
+            double prefetchedSeconds = measure(() -> writeArchive(prefetching, files));
+            System.out.printf("Round %d, %d files: sequential %.2f s, prefetch %.2f s%n",
+                    round, files.size(), sequentialSeconds, prefetchedSeconds);
+        }
+    }
+
+    private List<StorageObjectInfo> uploadFiles(int count) throws Exception {
+        byte[] content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+
+        List<StorageObjectInfo> files = new ArrayList<>(count);
+        List<SnowballObject> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < count; i++) {
+            String path = FOLDER + "file-%05d.bin".formatted(i);
+            files.add(StorageObjectInfo.file(path, FILE_SIZE, null));
+            batch.add(new SnowballObject(path, new ByteArrayInputStream(content), FILE_SIZE, null));
+            if (batch.size() == BATCH_SIZE || i == count - 1) {
+                minioClient.uploadSnowballObjects(UploadSnowballObjectsArgs.builder()
+                        .bucket(TEST_BUCKET_NAME)
+                        .objects(batch)
+                        .build());
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        return files;
+    }
+
+    private void writeArchive(ObjectPrefetcher prefetcher, List<StorageObjectInfo> files) throws Exception {
+        try (ZipOutputStream zipOut = new ZipOutputStream(OutputStream.nullOutputStream());
+             ObjectPrefetcher.Session objects = prefetcher.open(files)) {
+            for (StorageObjectInfo file : files) {
+                zipOut.putNextEntry(new ZipEntry(file.path().substring(FOLDER.length())));
+                try (InputStream inputStream = objects.next()) {
+                    inputStream.transferTo(zipOut);
+                }
+                zipOut.closeEntry();
+            }
+        }
+    }
+
+    private double measure(Archive archive) throws Exception {
+        long start = System.nanoTime();
+        archive.write();
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    @FunctionalInterface
+    private interface Archive {
+        void write() throws Exception;
+    }
+}
@@ -0,0 +1,109 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageNameTrigram;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.service.impl.DisabledContentIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.FolderUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.JpaSearchServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.JpaStorageIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ParallelPartUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.PathContentStorageServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.StorageCodec;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(
+        classes = {JpaSearchServiceImpl.class, JpaStorageIndexServiceImpl.class, PathContentStorageServiceImpl.class,
+                DisabledContentIndexServiceImpl.class, StorageCodec.class,
+                FolderUploader.class, ParallelPartUploader.class,
+                MinioClientProvider.class, AbstractMinioServiceTest.MinioClientConfig.class,
+                AbstractIndexedStorageTest.JpaConfig.class},
+        properties = "storage.index.enabled=true"
+)
+public class JpaSearchServiceImplTest extends AbstractIndexedStorageTest {
+
+    @Autowired
+    private SearchService searchService;
+
+    @Autowired
+    private StorageIndexService storageIndexService;
+
+    @BeforeEach
+    void indexTree() throws Exception {
+        storageIndexService.add(StorageObjectInfo.folder(ROOT_USER_FOLDER));
+        storageIndexService.addAll(List.of(
+                StorageObjectInfo.folder(ROOT_USER_FOLDER + "docs/"),
+                StorageObjectInfo.folder(ROOT_USER_FOLDER + "docs/archive/"),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "Annual-Report.txt", 1, null),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "docs/report", 1, null),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "docs/archive/report.md", 1, null),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "docs/archive/aaa.txt", 1, null),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "docs/MD", 1, null)));
+    }
+
+    @Test
+    @DisplayName("Поиск по подстроке находит кандидатов по триграммам и отсеивает имена без точного вхождения")
+    void shouldSearchByTrigramsAndCheckSubstring() throws Exception {
+        assertEquals(List.of("Annual-Report.txt", "docs/archive/report.md", "docs/report"),
+                relativePaths(searchService.searchItems(ROOT_USER_FOLDER, "REPORT")),
+                "Должны найтись все имена с подстрокой без учёта регистра");
+        assertTrue(searchService.searchItems(ROOT_USER_FOLDER, "aaaa").isEmpty(),
+                "Имя с той же триграммой, но без подстроки, не должно найтись");
+    }
+
+    @Test
+    @DisplayName("Запрос короче триграммы находит вхождения в конце имени и короткие имена")
+    void shouldSearchShortQueryThroughIndex() throws Exception {
+        assertEquals(List.of("docs/MD", "docs/archive/report.md"),
+                relativePaths(searchService.searchItems(ROOT_USER_FOLDER, "md")),
+                "Должны найтись короткое имя и имя с подстрокой в конце");
+        assertEquals(List.of("docs/", "docs/MD", "docs/archive/report.md"),
+                relativePaths(searchService.searchItems(ROOT_USER_FOLDER, "d")),
+                "Односимвольный запрос должен находить вхождение в любой позиции");
+    }
+
+    @Test
+    @DisplayName("Короткое имя хранится в индексе целиком и заменяется при переименовании")
+    void shouldIndexShortNameAsWhole() throws Exception {
+        assertTrue(storageNameTrigramRepository.findAll().stream()
+                        .map(StorageNameTrigram::getTrigram)
+                        .anyMatch("md"::equals),
+                "Короткое имя должно попасть в индекс в нижнем регистре");
+
+        storageIndexService.move(ROOT_USER_FOLDER + "docs/MD", ROOT_USER_FOLDER + "docs/XY");
+
+        assertTrue(searchService.searchItems(ROOT_USER_FOLDER, "md").stream()
+                        .noneMatch(item -> item.relativePath().startsWith("docs/MD")),
+                "Старое имя не должно находиться после переименования");
+        assertEquals(List.of("docs/XY"), relativePaths(searchService.searchItems(ROOT_USER_FOLDER, "xy")),
+                "Новое имя должно находиться");
+    }
+
+    @Test
+    @DisplayName("Подсказки ранжируются по точности совпадения и вложенности")
+    void shouldRankSuggestions() throws Exception {
+        assertEquals(List.of("docs/report", "docs/archive/report.md", "Annual-Report.txt"),
+                relativePaths(searchService.suggest(ROOT_USER_FOLDER, "report", 10)),
+                "Точное совпадение, затем префикс, затем подстрока");
+        assertEquals(List.of("docs/report"), relativePaths(searchService.suggest(ROOT_USER_FOLDER, "report", 1)),
+                "Выборка должна останавливаться на лимите");
+        assertEquals(List.of("docs/MD", "docs/archive/report.md"),
+                relativePaths(searchService.suggest(ROOT_USER_FOLDER, "md", 10)),
+                "Короткий запрос ранжируется так же");
+    }
+
+    private static List<String> relativePaths(List<StorageItem> items) {
+        return items.stream()
+                .map(StorageItem::relativePath)
+                .toList();
+    }
+}
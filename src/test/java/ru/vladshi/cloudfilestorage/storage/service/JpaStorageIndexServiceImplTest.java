@@ -0,0 +1,294 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import ru.vladshi.cloudfilestorage.storage.exception.FolderNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageBlob;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageObject;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageUsage;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageBlobRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageNameTrigramRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageObjectRepository;
+import ru.vladshi.cloudfilestorage.storage.repository.StorageUsageRepository;
+import ru.vladshi.cloudfilestorage.storage.service.impl.JpaStorageIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+import ru.vladshi.cloudfilestorage.storage.util.TrigramUtil;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ContextConfiguration(classes = JpaStorageIndexServiceImplTest.TestConfig.class)
+@Testcontainers
+public class JpaStorageIndexServiceImplTest {
+
+    private static final String MYSQL_IMAGE = "mysql:9.1.0";
+    private static final String ROOT_USER_FOLDER = "1-test_user/";
+
+    @Container
+    protected static final MySQLContainer<?> mysqlContainer = new MySQLContainer<>(DockerImageName.parse(MYSQL_IMAGE))
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @Autowired
+    private StorageIndexService storageIndexService;
+
+    @Autowired
+    private StorageObjectRepository storageObjectRepository;
+
+    @Autowired
+    private StorageUsageRepository storageUsageRepository;
+
+    @Autowired
+    private StorageNameTrigramRepository storageNameTrigramRepository;
+
+    @Autowired
+    private StorageBlobRepository storageBlobRepository;
+
+    @Autowired
+    private ContentStorageService contentStorageService;
+
+    @Configuration
+    @EnableJpaRepositories(basePackages = "ru.vladshi.cloudfilestorage.storage.repository")
+    @EntityScan(basePackages = "ru.vladshi.cloudfilestorage.storage.entity")
+    static class TestConfig {
+        @Bean
+        public StorageIndexService storageIndexService(MinioClientProvider minioClientProvider,
+                                                       StorageObjectRepository storageObjectRepository,
+                                                       StorageUsageRepository storageUsageRepository,
+                                                       StorageNameTrigramRepository storageNameTrigramRepository,
+                                                       StorageBlobRepository storageBlobRepository,
+                                                       ContentStorageService contentStorageService,
+                                                       TransactionTemplate transactionTemplate) {
+            return new JpaStorageIndexServiceImpl(minioClientProvider, storageObjectRepository,
+                    storageUsageRepository, storageNameTrigramRepository, storageBlobRepository,
+                    contentStorageService, transactionTemplate);
+        }
+
+        @Bean
+        public ContentStorageService contentStorageService() {
+            ContentStorageService mock = Mockito.mock(ContentStorageService.class);
+            Mockito.when(mock.indexRebuildable()).thenReturn(true);
+            return mock;
+        }
+
+        @Bean
+        public MinioClientProvider minioClientProvider() {
+            MinioClient minioClient = Mockito.mock(MinioClient.class);
+            Mockito.when(minioClient.listObjects(Mockito.any(ListObjectsArgs.class))).thenReturn(List.of());
+            MinioClientProvider mock = Mockito.mock(MinioClientProvider.class);
+            Mockito.when(mock.getMinioClient()).thenReturn(minioClient);
+            Mockito.when(mock.getUsersBucketName()).thenReturn("test-bucket");
+            return mock;
+        }
+    }
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", mysqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", mysqlContainer::getUsername);
+        registry.add("spring.datasource.password", mysqlContainer::getPassword);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storageNameTrigramRepository.deleteAll();
+        storageObjectRepository.deleteAll();
+        storageUsageRepository.deleteAll();
+        storageBlobRepository.deleteAll();
+        storageIndexService.add(StorageObjectInfo.folder(ROOT_USER_FOLDER));
+    }
+
+    @Test
+    @DisplayName("Листинг папки из индекса возвращает только прямых потомков")
+    void shouldReturnOnlyDirectChildren() throws Exception {
+        storageIndexService.addAll(List.of(
+                StorageObjectInfo.folder(ROOT_USER_FOLDER + "docs/"),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "docs/report.txt", 11, "etag"),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "notes.txt", 5, "etag")));
+
+        List<StorageItem> contents = storageIndexService.getFolderContents(ROOT_USER_FOLDER);
+
+        assertEquals(2, contents.size(), "В корне должны быть папка и файл");
+        assertEquals("docs/", contents.get(0).relativePath());
+        assertTrue(contents.get(0).isFolder(), "Первый элемент должен быть папкой");
+        assertEquals("notes.txt", contents.get(1).relativePath());
+        assertEquals(5, contents.get(1).size());
+    }
+
+    @Test
+    @DisplayName("Листинг папки продолжается строго после переданного пути")
+    void shouldReturnPageAfterStartPath() throws Exception {
+        storageIndexService.addAll(List.of(
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "a.txt", 1, null),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "b.txt", 1, null),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "c.txt", 1, null)));
+
+        List<StorageItem> page = storageIndexService.getFolderContents(ROOT_USER_FOLDER, ROOT_USER_FOLDER + "a.txt", 1);
+
+        assertEquals(List.of("b.txt"), page.stream().map(StorageItem::relativePath).toList());
+    }
+
+    @Test
+    @DisplayName("Листинг несуществующей папки")
+    void shouldThrowExceptionForMissingFolder() {
+        assertThrows(FolderNotFoundException.class,
+                () -> storageIndexService.getFolderContents(ROOT_USER_FOLDER + "missing/"),
+                "Должно выбросить исключение для несуществующей папки");
+    }
+
+    @Test
+    @DisplayName("Перемещение папки обновляет пути всех вложенных объектов")
+    void shouldMoveFolderWithDescendants() throws Exception {
+        storageIndexService.addAll(List.of(
+                StorageObjectInfo.folder(ROOT_USER_FOLDER + "old/"),
+                StorageObjectInfo.folder(ROOT_USER_FOLDER + "old/inner/"),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "old/inner/file.txt", 3, null)));
+
+        storageIndexService.move(ROOT_USER_FOLDER + "old/", ROOT_USER_FOLDER + "new/");
+
+        assertFalse(storageIndexService.exists(ROOT_USER_FOLDER + "old/"), "Старая папка должна исчезнуть");
+        assertTrue(storageIndexService.exists(ROOT_USER_FOLDER + "new/inner/file.txt"), "Файл должен переехать");
+        List<StorageItem> contents = storageIndexService.getFolderContents(ROOT_USER_FOLDER + "new/");
+        assertEquals(List.of("new/inner/"), contents.stream().map(StorageItem::relativePath).toList());
+    }
+
+    @Test
+    @DisplayName("Удаление папки не затрагивает папку с похожим префиксом")
+    void shouldRemoveFolderButKeepSiblingWithSamePrefix() throws Exception {
+        storageIndexService.addAll(List.of(
+                StorageObjectInfo.folder(ROOT_USER_FOLDER + "docs/"),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "docs/a.txt", 1, null),
+                StorageObjectInfo.folder(ROOT_USER_FOLDER + "docs_old/")));
+
+        storageIndexService.remove(ROOT_USER_FOLDER + "docs/");
+
+        assertFalse(storageIndexService.exists(ROOT_USER_FOLDER + "docs/a.txt"), "Вложенный файл должен быть удалён");
+        assertTrue(storageIndexService.exists(ROOT_USER_FOLDER + "docs_old/"), "Соседняя папка должна остаться");
+    }
+
+    @Test
+    @DisplayName("Счётчик занятого места учитывает загрузку, перезапись и удаление")
+    void shouldMaintainUsedBytes() throws Exception {
+        storageIndexService.addAll(List.of(
+                StorageObjectInfo.folder(ROOT_USER_FOLDER + "docs/"),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "docs/a.txt", 10, null),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "b.txt", 20, null)));
+        storageIndexService.add(StorageObjectInfo.file(ROOT_USER_FOLDER + "b.txt", 5, null));
+
+        assertEquals(15, usedBytes(), "Перезапись файла должна учитывать только разницу размеров");
+
+        storageIndexService.remove(ROOT_USER_FOLDER + "docs/");
+
+        assertEquals(5, usedBytes(), "Удаление папки должно вычесть размер вложенных файлов");
+    }
+
+    @Test
+    @DisplayName("Поиск по подстроке находит объекты через триграммы и учитывает переименование")
+    void shouldSearchByTrigramsAfterRename() throws Exception {
+        storageIndexService.addAll(List.of(
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "Annual-Report.txt", 1, null),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "report-draft.txt", 1, null),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "trope.txt", 1, null)));
+
+        storageIndexService.move(ROOT_USER_FOLDER + "report-draft.txt", ROOT_USER_FOLDER + "notes.txt");
+
+        List<String> found = storageObjectRepository.searchByTrigrams(ROOT_USER_FOLDER, TrigramUtil.trigrams("report"), 4)
+                .stream()
+                .map(StorageObject::getName)
+                .toList();
+        assertEquals(List.of("Annual-Report.txt"), found, "Должен найтись только файл с подстрокой в имени");
+    }
+
+    @Test
+    @DisplayName("Число ссылок на общий блоб меняется при добавлении, перемещении и удалении файлов")
+    void shouldCountBlobReferences() throws Exception {
+        String blobKey = "blobs/sha256/abc";
+        storageIndexService.addAll(List.of(
+                StorageObjectInfo.folder(ROOT_USER_FOLDER + "docs/"),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "docs/a.iso", 10, null, blobKey),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "b.iso", 10, null, blobKey)));
+
+        storageIndexService.move(ROOT_USER_FOLDER + "b.iso", ROOT_USER_FOLDER + "c.iso");
+
+        assertEquals(2, refCount(blobKey), "Перемещение не должно менять число ссылок");
+        assertEquals(blobKey, storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + "c.iso"));
+
+        storageIndexService.remove(ROOT_USER_FOLDER + "docs/");
+        storageIndexService.remove(ROOT_USER_FOLDER + "c.iso");
+
+        assertEquals(0, refCount(blobKey), "После удаления всех файлов ссылок не остаётся");
+        assertEquals(List.of(blobKey), storageBlobRepository.findOrphanKeys(Instant.now().plusSeconds(1), 10));
+    }
+
+    @Test
+    @DisplayName("Перемещение папки сохраняет неизменяемые ключи файлов и не создаёт ссылок на блобы")
+    void shouldKeepObjectIdKeysOnFolderMove() throws Exception {
+        String objectKey = "objects/3f1c0e1a-8d2b-4c55-9a57-0f3b6a1d2e4c";
+        storageIndexService.addAll(List.of(
+                StorageObjectInfo.folder(ROOT_USER_FOLDER + "old/"),
+                StorageObjectInfo.file(ROOT_USER_FOLDER + "old/a.txt", 4, null, objectKey)));
+
+        storageIndexService.move(ROOT_USER_FOLDER + "old/", ROOT_USER_FOLDER + "new/");
+
+        assertEquals(objectKey, storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + "new/a.txt"));
+        assertTrue(storageBlobRepository.findById(objectKey).isEmpty(), "Ключ объекта не должен считаться блобом");
+        assertEquals(4, usedBytes());
+    }
+
+    private int refCount(String objectKey) {
+        return storageBlobRepository.findById(objectKey).map(StorageBlob::getRefCount).orElse(0);
+    }
+
+    private long usedBytes() {
+        return storageUsageRepository.findById(ROOT_USER_FOLDER).map(StorageUsage::getUsedBytes).orElse(0L);
+    }
+
+    @Test
+    @DisplayName("Индекс без корневой папки не пересобирается, если содержимое хранится не по путям")
+    void shouldRefuseRebuildWhenContentIsNotStoredByPath() {
+        String otherUserPrefix = "2-other_user/";
+        StorageObject orphanRow = new StorageObject();
+        orphanRow.setUserPrefix(otherUserPrefix);
+        orphanRow.setPath(otherUserPrefix + "report.txt");
+        orphanRow.setParentPath(otherUserPrefix);
+        orphanRow.setName("report.txt");
+        orphanRow.setSize(11);
+        orphanRow.setObjectKey("objects/report");
+        storageObjectRepository.saveAndFlush(orphanRow);
+
+        Mockito.when(contentStorageService.indexRebuildable()).thenReturn(false);
+        try {
+            assertThrows(IllegalStateException.class,
+                    () -> storageIndexService.exists(otherUserPrefix + "report.txt"),
+                    "Пересборка из листинга потеряла бы файлы, хранящиеся не по путям");
+        } finally {
+            Mockito.when(contentStorageService.indexRebuildable()).thenReturn(true);
+        }
+        assertTrue(storageObjectRepository.existsByPath(otherUserPrefix + "report.txt"),
+                "Строки индекса должны остаться нетронутыми");
+    }
+}
@@ -0,0 +1,82 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageReservation;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageUsage;
+import ru.vladshi.cloudfilestorage.storage.exception.StorageLimitExceededException;
+import ru.vladshi.cloudfilestorage.storage.service.impl.JpaStorageUsageServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(
+        classes = {JpaStorageUsageServiceImpl.class, MinioClientProvider.class,
+                AbstractMinioServiceTest.MinioClientConfig.class, AbstractIndexedStorageTest.JpaConfig.class},
+        properties = "storage.index.enabled=true"
+)
+public class JpaStorageUsageServiceImplTest extends AbstractIndexedStorageTest {
+
+    private static final long MAX_STORAGE_SIZE = 1024 * 1024; // 1MB
+    private static final long HALF_LIMIT = MAX_STORAGE_SIZE / 2 + 1;
+
+    @Autowired
+    private StorageUsageService storageUsageService;
+
+    @Test
+    @DisplayName("Резерв записывается со сроком действия и учитывается в счётчике пользователя")
+    void shouldRecordReservationWithExpiry() throws Exception {
+        QuotaReservation reservation = storageUsageService.reserve(ROOT_USER_FOLDER, HALF_LIMIT, Duration.ofHours(1));
+
+        StorageReservation stored = storageReservationRepository.findById(reservation.id()).orElseThrow();
+        assertEquals(HALF_LIMIT, stored.getBytes(), "Резерв должен хранить объём");
+        assertEquals(ROOT_USER_FOLDER, stored.getUserPrefix(), "Резерв должен принадлежать пользователю");
+        assertTrue(stored.getExpiresAt().isAfter(Instant.now()), "Срок резерва должен быть в будущем");
+        assertEquals(HALF_LIMIT, usage().getReservedBytes(), "Резерв должен учитываться в счётчике");
+
+        assertThrows(StorageLimitExceededException.class,
+                () -> storageUsageService.reserve(ROOT_USER_FOLDER, HALF_LIMIT),
+                "Резерв сверх лимита должен отклоняться");
+        assertEquals(1, storageReservationRepository.count(), "Отклонённый резерв не должен записываться");
+    }
+
+    @Test
+    @DisplayName("Резерв освобождается один раз, сколько бы раз его ни освобождали")
+    void shouldReleaseReservationOnce() throws Exception {
+        QuotaReservation first = storageUsageService.reserve(ROOT_USER_FOLDER, HALF_LIMIT);
+        storageUsageService.reserve(ROOT_USER_FOLDER, 100);
+
+        storageUsageService.release(ROOT_USER_FOLDER, first.id());
+        storageUsageService.release(ROOT_USER_FOLDER, first.id());
+
+        assertEquals(100, usage().getReservedBytes(), "Повторное освобождение не должно снимать чужой резерв");
+        assertTrue(storageReservationRepository.findById(first.id()).isEmpty(), "Запись резерва должна быть удалена");
+    }
+
+    @Test
+    @DisplayName("Очистка снимает просроченные резервы и оставляет действующие")
+    void shouldReleaseExpiredReservations() throws Exception {
+        QuotaReservation expired = storageUsageService.reserve(ROOT_USER_FOLDER, HALF_LIMIT, Duration.ZERO);
+        QuotaReservation active = storageUsageService.reserve(ROOT_USER_FOLDER, 100);
+        Thread.sleep(10);
+
+        ((JpaStorageUsageServiceImpl) storageUsageService).releaseExpiredReservations();
+
+        assertEquals(100, usage().getReservedBytes(), "Должен остаться только действующий резерв");
+        assertTrue(storageReservationRepository.findById(expired.id()).isEmpty(),
+                "Просроченный резерв должен быть удалён");
+        assertTrue(storageReservationRepository.findById(active.id()).isPresent(),
+                "Действующий резерв должен сохраниться");
+        assertDoesNotThrow(() -> storageUsageService.reserve(ROOT_USER_FOLDER, HALF_LIMIT).close(),
+                "Место просроченного резерва должно снова стать доступным");
+    }
+
+    private StorageUsage usage() {
+        return storageUsageRepository.findById(ROOT_USER_FOLDER).orElseThrow();
+    }
+}
@@ -0,0 +1,154 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import io.minio.PutObjectArgs;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.service.impl.LuceneContentIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioStorageIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ParallelPartUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.StorageCodec;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(
+        classes = {LuceneContentIndexServiceImpl.class, MinioStorageIndexServiceImpl.class, StorageCodec.class,
+                ParallelPartUploader.class, MinioClientProvider.class, AbstractMinioServiceTest.MinioClientConfig.class},
+        properties = {
+                "spring.flyway.enabled=false",
+                "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration",
+                "storage.index.enabled=false",
+                "storage.content-search.enabled=true"
+        })
+public class LuceneContentIndexServiceImplTest extends AbstractMinioServiceTest {
+
+    private static final long INDEXING_TIMEOUT_MILLIS = 10_000;
+
+    @TempDir
+    static Path indexDirectory;
+
+    @Autowired
+    private ContentIndexService contentIndexService;
+
+    @DynamicPropertySource
+    static void registerIndexProperties(DynamicPropertyRegistry registry) {
+        registry.add("storage.content-search.index-path", () -> indexDirectory.toString());
+    }
+
+    @Test
+    @DisplayName("Текстовый файл находится по слову из содержимого с путём относительно папки поиска")
+    void shouldFindTextFileByContent() throws Exception {
+        putFile(FIRST_LEVEL_FOLDER + "notes.txt", "quarterly budget report");
+
+        List<StorageItem> results = awaitSearch(ROOT_USER_FOLDER, "budget", items -> !items.isEmpty());
+
+        assertEquals(1, results.size(), "Должен найтись один файл");
+        assertEquals(FIRST_LEVEL_FOLDER + "notes.txt", results.getFirst().relativePath(),
+                "Путь должен быть относительным");
+        assertEquals("quarterly budget report".length(), results.getFirst().size(), "Размер должен сохраниться");
+    }
+
+    @Test
+    @DisplayName("Двоичные файлы и файлы с нетекстовым расширением не индексируются")
+    void shouldSkipBinaryAndNonTextFiles() throws Exception {
+        putFile("image.png", "invoice");
+        putFile("binary.txt", "invoice\0payload");
+        putFile("marker.txt", "marker");
+
+        awaitSearch(ROOT_USER_FOLDER, "marker", items -> !items.isEmpty());
+
+        assertTrue(contentIndexService.search(ROOT_USER_FOLDER, "invoice", 10).isEmpty(),
+                "Двоичные и нетекстовые файлы не должны находиться");
+    }
+
+    @Test
+    @DisplayName("Удаление папки убирает из индекса все её файлы")
+    void shouldRemoveFolderFromIndex() throws Exception {
+        putFile(FIRST_LEVEL_FOLDER + "first.txt", "contract draft");
+        putFile(FIRST_LEVEL_FOLDER + "second.md", "contract final");
+        awaitSearch(ROOT_USER_FOLDER, "contract", items -> items.size() == 2);
+
+        contentIndexService.remove(ROOT_USER_FOLDER + FIRST_LEVEL_FOLDER);
+
+        assertTrue(awaitSearch(ROOT_USER_FOLDER, "contract", List::isEmpty).isEmpty(),
+                "Файлы удалённой папки не должны находиться");
+    }
+
+    @Test
+    @DisplayName("После перемещения файл находится по новому пути без повторного чтения из MinIO")
+    void shouldReindexMovedFolder() throws Exception {
+        putFile(FIRST_LEVEL_FOLDER + "plan.txt", "migration plan");
+        awaitSearch(ROOT_USER_FOLDER, "migration", items -> !items.isEmpty());
+
+        contentIndexService.move(ROOT_USER_FOLDER + FIRST_LEVEL_FOLDER, ROOT_USER_FOLDER + "renamed/");
+
+        List<StorageItem> results = awaitSearch(ROOT_USER_FOLDER, "migration",
+                items -> items.size() == 1 && items.getFirst().relativePath().startsWith("renamed/"));
+        assertEquals("renamed/plan.txt", results.getFirst().relativePath(), "Файл должен находиться по новому пути");
+    }
+
+    @Test
+    @DisplayName("Файл, получивший при переименовании текстовое расширение, индексируется")
+    void shouldIndexFileRenamedToTextExtension() throws Exception {
+        putFile("notes", "retrospective notes");
+        putObject(ROOT_USER_FOLDER + "notes.txt", "retrospective notes");
+
+        contentIndexService.move(ROOT_USER_FOLDER + "notes", ROOT_USER_FOLDER + "notes.txt");
+
+        List<StorageItem> results = awaitSearch(ROOT_USER_FOLDER, "retrospective", items -> !items.isEmpty());
+        assertEquals("notes.txt", results.getFirst().relativePath(), "Файл должен находиться по новому имени");
+    }
+
+    @Test
+    @DisplayName("Поиск не возвращает файлы за пределами папки поиска")
+    void shouldLimitSearchToBasePath() throws Exception {
+        putFile(FIRST_LEVEL_FOLDER + "inside.txt", "confidential inside");
+        putFile("outside.txt", "confidential outside");
+        awaitSearch(ROOT_USER_FOLDER, "confidential", items -> items.size() == 2);
+
+        List<StorageItem> results = contentIndexService.search(ROOT_USER_FOLDER + FIRST_LEVEL_FOLDER,
+                "confidential", 10);
+
+        assertEquals(List.of("inside.txt"), results.stream().map(StorageItem::relativePath).toList(),
+                "Должен найтись только файл из папки поиска");
+    }
+
+    private void putFile(String relativePath, String content) throws Exception {
+        putObject(ROOT_USER_FOLDER + relativePath, content);
+        contentIndexService.index(ROOT_USER_FOLDER + relativePath, content.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private void putObject(String objectName, String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(objectName)
+                .stream(new ByteArrayInputStream(bytes), bytes.length, -1)
+                .build());
+    }
+
+    // Индекс обновляется фоновым потоком, поэтому результат ожидается с таймаутом
+    private List<StorageItem> awaitSearch(String basePath, String query, Predicate<List<StorageItem>> condition)
+            throws Exception {
+        long deadline = System.currentTimeMillis() + INDEXING_TIMEOUT_MILLIS;
+        List<StorageItem> results = contentIndexService.search(basePath, query, 10);
+        while (!condition.test(results) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            results = contentIndexService.search(basePath, query, 10);
+        }
+        assertTrue(condition.test(results), "Индекс не обновился за отведённое время: " + results);
+        return results;
+    }
+}
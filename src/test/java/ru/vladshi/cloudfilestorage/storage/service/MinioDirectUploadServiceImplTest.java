@@ -0,0 +1,285 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import io.minio.PutObjectArgs;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.vladshi.cloudfilestorage.storage.config.MinioPresigner;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageUsage;
+import ru.vladshi.cloudfilestorage.storage.exception.FileAlreadyExistsInStorageException;
+import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.exception.StorageItemNameValidationException;
+import ru.vladshi.cloudfilestorage.storage.exception.StorageLimitExceededException;
+import ru.vladshi.cloudfilestorage.storage.exception.UploadSessionNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.model.DirectUploadTicket;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.service.impl.DisabledContentIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.FolderUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.JpaStorageIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.JpaStorageUsageServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioDirectUploadServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ParallelPartUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.PathContentStorageServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.StorageCodec;
+import ru.vladshi.cloudfilestorage.storage.service.impl.UploadPathLock;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(
+        classes = {MinioDirectUploadServiceImpl.class, UploadPathLock.class, JpaStorageIndexServiceImpl.class,
+                JpaStorageUsageServiceImpl.class, PathContentStorageServiceImpl.class, DisabledContentIndexServiceImpl.class,
+                StorageCodec.class, FolderUploader.class, ParallelPartUploader.class, MinioClientProvider.class,
+                AbstractMinioServiceTest.MinioClientConfig.class, AbstractIndexedStorageTest.JpaConfig.class},
+        properties = "storage.index.enabled=true"
+)
+public class MinioDirectUploadServiceImplTest extends AbstractRedisStorageTest {
+
+    private static final String STAGING_PREFIX = "uploads/";
+
+    @Autowired
+    private DirectUploadService directUploadService;
+
+    @Autowired
+    private StorageIndexService storageIndexService;
+
+    @Autowired
+    private ContentStorageService contentStorageService;
+
+    @Autowired
+    private StorageUsageService storageUsageService;
+
+    @Autowired
+    private MinioPresigner minioPresigner;
+
+    @BeforeEach
+    void indexRootFolder() throws Exception {
+        storageIndexService.add(StorageObjectInfo.folder(ROOT_USER_FOLDER));
+    }
+
+    @Test
+    @DisplayName("Форма загрузки разрешает только временный ключ и точный размер, место резервируется")
+    void shouldPresignPostForStagingKeyAndExactSize() throws Exception {
+        DirectUploadTicket ticket = create(TEST_FILE_NAME);
+
+        String stagingKey = ticket.fields().get("key");
+        assertEquals(STAGING_PREFIX + ROOT_USER_FOLDER + ticket.id(), stagingKey,
+                "Форма должна загружать во временный объект загрузки");
+        assertTrue(ticket.url().endsWith("/" + TEST_BUCKET_NAME), "Форма должна отправляться в бакет");
+        assertTrue(ticket.fields().containsKey("x-amz-signature"), "Форма должна быть подписана");
+        String policy = new String(Base64.getDecoder().decode(ticket.fields().get("policy")), StandardCharsets.UTF_8);
+        assertTrue(policy.contains("[\"eq\",\"$key\",\"" + stagingKey + "\"]"),
+                "Политика должна разрешать только временный ключ: " + policy);
+        assertTrue(policy.contains("[\"content-length-range\"," + HELLO_MINIO_BYTES.length + ","
+                + HELLO_MINIO_BYTES.length + "]"), "Политика должна разрешать только заявленный размер: " + policy);
+        assertEquals(HELLO_MINIO_BYTES.length, usage().getReservedBytes(), "Место должно быть зарезервировано");
+    }
+
+    @Test
+    @DisplayName("Форма загрузки содержит условие размера для любого объёма")
+    void shouldPresignPostWithContentLengthRange() throws Exception {
+        MinioPresigner.PresignedPost form = minioPresigner.presignPost(TEST_BUCKET_NAME, "uploads/large", 5L << 30,
+                Duration.ofMinutes(5));
+
+        String policy = new String(Base64.getDecoder().decode(form.fields().get("policy")), StandardCharsets.UTF_8);
+        assertTrue(policy.contains("[\"content-length-range\"," + (5L << 30) + "," + (5L << 30) + "]"),
+                "Политика должна ограничивать размер точным значением: " + policy);
+        assertEquals("uploads/large", form.fields().get("key"), "Поле key должно совпадать с объектом");
+    }
+
+    @Test
+    @DisplayName("Загрузка с недопустимым именем не создаётся")
+    void shouldRejectInvalidFileName() {
+        for (String fileName : List.of("a?b", "..", "name.", "x".repeat(256))) {
+            assertThrows(StorageItemNameValidationException.class, () -> create(fileName),
+                    "Недопустимое имя должно отклоняться: " + fileName);
+        }
+        assertTrue(storageReservationRepository.findAll().isEmpty(), "Место не должно резервироваться");
+    }
+
+    @Test
+    @DisplayName("Загрузка сверх лимита не создаётся")
+    void shouldRejectUploadOverLimit() {
+        assertThrows(StorageLimitExceededException.class,
+                () -> directUploadService.create(ROOT_USER_FOLDER, ROOT_USER_FOLDER, TEST_FILE_NAME, 2L << 20),
+                "Загрузка больше лимита должна отклоняться до выдачи формы");
+    }
+
+    @Test
+    @DisplayName("Подтверждение переносит файл в хранилище пользователя и освобождает резерв")
+    void shouldCommitUploadedFile() throws Exception {
+        DirectUploadTicket ticket = create(TEST_FILE_NAME);
+        putStaged(ticket, HELLO_MINIO_BYTES);
+
+        directUploadService.commit(ROOT_USER_FOLDER, ticket.id());
+
+        assertTrue(storageIndexService.exists(ROOT_USER_FOLDER + TEST_FILE_NAME), "Файл должен появиться в индексе");
+        assertEquals("Hello Minio", readObject(ROOT_USER_FOLDER + TEST_FILE_NAME), "Файл должен лежать по пути");
+        assertFalse(fileExists(ticket.fields().get("key")), "Временный объект должен быть удалён");
+        assertEquals(0, usage().getReservedBytes(), "Резерв должен быть освобождён");
+        assertEquals(HELLO_MINIO_BYTES.length, usage().getUsedBytes(), "Файл должен учитываться в занятом месте");
+        assertThrows(UploadSessionNotFoundException.class,
+                () -> directUploadService.commit(ROOT_USER_FOLDER, ticket.id()),
+                "Повторное подтверждение должно отклоняться");
+    }
+
+    @Test
+    @DisplayName("Объект другого размера не принимается, а загрузку можно подтвердить после исправления")
+    void shouldRejectSizeMismatchAndAllowRetry() throws Exception {
+        DirectUploadTicket ticket = create(TEST_FILE_NAME);
+
+        assertThrows(FileUploadingException.class, () -> directUploadService.commit(ROOT_USER_FOLDER, ticket.id()),
+                "Подтверждение до загрузки должно отклоняться");
+
+        putStaged(ticket, "Hello".getBytes(StandardCharsets.UTF_8));
+        assertThrows(FileUploadingException.class, () -> directUploadService.commit(ROOT_USER_FOLDER, ticket.id()),
+                "Объект другого размера должен отклоняться");
+        assertFalse(storageIndexService.exists(ROOT_USER_FOLDER + TEST_FILE_NAME), "Файл не должен появиться");
+        assertEquals(HELLO_MINIO_BYTES.length, usage().getReservedBytes(), "Резерв должен сохраниться");
+
+        putStaged(ticket, HELLO_MINIO_BYTES);
+        directUploadService.commit(ROOT_USER_FOLDER, ticket.id());
+
+        assertTrue(storageIndexService.exists(ROOT_USER_FOLDER + TEST_FILE_NAME), "Повторное подтверждение должно пройти");
+    }
+
+    @Test
+    @DisplayName("Подтверждение не перезаписывает файл, созданный другой загрузкой на тот же путь")
+    void shouldNotOverwriteFileCommittedByAnotherUpload() throws Exception {
+        DirectUploadTicket first = create(TEST_FILE_NAME);
+        DirectUploadTicket second = create(TEST_FILE_NAME);
+        putStaged(first, HELLO_MINIO_BYTES);
+        putStaged(second, "Hello MINIO".getBytes(StandardCharsets.UTF_8));
+
+        directUploadService.commit(ROOT_USER_FOLDER, first.id());
+
+        assertThrows(FileAlreadyExistsInStorageException.class,
+                () -> directUploadService.commit(ROOT_USER_FOLDER, second.id()),
+                "Вторая загрузка на тот же путь должна отклоняться");
+        assertEquals("Hello Minio", readObject(ROOT_USER_FOLDER + TEST_FILE_NAME), "Файл не должен перезаписываться");
+    }
+
+    @Test
+    @DisplayName("Подтверждение, пока путь заблокирован другим подтверждением, отклоняется без потери загрузки")
+    void shouldRejectCommitWhilePathIsLocked() throws Exception {
+        DirectUploadTicket ticket = create(TEST_FILE_NAME);
+        putStaged(ticket, HELLO_MINIO_BYTES);
+        redisTemplate.opsForValue().set("upload-path-lock:" + ROOT_USER_FOLDER + TEST_FILE_NAME, "other");
+
+        assertThrows(FileUploadingException.class, () -> directUploadService.commit(ROOT_USER_FOLDER, ticket.id()),
+                "Подтверждение заблокированного пути должно отклоняться");
+        assertFalse(storageIndexService.exists(ROOT_USER_FOLDER + TEST_FILE_NAME), "Файл не должен появиться");
+
+        redisTemplate.delete("upload-path-lock:" + ROOT_USER_FOLDER + TEST_FILE_NAME);
+        directUploadService.commit(ROOT_USER_FOLDER, ticket.id());
+
+        assertTrue(storageIndexService.exists(ROOT_USER_FOLDER + TEST_FILE_NAME),
+                "После снятия блокировки загрузку должно быть можно подтвердить");
+    }
+
+    @Test
+    @DisplayName("Отмена удаляет временный объект и освобождает резерв")
+    void shouldAbortUpload() throws Exception {
+        DirectUploadTicket ticket = create(TEST_FILE_NAME);
+        putStaged(ticket, HELLO_MINIO_BYTES);
+
+        directUploadService.abort(ROOT_USER_FOLDER, ticket.id());
+
+        assertFalse(fileExists(ticket.fields().get("key")), "Временный объект должен быть удалён");
+        assertEquals(0, usage().getReservedBytes(), "Резерв должен быть освобождён");
+        assertThrows(UploadSessionNotFoundException.class,
+                () -> directUploadService.commit(ROOT_USER_FOLDER, ticket.id()),
+                "Отменённую загрузку нельзя подтвердить");
+    }
+
+    @Test
+    @DisplayName("Чужую загрузку нельзя подтвердить или отменить")
+    void shouldHideUploadFromOtherUser() throws Exception {
+        DirectUploadTicket ticket = create(TEST_FILE_NAME);
+
+        assertThrows(UploadSessionNotFoundException.class,
+                () -> directUploadService.abort("2-other_user/", ticket.id()),
+                "Загрузка другого пользователя должна быть не найдена");
+        assertEquals(HELLO_MINIO_BYTES.length, usage().getReservedBytes(), "Резерв должен сохраниться");
+    }
+
+    @Test
+    @DisplayName("Очистка удаляет просроченные загрузки и освобождает их резерв")
+    void shouldRemoveExpiredUploads() throws Exception {
+        MinioDirectUploadServiceImpl shortLivedUploads = new MinioDirectUploadServiceImpl(
+                new MinioClientProvider(minioClient, TEST_BUCKET_NAME), minioPresigner, redisTemplate,
+                storageIndexService, new DisabledContentIndexServiceImpl(), contentStorageService, storageUsageService,
+                new UploadPathLock(redisTemplate, Duration.ofMinutes(5)),
+                Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofMinutes(5));
+        DirectUploadTicket ticket = shortLivedUploads.create(ROOT_USER_FOLDER, ROOT_USER_FOLDER, TEST_FILE_NAME,
+                HELLO_MINIO_BYTES.length);
+        putStaged(ticket, HELLO_MINIO_BYTES);
+
+        shortLivedUploads.removeExpiredUploads();
+        assertTrue(fileExists(ticket.fields().get("key")), "Действующая загрузка не должна удаляться");
+
+        Thread.sleep(1100);
+        shortLivedUploads.removeExpiredUploads();
+
+        assertFalse(fileExists(ticket.fields().get("key")), "Временный объект должен быть удалён");
+        assertEquals(0, usage().getReservedBytes(), "Резерв должен быть освобождён");
+    }
+
+    @Test
+    @DisplayName("Очистка удаляет загрузку, подтверждение которой прервалось и не вернуло аренду")
+    void shouldRemoveUploadWithExpiredCommitLease() throws Exception {
+        DirectUploadTicket ticket = create(TEST_FILE_NAME);
+        putStaged(ticket, HELLO_MINIO_BYTES);
+        // Так выглядит загрузка, узел которой упал посреди подтверждения
+        redisTemplate.opsForZSet().remove("direct-uploads:expiry", ticket.id());
+        redisTemplate.opsForZSet().add("direct-uploads:leases", ticket.id(), 0);
+
+        ((MinioDirectUploadServiceImpl) directUploadService).removeExpiredUploads();
+
+        assertFalse(fileExists(ticket.fields().get("key")), "Временный объект должен быть удалён");
+        assertEquals(0, usage().getReservedBytes(), "Резерв должен быть освобождён");
+    }
+
+    @Test
+    @DisplayName("Принятый из временного объекта файл копируется по своему пути")
+    void shouldAdoptStagedObjectByPath() throws Exception {
+        String stagedKey = STAGING_PREFIX + "staged-object";
+        putObject(stagedKey, HELLO_MINIO_BYTES);
+
+        StorageObjectInfo adopted = contentStorageService.adopt(ROOT_USER_FOLDER + "adopted.txt", stagedKey,
+                HELLO_MINIO_BYTES.length);
+
+        assertNull(adopted.objectKey(), "Файл должен храниться по пути");
+        assertEquals("Hello Minio", readObject(ROOT_USER_FOLDER + "adopted.txt"), "Содержимое должно быть скопировано");
+        assertTrue(fileExists(stagedKey), "Временный объект удаляет вызывающий");
+    }
+
+    private DirectUploadTicket create(String fileName) throws Exception {
+        return directUploadService.create(ROOT_USER_FOLDER, ROOT_USER_FOLDER, fileName, HELLO_MINIO_BYTES.length);
+    }
+
+    // Браузер отправляет объект по форме; в тесте он записывается клиентом под тот же ключ
+    private void putStaged(DirectUploadTicket ticket, byte[] bytes) throws Exception {
+        putObject(ticket.fields().get("key"), bytes);
+    }
+
+    private void putObject(String objectName, byte[] bytes) throws Exception {
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(objectName)
+                .stream(new ByteArrayInputStream(bytes), bytes.length, -1)
+                .build());
+    }
+
+    private StorageUsage usage() {
+        return storageUsageRepository.findById(ROOT_USER_FOLDER).orElseThrow();
+    }
+}
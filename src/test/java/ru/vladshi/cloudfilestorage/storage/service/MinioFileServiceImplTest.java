@@ -1,6 +1,9 @@
 package ru.vladshi.cloudfilestorage.storage.service;
 
+import io.minio.GetObjectArgs;
 import io.minio.PutObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,24 +11,59 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
+import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.exception.RangeNotSatisfiableException;
 import ru.vladshi.cloudfilestorage.storage.exception.StorageException;
+import ru.vladshi.cloudfilestorage.storage.exception.StorageItemNameValidationException;
+import ru.vladshi.cloudfilestorage.storage.model.FileDownload;
+import ru.vladshi.cloudfilestorage.storage.model.FileDownloadRequest;
+import ru.vladshi.cloudfilestorage.storage.service.impl.DisabledContentIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.FolderUploader;
 import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
 import ru.vladshi.cloudfilestorage.storage.service.impl.MinioFileServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioStorageIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ParallelPartUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.PathContentStorageServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.StorageCodec;
+import ru.vladshi.cloudfilestorage.storage.util.ByteRangeUtil.ByteRange;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(
-        classes = {MinioFileServiceImpl.class, MinioClientProvider.class,
-                AbstractMinioServiceTest.MinioClientConfig.class},
+        classes = {MinioFileServiceImpl.class, MinioStorageIndexServiceImpl.class, DisabledContentIndexServiceImpl.class,
+                PathContentStorageServiceImpl.class, ParallelPartUploader.class, StorageCodec.class, FolderUploader.class,
+                MinioClientProvider.class, AbstractMinioServiceTest.MinioClientConfig.class},
         properties = {
                 "spring.flyway.enabled=false",
-                "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration"
+                "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration",
+                "storage.index.enabled=false",
+                "storage.upload.part-size=5MB",
+                "storage.upload.parallel-threshold=5MB",
+                "storage.upload.memory-budget=10MB",
+                "storage.compression.enabled=true",
+                "storage.compression.min-size=1KB",
+                "storage.download.presigned.enabled=true",
+                "storage.download.presigned.min-size=64KB"
         })
 public class MinioFileServiceImplTest extends AbstractMinioServiceTest {
 
     private static final String NEW_TEST_FILE_NAME = "new-test-file.txt";
+    private static final String LARGE_BINARY_FILE_NAME = "large-file.bin";
 
     @Autowired
     private FileService fileService;
@@ -39,6 +77,103 @@ public class MinioFileServiceImplTest extends AbstractMinioServiceTest {
         assertTrue(fileExists(ROOT_USER_FOLDER + TEST_FILE_NAME), "Файл должен быть загружен в корневую папку");
     }
 
+    @Test
+    @DisplayName("Потоковая загрузка файла без MultipartFile")
+    void shouldUploadFileFromStream() throws Exception {
+
+        fileService.upload(ROOT_USER_FOLDER, TEST_FILE_NAME,
+                new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length);
+
+        assertTrue(fileExists(ROOT_USER_FOLDER + TEST_FILE_NAME), "Файл должен быть загружен из потока");
+    }
+
+    @Test
+    @DisplayName("Файл с недопустимым именем не загружается")
+    void shouldRejectUploadWithInvalidName() {
+        for (String fileName : List.of("a?b", "..", "name.", "x".repeat(256))) {
+            assertThrows(StorageItemNameValidationException.class,
+                    () -> fileService.upload(ROOT_USER_FOLDER, fileName,
+                            new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length),
+                    "Недопустимое имя должно отклоняться: " + fileName);
+        }
+    }
+
+    @Test
+    @DisplayName("Сжимаемый файл с размером, не совпадающим с заявленным, не остаётся в хранилище")
+    void shouldRemoveCompressedObjectWhenStreamSizeMismatches() throws Exception {
+        byte[] content = "Hello, MinIO! ".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(FileUploadingException.class,
+                () -> fileService.upload(ROOT_USER_FOLDER, TEST_FILE_NAME,
+                        new ByteArrayInputStream(content), content.length + 100L),
+                "Загрузка потока короче заявленного размера должна отклоняться");
+        assertFalse(fileExists(ROOT_USER_FOLDER + TEST_FILE_NAME), "Записанный объект должен быть удалён");
+    }
+
+    @Test
+    @DisplayName("Параллельная загрузка большого файла частями")
+    void shouldUploadLargeFileInParallelParts() throws Exception {
+        byte[] content = new byte[12 * 1024 * 1024 + 7];
+        new Random(42).nextBytes(content);
+
+        fileService.upload(ROOT_USER_FOLDER, LARGE_BINARY_FILE_NAME, new ByteArrayInputStream(content), content.length);
+
+        try (InputStream uploaded = minioClient.getObject(GetObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(ROOT_USER_FOLDER + LARGE_BINARY_FILE_NAME)
+                .build())) {
+            assertArrayEquals(content, uploaded.readAllBytes(), "Части должны быть собраны в исходном порядке");
+        }
+    }
+
+    @Test
+    @DisplayName("Одновременные загрузки больших файлов сверх бюджета памяти ждут буферов и завершаются")
+    void shouldUploadLargeFilesConcurrentlyWithinMemoryBudget() throws Exception {
+        byte[] content = new byte[12 * 1024 * 1024 + 7];
+        new Random(42).nextBytes(content);
+
+        List<CompletableFuture<Void>> uploads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String fileName = i + "-" + LARGE_BINARY_FILE_NAME;
+            uploads.add(CompletableFuture.runAsync(() -> {
+                try {
+                    fileService.upload(ROOT_USER_FOLDER, fileName, new ByteArrayInputStream(content), content.length);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+        CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 3; i++) {
+            try (InputStream uploaded = minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(TEST_BUCKET_NAME)
+                    .object(ROOT_USER_FOLDER + i + "-" + LARGE_BINARY_FILE_NAME)
+                    .build())) {
+                assertArrayEquals(content, uploaded.readAllBytes(), "Каждый файл должен быть загружен целиком");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Сжатие текстового файла при хранении")
+    void shouldStoreTextFileCompressed() throws Exception {
+        byte[] content = "Hello, MinIO! ".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+
+        fileService.upload(ROOT_USER_FOLDER, TEST_FILE_NAME, new ByteArrayInputStream(content), content.length);
+
+        StatObjectResponse stat = minioClient.statObject(StatObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(ROOT_USER_FOLDER + TEST_FILE_NAME)
+                .build());
+        assertTrue(stat.size() < content.length, "Файл должен храниться в сжатом виде");
+        assertEquals(content.length, fileService.getFileSize(ROOT_USER_FOLDER, TEST_FILE_NAME),
+                "Размер файла должен быть исходным");
+        try (InputStream downloaded = fileService.download(ROOT_USER_FOLDER, TEST_FILE_NAME).getInputStream()) {
+            assertArrayEquals(content, downloaded.readAllBytes(), "Содержимое должно распаковываться при скачивании");
+        }
+    }
+
     @Test
     @DisplayName("Загрузка файла во вложенную папку")
     void shouldUploadFileToNestedFolder() throws Exception {
@@ -192,6 +327,109 @@ public class MinioFileServiceImplTest extends AbstractMinioServiceTest {
         assertNotNull(resource, "Ресурс файла не должен быть null");
     }
 
+    @Test
+    @DisplayName("Скачивание части обычного и сжатого файла")
+    void shouldDownloadFileRange() throws Exception {
+        fileService.upload(ROOT_USER_FOLDER, MULTIPART_TEST_FILE);
+        byte[] text = "Hello, MinIO! ".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+        fileService.upload(ROOT_USER_FOLDER, NEW_TEST_FILE_NAME, new ByteArrayInputStream(text), text.length);
+
+        try (InputStream range = fileService.openRanges(ROOT_USER_FOLDER, TEST_FILE_NAME)
+                .open(new ByteRange(6, 5))) {
+            assertEquals("Minio", new String(range.readAllBytes(), StandardCharsets.UTF_8),
+                    "Должен вернуться только запрошенный диапазон");
+        }
+        try (InputStream range = fileService.openRanges(ROOT_USER_FOLDER, NEW_TEST_FILE_NAME)
+                .open(new ByteRange(70_000, 14))) {
+            assertEquals("Hello, MinIO! ", new String(range.readAllBytes(), StandardCharsets.UTF_8),
+                    "Диапазон сжатого файла должен отсчитываться от исходного содержимого");
+        }
+
+        // Смещение за концом сжатого объекта в MinIO, но внутри исходного содержимого
+        FileDownload tail = fileService.download(ROOT_USER_FOLDER, NEW_TEST_FILE_NAME,
+                new FileDownloadRequest(text.length - 14, null, null, null));
+        try (InputStream content = tail.content().getInputStream()) {
+            assertEquals("Hello, MinIO! ", new String(content.readAllBytes(), StandardCharsets.UTF_8),
+                    "Конец сжатого файла должен отдаваться по исходным смещениям");
+        }
+        assertEquals(text.length, tail.info().size(), "Для части сжатого файла должен возвращаться исходный размер");
+    }
+
+    @Test
+    @DisplayName("Часть файла за его концом не отдаётся, а неизменённая часть не передаётся повторно")
+    void shouldRejectRangeBeyondFileAndSkipUnmodifiedRange() throws Exception {
+        fileService.upload(ROOT_USER_FOLDER, MULTIPART_TEST_FILE);
+
+        RangeNotSatisfiableException exception = assertThrows(RangeNotSatisfiableException.class,
+                () -> fileService.download(ROOT_USER_FOLDER, TEST_FILE_NAME,
+                        new FileDownloadRequest(HELLO_MINIO_BYTES.length, null, null, null)),
+                "Диапазон от конца файла должен отклоняться с ответом 416");
+        assertEquals(HELLO_MINIO_BYTES.length, exception.getFileSize(), "В ответе 416 должен передаваться размер файла");
+
+        String etag = fileService.getFileInfo(ROOT_USER_FOLDER, TEST_FILE_NAME).etag();
+        FileDownload notModified = fileService.download(ROOT_USER_FOLDER, TEST_FILE_NAME,
+                new FileDownloadRequest(6, null, etag, null));
+        assertTrue(notModified.notModified(), "Часть неизменённого файла не должна передаваться повторно");
+        assertEquals(HELLO_MINIO_BYTES.length, notModified.info().size(), "Метаданные должны браться из stat");
+    }
+
+    @Test
+    @DisplayName("Скачивание с ETag и условием If-None-Match за один запрос")
+    void shouldDownloadWithValidatorsAndSkipUnmodifiedFile() throws Exception {
+        fileService.upload(ROOT_USER_FOLDER, MULTIPART_TEST_FILE);
+
+        FileDownload download = fileService.download(ROOT_USER_FOLDER, TEST_FILE_NAME,
+                FileDownloadRequest.full(null, null));
+        try (InputStream content = download.content().getInputStream()) {
+            assertArrayEquals(HELLO_MINIO_BYTES, content.readAllBytes(), "Содержимое должно совпадать с загруженным");
+        }
+        assertEquals(HELLO_MINIO_BYTES.length, download.info().size(), "Размер должен браться из ответа GetObject");
+        assertNotNull(download.info().etag(), "ETag должен браться из ответа GetObject");
+        assertNotNull(download.info().lastModified(), "Дата изменения должна браться из ответа GetObject");
+
+        FileDownload range = fileService.download(ROOT_USER_FOLDER, TEST_FILE_NAME,
+                new FileDownloadRequest(6, null, null, null));
+        try (InputStream content = range.content().getInputStream()) {
+            assertEquals("Minio", new String(content.readAllBytes(), StandardCharsets.UTF_8),
+                    "Должна вернуться часть файла от смещения до конца");
+        }
+        assertEquals(HELLO_MINIO_BYTES.length, range.info().size(),
+                "Для части файла должен возвращаться полный размер");
+
+        FileDownload notModified = fileService.download(ROOT_USER_FOLDER, TEST_FILE_NAME,
+                FileDownloadRequest.full(download.info().etag(), null));
+        assertTrue(notModified.notModified(), "Неизменённый файл не должен передаваться повторно");
+    }
+
+    @Test
+    @DisplayName("Временная ссылка выдаётся только для крупных несжатых файлов")
+    void shouldPresignOnlyLargeUncompressedFiles() throws Exception {
+        byte[] content = new byte[100 * 1024];
+        new Random(42).nextBytes(content);
+        fileService.upload(ROOT_USER_FOLDER, LARGE_BINARY_FILE_NAME, new ByteArrayInputStream(content), content.length);
+        byte[] text = "Hello, MinIO! ".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+        fileService.upload(ROOT_USER_FOLDER, TEST_FILE_NAME, new ByteArrayInputStream(text), text.length);
+        fileService.upload(ROOT_USER_FOLDER, NEW_TEST_FILE_NAME,
+                new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length);
+
+        Optional<String> url = fileService.getPresignedDownloadUrl(ROOT_USER_FOLDER, LARGE_BINARY_FILE_NAME);
+        assertTrue(url.isPresent(), "Для крупного файла должна выдаваться временная ссылка");
+        HttpResponse<byte[]> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create(url.get())).build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode(), "Ссылка должна открываться без авторизации в MinIO");
+        assertArrayEquals(content, response.body(), "По ссылке должно отдаваться содержимое файла");
+        assertTrue(response.headers().firstValue("Content-Disposition").orElse("").contains(LARGE_BINARY_FILE_NAME),
+                "MinIO должен отдавать имя файла из параметров ссылки");
+
+        assertTrue(fileService.getPresignedDownloadUrl(ROOT_USER_FOLDER, TEST_FILE_NAME).isEmpty(),
+                "Сжатый файл должен отдаваться через приложение");
+        assertTrue(fileService.getPresignedDownloadUrl(ROOT_USER_FOLDER, NEW_TEST_FILE_NAME).isEmpty(),
+                "Файл меньше порога должен отдаваться через приложение");
+        assertThrows(StorageException.class,
+                () -> fileService.getPresignedDownloadUrl(ROOT_USER_FOLDER, "non-existent.bin"),
+                "Для отсутствующего файла ссылка не должна выдаваться");
+    }
+
     @Test
     @DisplayName("Скачивание файла из вложенной папки")
     void shouldDownloadFileFromNestedFolder() throws Exception {
@@ -2,30 +2,54 @@ package ru.vladshi.cloudfilestorage.storage.service;
 
 import io.minio.PutObjectArgs;
 import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
+import ru.vladshi.cloudfilestorage.storage.exception.EmptyDownloadSelectionException;
 import ru.vladshi.cloudfilestorage.storage.exception.FolderNotFoundException;
 import ru.vladshi.cloudfilestorage.storage.exception.StorageException;
+import ru.vladshi.cloudfilestorage.storage.model.ArchiveDownload;
 import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.model.StorageItemPage;
+import ru.vladshi.cloudfilestorage.storage.service.impl.DisabledContentIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.FolderUploader;
 import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
 import ru.vladshi.cloudfilestorage.storage.service.impl.MinioFolderServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioStorageIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ObjectPrefetcher;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ObjectPrefixMover;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ParallelPartUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.PathContentStorageServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.StorageCodec;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ZipCompressionPolicy;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(
-        classes = { MinioFolderServiceImpl.class, MinioClientProvider.class,
-                AbstractMinioServiceTest.MinioClientConfig.class},
+        classes = {MinioFolderServiceImpl.class, MinioStorageIndexServiceImpl.class, DisabledContentIndexServiceImpl.class,
+                PathContentStorageServiceImpl.class, ParallelPartUploader.class, StorageCodec.class, FolderUploader.class,
+                ObjectPrefetcher.class, ObjectPrefixMover.class, ZipCompressionPolicy.class, MinioClientProvider.class, AbstractMinioServiceTest.MinioClientConfig.class},
         properties = {
                 "spring.flyway.enabled=false",
-                "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration"
+                "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration",
+                "storage.index.enabled=false",
+                "storage.upload.folder.small-file-threshold=1KB",
+                "storage.upload.folder.batch-max-objects=2"
 })
 public class MinioFolderServiceImplTest extends AbstractMinioServiceTest {
 
@@ -112,6 +136,35 @@ public class MinioFolderServiceImplTest extends AbstractMinioServiceTest {
         assertTrue(contents.getFirst().isFolder(), "Элемент должен быть папкой");
     }
 
+    @Test
+    @DisplayName("Постраничное получение содержимого папки по курсору")
+    void shouldReturnFolderContentsPageByPage() throws Exception {
+        folderService.create(ROOT_USER_FOLDER, "a-folder");
+        folderService.create(ROOT_USER_FOLDER, "b-folder");
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(ROOT_USER_FOLDER + "a-folder/" + TEST_FILE_NAME)
+                .stream(new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length, -1)
+                .build());
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(ROOT_USER_FOLDER + TEST_FILE_NAME)
+                .stream(new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length, -1)
+                .build());
+
+        StorageItemPage firstPage = folderService.getFolderContents(ROOT_USER_FOLDER, null, 2);
+        StorageItemPage secondPage = folderService.getFolderContents(ROOT_USER_FOLDER, firstPage.nextCursor(), 2);
+
+        assertEquals(List.of("a-folder/", "b-folder/"),
+                firstPage.items().stream().map(StorageItem::relativePath).toList(),
+                "Первая страница должна содержать две папки");
+        assertTrue(firstPage.hasNext(), "После первой страницы должен быть курсор");
+        assertEquals(List.of(TEST_FILE_NAME),
+                secondPage.items().stream().map(StorageItem::relativePath).toList(),
+                "Вторая страница должна содержать оставшийся файл");
+        assertFalse(secondPage.hasNext(), "После последней страницы курсора быть не должно");
+    }
+
     @Test
     @DisplayName("Попытка создания папки в несуществующей папке")
     void shouldThrowExceptionWhenCreatingFolderInNonExistentFolder() {
@@ -287,6 +340,28 @@ public class MinioFolderServiceImplTest extends AbstractMinioServiceTest {
                 "Файл во вложенной папке должен быть загружен");
     }
 
+    @Test
+    @DisplayName("Загрузка папки несколькими пакетами мелких файлов и отдельными крупными файлами")
+    void shouldUploadFolderInBatchesAndLargeFiles() throws Exception {
+        byte[] largeContent = new byte[4 * 1024];
+        MultipartFile[] files = {
+                new MockMultipartFile("file", "uploaded-folder/a.txt", "text/plain", HELLO_MINIO_BYTES),
+                new MockMultipartFile("file", "uploaded-folder/b.txt", "text/plain", HELLO_MINIO_BYTES),
+                new MockMultipartFile("file", "uploaded-folder/c.txt", "text/plain", HELLO_MINIO_BYTES),
+                new MockMultipartFile("file", "uploaded-folder/large.bin", "application/octet-stream", largeContent)
+        };
+
+        folderService.upload(ROOT_USER_FOLDER, "uploaded-folder", files);
+
+        for (String name : new String[]{"a.txt", "b.txt", "c.txt", "large.bin"}) {
+            assertTrue(fileExists(ROOT_USER_FOLDER + "uploaded-folder/" + name), "Файл " + name + " должен быть загружен");
+        }
+        assertEquals(largeContent.length, minioClient.statObject(StatObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(ROOT_USER_FOLDER + "uploaded-folder/large.bin")
+                .build()).size());
+    }
+
     @Test
     @DisplayName("Загрузка папки во вложенную папку")
     void shouldUploadFolderToNestedFolder() throws Exception {
@@ -339,9 +414,113 @@ public class MinioFolderServiceImplTest extends AbstractMinioServiceTest {
                 .stream(new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length, -1)
                 .build());
 
-        InputStreamResource resource = folderService.download(ROOT_USER_FOLDER, "download-folder");
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        folderService.download(ROOT_USER_FOLDER, "download-folder").body().writeTo(archive);
 
-        assertNotNull(resource, "Ресурс ZIP-архива не должен быть null");
+        try (ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            ZipEntry entry = zipIn.getNextEntry();
+            assertNotNull(entry, "Архив должен содержать файл папки");
+            assertEquals(TEST_FILE_NAME, entry.getName(), "Имя записи должно быть относительным путём файла");
+            assertArrayEquals(HELLO_MINIO_BYTES, zipIn.readAllBytes(), "Содержимое записи должно совпадать с файлом");
+            assertNull(zipIn.getNextEntry(), "Архив не должен содержать лишних записей");
+        }
+    }
+
+    @Test
+    @DisplayName("Каждая запись архива из многих файлов содержит свой файл")
+    void shouldDownloadEveryFileOfFolderUnderItsOwnEntry() throws Exception {
+        folderService.create(ROOT_USER_FOLDER, "many-files");
+        int fileCount = 20;
+        for (int i = 0; i < fileCount; i++) {
+            byte[] content = ("content of file " + i).getBytes();
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(TEST_BUCKET_NAME)
+                    .object(ROOT_USER_FOLDER + "many-files/file-%02d.txt".formatted(i))
+                    .stream(new ByteArrayInputStream(content), content.length, -1)
+                    .build());
+        }
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        folderService.download(ROOT_USER_FOLDER, "many-files").body().writeTo(archive);
+
+        int entries = 0;
+        try (ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            for (ZipEntry entry = zipIn.getNextEntry(); entry != null; entry = zipIn.getNextEntry()) {
+                int index = Integer.parseInt(entry.getName().substring("file-".length(), "file-".length() + 2));
+                assertEquals("content of file " + index, new String(zipIn.readAllBytes()),
+                        "Запись " + entry.getName() + " должна содержать свой файл");
+                entries++;
+            }
+        }
+        assertEquals(fileCount, entries, "Архив должен содержать все файлы папки");
+    }
+
+    @Test
+    @DisplayName("Архив из несжимаемых файлов записывается без сжатия и с известным размером")
+    void shouldStoreIncompressibleFilesWithKnownArchiveSize(@TempDir Path tempDir) throws Exception {
+        folderService.create(ROOT_USER_FOLDER, "photos");
+        folderService.create(ROOT_USER_FOLDER + "photos/", "2024");
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(ROOT_USER_FOLDER + "photos/2024/фото.jpg")
+                .stream(new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length, -1)
+                .build());
+
+        ArchiveDownload download = folderService.download(ROOT_USER_FOLDER, "photos");
+        assertTrue(download.hasKnownSize(), "Размер архива без сжатых записей должен быть известен заранее");
+
+        Path archive = tempDir.resolve("photos.zip");
+        try (var outputStream = Files.newOutputStream(archive)) {
+            download.body().writeTo(outputStream);
+        }
+        assertEquals(download.size(), Files.size(archive), "Заранее вычисленный размер должен совпадать с архивом");
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            ZipEntry entry = zipFile.getEntry("2024/фото.jpg");
+            assertNotNull(entry, "Архив должен содержать файл вложенной папки");
+            assertEquals(ZipEntry.STORED, entry.getMethod(), "Изображение должно записываться без сжатия");
+            try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                assertArrayEquals(HELLO_MINIO_BYTES, inputStream.readAllBytes(),
+                        "Содержимое записи должно совпадать с файлом");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Скачивание выбранных файлов и папок одним архивом")
+    void shouldDownloadSelectedItemsAsOneZip(@TempDir Path tempDir) throws Exception {
+        folderService.create(ROOT_USER_FOLDER, "selected-folder");
+        for (String objectName : List.of("selected-folder/" + TEST_FILE_NAME, TEST_FILE_NAME, "not-selected.txt")) {
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(TEST_BUCKET_NAME)
+                    .object(ROOT_USER_FOLDER + objectName)
+                    .stream(new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length, -1)
+                    .build());
+        }
+
+        Path archive = tempDir.resolve("selected.zip");
+        try (var outputStream = Files.newOutputStream(archive)) {
+            folderService.downloadSelected(ROOT_USER_FOLDER, List.of(TEST_FILE_NAME), List.of("selected-folder"))
+                    .body().writeTo(outputStream);
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            assertEquals(List.of("selected-folder/", "selected-folder/" + TEST_FILE_NAME, TEST_FILE_NAME),
+                    zipFile.stream().map(ZipEntry::getName).toList(),
+                    "Архив должен содержать выбранные папки со всем содержимым и выбранные файлы");
+            try (InputStream inputStream = zipFile.getInputStream(zipFile.getEntry(TEST_FILE_NAME))) {
+                assertArrayEquals(HELLO_MINIO_BYTES, inputStream.readAllBytes(),
+                        "Содержимое записи должно совпадать с файлом");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Скачивание пустого выбора отклоняется как ошибка пользователя")
+    void shouldRejectEmptySelection() {
+        assertThrows(EmptyDownloadSelectionException.class,
+                () -> folderService.downloadSelected(ROOT_USER_FOLDER, List.of(), List.of()),
+                "Пустой выбор должен отклоняться исключением хранилища");
     }
 
     @Test
@@ -0,0 +1,303 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import io.minio.GetObjectArgs;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.vladshi.cloudfilestorage.storage.config.MinioMultipartClient;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageUsage;
+import ru.vladshi.cloudfilestorage.storage.exception.FileAlreadyExistsInStorageException;
+import ru.vladshi.cloudfilestorage.storage.exception.FileUploadingException;
+import ru.vladshi.cloudfilestorage.storage.exception.StorageItemNameValidationException;
+import ru.vladshi.cloudfilestorage.storage.exception.UploadSessionNotFoundException;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.model.UploadSessionStatus;
+import ru.vladshi.cloudfilestorage.storage.service.impl.DisabledContentIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.FolderUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.JpaStorageIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.JpaStorageUsageServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioResumableUploadServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ObjectIdContentStorageServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ParallelPartUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.PathContentStorageServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.StorageCodec;
+import ru.vladshi.cloudfilestorage.storage.service.impl.UploadPathLock;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(
+        classes = {MinioResumableUploadServiceImpl.class, UploadPathLock.class, JpaStorageIndexServiceImpl.class,
+                JpaStorageUsageServiceImpl.class, PathContentStorageServiceImpl.class,
+                DisabledContentIndexServiceImpl.class, StorageCodec.class,
+                FolderUploader.class, ParallelPartUploader.class,
+                MinioClientProvider.class, AbstractMinioServiceTest.MinioClientConfig.class,
+                AbstractIndexedStorageTest.JpaConfig.class},
+        properties = {
+                "storage.index.enabled=true",
+                "storage.upload.chunk-size=5MB"
+})
+public class MinioResumableUploadServiceImplTest extends AbstractRedisStorageTest {
+
+    private static final long CHUNK_SIZE = 5L * 1024 * 1024;
+    private static final String SESSION_KEY_PREFIX = "upload-session:";
+    private static final String EXPIRY_KEY = "upload-sessions:expiry";
+
+    @Autowired
+    private ResumableUploadService resumableUploadService;
+
+    @Autowired
+    private StorageIndexService storageIndexService;
+
+    @Autowired
+    private MinioClientProvider minioClientProvider;
+
+    @Autowired
+    private MinioMultipartClient multipartClient;
+
+    @Autowired
+    private ContentIndexService contentIndexService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private UploadPathLock uploadPathLock;
+
+    @Autowired
+    private ContentStorageService contentStorageService;
+
+    @Autowired
+    private StorageUsageService storageUsageService;
+
+    @BeforeEach
+    void indexRootFolder() throws Exception {
+        storageIndexService.add(StorageObjectInfo.folder(ROOT_USER_FOLDER));
+    }
+
+    @Test
+    @DisplayName("Части принимаются в любом порядке, повторная отправка не занимает места, завершение собирает файл")
+    void shouldAssembleFileFromPartsSentOutOfOrder() throws Exception {
+        byte[] content = randomBytes(CHUNK_SIZE + HELLO_MINIO_BYTES.length);
+        byte[] firstPart = Arrays.copyOfRange(content, 0, (int) CHUNK_SIZE);
+        byte[] secondPart = Arrays.copyOfRange(content, (int) CHUNK_SIZE, content.length);
+        // Файл из двух частей не помещается в лимит тестов
+        ResumableUploadService uploadService = new MinioResumableUploadServiceImpl(minioClientProvider,
+                multipartClient, redisTemplate, storageIndexService, contentIndexService, contentStorageService,
+                new JpaStorageUsageServiceImpl(storageUsageRepository, storageReservationRepository,
+                        transactionTemplate, "16MB", Duration.ofHours(1)),
+                uploadPathLock, "5MB", Duration.ofHours(1));
+        UploadSessionStatus created = uploadService.create(
+                ROOT_USER_FOLDER, ROOT_USER_FOLDER, TEST_FILE_NAME, content.length);
+
+        assertEquals(2, created.partCount(), "Файл должен делиться на две части");
+
+        uploadService.uploadPart(ROOT_USER_FOLDER, created.id(), 2,
+                new ByteArrayInputStream(secondPart), secondPart.length);
+        UploadSessionStatus status = uploadService.uploadPart(ROOT_USER_FOLDER, created.id(), 2,
+                new ByteArrayInputStream(secondPart), secondPart.length);
+
+        assertEquals(List.of(2), status.uploadedParts(), "Статус должен содержать принятую часть");
+        assertEquals(0, status.offset(), "Без первой части продолжать нужно с начала файла");
+        assertEquals(secondPart.length, usage().getReservedBytes(),
+                "Повторно отправленная часть должна резервироваться один раз");
+
+        status = uploadService.uploadPart(ROOT_USER_FOLDER, created.id(), 1,
+                new ByteArrayInputStream(firstPart), firstPart.length);
+        assertEquals(content.length, status.offset(), "После всех частей смещение должно совпадать с размером");
+
+        uploadService.complete(ROOT_USER_FOLDER, created.id());
+
+        assertTrue(storageIndexService.exists(ROOT_USER_FOLDER + TEST_FILE_NAME), "Файл должен появиться в индексе");
+        assertArrayEquals(content, readBytes(ROOT_USER_FOLDER + TEST_FILE_NAME), "Файл должен собраться из частей");
+        assertEquals(0, usage().getReservedBytes(), "Резерв должен быть освобождён");
+        assertFalse(redisTemplate.hasKey(SESSION_KEY_PREFIX + created.id()), "Сессия должна быть удалена");
+        assertThrows(UploadSessionNotFoundException.class,
+                () -> uploadService.getStatus(ROOT_USER_FOLDER, created.id()),
+                "Завершённая сессия не должна находиться");
+    }
+
+    @Test
+    @DisplayName("Имя файла проверяется так же, как при переименовании и удалении")
+    void shouldRejectInvalidFileName() {
+        for (String fileName : List.of("a?b", "..", "name.", "x".repeat(61))) {
+            assertThrows(StorageItemNameValidationException.class,
+                    () -> resumableUploadService.create(ROOT_USER_FOLDER, ROOT_USER_FOLDER, fileName,
+                            HELLO_MINIO_BYTES.length),
+                    "Недопустимое имя должно отклоняться: " + fileName);
+        }
+        assertTrue(storageReservationRepository.findAll().isEmpty(), "Место не должно резервироваться");
+    }
+
+    @Test
+    @DisplayName("Завершение выполняется под блокировкой пути, вторая сессия на тот же путь не заменяет файл")
+    void shouldCompleteUnderPathLock() throws Exception {
+        UploadSessionStatus first = create(HELLO_MINIO_BYTES.length);
+        UploadSessionStatus second = create(HELLO_MINIO_BYTES.length);
+        uploadPart(first.id(), 1, HELLO_MINIO_BYTES);
+        uploadPart(second.id(), 1, "Other Minio".getBytes(StandardCharsets.UTF_8));
+
+        String lockToken = uploadPathLock.lock(ROOT_USER_FOLDER + TEST_FILE_NAME);
+        assertThrows(FileUploadingException.class,
+                () -> resumableUploadService.complete(ROOT_USER_FOLDER, first.id()),
+                "Завершение на заблокированный путь должно отклоняться");
+        uploadPathLock.unlock(ROOT_USER_FOLDER + TEST_FILE_NAME, lockToken);
+
+        resumableUploadService.complete(ROOT_USER_FOLDER, first.id());
+
+        assertThrows(FileAlreadyExistsInStorageException.class,
+                () -> resumableUploadService.complete(ROOT_USER_FOLDER, second.id()),
+                "Вторая сессия на тот же путь не должна заменять файл");
+        assertArrayEquals(HELLO_MINIO_BYTES, readBytes(ROOT_USER_FOLDER + TEST_FILE_NAME),
+                "Файл первой сессии должен остаться");
+    }
+
+    @Test
+    @DisplayName("Без хранения по путям файл собирается под неизменяемым ключом и индексируется с ним")
+    void shouldAssembleUnderObjectKeyWhenNotStoringByPath() throws Exception {
+        ContentStorageService objectIdStorage = Mockito.mock(ContentStorageService.class);
+        Mockito.when(objectIdStorage.storesByPath()).thenReturn(false);
+        ResumableUploadService uploadService = new MinioResumableUploadServiceImpl(minioClientProvider,
+                multipartClient, redisTemplate, storageIndexService, contentIndexService, objectIdStorage,
+                storageUsageService, uploadPathLock, "5MB", Duration.ofHours(1));
+        UploadSessionStatus created = uploadService.create(
+                ROOT_USER_FOLDER, ROOT_USER_FOLDER, TEST_FILE_NAME, HELLO_MINIO_BYTES.length);
+        uploadService.uploadPart(ROOT_USER_FOLDER, created.id(), 1,
+                new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length);
+
+        uploadService.complete(ROOT_USER_FOLDER, created.id());
+
+        String objectKey = storageIndexService.find(ROOT_USER_FOLDER + TEST_FILE_NAME).orElseThrow().objectKey();
+        assertTrue(ObjectIdContentStorageServiceImpl.isObjectIdKey(objectKey),
+                "Файл должен индексироваться с неизменяемым ключом: " + objectKey);
+        assertArrayEquals(HELLO_MINIO_BYTES, readBytes(objectKey), "Файл должен собраться под ключом");
+        assertFalse(fileExists(ROOT_USER_FOLDER + TEST_FILE_NAME), "Под путём объекта быть не должно");
+    }
+
+    @Test
+    @DisplayName("Обрезанная часть отклоняется и не попадает в статус")
+    void shouldRejectTruncatedPart() throws Exception {
+        UploadSessionStatus created = create(HELLO_MINIO_BYTES.length);
+
+        assertThrows(FileUploadingException.class, () -> resumableUploadService.uploadPart(ROOT_USER_FOLDER,
+                        created.id(), 1, new ByteArrayInputStream(HELLO_MINIO_BYTES, 0, 5), HELLO_MINIO_BYTES.length),
+                "Часть короче заявленной длины должна отклоняться");
+
+        assertTrue(resumableUploadService.getStatus(ROOT_USER_FOLDER, created.id()).uploadedParts().isEmpty(),
+                "Обрезанная часть не должна считаться принятой");
+        assertThrows(FileUploadingException.class,
+                () -> resumableUploadService.complete(ROOT_USER_FOLDER, created.id()),
+                "Сессию без частей нельзя завершить");
+    }
+
+    @Test
+    @DisplayName("Часть, пришедшая после того, как сессию забрал другой запрос, не создаёт сессию и резерв заново")
+    void shouldNotRecreateSessionClaimedDuringPartUpload() throws Exception {
+        UploadSessionStatus created = create(HELLO_MINIO_BYTES.length);
+        // Так выглядит сессия, которую завершает или отменяет другой узел
+        redisTemplate.opsForZSet().remove(EXPIRY_KEY, created.id());
+
+        assertThrows(UploadSessionNotFoundException.class, () -> uploadPart(created.id(), 1, HELLO_MINIO_BYTES),
+                "Часть закрываемой сессии должна отклоняться");
+
+        assertEquals(0, usage().getReservedBytes(), "Резерв под отклонённую часть должен вернуться");
+        assertTrue(redisTemplate.opsForHash().keys(SESSION_KEY_PREFIX + created.id()).stream()
+                        .noneMatch(field -> ((String) field).startsWith("reserved:") || ((String) field).startsWith("part:")),
+                "Отклонённая часть не должна появиться в сессии");
+    }
+
+    @Test
+    @DisplayName("Каждая запись в сессию продлевает срок ключа в Redis")
+    void shouldKeepSessionKeyExpiry() throws Exception {
+        UploadSessionStatus created = create(HELLO_MINIO_BYTES.length);
+        String key = SESSION_KEY_PREFIX + created.id();
+        redisTemplate.persist(key);
+
+        uploadPart(created.id(), 1, HELLO_MINIO_BYTES);
+
+        Long ttl = redisTemplate.getExpire(key);
+        assertNotNull(ttl);
+        assertTrue(ttl > 0, "Ключ сессии должен иметь срок после приёма части");
+    }
+
+    @Test
+    @DisplayName("Отмена сессии освобождает резерв и удаляет сессию")
+    void shouldReleaseReservationOnAbort() throws Exception {
+        UploadSessionStatus created = create(HELLO_MINIO_BYTES.length);
+        uploadPart(created.id(), 1, HELLO_MINIO_BYTES);
+
+        assertEquals(HELLO_MINIO_BYTES.length, usage().getReservedBytes(), "Место под часть должно быть занято");
+
+        resumableUploadService.abort(ROOT_USER_FOLDER, created.id());
+
+        assertEquals(0, usage().getReservedBytes(), "Резерв должен быть освобождён");
+        assertFalse(redisTemplate.hasKey(SESSION_KEY_PREFIX + created.id()), "Сессия должна быть удалена");
+        assertFalse(fileExists(ROOT_USER_FOLDER + TEST_FILE_NAME), "Файл не должен появиться");
+        assertThrows(UploadSessionNotFoundException.class,
+                () -> resumableUploadService.complete(ROOT_USER_FOLDER, created.id()),
+                "Отменённую сессию нельзя завершить");
+    }
+
+    @Test
+    @DisplayName("Просроченная сессия отменяется очисткой, резерв освобождается")
+    void shouldAbortExpiredSession() throws Exception {
+        UploadSessionStatus created = create(HELLO_MINIO_BYTES.length);
+        uploadPart(created.id(), 1, HELLO_MINIO_BYTES);
+        redisTemplate.opsForZSet().add(EXPIRY_KEY, created.id(), 0);
+
+        ((MinioResumableUploadServiceImpl) resumableUploadService).abortExpiredSessions();
+
+        assertEquals(0, usage().getReservedBytes(), "Резерв должен быть освобождён");
+        assertFalse(redisTemplate.hasKey(SESSION_KEY_PREFIX + created.id()), "Сессия должна быть удалена");
+    }
+
+    @Test
+    @DisplayName("Сессия другого пользователя не находится")
+    void shouldHideSessionOfOtherUser() throws Exception {
+        UploadSessionStatus created = create(HELLO_MINIO_BYTES.length);
+
+        assertThrows(UploadSessionNotFoundException.class,
+                () -> resumableUploadService.getStatus("other-user/", created.id()),
+                "Чужая сессия должна отклоняться как несуществующая");
+    }
+
+    private UploadSessionStatus create(long size) throws Exception {
+        return resumableUploadService.create(ROOT_USER_FOLDER, ROOT_USER_FOLDER, TEST_FILE_NAME, size);
+    }
+
+    private UploadSessionStatus uploadPart(String sessionId, int partNumber, byte[] bytes) throws Exception {
+        return resumableUploadService.uploadPart(ROOT_USER_FOLDER, sessionId, partNumber,
+                new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    private byte[] readBytes(String objectName) throws Exception {
+        try (InputStream inputStream = minioClient.getObject(GetObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(objectName)
+                .build())) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private StorageUsage usage() {
+        return storageUsageRepository.findById(ROOT_USER_FOLDER).orElseThrow();
+    }
+
+    private static byte[] randomBytes(long size) {
+        byte[] bytes = new byte[(int) size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -5,21 +5,25 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import ru.vladshi.cloudfilestorage.storage.model.SearchFilter;
 import ru.vladshi.cloudfilestorage.storage.model.StorageItem;
+import ru.vladshi.cloudfilestorage.storage.service.impl.DisabledContentIndexServiceImpl;
 import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
 import ru.vladshi.cloudfilestorage.storage.service.impl.MinioSearchServiceImpl;
 
 import java.io.ByteArrayInputStream;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(
-        classes = {MinioSearchServiceImpl.class, MinioClientProvider.class,
+        classes = {MinioSearchServiceImpl.class, DisabledContentIndexServiceImpl.class, MinioClientProvider.class,
                 AbstractMinioServiceTest.MinioClientConfig.class},
         properties = {
                 "spring.flyway.enabled=false",
-                "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration"
+                "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration",
+                "storage.index.enabled=false"
         })
 public class MinioSearchServiceImplTest extends AbstractMinioServiceTest {
 
@@ -116,4 +120,41 @@ public class MinioSearchServiceImplTest extends AbstractMinioServiceTest {
         assertFalse(results.stream().anyMatch(item -> item.relativePath().contains(user2Folder)),
                 "Файлы второго пользователя не должны попасть в результаты");
     }
+
+    @Test
+    @DisplayName("Подсказки ранжируются: точное совпадение, начало имени, подстрока, меньшая вложенность")
+    void shouldRankSuggestions() throws Exception {
+        for (String name : List.of("a/b/report", "my-report.txt", "report.txt", "a/report.txt", "report")) {
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(TEST_BUCKET_NAME)
+                    .object(ROOT_USER_FOLDER + name)
+                    .stream(new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length, -1)
+                    .build());
+        }
+
+        List<StorageItem> results = searchService.suggest(ROOT_USER_FOLDER, "Report", 4);
+
+        assertEquals(List.of("report", "a/b/report", "report.txt", "a/report.txt"),
+                results.stream().map(StorageItem::relativePath).toList(),
+                "Результаты должны быть упорядочены по качеству совпадения и глубине и обрезаны по лимиту");
+    }
+
+    @Test
+    @DisplayName("Поиск по фильтру размера и расширения возвращает только подходящие файлы")
+    void shouldFindFilesBySizeAndExtension() throws Exception {
+        for (String name : List.of("clip.mp4", "small.mp4", "notes.txt")) {
+            byte[] content = name.equals("small.mp4") ? new byte[1] : new byte[2048];
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(TEST_BUCKET_NAME)
+                    .object(ROOT_USER_FOLDER + name)
+                    .stream(new ByteArrayInputStream(content), content.length, -1)
+                    .build());
+        }
+        SearchFilter filter = new SearchFilter(null, 1024L, null, Set.of("MP4"), null, null, null, null);
+
+        List<StorageItem> results = searchService.searchItems(ROOT_USER_FOLDER, filter, 10);
+
+        assertEquals(List.of("clip.mp4"), results.stream().map(StorageItem::relativePath).toList(),
+                "Должен найтись только файл нужного расширения не меньше заданного размера");
+    }
 }
@@ -1,18 +1,28 @@
 package ru.vladshi.cloudfilestorage.storage.service;
 
 import io.minio.PutObjectArgs;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.web.multipart.MultipartFile;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
 import ru.vladshi.cloudfilestorage.storage.exception.StorageLimitExceededException;
 import ru.vladshi.cloudfilestorage.storage.model.StorageUsageInfo;
 import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
 import ru.vladshi.cloudfilestorage.storage.service.impl.MinioStorageUsageServiceImpl;
 
 import java.io.ByteArrayInputStream;
+import java.time.Duration;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -22,17 +32,43 @@ import static org.junit.jupiter.api.Assertions.*;
         properties = {
                 "spring.flyway.enabled=false",
                 "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration",
-                "storage.max-size-per-user=1MB"
+                "storage.max-size-per-user=1MB",
+                "storage.index.enabled=false"
         })
+@ImportAutoConfiguration(RedisAutoConfiguration.class)
 public class MinioStorageUsageServiceImplTest extends AbstractMinioServiceTest {
 
     private static final long MAX_STORAGE_SIZE = 1024 * 1024; // 1MB
     private static final long SMALL_FILE_SIZE = HELLO_MINIO_BYTES.length;
     private static final long LARGE_FILE_SIZE = MAX_STORAGE_SIZE + SMALL_FILE_SIZE;
 
+    @Container
+    private static final GenericContainer<?> redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.4"))
+            .withExposedPorts(6379);
+
     @Autowired
     private StorageUsageService storageUsageService;
 
+    @Autowired
+    private MinioClientProvider minioClientProvider;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @DynamicPropertySource
+    static void registerRedisProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.redis.host", redisContainer::getHost);
+        registry.add("spring.data.redis.port", () -> redisContainer.getMappedPort(6379));
+    }
+
+    @BeforeEach
+    void flushRedis() {
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        }, true);
+    }
+
     @Test
     @DisplayName("Получение информации о пустом хранилище пользователя")
     void shouldReturnZeroUsageForEmptyStorage() throws Exception {
@@ -96,4 +132,58 @@ public class MinioStorageUsageServiceImplTest extends AbstractMinioServiceTest {
                 () -> storageUsageService.checkLimit(ROOT_USER_FOLDER, files),
                 "Должно выбросить исключение при превышении лимита массивом файлов");
     }
+
+    @Test
+    @DisplayName("Параллельные резервы не превышают лимит вместе")
+    void shouldRejectReservationWhenOtherReservationsFillLimit() throws Exception {
+        byte[] mediumContent = new byte[(int) (MAX_STORAGE_SIZE / 2 + SMALL_FILE_SIZE)];
+        MultipartFile mediumFile = new MockMultipartFile("file", TEST_FILE_NAME, "text/plain", mediumContent);
+
+        QuotaReservation reservation = storageUsageService.reserve(ROOT_USER_FOLDER, mediumFile);
+        assertThrows(StorageLimitExceededException.class,
+                () -> storageUsageService.reserve(ROOT_USER_FOLDER, mediumFile),
+                "Второй резерв должен быть отклонён, пока действует первый");
+        reservation.close();
+
+        assertDoesNotThrow(() -> storageUsageService.reserve(ROOT_USER_FOLDER, mediumFile).close(),
+                "После освобождения резерва место должно снова стать доступным");
+    }
+
+    @Test
+    @DisplayName("Резерв, сделанный на одном узле, учитывается на другом")
+    void shouldShareReservationsBetweenNodes() throws Exception {
+        StorageUsageService otherNode = new MinioStorageUsageServiceImpl(
+                minioClientProvider, redisTemplate, "1MB", Duration.ofHours(1));
+        long halfLimit = MAX_STORAGE_SIZE / 2 + SMALL_FILE_SIZE;
+
+        QuotaReservation reservation = storageUsageService.reserve(ROOT_USER_FOLDER, halfLimit);
+
+        assertThrows(StorageLimitExceededException.class,
+                () -> otherNode.reserve(ROOT_USER_FOLDER, halfLimit),
+                "Второй узел должен видеть резерв первого");
+
+        otherNode.release(ROOT_USER_FOLDER, reservation.id());
+
+        assertDoesNotThrow(() -> otherNode.reserve(ROOT_USER_FOLDER, halfLimit).close(),
+                "Резерв, освобождённый на другом узле, больше не должен занимать место");
+    }
+
+    @Test
+    @DisplayName("Просроченный резерв снимается очисткой, повторное освобождение ничего не меняет")
+    void shouldReleaseExpiredReservationOnce() throws Exception {
+        long halfLimit = MAX_STORAGE_SIZE / 2 + SMALL_FILE_SIZE;
+        QuotaReservation expired = storageUsageService.reserve(ROOT_USER_FOLDER, halfLimit, Duration.ZERO);
+        QuotaReservation active = storageUsageService.reserve(ROOT_USER_FOLDER, SMALL_FILE_SIZE);
+        Thread.sleep(10);
+
+        ((MinioStorageUsageServiceImpl) storageUsageService).releaseExpiredReservations();
+        expired.close();
+
+        assertDoesNotThrow(() -> storageUsageService.reserve(ROOT_USER_FOLDER, halfLimit).close(),
+                "Просроченный резерв не должен занимать место");
+        assertThrows(StorageLimitExceededException.class,
+                () -> storageUsageService.reserve(ROOT_USER_FOLDER, MAX_STORAGE_SIZE),
+                "Действующий резерв должен по-прежнему учитываться");
+        active.close();
+    }
 }
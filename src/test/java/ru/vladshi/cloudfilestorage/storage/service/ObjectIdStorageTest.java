@@ -0,0 +1,307 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import io.minio.CopyObjectArgs;
+import io.minio.MinioClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.PutObjectArgs;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.vladshi.cloudfilestorage.storage.model.ObjectIdMigrationReport;
+import ru.vladshi.cloudfilestorage.storage.model.StorageObjectInfo;
+import ru.vladshi.cloudfilestorage.storage.model.UploadObject;
+import ru.vladshi.cloudfilestorage.storage.service.impl.DisabledContentIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.FolderUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.JpaStorageIndexServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioFileServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioFolderServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ObjectIdContentStorageServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ObjectIdMigrationServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ObjectPrefetcher;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ObjectPrefixMover;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ParallelPartUploader;
+import ru.vladshi.cloudfilestorage.storage.service.impl.StorageCodec;
+import ru.vladshi.cloudfilestorage.storage.service.impl.UserPrefixServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ZipCompressionPolicy;
+import ru.vladshi.cloudfilestorage.user.entity.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+@SpringBootTest(
+        classes = {MinioFolderServiceImpl.class, MinioFileServiceImpl.class, JpaStorageIndexServiceImpl.class,
+                ObjectIdContentStorageServiceImpl.class, ObjectIdMigrationServiceImpl.class, UserPrefixServiceImpl.class,
+                DisabledContentIndexServiceImpl.class, StorageCodec.class,
+                FolderUploader.class, ParallelPartUploader.class,
+                ObjectPrefetcher.class, ObjectPrefixMover.class, ZipCompressionPolicy.class, MinioClientProvider.class,
+                AbstractMinioServiceTest.MinioClientConfig.class, AbstractIndexedStorageTest.JpaConfig.class},
+        properties = {
+                "storage.index.enabled=true",
+                "storage.object-ids.enabled=true"
+})
+public class ObjectIdStorageTest extends AbstractIndexedStorageTest {
+
+    private static final String OBJECT_PREFIX = ObjectIdContentStorageServiceImpl.OBJECT_PREFIX;
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FolderService folderService;
+
+    @Autowired
+    private StorageIndexService storageIndexService;
+
+    @Autowired
+    private ContentStorageService contentStorageService;
+
+    @Autowired
+    private ObjectIdMigrationService objectIdMigrationService;
+
+    @Autowired
+    private UserPrefixService userPrefixService;
+
+    @BeforeEach
+    void indexRootFolder() throws Exception {
+        // Папки хранятся только в индексе, маркер корневой папки в бакете не нужен
+        removePrefix(ROOT_USER_FOLDER);
+        storageIndexService.add(StorageObjectInfo.folder(ROOT_USER_FOLDER));
+    }
+
+    @Test
+    @DisplayName("Миграция переводит файлы по путям на ключи и удаляет маркеры известных индексу папок")
+    void shouldMigrateMixedPrefix() throws Exception {
+        String userPrefix = createUser("mixed_user");
+        putLegacyFolder(userPrefix + "docs/");
+        putLegacyFile(userPrefix + "docs/legacy.txt", "legacy content");
+        putLegacyFile(userPrefix + "root.txt", "root content");
+        fileService.upload(userPrefix, "fresh.txt", stream("fresh content"), "fresh content".length());
+        String strayMarker = userPrefix + "stray/";
+        putObject(strayMarker, "");
+
+        ObjectIdMigrationReport report = objectIdMigrationService.migrate();
+
+        assertEquals(1, report.usersScanned(), "Должен быть просмотрен единственный пользователь");
+        assertEquals(2, report.filesMigrated(), "Должны быть перенесены только файлы, хранившиеся по путям");
+        assertEquals(2, report.folderMarkersRemoved(), "Должны быть удалены маркеры корневой и вложенной папок из индекса");
+        assertEquals(0, report.failures(), "Миграция должна пройти без ошибок");
+        assertEquals("legacy content", download(userPrefix + "docs/", "legacy.txt"),
+                "Перенесённый файл должен читаться через индекс");
+        assertEquals("root content", download(userPrefix, "root.txt"),
+                "Перенесённый файл должен читаться через индекс");
+        assertEquals("fresh content", download(userPrefix, "fresh.txt"),
+                "Файл, загруженный под ключом, должен читаться как прежде");
+        assertEquals(List.of(strayMarker), listObjects(userPrefix),
+                "Под префиксом пользователя должен остаться только маркер папки, неизвестной индексу");
+        assertEquals(3, listObjects(OBJECT_PREFIX).size(), "Каждый файл должен храниться под своим ключом");
+    }
+
+    @Test
+    @DisplayName("Повторная миграция ничего не меняет")
+    void shouldBeIdempotent() throws Exception {
+        String userPrefix = createUser("repeat_user");
+        putLegacyFolder(userPrefix + "docs/");
+        putLegacyFile(userPrefix + "docs/legacy.txt", "legacy content");
+        objectIdMigrationService.migrate();
+        String objectKey = storageIndexService.resolveObjectKey(userPrefix + "docs/legacy.txt");
+
+        ObjectIdMigrationReport report = objectIdMigrationService.migrate();
+
+        assertEquals(0, report.filesMigrated(), "Повторный запуск не должен переносить файлы");
+        assertEquals(0, report.folderMarkersRemoved(), "Повторный запуск не должен удалять маркеры");
+        assertEquals(0, report.failures(), "Повторный запуск должен пройти без ошибок");
+        assertEquals(objectKey, storageIndexService.resolveObjectKey(userPrefix + "docs/legacy.txt"),
+                "Ключ файла не должен меняться");
+        assertEquals(List.of(objectKey), listObjects(OBJECT_PREFIX), "Новых копий появиться не должно");
+        assertEquals("legacy content", download(userPrefix + "docs/", "legacy.txt"),
+                "Файл должен читаться через индекс");
+    }
+
+    @Test
+    @DisplayName("Копия файла, удалённого во время миграции, удаляется")
+    void shouldRemoveCopyWhenFileIsDeletedDuringMigration() throws Exception {
+        String userPrefix = createUser("racing_user");
+        putLegacyFile(userPrefix + "doomed.txt", "doomed content");
+        MinioClient racingClient = spy(minioClient);
+        // Пользователь удаляет файл сразу после того, как миграция скопировала его под новый ключ
+        doAnswer(invocation -> {
+            ObjectWriteResponse response = (ObjectWriteResponse) invocation.callRealMethod();
+            fileService.delete(userPrefix, "doomed.txt");
+            return response;
+        }).when(racingClient).copyObject(any(CopyObjectArgs.class));
+        ObjectIdMigrationService racingMigration = new ObjectIdMigrationServiceImpl(
+                new MinioClientProvider(racingClient, TEST_BUCKET_NAME), userRepository, storageObjectRepository,
+                storageIndexService, userPrefixService, 1);
+
+        ObjectIdMigrationReport report = racingMigration.migrate();
+
+        assertEquals(0, report.filesMigrated(), "Удалённый файл не должен считаться перенесённым");
+        assertFalse(storageIndexService.exists(userPrefix + "doomed.txt"), "Файл должен остаться удалённым");
+        assertTrue(listObjects(OBJECT_PREFIX).isEmpty(), "Копия удалённого файла должна быть удалена");
+        assertTrue(listObjects(userPrefix + "doomed.txt").isEmpty(), "Объект по пути должен быть удалён");
+    }
+
+    @Test
+    @DisplayName("Переименование папки меняет только индекс, а удаление удаляет объекты её файлов")
+    void shouldRenameAndDeleteFolderByIndexOnly() throws Exception {
+        folderService.create(ROOT_USER_FOLDER, "docs");
+        folderService.create(ROOT_USER_FOLDER + "docs/", "nested");
+        fileService.upload(ROOT_USER_FOLDER + "docs/", "a.txt", stream("a content"), "a content".length());
+        fileService.upload(ROOT_USER_FOLDER + "docs/nested/", "b.txt", stream("b content"), "b content".length());
+        String keyA = storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + "docs/a.txt");
+        String keyB = storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + "docs/nested/b.txt");
+
+        folderService.rename(ROOT_USER_FOLDER, "docs", "renamed");
+
+        assertTrue(listObjects(ROOT_USER_FOLDER).isEmpty(), "Папки и файлы не должны храниться по путям");
+        assertFalse(storageIndexService.exists(ROOT_USER_FOLDER + "docs/"), "Старая папка должна исчезнуть");
+        assertEquals(keyA, storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + "renamed/a.txt"),
+                "Ключ файла не должен меняться при переименовании папки");
+        assertEquals(keyB, storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + "renamed/nested/b.txt"),
+                "Ключ вложенного файла не должен меняться при переименовании папки");
+        assertEquals("b content", download(ROOT_USER_FOLDER + "renamed/nested/", "b.txt"),
+                "Файл должен читаться по новому пути");
+
+        folderService.delete(ROOT_USER_FOLDER, "renamed");
+
+        assertFalse(storageIndexService.exists(ROOT_USER_FOLDER + "renamed/"), "Папка должна быть удалена из индекса");
+        assertTrue(listObjects(OBJECT_PREFIX).isEmpty(), "Объекты файлов удалённой папки должны быть удалены");
+    }
+
+    @Test
+    @DisplayName("Копия, оставленная переименованием папки для уже перенесённого миграцией файла, удаляется")
+    void shouldRemovePathCopyOfMigratedFileAfterFolderRename() throws Exception {
+        folderService.create(ROOT_USER_FOLDER, "docs");
+        // Миграция успела записать ключ, пока переименование копировало объект по пути
+        StorageObjectInfo migrated = contentStorageService.store(
+                ROOT_USER_FOLDER + "docs/a.txt", stream("a content"), "a content".length());
+        storageIndexService.add(migrated);
+        putObject(ROOT_USER_FOLDER + "docs/a.txt", "a content");
+
+        folderService.rename(ROOT_USER_FOLDER, "docs", "renamed");
+
+        assertTrue(listObjects(ROOT_USER_FOLDER).isEmpty(), "Копия по новому пути не должна остаться");
+        assertEquals(migrated.objectKey(), storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + "renamed/a.txt"),
+                "Файл должен ссылаться на ключ, записанный миграцией");
+        assertEquals("a content", download(ROOT_USER_FOLDER + "renamed/", "a.txt"),
+                "Файл должен читаться по новому пути");
+    }
+
+    @Test
+    @DisplayName("Переименование и удаление файла под ключом не трогают MinIO, кроме удаления его объекта")
+    void shouldRenameAndDeleteFileByIndexOnly() throws Exception {
+        fileService.upload(ROOT_USER_FOLDER, TEST_FILE_NAME, new ByteArrayInputStream(HELLO_MINIO_BYTES),
+                HELLO_MINIO_BYTES.length);
+        String objectKey = storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + TEST_FILE_NAME);
+        assertTrue(ObjectIdContentStorageServiceImpl.isObjectIdKey(objectKey), "Файл должен храниться под ключом");
+
+        fileService.rename(ROOT_USER_FOLDER, TEST_FILE_NAME, "renamed.txt");
+
+        assertEquals(objectKey, storageIndexService.resolveObjectKey(ROOT_USER_FOLDER + "renamed.txt"),
+                "Ключ файла не должен меняться при переименовании");
+        assertEquals(List.of(objectKey), listObjects(OBJECT_PREFIX), "Объект файла не должен копироваться");
+        assertTrue(listObjects(ROOT_USER_FOLDER).isEmpty(), "Файл не должен храниться по пути");
+
+        fileService.delete(ROOT_USER_FOLDER, "renamed.txt");
+
+        assertFalse(storageIndexService.exists(ROOT_USER_FOLDER + "renamed.txt"), "Файл должен быть удалён из индекса");
+        assertTrue(listObjects(OBJECT_PREFIX).isEmpty(), "Объект файла должен быть удалён");
+    }
+
+    @Test
+    @DisplayName("Сохранение файла создаёт объект под новым ключом")
+    void shouldStoreUnderNewObjectKey() throws Exception {
+        StorageObjectInfo stored = contentStorageService.store(
+                ROOT_USER_FOLDER + TEST_FILE_NAME, new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length);
+
+        assertTrue(ObjectIdContentStorageServiceImpl.isObjectIdKey(stored.objectKey()), "Ключ должен быть в objects/");
+        assertEquals(ROOT_USER_FOLDER + TEST_FILE_NAME, stored.path(), "Путь должен сохраняться в описании файла");
+        assertEquals("Hello Minio", readObject(stored.objectKey()), "Содержимое должно лежать под ключом");
+        assertTrue(listObjects(ROOT_USER_FOLDER).isEmpty(), "Объект по пути не должен создаваться");
+    }
+
+    @Test
+    @DisplayName("Ошибка загрузки одного файла папки удаляет уже сохранённые объекты")
+    void shouldDiscardStoredObjectsWhenStoreAllFails() throws Exception {
+        List<UploadObject> objects = List.of(
+                UploadObject.folder(ROOT_USER_FOLDER + "docs/"),
+                new UploadObject(ROOT_USER_FOLDER + "docs/good.txt", new ByteArrayInputStream(HELLO_MINIO_BYTES),
+                        HELLO_MINIO_BYTES.length),
+                new UploadObject(ROOT_USER_FOLDER + "docs/broken.txt", new FailingInputStream(), 1024));
+
+        assertThrows(IOException.class, () -> contentStorageService.storeAll(objects),
+                "Ошибка чтения файла должна передаваться вызывающему");
+
+        assertTrue(listObjects(OBJECT_PREFIX).isEmpty(), "Сохранённые объекты должны быть удалены");
+    }
+
+    @Test
+    @DisplayName("Принятый из промежуточной загрузки файл копируется под новый ключ")
+    void shouldAdoptStagedObject() throws Exception {
+        String stagedKey = "uploads/staged-object";
+        putObject(stagedKey, "staged content");
+
+        StorageObjectInfo adopted = contentStorageService.adopt(ROOT_USER_FOLDER + "adopted.txt", stagedKey,
+                "staged content".length());
+
+        assertTrue(ObjectIdContentStorageServiceImpl.isObjectIdKey(adopted.objectKey()), "Ключ должен быть в objects/");
+        assertEquals("staged content".length(), adopted.size(), "Размер должен браться из загрузки");
+        assertEquals("staged content", readObject(adopted.objectKey()), "Содержимое должно быть скопировано под ключ");
+    }
+
+    private String createUser(String username) throws Exception {
+        User user = saveUser(username);
+        String userPrefix = userPrefixService.buildUserPrefix(user.getId(), user.getUsername());
+        putObject(userPrefix, "");
+        storageIndexService.add(StorageObjectInfo.folder(userPrefix));
+        return userPrefix;
+    }
+
+    // Папка и файл, созданные до включения неизменяемых ключей: объекты по путям и строки индекса без ключа
+    private void putLegacyFolder(String folderPath) throws Exception {
+        putObject(folderPath, "");
+        storageIndexService.add(StorageObjectInfo.folder(folderPath));
+    }
+
+    private void putLegacyFile(String filePath, String content) throws Exception {
+        String etag = putObject(filePath, content);
+        storageIndexService.add(StorageObjectInfo.file(filePath, content.length(), etag));
+    }
+
+    private String putObject(String objectName, String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return minioClient.putObject(PutObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(objectName)
+                .stream(new ByteArrayInputStream(bytes), bytes.length, -1)
+                .build()).etag();
+    }
+
+    private String download(String path, String fileName) throws Exception {
+        try (InputStream inputStream = fileService.download(path, fileName).getInputStream()) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class FailingInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            throw new IOException("Injected read failure");
+        }
+    }
+}
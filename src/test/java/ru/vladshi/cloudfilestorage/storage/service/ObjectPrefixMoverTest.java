@@ -0,0 +1,127 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import io.minio.CopyObjectArgs;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ObjectPrefixMover;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+@SpringBootTest(classes = {MinioClientProvider.class, AbstractMinioServiceTest.MinioClientConfig.class})
+public class ObjectPrefixMoverTest extends AbstractMinioServiceTest {
+
+    private static final String SOURCE_PREFIX = ROOT_USER_FOLDER + "source/";
+    private static final String TARGET_PREFIX = ROOT_USER_FOLDER + "target/";
+    private static final int FILE_COUNT = 30;
+
+    @Test
+    @DisplayName("Перенос всех объектов префикса на новый префикс")
+    void shouldMovePrefix() throws Exception {
+        putFiles();
+
+        int moved = new ObjectPrefixMover(new MinioClientProvider(minioClient, TEST_BUCKET_NAME), 4)
+                .move(SOURCE_PREFIX, TARGET_PREFIX);
+
+        assertEquals(FILE_COUNT, moved, "Должны быть перенесены все объекты");
+        for (int i = 0; i < FILE_COUNT; i++) {
+            assertFalse(fileExists(SOURCE_PREFIX + fileName(i)), "Исходный объект должен быть удалён");
+            assertEquals(content(i), read(TARGET_PREFIX + fileName(i)), "Копия должна совпадать с исходным объектом");
+        }
+    }
+
+    @Test
+    @DisplayName("Ошибка копирования посередине откатывает перенос и оставляет исходные объекты")
+    void shouldRollBackWhenCopyFailsMidway() throws Exception {
+        putFiles();
+        MinioClient failingClient = spy(minioClient);
+        doThrow(new IOException("Injected copy failure"))
+                .when(failingClient).copyObject(argThat((CopyObjectArgs args) ->
+                        args != null && args.object().equals(TARGET_PREFIX + fileName(FILE_COUNT / 2))));
+        ObjectPrefixMover mover = new ObjectPrefixMover(new MinioClientProvider(failingClient, TEST_BUCKET_NAME), 4);
+
+        assertThrows(IOException.class, () -> mover.move(SOURCE_PREFIX, TARGET_PREFIX),
+                "Ошибка копирования должна передаваться вызывающему");
+
+        assertSourceIntactAndTargetEmpty();
+    }
+
+    @Test
+    @DisplayName("Ошибка удаления исходных объектов откатывает перенос с их восстановлением из копий")
+    void shouldRestoreDeletedSourcesWhenDeletionFails() throws Exception {
+        putFiles();
+        MinioClient failingClient = spy(minioClient);
+        AtomicBoolean failed = new AtomicBoolean();
+        // Объекты удаляются, но вызов завершается ошибкой, как при обрыве связи после выполнения запроса
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            Iterable<Result<DeleteError>> results = (Iterable<Result<DeleteError>>) invocation.callRealMethod();
+            results.forEach(result -> {
+            });
+            if (failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Injected deletion failure");
+            }
+            return results;
+        }).when(failingClient).removeObjects(any(RemoveObjectsArgs.class));
+        ObjectPrefixMover mover = new ObjectPrefixMover(new MinioClientProvider(failingClient, TEST_BUCKET_NAME), 4);
+
+        assertThrows(IllegalStateException.class, () -> mover.move(SOURCE_PREFIX, TARGET_PREFIX),
+                "Ошибка удаления должна передаваться вызывающему");
+
+        assertSourceIntactAndTargetEmpty();
+    }
+
+    private void assertSourceIntactAndTargetEmpty() throws Exception {
+        for (int i = 0; i < FILE_COUNT; i++) {
+            assertEquals(content(i), read(SOURCE_PREFIX + fileName(i)),
+                    "Исходный объект " + fileName(i) + " должен остаться с прежним содержимым");
+            assertFalse(fileExists(TARGET_PREFIX + fileName(i)), "Копия " + fileName(i) + " должна быть удалена");
+        }
+    }
+
+    private void putFiles() throws Exception {
+        for (int i = 0; i < FILE_COUNT; i++) {
+            byte[] bytes = content(i).getBytes(StandardCharsets.UTF_8);
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(TEST_BUCKET_NAME)
+                    .object(SOURCE_PREFIX + fileName(i))
+                    .stream(new ByteArrayInputStream(bytes), bytes.length, -1)
+                    .build());
+        }
+    }
+
+    private String read(String objectName) throws Exception {
+        try (InputStream inputStream = minioClient.getObject(GetObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(objectName)
+                .build())) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String fileName(int index) {
+        return "nested/file-%02d.txt".formatted(index);
+    }
+
+    private static String content(int index) {
+        return "content of file " + index;
+    }
+}
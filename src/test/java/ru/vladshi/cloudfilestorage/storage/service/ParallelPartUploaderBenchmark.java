@@ -0,0 +1,110 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+import ru.vladshi.cloudfilestorage.storage.service.impl.ParallelPartUploader;
+
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Сравнение пропускной способности {@code putObject} (части отправляются по очереди) и {@link ParallelPartUploader}.
+ * Запуск: {@code mvn test -Dtest=ParallelPartUploaderBenchmark -Dbenchmark=true [-Dbenchmark.size-mb=512]}.
+ */
+@SpringBootTest(
+        classes = {ParallelPartUploader.class, MinioClientProvider.class, AbstractMinioServiceTest.MinioClientConfig.class},
+        properties = {
+                "spring.flyway.enabled=false",
+                "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration",
+                "storage.upload.parallel-threshold=0"
+        })
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class ParallelPartUploaderBenchmark extends AbstractMinioServiceTest {
+
+    private static final int ROUNDS = 3;
+    private static final String OBJECT_NAME = ROOT_USER_FOLDER + "benchmark.bin";
+
+    @Autowired
+    private ParallelPartUploader parallelPartUploader;
+
+    @Test
+    @DisplayName("Пропускная способность последовательной и параллельной загрузки частями")
+    void compareSequentialAndParallelUpload() throws Exception {
+        long size = Long.getLong("benchmark.size-mb", 256) * 1024 * 1024;
+
+        // Прогрев соединений и JIT
+        uploadSequentially(size);
+        parallelPartUploader.upload(OBJECT_NAME, new GeneratedInputStream(size), size);
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            double sequential = measure(size, () -> uploadSequentially(size));
+            double parallel = measure(size, () ->
+                    parallelPartUploader.upload(OBJECT_NAME, new GeneratedInputStream(size), size));
+            System.out.printf("Round %d: putObject %.1f MB/s, parallel parts %.1f MB/s%n",
+                    round, sequential, parallel);
+        }
+    }
+
+    private void uploadSequentially(long size) throws Exception {
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(OBJECT_NAME)
+                .stream(new GeneratedInputStream(size), size, -1)
+                .build());
+    }
+
+    private double measure(long size, Upload upload) throws Exception {
+        long start = System.nanoTime();
+        upload.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        minioClient.removeObject(RemoveObjectArgs.builder().bucket(TEST_BUCKET_NAME).object(OBJECT_NAME).build());
+        return size / 1024.0 / 1024.0 / seconds;
+    }
+
+    @FunctionalInterface
+    private interface Upload {
+        void run() throws Exception;
+    }
+
+    // Повторяет блок случайных байт, чтобы не держать весь файл в памяти и не измерять скорость генерации
+    private static class GeneratedInputStream extends InputStream {
+
+        private static final byte[] BLOCK = new byte[1024 * 1024];
+
+        static {
+            new Random(42).nextBytes(BLOCK);
+        }
+
+        private long remaining;
+
+        GeneratedInputStream(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining == 0) {
+                return -1;
+            }
+            return BLOCK[(int) (remaining-- % BLOCK.length)] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining == 0) {
+                return -1;
+            }
+            int position = (int) (remaining % BLOCK.length);
+            int count = (int) Math.min(Math.min(length, remaining), BLOCK.length - position);
+            System.arraycopy(BLOCK, position, buffer, offset, count);
+            remaining -= count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package ru.vladshi.cloudfilestorage.storage.service;
+
+import io.minio.PutObjectArgs;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageObject;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageReservation;
+import ru.vladshi.cloudfilestorage.storage.entity.StorageUsage;
+import ru.vladshi.cloudfilestorage.storage.model.UsageReconciliationReport;
+import ru.vladshi.cloudfilestorage.storage.service.impl.MinioClientProvider;
+import ru.vladshi.cloudfilestorage.storage.service.impl.StorageUsageReconciliationServiceImpl;
+import ru.vladshi.cloudfilestorage.storage.service.impl.UserPrefixServiceImpl;
+import ru.vladshi.cloudfilestorage.user.entity.User;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(
+        classes = {StorageUsageReconciliationServiceImpl.class, UserPrefixServiceImpl.class, MinioClientProvider.class,
+                AbstractMinioServiceTest.MinioClientConfig.class, AbstractIndexedStorageTest.JpaConfig.class},
+        properties = "storage.index.enabled=true"
+)
+public class StorageUsageReconciliationServiceImplTest extends AbstractRedisStorageTest {
+
+    private static final String LOCK_KEY = "storage-usage-reconciliation:lock";
+
+    @Autowired
+    private StorageUsageReconciliationService reconciliationService;
+
+    private String userPrefix;
+
+    @BeforeEach
+    void createUser() {
+        User user = saveUser("reconciled_user");
+        userPrefix = user.getId() + "-" + user.getUsername() + "/";
+    }
+
+    @Test
+    @DisplayName("Занятое место приводится к размеру файлов пользователя в индексе")
+    void shouldCorrectUsedBytesFromIndex() throws Exception {
+        putObject(TEST_FILE_NAME);
+        saveIndexedFile(TEST_FILE_NAME, HELLO_MINIO_BYTES.length);
+        saveUsage(0, 0);
+
+        UsageReconciliationReport report = reconciliationService.reconcile().orElseThrow();
+
+        assertEquals(1, report.corrections(), "Счётчик пользователя должен быть исправлен");
+        assertEquals(HELLO_MINIO_BYTES.length, usage().getUsedBytes(), "Счётчик должен совпасть с индексом");
+        assertEquals(0, report.indexDrifts(), "Индекс совпадает с бакетом");
+    }
+
+    @Test
+    @DisplayName("Объект бакета без записи в индексе только сообщается и не меняет счётчик")
+    void shouldReportIndexDriftWithoutChangingUsage() throws Exception {
+        putObject(TEST_FILE_NAME);
+        saveUsage(0, 0);
+
+        UsageReconciliationReport report = reconciliationService.reconcile().orElseThrow();
+
+        assertEquals(1, report.indexDrifts(), "Расхождение индекса с бакетом должно попасть в отчёт");
+        assertEquals(0, report.corrections(), "Счётчик совпадает с индексом и не должен исправляться");
+        assertEquals(0, usage().getUsedBytes(), "Счётчик не должен учитывать файл без записи в индексе");
+    }
+
+    @Test
+    @DisplayName("Зарезервированное место приводится к сумме записанных резервов")
+    void shouldCorrectReservedBytesFromReservations() {
+        saveUsage(0, 500);
+        saveReservation(100);
+
+        UsageReconciliationReport report = reconciliationService.reconcile().orElseThrow();
+
+        assertEquals(1, report.reservedCorrections(), "Резерв пользователя должен быть исправлен");
+        assertEquals(100, usage().getReservedBytes(), "Резерв должен совпасть с записями резервов");
+        assertEquals(0, report.corrections(), "Верное занятое место не должно исправляться");
+    }
+
+    @Test
+    @DisplayName("Сверка не запускается, пока её выполняет другой узел, и снимает свою блокировку")
+    void shouldSkipWhenAnotherNodeHoldsLock() {
+        saveUsage(0, 500);
+        redisTemplate.opsForValue().set(LOCK_KEY, "other-node", Duration.ofMinutes(1));
+
+        assertTrue(reconciliationService.reconcile().isEmpty(), "Сверка должна быть пропущена");
+        assertEquals(500, usage().getReservedBytes(), "Счётчики не должны меняться");
+
+        redisTemplate.delete(LOCK_KEY);
+        assertTrue(reconciliationService.reconcile().isPresent(), "Без чужой блокировки сверка должна выполниться");
+        assertFalse(redisTemplate.hasKey(LOCK_KEY), "Блокировка должна сниматься после сверки");
+    }
+
+    private void saveUsage(long usedBytes, long reservedBytes) {
+        StorageUsage usage = new StorageUsage();
+        usage.setUserPrefix(userPrefix);
+        usage.setUsedBytes(usedBytes);
+        usage.setReservedBytes(reservedBytes);
+        storageUsageRepository.save(usage);
+    }
+
+    private void putObject(String name) throws Exception {
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(TEST_BUCKET_NAME)
+                .object(userPrefix + name)
+                .stream(new ByteArrayInputStream(HELLO_MINIO_BYTES), HELLO_MINIO_BYTES.length, -1)
+                .build());
+    }
+
+    private void saveIndexedFile(String name, long size) {
+        StorageObject file = new StorageObject();
+        file.setUserPrefix(userPrefix);
+        file.setPath(userPrefix + name);
+        file.setParentPath(userPrefix);
+        file.setName(name);
+        file.setSize(size);
+        storageObjectRepository.save(file);
+    }
+
+    private void saveReservation(long bytes) {
+        StorageReservation reservation = new StorageReservation();
+        reservation.setId(UUID.randomUUID().toString());
+        reservation.setUserPrefix(userPrefix);
+        reservation.setBytes(bytes);
+        reservation.setExpiresAt(Instant.now().plus(Duration.ofHours(1)));
+        storageReservationRepository.save(reservation);
+    }
+
+    private StorageUsage usage() {
+        return storageUsageRepository.findById(userPrefix).orElseThrow();
+    }
+}
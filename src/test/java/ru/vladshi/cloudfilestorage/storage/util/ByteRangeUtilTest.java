@@ -0,0 +1,124 @@
+package ru.vladshi.cloudfilestorage.storage.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.vladshi.cloudfilestorage.storage.model.StoredFileInfo;
+import ru.vladshi.cloudfilestorage.storage.util.ByteRangeUtil.ByteRange;
+import ru.vladshi.cloudfilestorage.storage.util.ByteRangeUtil.LeadingRange;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteRangeUtilTest {
+
+    private static final long FILE_SIZE = 1000;
+    private static final Instant LAST_MODIFIED = Instant.parse("2024-05-01T10:15:30.250Z");
+    private static final StoredFileInfo FILE_INFO = new StoredFileInfo(FILE_SIZE, "abc123", LAST_MODIFIED);
+
+    @Test
+    @DisplayName("Диапазоны с началом, с концом файла и суффиксные ограничиваются размером файла")
+    void shouldParseRangesWithinFileSize() {
+        assertEquals(List.of(new ByteRange(0, 100)), ByteRangeUtil.parse("bytes=0-99", FILE_SIZE),
+                "Диапазон с началом и концом должен разбираться как есть");
+        assertEquals(List.of(new ByteRange(900, 100)), ByteRangeUtil.parse("bytes=900-", FILE_SIZE),
+                "Диапазон без конца должен продолжаться до конца файла");
+        assertEquals(List.of(new ByteRange(800, 200)), ByteRangeUtil.parse("bytes=-200", FILE_SIZE),
+                "Суффиксный диапазон должен отсчитываться от конца файла");
+        assertEquals(List.of(new ByteRange(990, 10)), ByteRangeUtil.parse("bytes=990-5000", FILE_SIZE),
+                "Конец за пределами файла должен ограничиваться его размером");
+    }
+
+    @Test
+    @DisplayName("Пересекающиеся и смежные диапазоны объединяются и упорядочиваются")
+    void shouldCoalesceOverlappingRanges() {
+        assertEquals(List.of(new ByteRange(0, 300), new ByteRange(500, 100)),
+                ByteRangeUtil.parse("bytes=500-599,100-299,0-150", FILE_SIZE),
+                "Пересекающиеся диапазоны должны объединяться, а результат — идти по возрастанию начала");
+        assertEquals(List.of(new ByteRange(0, 200)), ByteRangeUtil.parse("bytes=0-99,100-199", FILE_SIZE),
+                "Смежные диапазоны должны объединяться в один");
+        assertEquals(List.of(new ByteRange(0, 1000)), ByteRangeUtil.parse("bytes=0-99,0-,50-60", FILE_SIZE),
+                "Диапазон до конца файла должен поглощать вложенные");
+    }
+
+    @Test
+    @DisplayName("Невыполнимый заголовок даёт 416, а некорректный игнорируется")
+    void shouldDistinguishUnsatisfiableAndInvalidRanges() {
+        assertNull(ByteRangeUtil.parse("bytes=1000-", FILE_SIZE),
+                "Диапазон от конца файла должен быть невыполнимым (416)");
+        assertNull(ByteRangeUtil.parse("bytes=2000-2999,1500-", FILE_SIZE),
+                "Заголовок только из невыполнимых диапазонов должен давать 416");
+        assertEquals(List.of(new ByteRange(0, 10)), ByteRangeUtil.parse("bytes=5000-,0-9", FILE_SIZE),
+                "Невыполнимые диапазоны должны отбрасываться, если есть выполнимые");
+        assertEquals(List.of(), ByteRangeUtil.parse("items=0-9", FILE_SIZE),
+                "Заголовок с другой единицей должен игнорироваться");
+        assertEquals(List.of(), ByteRangeUtil.parse("bytes=9-0", FILE_SIZE),
+                "Диапазон с концом раньше начала должен игнорироваться");
+    }
+
+    @Test
+    @DisplayName("Один диапазон с явным началом распознаётся без размера файла")
+    void shouldRecognizeLeadingRange() {
+        assertEquals(Optional.of(new LeadingRange(100, null)), ByteRangeUtil.leadingRange("bytes=100-"),
+                "Диапазон без конца должен распознаваться");
+        assertEquals(100L, ByteRangeUtil.leadingRange("bytes=100-199").orElseThrow().length(),
+                "Длина диапазона должна включать обе границы");
+        assertTrue(ByteRangeUtil.leadingRange("bytes=-100").isEmpty(),
+                "Суффиксный диапазон требует размера файла");
+        assertTrue(ByteRangeUtil.leadingRange("bytes=0-9,20-29").isEmpty(),
+                "Несколько диапазонов требуют размера файла");
+        assertTrue(ByteRangeUtil.leadingRange("bytes=9-0").isEmpty(),
+                "Диапазон с концом раньше начала не должен распознаваться");
+    }
+
+    @Test
+    @DisplayName("If-Range совпадает только с сильным ETag или точной датой изменения")
+    void shouldMatchIfRangeByStrongEtagOrExactDate() {
+        assertTrue(ByteRangeUtil.ifRangeMatches(null, FILE_INFO), "Без If-Range диапазон должен отдаваться");
+        assertTrue(ByteRangeUtil.ifRangeMatches("\"abc123\"", FILE_INFO), "Совпавший ETag должен подходить");
+        assertFalse(ByteRangeUtil.ifRangeMatches("\"other\"", FILE_INFO), "Другой ETag не должен подходить");
+        assertFalse(ByteRangeUtil.ifRangeMatches("W/\"abc123\"", FILE_INFO), "Слабый ETag не должен подходить");
+        assertTrue(ByteRangeUtil.ifRangeMatches("Wed, 01 May 2024 10:15:30 GMT", FILE_INFO),
+                "Дата изменения должна сравниваться с точностью до секунды");
+        assertFalse(ByteRangeUtil.ifRangeMatches("Wed, 01 May 2024 10:15:29 GMT", FILE_INFO),
+                "Другая дата не должна подходить");
+        assertFalse(ByteRangeUtil.ifRangeMatches("not a date", FILE_INFO), "Некорректное значение не должно подходить");
+    }
+
+    @Test
+    @DisplayName("Тело multipart/byteranges содержит части в порядке диапазонов и имеет заранее известную длину")
+    void shouldWriteMultipartBody() throws Exception {
+        byte[] content = new byte[(int) FILE_SIZE];
+        Arrays.fill(content, (byte) 'x');
+        content[10] = 'a';
+        content[500] = 'b';
+        List<ByteRange> ranges = List.of(new ByteRange(10, 3), new ByteRange(500, 2));
+
+        InputStream body = ByteRangeUtil.multipartBody(ranges, FILE_SIZE, "text/plain", "boundary",
+                range -> new ByteArrayInputStream(content, (int) range.offset(), (int) range.length()));
+        byte[] bytes = body.readAllBytes();
+
+        assertEquals(ByteRangeUtil.multipartLength(ranges, FILE_SIZE, "text/plain", "boundary"), bytes.length,
+                "Заранее вычисленная длина должна совпадать с телом");
+        assertEquals("""
+                \r
+                --boundary\r
+                Content-Type: text/plain\r
+                Content-Range: bytes 10-12/1000\r
+                \r
+                axx\r
+                --boundary\r
+                Content-Type: text/plain\r
+                Content-Range: bytes 500-501/1000\r
+                \r
+                bx\r
+                --boundary--\r
+                """, new String(bytes, StandardCharsets.US_ASCII), "Части должны идти в порядке диапазонов");
+    }
+}